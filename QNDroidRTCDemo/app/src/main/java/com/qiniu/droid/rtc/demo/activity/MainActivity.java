@@ -132,23 +132,23 @@ public class MainActivity extends AppCompatActivity {
         if (!handleRoomInfo()) {
             return;
         }
-        new Thread(() -> {
-            // 获取连麦所需的 RoomToken，需要您自行实现业务服务器的相关逻辑
-            // 详情请参考【服务端开发说明.RoomToken 签发服务】https://doc.qnsdk.com/rtn/docs/server_overview#1
-            final String token = QNAppServer.getInstance().requestRoomToken(MainActivity.this, mUserName, roomName);
-
-            runOnUiThread(() -> {
-                if (token == null) {
-                    ToastUtils.showShortToast(MainActivity.this, getString(R.string.null_room_token_toast));
-                    return;
-                }
+        // 获取连麦所需的 RoomToken，需要您自行实现业务服务器的相关逻辑
+        // 详情请参考【服务端开发说明.RoomToken 签发服务】https://doc.qnsdk.com/rtn/docs/server_overview#1
+        QNAppServer.getInstance().getRoomTokenAsync(MainActivity.this, mUserName, roomName, new QNAppServer.Callback<String>() {
+            @Override
+            public void onSuccess(String token) {
                 Intent intent = new Intent(MainActivity.this, RoomActivity.class);
                 intent.putExtra(RoomActivity.EXTRA_ROOM_ID, roomName.trim());
                 intent.putExtra(RoomActivity.EXTRA_ROOM_TOKEN, token);
                 intent.putExtra(RoomActivity.EXTRA_USER_ID, mUserName);
                 startActivity(intent);
-            });
-        }).start();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                ToastUtils.showShortToast(MainActivity.this, getString(R.string.null_room_token_toast));
+            }
+        });
     }
 
     public void onClickLiveRoom(View v) {
@@ -215,22 +215,29 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void checkUpdate() {
-        new Thread(() -> {
-            final UpdateInfo updateInfo = QNAppServer.getInstance().getUpdateInfo();
-            if (updateInfo != null && updateInfo.getVersion() > Utils.appVersion(getApplicationContext())) {
-                runOnUiThread(() -> showUpdateDialog(updateInfo.getDescription(), updateInfo.getDownloadURL()));
+        QNAppServer.getInstance().getUpdateInfoAsync(new QNAppServer.Callback<UpdateInfo>() {
+            @Override
+            public void onSuccess(UpdateInfo updateInfo) {
+                if (!isFinishing() && updateInfo.getVersion() > Utils.appVersion(getApplicationContext())) {
+                    showUpdateDialog(updateInfo.getDescription(), updateInfo.getDownloadURL(), updateInfo.getDownloadMD5());
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                // 检查更新失败时不做提示
             }
-        }).start();
+        });
     }
 
-    private void showUpdateDialog(String content, final String downloadUrl) {
+    private void showUpdateDialog(String content, final String downloadUrl, final String downloadMd5) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle(R.string.android_auto_update_dialog_title);
         builder.setMessage(Html.fromHtml(content))
                 .setPositiveButton(R.string.android_auto_update_dialog_btn_download, (dialog, id) -> {
                     dialog.dismiss();
                     createProgressDialog();
-                    goToDownload(downloadUrl);
+                    goToDownload(downloadUrl, downloadMd5);
                 })
                 .setNegativeButton(R.string.android_auto_update_dialog_btn_cancel, (dialog, id) -> {
                 });
@@ -251,9 +258,10 @@ public class MainActivity extends AppCompatActivity {
         mProgressDialog.show();
     }
 
-    private void goToDownload(String downloadUrl) {
+    private void goToDownload(String downloadUrl, String downloadMd5) {
         Intent intent = new Intent(MainActivity.this, DownloadService.class);
         intent.putExtra(Config.DOWNLOAD_URL, downloadUrl);
+        intent.putExtra(Config.DOWNLOAD_MD5, downloadMd5);
         startService(intent);
     }
 
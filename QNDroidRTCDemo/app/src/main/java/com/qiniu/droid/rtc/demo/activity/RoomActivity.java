@@ -13,7 +13,9 @@ import android.graphics.Point;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -25,6 +27,7 @@ import android.view.ViewGroup;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.PopupWindow;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
@@ -33,6 +36,7 @@ import androidx.fragment.app.FragmentActivity;
 import androidx.fragment.app.FragmentTransaction;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.qiniu.droid.rtc.QNAudioFrameListener;
 import com.qiniu.droid.rtc.QNAudioQualityPreset;
 import com.qiniu.droid.rtc.QNAudioScene;
 import com.qiniu.droid.rtc.QNAudioVolumeInfo;
@@ -83,12 +87,18 @@ import com.qiniu.droid.rtc.demo.service.ForegroundService;
 import com.qiniu.droid.rtc.demo.ui.CircleTextView;
 import com.qiniu.droid.rtc.demo.ui.MergeLayoutConfigView;
 import com.qiniu.droid.rtc.demo.ui.UserTrackView;
+import com.qiniu.droid.rtc.demo.utils.AudioLevelMeter;
+import com.qiniu.droid.rtc.demo.utils.CoalescingScheduler;
 import com.qiniu.droid.rtc.demo.utils.Config;
+import com.qiniu.droid.rtc.demo.utils.MergeLayoutDiffer;
+import com.qiniu.droid.rtc.demo.utils.MergeLayoutEngine;
 import com.qiniu.droid.rtc.demo.utils.QNAppServer;
-import com.qiniu.droid.rtc.demo.utils.SplitUtils;
+import com.qiniu.droid.rtc.demo.utils.SimulcastProfileSelector;
+import com.qiniu.droid.rtc.demo.utils.SpeakerActivityRanking;
 import com.qiniu.droid.rtc.demo.utils.ToastUtils;
 import com.qiniu.droid.rtc.demo.utils.TrackWindowManager;
 import com.qiniu.droid.rtc.demo.utils.Utils;
+import com.qiniu.droid.rtc.demo.utils.VideoSubscriptionManager;
 import com.qiniu.droid.rtc.model.QNAudioDevice;
 
 import org.qnwebrtc.Size;
@@ -99,8 +109,6 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -131,6 +139,7 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
 
     private UserTrackView mTrackWindowFullScreen;
     private List<UserTrackView> mTrackWindowsList;
+    private TextView mPageIndicator;
     private AlertDialog mKickOutDialog;
 
     private QNRTCClient mClient;
@@ -179,6 +188,33 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
      * 注意：自定义合流转推需要在加入房间之后才可执行
      */
     private QNTranscodingLiveStreamingConfig mCurrentMergeConfig;
+    private final MergeLayoutEngine mMergeLayoutEngine = new MergeLayoutEngine();
+    private final QNTranscodingLiveStreamingTrack mMergeLayoutItem = new QNTranscodingLiveStreamingTrack();
+    private int[] mMergeLayoutX = new int[0];
+    private int[] mMergeLayoutY = new int[0];
+    private int[] mMergeLayoutW = new int[0];
+    private int[] mMergeLayoutH = new int[0];
+    private final MergeLayoutDiffer mMergeLayoutDiffer = new MergeLayoutDiffer();
+    // 合并短时间内连续的发布、取消发布事件，只重新计算一次合流布局
+    private final CoalescingScheduler mMergeLayoutScheduler = new CoalescingScheduler(CoalescingScheduler.DEFAULT_WINDOW_MS,
+            () -> runOnUiThread(() -> {
+                if (mClient != null) {
+                    resetMergeStream();
+                }
+            }));
+    private final MergeLayoutDiffer.TrackSink mMergeTrackSink = new MergeLayoutDiffer.TrackSink() {
+        @Override
+        public void setTracks(List<QNTranscodingLiveStreamingTrack> tracks) {
+            // 配置对应 Track 的合流配置信息
+            mClient.setTranscodingLiveStreamingTracks(getMergeStreamID(), tracks);
+        }
+
+        @Override
+        public void removeTracks(List<QNTranscodingLiveStreamingTrack> tracks) {
+            // 移除对应 Track 的合流配置，移除后相应 Track 的数据将不会参与合流
+            mClient.removeTranscodingLiveStreamingTracks(getMergeStreamID(), tracks);
+        }
+    };
 
     /**
      * 单路转推相关
@@ -214,6 +250,72 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
     // 麦克风错误标志
     private boolean mMicrophoneError;
 
+    // 说话活跃度排序，由本地与远端音频回调中计算的电平更新，不依赖 onUserVolumeIndication；
+    // 定时交给多人窗口管理，自动将主讲人切换到全屏窗口
+    private final SpeakerActivityRanking mSpeakerRanking = new SpeakerActivityRanking();
+
+    private static final long SPEAKER_ACTIVITY_UPDATE_INTERVAL_MS = 200;
+    private static final long VIDEO_SUBSCRIPTION_UPDATE_INTERVAL_MS = 500;
+    private static final long NETWORK_QUALITY_UPDATE_DELAY_MS = 5000;
+    private static final long NETWORK_QUALITY_UPDATE_INTERVAL_MS = 10000;
+    // 不在当前页或者被全屏窗口隐藏的用户，取消订阅其视频 track，停止接收与解码；重新可见时再订阅
+    private final VideoSubscriptionManager mVideoSubscriptionManager = new VideoSubscriptionManager(
+            new VideoSubscriptionManager.SubscriptionClient() {
+                @Override
+                public void subscribe(List<QNRemoteTrack> tracks) {
+                    if (mClient != null) {
+                        mClient.subscribe(tracks);
+                    }
+                    if (mSimulcastProfileSelector != null) {
+                        mSimulcastProfileSelector.onVideoTracksResubscribed(tracks, SystemClock.elapsedRealtime());
+                        requestSimulcastProfileEvaluation();
+                    }
+                }
+
+                @Override
+                public void unsubscribe(List<QNRemoteTrack> tracks) {
+                    if (mClient != null) {
+                        mClient.unsubscribe(tracks);
+                    }
+                    if (mSimulcastProfileSelector != null) {
+                        mSimulcastProfileSelector.onVideoTracksUnsubscribed(tracks, SystemClock.elapsedRealtime());
+                    }
+                }
+            },
+            userId -> mTrackWindowManager != null && mTrackWindowManager.isUserVisible(userId));
+    private final Handler mMainHandler = new Handler();
+    private final Runnable mSpeakerActivityUpdateTask = new Runnable() {
+        @Override
+        public void run() {
+            mTrackWindowManager.onSpeakerActivity(mSpeakerRanking, SystemClock.elapsedRealtime());
+            mMainHandler.postDelayed(this, SPEAKER_ACTIVITY_UPDATE_INTERVAL_MS);
+        }
+    };
+    private final Runnable mVideoSubscriptionUpdateTask = new Runnable() {
+        @Override
+        public void run() {
+            mVideoSubscriptionManager.update(SystemClock.elapsedRealtime());
+            mMainHandler.postDelayed(this, VIDEO_SUBSCRIPTION_UPDATE_INTERVAL_MS);
+        }
+    };
+
+    // 根据窗口尺寸为开启了大小流的远端视频选择合适的 profile，布局变化后去抖动再计算
+    private SimulcastProfileSelector mSimulcastProfileSelector;
+    private final Runnable mSimulcastProfileUpdateTask = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.elapsedRealtime();
+            if (mSimulcastProfileSelector.update(now)) {
+                Log.i(TAG, "simulcast estimated saved downlink: " + mSimulcastProfileSelector.getEstimatedSavedKbps()
+                        + " kbps, total " + (long) mSimulcastProfileSelector.getEstimatedSavedKbit(now)
+                        + " kbit, switches " + mSimulcastProfileSelector.getSwitchCount());
+            } else if (mSimulcastProfileSelector.getEvaluateAtMs() >= 0) {
+                // requested again meanwhile
+                mMainHandler.postDelayed(this, mSimulcastProfileSelector.getEvaluateAtMs() - now);
+            }
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -244,6 +346,7 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
         mIsAdmin = mUserId.equals(QNAppServer.ADMIN_USER);
 
         mTrackWindowFullScreen = findViewById(R.id.track_window_full_screen);
+        mPageIndicator = findViewById(R.id.page_indicator);
         mTrackWindowsList = new LinkedList<>(Arrays.asList(
                 findViewById(R.id.track_window_a),
                 findViewById(R.id.track_window_b),
@@ -294,11 +397,35 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
 
             // 多人显示窗口管理类
             mTrackWindowManager = new TrackWindowManager(mUserId, screenWidth, screenHeight, outMetrics.density, mClient, mTrackWindowFullScreen, mTrackWindowsList);
+            mTrackWindowManager.setActiveSpeakerMode(true);
+            // 远端的发布分辨率未知，按照本地的编码配置估算
+            mSimulcastProfileSelector = new SimulcastProfileSelector(new SimulcastProfileSelector.TileSizeProvider() {
+                @Override
+                public int getTileWidth(String userId) {
+                    return mTrackWindowManager.getUserWindowWidth(userId);
+                }
+
+                @Override
+                public int getTileHeight(String userId) {
+                    return mTrackWindowManager.getUserWindowHeight(userId);
+                }
+            }, mVideoWidth, mVideoHeight, mVideoBitrate);
+            mTrackWindowManager.setOnLayoutChangedListener(this::requestSimulcastProfileEvaluation);
+            // 房间内的用户超过窗口数时分页显示，点击页码切换到下一页
+            mPageIndicator.setOnClickListener(v -> mTrackWindowManager.nextPage());
+            mTrackWindowManager.setOnPageChangedListener((pageIndex, pageCount) -> {
+                mPageIndicator.setVisibility(pageCount > 1 ? View.VISIBLE : View.GONE);
+                mPageIndicator.setText(getString(R.string.page_indicator, pageIndex + 1, pageCount));
+                // resubscribe the users on the new page without waiting for the next update
+                mVideoSubscriptionManager.update(SystemClock.elapsedRealtime());
+            });
 
             List<QNTrack> localTrackListExcludeScreenTrack = new ArrayList<>(mLocalTrackList);
             localTrackListExcludeScreenTrack.remove(mLocalScreenTrack);
             mTrackWindowManager.addTrack(mUserId, localTrackListExcludeScreenTrack);
-            new Timer().schedule(mUpdateNetWorkQualityInfoTask, 5000, 10000);
+            mMainHandler.postDelayed(mUpdateNetWorkQualityInfoTask, NETWORK_QUALITY_UPDATE_DELAY_MS);
+            mMainHandler.postDelayed(mVideoSubscriptionUpdateTask, VIDEO_SUBSCRIPTION_UPDATE_INTERVAL_MS);
+            mMainHandler.postDelayed(mSpeakerActivityUpdateTask, SPEAKER_ACTIVITY_UPDATE_INTERVAL_MS);
             mInitRTC = true;
         }
     }
@@ -383,8 +510,35 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
         mMicrophoneTrack = null;
     }
 
+    /**
+     * 创建计算用户音频电平的回调，电平每 100ms 更新一次说话活跃度排序
+     */
+    private QNAudioFrameListener createAudioLevelListener(String userId) {
+        AudioLevelMeter meter = new AudioLevelMeter();
+        meter.setListener((rmsDb, peakDb) -> mSpeakerRanking.update(userId, rmsDb, SystemClock.elapsedRealtime()));
+        return meter::process;
+    }
+
+    private void requestSimulcastProfileEvaluation() {
+        mSimulcastProfileSelector.requestEvaluation(SystemClock.elapsedRealtime());
+        mMainHandler.removeCallbacks(mSimulcastProfileUpdateTask);
+        mMainHandler.postDelayed(mSimulcastProfileUpdateTask, SimulcastProfileSelector.DEFAULT_DEBOUNCE_MS);
+    }
+
     private void releaseClient() {
-        mUpdateNetWorkQualityInfoTask.cancel();
+        mMainHandler.removeCallbacks(mUpdateNetWorkQualityInfoTask);
+        if (mMicrophoneTrack != null) {
+            mMicrophoneTrack.setAudioFrameListener(null);
+        }
+        mMainHandler.removeCallbacks(mSpeakerActivityUpdateTask);
+        mSpeakerRanking.clear();
+        mMainHandler.removeCallbacks(mVideoSubscriptionUpdateTask);
+        mVideoSubscriptionManager.clear();
+        if (mSimulcastProfileSelector != null) {
+            mMainHandler.removeCallbacks(mSimulcastProfileUpdateTask);
+            mSimulcastProfileSelector.clear();
+        }
+        mMergeLayoutScheduler.release();
         if (mClient != null) {
             if (mIsAdmin && mIsMergeStreaming) {
                 // 如果当前正在合流，则停止
@@ -442,6 +596,7 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
         microphoneAudioTrackConfig.setAudioQuality(QNAudioQualityPreset.STANDARD);
         mMicrophoneTrack = QNRTC.createMicrophoneAudioTrack(microphoneAudioTrackConfig);
         mMicrophoneTrack.setMicrophoneEventListener((errorCode, errorMessage) -> mMicrophoneError = true);
+        mMicrophoneTrack.setAudioFrameListener(createAudioLevelListener(mUserId));
 
         mLocalTrackList.add(mMicrophoneTrack);
 
@@ -644,34 +799,46 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
      * 当新的本地、远端 Track 变化时，重新排列合流画面配置
      */
     private void resetMergeStream() {
-        Log.d(TAG, "resetMergeStream()");
+        Log.d(TAG, "resetMergeStream(), coalesced: " + mMergeLayoutScheduler.getCoalescedCount()
+                + ", applied: " + mMergeLayoutScheduler.getAppliedCount());
 
         // video tracks merge layout options.
         List<RTCTrackMergeOption> roomVideoTrackList = mRoomMergeOption.getVideoMergeOptions();
         boolean isDefaultStreaming = (mCurrentMergeConfig == null || TextUtils.isEmpty(mCurrentMergeConfig.getStreamID()));
-        if (!roomVideoTrackList.isEmpty()) {
-            List<QNTranscodingLiveStreamingTrack> mergeTrackOptions = SplitUtils.split(
-                    roomVideoTrackList.size(),
+        int videoTrackCount = roomVideoTrackList.size();
+        if (videoTrackCount > 0) {
+            if (mMergeLayoutX.length < videoTrackCount) {
+                mMergeLayoutX = new int[videoTrackCount];
+                mMergeLayoutY = new int[videoTrackCount];
+                mMergeLayoutW = new int[videoTrackCount];
+                mMergeLayoutH = new int[videoTrackCount];
+            }
+            int tileCount = mMergeLayoutEngine.layout(
+                    videoTrackCount,
                     isDefaultStreaming ?
                             QNAppServer.STREAMING_WIDTH
                             : mCurrentMergeConfig.getWidth(),
                     isDefaultStreaming ?
                             QNAppServer.STREAMING_HEIGHT
-                            : mCurrentMergeConfig.getHeight()
+                            : mCurrentMergeConfig.getHeight(),
+                    mMergeLayoutX, mMergeLayoutY, mMergeLayoutW, mMergeLayoutH
             );
-            if (mergeTrackOptions.size() != roomVideoTrackList.size()) {
+            if (tileCount != videoTrackCount) {
                 Log.e(TAG, "split option error.");
                 return;
             }
 
-            for (int i = 0; i < mergeTrackOptions.size(); i++) {
+            for (int i = 0; i < tileCount; i++) {
                 RTCTrackMergeOption trackMergeOption = roomVideoTrackList.get(i);
 
                 if (!trackMergeOption.isTrackInclude()) {
                     continue;
                 }
-                QNTranscodingLiveStreamingTrack item = mergeTrackOptions.get(i);
-                trackMergeOption.updateMergeTrack(item);
+                mMergeLayoutItem.setX(mMergeLayoutX[i]);
+                mMergeLayoutItem.setY(mMergeLayoutY[i]);
+                mMergeLayoutItem.setWidth(mMergeLayoutW[i]);
+                mMergeLayoutItem.setHeight(mMergeLayoutH[i]);
+                trackMergeOption.updateMergeTrack(mMergeLayoutItem);
             }
         }
 
@@ -707,6 +874,8 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
      * 配置各个用户当前选中的 Track 信息到合流布局
      */
     private void setMergeStreamLayouts() {
+        // 重新配置合流时全量下发合流布局
+        mMergeLayoutDiffer.reset();
         updateMergeTrack();
         mIsMergeStreaming = true;
         ToastUtils.showShortToast(RoomActivity.this, "已发送合流配置，请等待合流画面生效");
@@ -724,31 +893,12 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
             }
         }
 
-        List<QNTranscodingLiveStreamingTrack> mergeTracks = new ArrayList<>();
-        List<QNTranscodingLiveStreamingTrack> removedTracks = new ArrayList<>();
-        for (RTCTrackMergeOption item : userOptions) {
-            if (item.isTrackInclude()) {
-                mergeTracks.add(item.getMergeTrack());
-            } else {
-                removedTracks.add(item.getMergeTrack());
-            }
-        }
-        if (!mergeTracks.isEmpty()) {
-            // 配置对应 Track 的合流配置信息
-            if (mMergeLayoutConfigView.isCustomMerge()) {
-                mClient.setTranscodingLiveStreamingTracks(mCurrentMergeConfig.getStreamID(), mergeTracks);
-            } else {
-                mClient.setTranscodingLiveStreamingTracks(null, mergeTracks);
-            }
-        }
-        if (!removedTracks.isEmpty()) {
-            // 移除对应 Track 的合流配置，移除后相应 Track 的数据将不会参与合流
-            if (mMergeLayoutConfigView.isCustomMerge()) {
-                mClient.removeTranscodingLiveStreamingTracks(mCurrentMergeConfig.getStreamID(), removedTracks);
-            } else {
-                mClient.removeTranscodingLiveStreamingTracks(null, removedTracks);
-            }
-        }
+        // 仅下发相对上次有变化的合流配置
+        mMergeLayoutDiffer.apply(userOptions, mMergeTrackSink);
+    }
+
+    private String getMergeStreamID() {
+        return mMergeLayoutConfigView.isCustomMerge() ? mCurrentMergeConfig.getStreamID() : null;
     }
 
     @Override
@@ -884,7 +1034,8 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
         }
     }
 
-    private final TimerTask mUpdateNetWorkQualityInfoTask = new TimerTask() {
+    // 与其他周期任务共用主线程 Handler，在 releaseClient 中移除
+    private final Runnable mUpdateNetWorkQualityInfoTask = new Runnable() {
         @Override
         public void run() {
             if (mClient != null) {
@@ -893,6 +1044,7 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
                     Log.i(TAG, "remote user " + entry.getKey() + " " + entry.getValue().toString());
                 }
             }
+            mMainHandler.postDelayed(this, NETWORK_QUALITY_UPDATE_INTERVAL_MS);
         }
     };
 
@@ -1004,8 +1156,21 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
                             break;
                         case QNErrorCode.ERROR_TOKEN_EXPIRED:
                             logAndToast("roomToken过期");
-                            mRoomToken = QNAppServer.getInstance().requestRoomToken(RoomActivity.this, mUserId, mRoomId);
-                            mClient.join(mRoomToken);
+                            QNAppServer.getInstance().invalidateRoomToken(RoomActivity.this, mUserId, mRoomId);
+                            QNAppServer.getInstance().getRoomTokenAsync(RoomActivity.this, mUserId, mRoomId, new QNAppServer.Callback<String>() {
+                                @Override
+                                public void onSuccess(String token) {
+                                    mRoomToken = token;
+                                    if (mClient != null) {
+                                        mClient.join(mRoomToken);
+                                    }
+                                }
+
+                                @Override
+                                public void onFailure(Exception e) {
+                                    logAndToast("重新获取 roomToken 失败");
+                                }
+                            });
                             break;
                         case QNErrorCode.ERROR_PLAYER_ALREADY_EXIST:
                             logAndToast("不允许同一用户重复加入");
@@ -1033,6 +1198,8 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
                     break;
                 case RECONNECTING:
                     logAndToast(getString(R.string.reconnecting_to_room));
+                    // 重连失败可能需要新的 token，提前获取
+                    QNAppServer.getInstance().prefetchRoomToken(RoomActivity.this, mUserId, mRoomId);
                     mControlFragment.stopTimer();
                     break;
                 case CONNECTED:
@@ -1100,6 +1267,11 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
         @Override
         public void onUserLeft(String remoteUserID) {
             updateRemoteLogText("onRemoteUserLeft:remoteUserId = " + remoteUserID);
+            mSpeakerRanking.remove(remoteUserID);
+            mVideoSubscriptionManager.removeUser(remoteUserID);
+            if (mSimulcastProfileSelector != null) {
+                mSimulcastProfileSelector.removeUser(remoteUserID, SystemClock.elapsedRealtime());
+            }
             if (mIsAdmin) {
                 userLeftForStreaming(remoteUserID, false);
             }
@@ -1117,7 +1289,7 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
             mRoomMergeOption.onTracksPublished(remoteUserID, new ArrayList<>(trackList));
             // 如果希望在远端发布音视频的时候，自动配置合流，则可以在此处重新调用 setMergeStreamLayouts 进行配置
             if (mIsAdmin) {
-                resetMergeStream();
+                mMergeLayoutScheduler.request();
             }
         }
 
@@ -1131,12 +1303,22 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
         public void onUserUnpublished(String remoteUserID, List<QNRemoteTrack> remoteTracks) {
             updateRemoteLogText("onRemoteUnpublished:remoteUserId = " + remoteUserID);
             List<QNTrack> trackList = new ArrayList<>(remoteTracks);
+            for (QNRemoteTrack track : remoteTracks) {
+                if (track.isAudio()) {
+                    ((QNRemoteAudioTrack) track).setAudioFrameListener(null);
+                    mSpeakerRanking.remove(remoteUserID);
+                }
+            }
+            mVideoSubscriptionManager.onTracksUnpublished(remoteUserID, remoteTracks);
+            if (mSimulcastProfileSelector != null) {
+                mSimulcastProfileSelector.onTracksUnpublished(remoteTracks, SystemClock.elapsedRealtime());
+            }
             if (mTrackWindowManager != null) {
                 mTrackWindowManager.removeTrack(remoteUserID, trackList);
             }
             mRoomMergeOption.onTracksUnPublished(remoteUserID, trackList);
             if (mIsAdmin) {
-                resetMergeStream();
+                mMergeLayoutScheduler.request();
             }
         }
 
@@ -1150,6 +1332,14 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
         @Override
         public void onSubscribed(String remoteUserID, List<QNRemoteAudioTrack> remoteAudioTracks, List<QNRemoteVideoTrack> remoteVideoTracks) {
             updateRemoteLogText("onSubscribed:remoteUserId = " + remoteUserID);
+            for (QNRemoteAudioTrack audioTrack : remoteAudioTracks) {
+                audioTrack.setAudioFrameListener(createAudioLevelListener(remoteUserID));
+            }
+            mVideoSubscriptionManager.onVideoTracksSubscribed(remoteUserID, remoteVideoTracks, SystemClock.elapsedRealtime());
+            if (mSimulcastProfileSelector != null) {
+                mSimulcastProfileSelector.onVideoTracksSubscribed(remoteUserID, remoteVideoTracks, SystemClock.elapsedRealtime());
+                requestSimulcastProfileEvaluation();
+            }
             if (mTrackWindowManager != null) {
                 List<QNTrack> tracks = new ArrayList<>();
                 tracks.addAll(remoteAudioTracks);
@@ -1270,7 +1460,7 @@ public class RoomActivity extends FragmentActivity implements ControlFragment.On
             updateRemoteLogText("onLocalPublished");
             if (mIsAdmin) {
                 mRoomMergeOption.onTracksPublished(mUserId, new ArrayList<>(mLocalTrackList));
-                resetMergeStream();
+                mMergeLayoutScheduler.request();
             }
         }
 
@@ -1,13 +1,48 @@
 package com.qiniu.droid.rtc.demo.model;
 
+/**
+ * 下载进度，创建后不可修改，可以安全地在线程间传递
+ */
 public class ProgressEvent {
-    private int mProgress;
+    private final int mProgress;
+    private final long mDownloadedBytes;
+    private final long mTotalBytes;
+    private final long mBytesPerSecond;
+    private final long mEtaMs;
 
+    /**
+     * @param totalBytes     总长度，未知时为 -1
+     * @param bytesPerSecond 平滑后的下载速度，未知时为 -1
+     * @param etaMs          预计剩余时间，未知时为 -1
+     */
+    public ProgressEvent(int progress, long downloadedBytes, long totalBytes, long bytesPerSecond, long etaMs) {
+        mProgress = progress;
+        mDownloadedBytes = downloadedBytes;
+        mTotalBytes = totalBytes;
+        mBytesPerSecond = bytesPerSecond;
+        mEtaMs = etaMs;
+    }
+
+    /**
+     * @return 下载百分比，0 ~ 100
+     */
     public int getProgress() {
         return mProgress;
     }
 
-    public void setProgress(int progress) {
-        this.mProgress = progress;
+    public long getDownloadedBytes() {
+        return mDownloadedBytes;
+    }
+
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    public long getEtaMs() {
+        return mEtaMs;
     }
-}
\ No newline at end of file
+}
@@ -3,63 +3,93 @@ package com.qiniu.droid.rtc.demo.model;
 import com.qiniu.droid.rtc.QNTrack;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * 房间内所有用户的合流配置
+ *
+ * 用户和视频 Track 均按 id 建立插入有序的索引，发布、取消发布和查找均为 O(1)，且合流布局顺序保持稳定。
+ * 按位置访问的列表只在内容变化后被访问时才重新生成，并以只读视图返回。
+ */
 public class RTCRoomMergeOption {
 
-    private final Map<String, RTCUserMergeOptions> mUserMap;
-    private final List<RTCUserMergeOptions> mUserMergeOptions;
-    private final List<RTCTrackMergeOption> mVideoMergeOptions;
+    private final Map<String, RTCUserMergeOptions> mUserMap = new LinkedHashMap<>();
+    private final List<RTCUserMergeOptions> mUserMergeOptions = new ArrayList<>();
+    private boolean mUsersChanged;
 
-    public RTCRoomMergeOption() {
-        mUserMap = new HashMap<>();
-        mUserMergeOptions = new ArrayList<>();
-        mVideoMergeOptions = new ArrayList<>();
-    }
+    // trackId -> option
+    private final Map<String, RTCTrackMergeOption> mVideoMergeOptionMap = new LinkedHashMap<>();
+    private final List<RTCTrackMergeOption> mVideoMergeOptions = new ArrayList<>();
+    private final List<RTCTrackMergeOption> mVideoMergeOptionView = Collections.unmodifiableList(mVideoMergeOptions);
+    private boolean mVideoTracksChanged;
+
+    private final List<RTCTrackMergeOption> mAudioMergeOptions = new ArrayList<>();
+    private final List<RTCTrackMergeOption> mAudioMergeOptionView = Collections.unmodifiableList(mAudioMergeOptions);
+    private boolean mAudioTracksChanged;
 
     public RTCUserMergeOptions getUserMergeOptionByPosition(int pos) {
-        return mUserMergeOptions.get(pos);
+        return getUserMergeOptions().get(pos);
     }
 
     public RTCUserMergeOptions getUserMergeOptionByUserId(String userId) {
         return mUserMap.get(userId);
     }
 
+    public RTCTrackMergeOption getVideoMergeOptionByTrackId(String trackId) {
+        return mVideoMergeOptionMap.get(trackId);
+    }
+
     public List<RTCTrackMergeOption> getVideoMergeOptions() {
-        return mVideoMergeOptions;
+        if (mVideoTracksChanged) {
+            mVideoMergeOptions.clear();
+            mVideoMergeOptions.addAll(mVideoMergeOptionMap.values());
+            mVideoTracksChanged = false;
+        }
+        return mVideoMergeOptionView;
     }
 
     public List<RTCTrackMergeOption> getAudioTrackOptions() {
-        List<RTCTrackMergeOption> rtcAudioTracks = new ArrayList<>();
-        for (RTCUserMergeOptions item : mUserMergeOptions) {
-            if (item.getAudioMergeOption() != null) {
-                rtcAudioTracks.add(item.getAudioMergeOption());
+        if (mAudioTracksChanged) {
+            mAudioMergeOptions.clear();
+            for (RTCUserMergeOptions item : mUserMap.values()) {
+                if (item.getAudioMergeOption() != null) {
+                    mAudioMergeOptions.add(item.getAudioMergeOption());
+                }
             }
+            mAudioTracksChanged = false;
         }
-        return rtcAudioTracks;
+        return mAudioMergeOptionView;
     }
 
     public void onUserJoined(String userId, String userData) {
         if (mUserMap.get(userId) == null) {
             RTCUserMergeOptions userMergeOptions = new RTCUserMergeOptions(userId, userData);
             mUserMap.put(userId, userMergeOptions);
-            mUserMergeOptions.add(userMergeOptions);
+            mUsersChanged = true;
         }
     }
 
     public void onUserLeft(String userId) {
         RTCUserMergeOptions userMergeOptions = mUserMap.remove(userId);
         if (userMergeOptions != null) {
-            mUserMergeOptions.remove(userMergeOptions);
+            for (RTCTrackMergeOption item : userMergeOptions.getVideoMergeOptions()) {
+                mVideoMergeOptionMap.remove(item.getTrackId());
+                mVideoTracksChanged = true;
+            }
+            mUsersChanged = true;
+            mAudioTracksChanged = true;
         }
     }
 
     public void onUserLeft() {
-        mVideoMergeOptions.clear();
-        mUserMergeOptions.clear();
+        mVideoMergeOptionMap.clear();
         mUserMap.clear();
+        mUsersChanged = true;
+        mVideoTracksChanged = true;
+        mAudioTracksChanged = true;
     }
 
     public void onTracksPublished(String userId, List<QNTrack> trackList) {
@@ -68,7 +98,13 @@ public class RTCRoomMergeOption {
             return;
         }
         List<RTCTrackMergeOption> userVideoTracks = userMergeOptions.addTracks(trackList);
-        mVideoMergeOptions.addAll(userVideoTracks);
+        for (RTCTrackMergeOption item : userVideoTracks) {
+            // replace, and move to the end as a newly published track
+            mVideoMergeOptionMap.remove(item.getTrackId());
+            mVideoMergeOptionMap.put(item.getTrackId(), item);
+        }
+        mVideoTracksChanged |= !userVideoTracks.isEmpty();
+        mAudioTracksChanged |= userVideoTracks.size() != trackList.size();
     }
 
     public void onTracksUnPublished(String userId, List<QNTrack> trackList) {
@@ -77,10 +113,23 @@ public class RTCRoomMergeOption {
             return;
         }
         List<RTCTrackMergeOption> userVideoTracks = userMergeOptions.removeTracks(trackList);
-        mVideoMergeOptions.removeAll(userVideoTracks);
+        for (RTCTrackMergeOption item : userVideoTracks) {
+            mVideoMergeOptionMap.remove(item.getTrackId());
+        }
+        mVideoTracksChanged |= !userVideoTracks.isEmpty();
+        mAudioTracksChanged |= userVideoTracks.size() != trackList.size();
     }
 
     public int size() {
-        return mUserMergeOptions.size();
+        return mUserMap.size();
+    }
+
+    private List<RTCUserMergeOptions> getUserMergeOptions() {
+        if (mUsersChanged) {
+            mUserMergeOptions.clear();
+            mUserMergeOptions.addAll(mUserMap.values());
+            mUsersChanged = false;
+        }
+        return mUserMergeOptions;
     }
 }
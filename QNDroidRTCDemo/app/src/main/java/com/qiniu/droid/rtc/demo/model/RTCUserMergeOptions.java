@@ -3,8 +3,10 @@ package com.qiniu.droid.rtc.demo.model;
 import com.qiniu.droid.rtc.QNTrack;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class RTCUserMergeOptions {
 
@@ -12,7 +14,11 @@ public class RTCUserMergeOptions {
     private final String mUserData;
 
     private RTCTrackMergeOption mAudioMergeOption;
-    private final List<RTCTrackMergeOption> mVideoMergeOptions = new LinkedList<>();
+    // trackId -> option, insertion ordered to keep the layout order stable
+    private final Map<String, RTCTrackMergeOption> mVideoMergeOptions = new LinkedHashMap<>();
+    private final List<RTCTrackMergeOption> mVideoMergeOptionList = new ArrayList<>();
+    private final List<RTCTrackMergeOption> mVideoMergeOptionView = Collections.unmodifiableList(mVideoMergeOptionList);
+    private boolean mVideoMergeOptionsChanged;
 
     public RTCUserMergeOptions(String userID, String userData) {
         mUserID = userID;
@@ -31,8 +37,20 @@ public class RTCUserMergeOptions {
         return mAudioMergeOption;
     }
 
+    public RTCTrackMergeOption getVideoMergeOption(String trackId) {
+        return mVideoMergeOptions.get(trackId);
+    }
+
+    /**
+     * 返回的列表为只读视图，在 Track 发布或取消发布后内容会随之更新
+     */
     public List<RTCTrackMergeOption> getVideoMergeOptions() {
-        return mVideoMergeOptions;
+        if (mVideoMergeOptionsChanged) {
+            mVideoMergeOptionList.clear();
+            mVideoMergeOptionList.addAll(mVideoMergeOptions.values());
+            mVideoMergeOptionsChanged = false;
+        }
+        return mVideoMergeOptionView;
     }
 
     public List<RTCTrackMergeOption> addTracks(List<QNTrack> trackList) {
@@ -52,9 +70,10 @@ public class RTCUserMergeOptions {
             return null;
         } else {
             RTCTrackMergeOption newVideoTrack = new RTCTrackMergeOption(track);
-            // replace
-            mVideoMergeOptions.remove(newVideoTrack);
-            mVideoMergeOptions.add(newVideoTrack);
+            // replace, and move to the end as a newly published track
+            mVideoMergeOptions.remove(newVideoTrack.getTrackId());
+            mVideoMergeOptions.put(newVideoTrack.getTrackId(), newVideoTrack);
+            mVideoMergeOptionsChanged = true;
             return newVideoTrack;
         }
     }
@@ -62,7 +81,7 @@ public class RTCUserMergeOptions {
     public List<RTCTrackMergeOption> removeTracks(List<QNTrack> trackList) {
         List<RTCTrackMergeOption> videoTracks = new ArrayList<>();
         for (QNTrack track : trackList) {
-            RTCTrackMergeOption removedVideoTrack = removeTracks(track);
+            RTCTrackMergeOption removedVideoTrack = removeTrack(track);
             if (removedVideoTrack != null) {
                 videoTracks.add(removedVideoTrack);
             }
@@ -70,14 +89,16 @@ public class RTCUserMergeOptions {
         return videoTracks;
     }
 
-    private RTCTrackMergeOption removeTracks(QNTrack track) {
+    private RTCTrackMergeOption removeTrack(QNTrack track) {
         if (track.isAudio()) {
             mAudioMergeOption = null;
             return null;
         } else {
-            RTCTrackMergeOption newUserTrack = new RTCTrackMergeOption(track);
-            mVideoMergeOptions.remove(newUserTrack);
-            return newUserTrack;
+            RTCTrackMergeOption removedVideoTrack = mVideoMergeOptions.remove(track.getTrackID());
+            if (removedVideoTrack != null) {
+                mVideoMergeOptionsChanged = true;
+            }
+            return removedVideoTrack;
         }
     }
 }
@@ -5,6 +5,7 @@ public class UpdateInfo {
     private int mVersion;
     private String mDescription;
     private String mDownloadURL;
+    private String mDownloadMD5;
     private String mCreateTime;
 
     public void setAppID(String appID) {
@@ -23,6 +24,10 @@ public class UpdateInfo {
         this.mDownloadURL = downloadURL;
     }
 
+    public void setDownloadMD5(String downloadMD5) {
+        this.mDownloadMD5 = downloadMD5;
+    }
+
     public void setCreateTime(String createTime) {
         this.mCreateTime = createTime;
     }
@@ -43,6 +48,10 @@ public class UpdateInfo {
         return mDownloadURL;
     }
 
+    public String getDownloadMD5() {
+        return mDownloadMD5;
+    }
+
     public String getCreateTime() {
         return mCreateTime;
     }
@@ -6,6 +6,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.FileProvider;
 import android.util.Log;
@@ -13,26 +14,23 @@ import android.util.Log;
 import com.qiniu.droid.rtc.demo.R;
 import com.qiniu.droid.rtc.demo.model.ProgressEvent;
 import com.qiniu.droid.rtc.demo.utils.Config;
+import com.qiniu.droid.rtc.demo.utils.ProgressReporter;
+import com.qiniu.droid.rtc.demo.utils.RangeDownloader;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 
 import de.greenrobot.event.EventBus;
 
 public class DownloadService extends IntentService {
-    // 8 ~ 32k
-    private static final int BUFFER_SIZE = 10 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 1000;
     private static final String TAG = "DownloadService";
 
     private static final int NOTIFICATION_ID = 0;
 
     private NotificationManager mNotifyManager;
     private NotificationCompat.Builder mBuilder;
-    private final ProgressEvent mProgressEvent = new ProgressEvent();
 
     public DownloadService() {
         super("DownloadService");
@@ -48,73 +46,36 @@ public class DownloadService extends IntentService {
 
         mBuilder.setContentTitle(appName).setSmallIcon(icon);
         String urlStr = intent.getStringExtra(Config.DOWNLOAD_URL);
-        InputStream in = null;
-        FileOutputStream out = null;
-        try {
-            URL url = new URL(urlStr);
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-
-            urlConnection.setRequestMethod("GET");
-            urlConnection.setDoOutput(false);
-            urlConnection.setConnectTimeout(10 * 1000);
-            urlConnection.setReadTimeout(10 * 1000);
-            urlConnection.setRequestProperty("Connection", "Keep-Alive");
-            urlConnection.setRequestProperty("Charset", "UTF-8");
-            urlConnection.setRequestProperty("Accept-Encoding", "gzip, deflate");
-
-            urlConnection.connect();
-            long byteTotal = urlConnection.getContentLength();
-            long byteSum = 0;
-            int byteRead = 0;
-            in = urlConnection.getInputStream();
-            File dir = getCacheDirectory(this);
-            String apkName = urlStr.substring(urlStr.lastIndexOf("/") + 1);
-            File apkFile = new File(dir, apkName);
-            out = new FileOutputStream(apkFile);
-            byte[] buffer = new byte[BUFFER_SIZE];
-
-            int oldProgress = 0;
-
-            while ((byteRead = in.read(buffer)) != -1) {
-                byteSum += byteRead;
-                out.write(buffer, 0, byteRead);
-
-                int progress = (int) (byteSum * 100L / byteTotal);
-                if (progress != oldProgress) {
-                    updateProgress(progress);
-                }
-                oldProgress = progress;
-            }
-            updateProgress(100);
-
-            installApk(this, apkFile);
-
-            mNotifyManager.cancel(NOTIFICATION_ID);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+        String md5 = intent.getStringExtra(Config.DOWNLOAD_MD5);
+        String apkName = urlStr.substring(urlStr.lastIndexOf("/") + 1);
+        RangeDownloader downloader = new RangeDownloader(new File(getCacheDirectory(this), apkName));
+        ProgressReporter reporter = new ProgressReporter(this::updateProgress);
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                reporter.restart();
+                // resumes from the partial file left by a failed attempt
+                File apkFile = downloader.download(urlStr, md5, reporter::onBytes);
+                reporter.complete();
+                mNotifyManager.cancel(NOTIFICATION_ID);
+                installApk(this, apkFile);
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "download failed, attempt " + attempt, e);
+                if (attempt < MAX_ATTEMPTS) {
+                    SystemClock.sleep(RETRY_DELAY_MS * attempt);
                 }
             }
         }
+        // keep the notification so the failure isn't silent
+        mBuilder.setContentText(getString(R.string.android_auto_update_download_failed)).setProgress(0, 0, false);
+        mNotifyManager.notify(NOTIFICATION_ID, mBuilder.build());
     }
 
-    private void updateProgress(int progress) {
+    private void updateProgress(ProgressEvent event) {
+        int progress = event.getProgress();
         mBuilder.setContentText(this.getString(R.string.android_auto_update_download_progress, progress)).setProgress(100, progress, false);
         mNotifyManager.notify(NOTIFICATION_ID, mBuilder.build());
-        mProgressEvent.setProgress(progress);
-        EventBus.getDefault().post(mProgressEvent);
+        EventBus.getDefault().post(event);
     }
 
     private void installApk(Context context, File apkFile) {
@@ -0,0 +1,182 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 根据用户音量选择当前的主讲人，用于自动切换全屏窗口
+ *
+ * 每一轮通过 {@link #setLevel} 写入各用户的音量（例如 {@link SpeakerActivityRanking} 的活跃度），再调用 {@link #evaluate(long)} 做出决策；
+ * 本轮没有写入音量的用户（例如静音用户）按照音量 0 处理。为了避免全屏用户频繁切换：
+ * 1. 挑战者的音量需要超过当前主讲人一定幅度；
+ * 2. 挑战者需要持续领先 candidateHoldMs 才会被选中；
+ * 3. 主讲人切换后至少保持 minDwellMs，手动指定的主讲人至少保持 manualDwellMs。
+ *
+ * 不依赖 Android，时间由调用方传入，使用固定的音量序列即可复现决策过程。非线程安全。
+ */
+public class ActiveSpeakerSelector {
+
+    public static final float DEFAULT_SPEECH_THRESHOLD = 0.1f;
+    public static final float DEFAULT_SWITCH_MARGIN = 0.05f;
+    public static final long DEFAULT_CANDIDATE_HOLD_MS = 600;
+    public static final long DEFAULT_MIN_DWELL_MS = 2000;
+    public static final long DEFAULT_MANUAL_DWELL_MS = 5000;
+
+    private static class Level {
+        float mValue;
+        int mRound;
+    }
+
+    private final String mIgnoredUserId;
+    private final float mSpeechThreshold;
+    private final float mSwitchMargin;
+    private final long mCandidateHoldMs;
+    private final long mMinDwellMs;
+    private final long mManualDwellMs;
+
+    private final Map<String, Level> mLevels = new HashMap<>();
+    // levels written in an older round are stale and treated as silence
+    private int mRound;
+
+    private String mActiveSpeaker;
+    private long mDwellUntilMs;
+    private String mCandidate;
+    private long mCandidateSinceMs;
+    private long mSwitchCount;
+
+    /**
+     * @param ignoredUserId 不参与选择的用户，一般为本地用户，可以为 null
+     */
+    public ActiveSpeakerSelector(String ignoredUserId) {
+        this(ignoredUserId, DEFAULT_SPEECH_THRESHOLD, DEFAULT_SWITCH_MARGIN,
+                DEFAULT_CANDIDATE_HOLD_MS, DEFAULT_MIN_DWELL_MS, DEFAULT_MANUAL_DWELL_MS);
+    }
+
+    /**
+     * @param speechThreshold 音量不低于此值才可能成为主讲人，音量范围 [0, 1]
+     * @param switchMargin    挑战者音量需要超过当前主讲人的幅度
+     * @param candidateHoldMs 挑战者需要持续领先的时长
+     * @param minDwellMs      自动切换后主讲人的最短保持时长
+     * @param manualDwellMs   手动指定后主讲人的最短保持时长
+     */
+    public ActiveSpeakerSelector(String ignoredUserId, float speechThreshold, float switchMargin,
+                                 long candidateHoldMs, long minDwellMs, long manualDwellMs) {
+        if (speechThreshold <= 0 || switchMargin < 0 || candidateHoldMs < 0 || minDwellMs < 0 || manualDwellMs < 0) {
+            throw new IllegalArgumentException("invalid selector parameters");
+        }
+        mIgnoredUserId = ignoredUserId;
+        mSpeechThreshold = speechThreshold;
+        mSwitchMargin = switchMargin;
+        mCandidateHoldMs = candidateHoldMs;
+        mMinDwellMs = minDwellMs;
+        mManualDwellMs = manualDwellMs;
+    }
+
+    /**
+     * 写入用户在本轮的音量
+     */
+    public void setLevel(String userId, float level) {
+        if (userId == null || userId.equals(mIgnoredUserId)) {
+            return;
+        }
+        Level entry = mLevels.get(userId);
+        if (entry == null) {
+            entry = new Level();
+            mLevels.put(userId, entry);
+        }
+        entry.mValue = level;
+        entry.mRound = mRound;
+    }
+
+    /**
+     * 结束本轮并做出决策
+     *
+     * @return 主讲人是否发生变化，变化后通过 {@link #getActiveSpeaker()} 获取
+     */
+    public boolean evaluate(long nowMs) {
+        String loudest = null;
+        float loudestLevel = mSpeechThreshold;
+        for (Iterator<Map.Entry<String, Level>> it = mLevels.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Level> entry = it.next();
+            Level level = entry.getValue();
+            if (level.mRound != mRound) {
+                // silent for a whole round, forget the user unless it is still needed for comparisons
+                if (!entry.getKey().equals(mActiveSpeaker) && !entry.getKey().equals(mCandidate)) {
+                    it.remove();
+                }
+                continue;
+            }
+            if (level.mValue >= loudestLevel) {
+                loudest = entry.getKey();
+                loudestLevel = level.mValue;
+            }
+        }
+        float activeLevel = levelOf(mActiveSpeaker);
+        mRound++;
+
+        if (loudest == null || loudest.equals(mActiveSpeaker) || loudestLevel < activeLevel + mSwitchMargin) {
+            mCandidate = null;
+            return false;
+        }
+        if (!loudest.equals(mCandidate)) {
+            mCandidate = loudest;
+            mCandidateSinceMs = nowMs;
+        }
+        if (nowMs - mCandidateSinceMs < mCandidateHoldMs || nowMs < mDwellUntilMs) {
+            return false;
+        }
+        mActiveSpeaker = loudest;
+        mDwellUntilMs = nowMs + mMinDwellMs;
+        mCandidate = null;
+        mSwitchCount++;
+        return true;
+    }
+
+    public String getActiveSpeaker() {
+        return mActiveSpeaker;
+    }
+
+    /**
+     * 手动指定主讲人，例如用户点击切换全屏窗口时，指定后至少保持 manualDwellMs
+     */
+    public void setActiveSpeaker(String userId, long nowMs) {
+        mActiveSpeaker = userId;
+        mDwellUntilMs = nowMs + mManualDwellMs;
+        mCandidate = null;
+    }
+
+    /**
+     * 用户离开房间时调用，若为当前主讲人则清空，下一个满足条件的用户会被选中
+     */
+    public void removeUser(String userId) {
+        mLevels.remove(userId);
+        if (userId.equals(mActiveSpeaker)) {
+            mActiveSpeaker = null;
+            mDwellUntilMs = 0;
+        }
+        if (userId.equals(mCandidate)) {
+            mCandidate = null;
+        }
+    }
+
+    public void reset() {
+        mLevels.clear();
+        mActiveSpeaker = null;
+        mDwellUntilMs = 0;
+        mCandidate = null;
+        mSwitchCount = 0;
+    }
+
+    /**
+     * @return 自动切换主讲人的次数
+     */
+    public long getSwitchCount() {
+        return mSwitchCount;
+    }
+
+    private float levelOf(String userId) {
+        Level level = userId == null ? null : mLevels.get(userId);
+        return level == null || level.mRound != mRound ? 0 : level.mValue;
+    }
+}
@@ -0,0 +1,200 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于滑动窗口的音频电平计量，输出 RMS 与峰值 dBFS
+ *
+ * 每个音频帧只统计一次平方和与峰值并存入环形窗口，窗口内的总和增量更新，不需要重新遍历历史采样。
+ * 电平按照音频时长节流发布（默认每 100ms 一次），发布值以一个 long 的形式保存在 {@link AtomicLong} 中，
+ * UI 线程可以随时无锁读取最新的 RMS 与峰值，且两者总是来自同一次发布。
+ *
+ * {@link #process} 应在同一个音频线程中调用，不产生内存分配；{@link #getLevel()} 等读取方法可以在任意线程调用。
+ */
+public class AudioLevelMeter {
+
+    public static final int DEFAULT_WINDOW_MS = 300;
+    public static final int DEFAULT_PUBLISH_INTERVAL_MS = 100;
+    public static final float SILENCE_DBFS = -96;
+
+    // enough for the default window even with 2.5ms frames
+    private static final int MAX_WINDOW_FRAMES = 128;
+    private static final double FULL_SCALE_SQUARE = 32768.0 * 32768.0;
+
+    public interface Listener {
+        /**
+         * 发布新的电平时回调，回调发生在调用 {@link #process} 的音频线程中
+         */
+        void onLevelUpdated(float rmsDb, float peakDb);
+    }
+
+    private final long mWindowUs;
+    private final long mPublishIntervalUs;
+    private volatile Listener mListener;
+
+    // per frame statistics of the sliding window, oldest at mHead
+    private final long[] mFrameSumSquares = new long[MAX_WINDOW_FRAMES];
+    private final int[] mFrameSamples = new int[MAX_WINDOW_FRAMES];
+    private final int[] mFramePeaks = new int[MAX_WINDOW_FRAMES];
+    private final long[] mFrameDurationUs = new long[MAX_WINDOW_FRAMES];
+    private int mHead;
+    private int mCount;
+    private long mWindowSumSquares;
+    private long mWindowSamples;
+    private long mWindowDurationUs;
+    private long mSincePublishUs;
+
+    // rms dB float bits in the high 32 bits, peak dB float bits in the low 32 bits
+    private final AtomicLong mLevel = new AtomicLong(pack(SILENCE_DBFS, SILENCE_DBFS));
+    private final AtomicLong mPublishCount = new AtomicLong();
+
+    public AudioLevelMeter() {
+        this(DEFAULT_WINDOW_MS, DEFAULT_PUBLISH_INTERVAL_MS);
+    }
+
+    /**
+     * @param windowMs          计算电平的滑动窗口时长
+     * @param publishIntervalMs 发布电平的最小间隔，按照处理的音频时长计算
+     */
+    public AudioLevelMeter(int windowMs, int publishIntervalMs) {
+        if (windowMs <= 0 || publishIntervalMs <= 0) {
+            throw new IllegalArgumentException("invalid meter parameters");
+        }
+        mWindowUs = windowMs * 1000L;
+        mPublishIntervalUs = publishIntervalMs * 1000L;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 处理一帧 16 位小端 PCM 数据，读取 [data.position(), data.position() + size)，不改变 data 的 position
+     *
+     * 参数与 QNAudioFrameListener#onAudioFrameAvailable 一致，非 16 位数据直接忽略。
+     */
+    public void process(ByteBuffer data, int size, int bitsPerSample, int sampleRate, int channels) {
+        if (bitsPerSample != 16 || sampleRate <= 0 || channels <= 0) {
+            return;
+        }
+        int samples = size / 2 / channels * channels;
+        if (samples == 0) {
+            return;
+        }
+        int base = data.position();
+        long sumSquares = 0;
+        int peak = 0;
+        for (int i = 0; i < samples; i++) {
+            int p = base + i * 2;
+            int sample = (short) ((data.get(p) & 0xff) | (data.get(p + 1) << 8));
+            sumSquares += sample * sample;
+            int magnitude = sample < 0 ? -sample : sample;
+            if (magnitude > peak) {
+                peak = magnitude;
+            }
+        }
+        long durationUs = samples / channels * 1000_000L / sampleRate;
+        update(sumSquares, samples, peak, durationUs);
+    }
+
+    /**
+     * 按照一帧的统计结果更新窗口，便于使用离线数据验证
+     */
+    void update(long sumSquares, int samples, int peak, long durationUs) {
+        if (mCount == MAX_WINDOW_FRAMES) {
+            evictOldest();
+        }
+        int tail = (mHead + mCount) % MAX_WINDOW_FRAMES;
+        mFrameSumSquares[tail] = sumSquares;
+        mFrameSamples[tail] = samples;
+        mFramePeaks[tail] = peak;
+        mFrameDurationUs[tail] = durationUs;
+        mCount++;
+        mWindowSumSquares += sumSquares;
+        mWindowSamples += samples;
+        mWindowDurationUs += durationUs;
+        // keep at least the newest frame even if it alone exceeds the window
+        while (mCount > 1 && mWindowDurationUs - mFrameDurationUs[mHead] >= mWindowUs) {
+            evictOldest();
+        }
+
+        mSincePublishUs += durationUs;
+        if (mSincePublishUs >= mPublishIntervalUs) {
+            mSincePublishUs = 0;
+            publish();
+        }
+    }
+
+    /**
+     * 清空窗口并将电平恢复为静音，例如 track 静音或者重新开始采集时
+     */
+    public void reset() {
+        mHead = 0;
+        mCount = 0;
+        mWindowSumSquares = 0;
+        mWindowSamples = 0;
+        mWindowDurationUs = 0;
+        mSincePublishUs = 0;
+        mLevel.set(pack(SILENCE_DBFS, SILENCE_DBFS));
+    }
+
+    /**
+     * @return 最新发布的电平，使用 {@link #rmsDbOf(long)} 与 {@link #peakDbOf(long)} 解析
+     */
+    public long getLevel() {
+        return mLevel.get();
+    }
+
+    public float getRmsDb() {
+        return rmsDbOf(mLevel.get());
+    }
+
+    public float getPeakDb() {
+        return peakDbOf(mLevel.get());
+    }
+
+    public long getPublishCount() {
+        return mPublishCount.get();
+    }
+
+    public static float rmsDbOf(long level) {
+        return Float.intBitsToFloat((int) (level >>> 32));
+    }
+
+    public static float peakDbOf(long level) {
+        return Float.intBitsToFloat((int) level);
+    }
+
+    private void publish() {
+        float rmsDb = SILENCE_DBFS;
+        if (mWindowSumSquares > 0) {
+            double meanSquare = (double) mWindowSumSquares / mWindowSamples;
+            rmsDb = (float) Math.max(SILENCE_DBFS, 10 * Math.log10(meanSquare / FULL_SCALE_SQUARE));
+        }
+        int peak = 0;
+        for (int i = 0; i < mCount; i++) {
+            peak = Math.max(peak, mFramePeaks[(mHead + i) % MAX_WINDOW_FRAMES]);
+        }
+        float peakDb = peak == 0 ? SILENCE_DBFS
+                : (float) Math.max(SILENCE_DBFS, 20 * Math.log10(peak / 32768.0));
+        mLevel.set(pack(rmsDb, peakDb));
+        mPublishCount.incrementAndGet();
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onLevelUpdated(rmsDb, peakDb);
+        }
+    }
+
+    private void evictOldest() {
+        mWindowSumSquares -= mFrameSumSquares[mHead];
+        mWindowSamples -= mFrameSamples[mHead];
+        mWindowDurationUs -= mFrameDurationUs[mHead];
+        mHead = (mHead + 1) % MAX_WINDOW_FRAMES;
+        mCount--;
+    }
+
+    private static long pack(float rmsDb, float peakDb) {
+        return ((long) Float.floatToIntBits(rmsDb) << 32) | (Float.floatToIntBits(peakDb) & 0xffffffffL);
+    }
+}
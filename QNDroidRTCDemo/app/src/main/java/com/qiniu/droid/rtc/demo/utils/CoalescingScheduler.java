@@ -0,0 +1,95 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并短时间内的多次请求，窗口结束后只执行一次任务
+ *
+ * 任务在窗口结束时执行，因此总是基于最新的状态；窗口内的其余请求均被合并。
+ * 例如房间内多个用户在一秒内相继发布时，只需要重新计算并下发一次合流布局。
+ */
+public class CoalescingScheduler {
+
+    public static final long DEFAULT_WINDOW_MS = 200;
+
+    private final ScheduledExecutorService mExecutor;
+    private final boolean mOwnExecutor;
+    private final long mWindowMs;
+    private final Runnable mTask;
+    private final AtomicBoolean mPending = new AtomicBoolean(false);
+    private final AtomicLong mRequestedCount = new AtomicLong();
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+    private final AtomicLong mAppliedCount = new AtomicLong();
+    private volatile boolean mReleased;
+
+    public CoalescingScheduler(long windowMs, Runnable task) {
+        this(windowMs, task, Executors.newSingleThreadScheduledExecutor(), true);
+    }
+
+    /**
+     * @param windowMs 合并窗口，单位 ms
+     * @param task     窗口结束时执行的任务
+     * @param executor 调度任务的线程池，由调用方负责释放
+     */
+    public CoalescingScheduler(long windowMs, Runnable task, ScheduledExecutorService executor) {
+        this(windowMs, task, executor, false);
+    }
+
+    private CoalescingScheduler(long windowMs, Runnable task, ScheduledExecutorService executor, boolean ownExecutor) {
+        if (windowMs < 0) {
+            throw new IllegalArgumentException("windowMs must not be negative");
+        }
+        mWindowMs = windowMs;
+        mTask = task;
+        mExecutor = executor;
+        mOwnExecutor = ownExecutor;
+    }
+
+    /**
+     * 请求执行一次任务，若当前窗口内已有待执行的任务则直接合并
+     */
+    public void request() {
+        if (mReleased) {
+            return;
+        }
+        mRequestedCount.incrementAndGet();
+        if (mPending.compareAndSet(false, true)) {
+            mExecutor.schedule(this::flush, mWindowMs, TimeUnit.MILLISECONDS);
+        } else {
+            mCoalescedCount.incrementAndGet();
+        }
+    }
+
+    public long getRequestedCount() {
+        return mRequestedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    public long getAppliedCount() {
+        return mAppliedCount.get();
+    }
+
+    public void release() {
+        mReleased = true;
+        if (mOwnExecutor) {
+            mExecutor.shutdownNow();
+        }
+    }
+
+    private void flush() {
+        // clear the flag first, requests arriving while the task runs open a new window
+        mPending.set(false);
+        if (mReleased) {
+            return;
+        }
+        mAppliedCount.incrementAndGet();
+        mTask.run();
+    }
+}
@@ -6,6 +6,7 @@ public class Config {
     public static final String ROOM_NAME_RULE = "^[a-zA-Z0-9_-]{3,64}$";
     public static final String USER_NAME_RULE = "^[a-zA-Z0-9_-]{3,50}$";
     public static final String DOWNLOAD_URL = "DownloadURL";
+    public static final String DOWNLOAD_MD5 = "MD5";
     public static final String APP_ID = "AppId";
     public static final String VERSION = "Version";
     public static final String DESCRIPTION = "Description";
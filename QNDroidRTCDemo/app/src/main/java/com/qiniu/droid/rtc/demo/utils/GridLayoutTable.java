@@ -0,0 +1,126 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+/**
+ * 多人窗口的网格布局表
+ *
+ * 对 1 ~ maxTiles 个窗口，在给定的区域内选择使窗口面积最大的列数，窗口保持固定宽高比；
+ * 网格从区域顶部开始排列并水平居中，最后一行不满时同样居中。
+ * 所有结果在构造时计算完成，布局时只需查表。不依赖 Android，坐标单位与传入的区域尺寸一致。
+ */
+public class GridLayoutTable {
+
+    private final int mAreaWidth;
+    private final int mAreaHeight;
+    private final float mTileAspect;
+    private final int mMaxTiles;
+
+    // indexed by tile count
+    private final int[] mColumns;
+    private final int[] mRows;
+    private final int[] mTileWidth;
+    private final int[] mTileHeight;
+    // indexed by tile count and tile position
+    private final int[][] mX;
+    private final int[][] mY;
+
+    /**
+     * @param areaWidth  布局区域宽度
+     * @param areaHeight 布局区域高度
+     * @param tileAspect 窗口宽高比，宽 / 高
+     * @param maxTiles   最多的窗口数
+     */
+    public GridLayoutTable(int areaWidth, int areaHeight, float tileAspect, int maxTiles) {
+        if (areaWidth <= 0 || areaHeight <= 0 || tileAspect <= 0 || maxTiles <= 0) {
+            throw new IllegalArgumentException("invalid grid layout parameters");
+        }
+        mAreaWidth = areaWidth;
+        mAreaHeight = areaHeight;
+        mTileAspect = tileAspect;
+        mMaxTiles = maxTiles;
+        mColumns = new int[maxTiles + 1];
+        mRows = new int[maxTiles + 1];
+        mTileWidth = new int[maxTiles + 1];
+        mTileHeight = new int[maxTiles + 1];
+        mX = new int[maxTiles + 1][];
+        mY = new int[maxTiles + 1][];
+        for (int n = 1; n <= maxTiles; n++) {
+            computeLayout(n);
+        }
+    }
+
+    public int getMaxTiles() {
+        return mMaxTiles;
+    }
+
+    public int getColumns(int tileCount) {
+        return mColumns[checkTileCount(tileCount)];
+    }
+
+    public int getRows(int tileCount) {
+        return mRows[checkTileCount(tileCount)];
+    }
+
+    public int getTileWidth(int tileCount) {
+        return mTileWidth[checkTileCount(tileCount)];
+    }
+
+    public int getTileHeight(int tileCount) {
+        return mTileHeight[checkTileCount(tileCount)];
+    }
+
+    /**
+     * @return 共 tileCount 个窗口时，第 position 个窗口左上角的横坐标
+     */
+    public int getX(int tileCount, int position) {
+        return mX[checkTileCount(tileCount)][position];
+    }
+
+    /**
+     * @return 共 tileCount 个窗口时，第 position 个窗口左上角的纵坐标
+     */
+    public int getY(int tileCount, int position) {
+        return mY[checkTileCount(tileCount)][position];
+    }
+
+    private void computeLayout(int n) {
+        int bestColumns = 1;
+        int bestWidth = 0;
+        for (int columns = 1; columns <= n; columns++) {
+            int rows = (n + columns - 1) / columns;
+            int width = tileWidthFor(columns, rows);
+            // on a tie prefer more columns, the same tiles in fewer rows leave more room below the grid
+            if (width >= bestWidth) {
+                bestWidth = width;
+                bestColumns = columns;
+            }
+        }
+        int rows = (n + bestColumns - 1) / bestColumns;
+        int height = (int) (bestWidth / mTileAspect);
+        mColumns[n] = bestColumns;
+        mRows[n] = rows;
+        mTileWidth[n] = bestWidth;
+        mTileHeight[n] = height;
+        mX[n] = new int[n];
+        mY[n] = new int[n];
+        for (int i = 0; i < n; i++) {
+            int row = i / bestColumns;
+            int column = i % bestColumns;
+            int tilesInRow = row == rows - 1 ? n - row * bestColumns : bestColumns;
+            mX[n][i] = (mAreaWidth - tilesInRow * bestWidth) / 2 + column * bestWidth;
+            mY[n][i] = row * height;
+        }
+    }
+
+    private int tileWidthFor(int columns, int rows) {
+        int widthByColumns = mAreaWidth / columns;
+        int widthByRows = (int) (mAreaHeight / rows * mTileAspect);
+        return Math.min(widthByColumns, widthByRows);
+    }
+
+    private int checkTileCount(int tileCount) {
+        if (tileCount < 1 || tileCount > mMaxTiles) {
+            throw new IllegalArgumentException("tile count " + tileCount + " out of [1, " + mMaxTiles + "]");
+        }
+        return tileCount;
+    }
+}
@@ -0,0 +1,58 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多人窗口的分页规则
+ *
+ * 存在置顶用户（本地用户）时，置顶用户固定显示在每一页的首位，其余用户按照顺序分页，每页 pageSize - 1 个；
+ * 不存在置顶用户时每页 pageSize 个。不依赖 Android。
+ */
+public final class GridPagination {
+
+    private GridPagination() {
+    }
+
+    /**
+     * @param pageSize 每页的窗口数，存在置顶用户时需要至少为 2
+     * @return 每页显示的非置顶用户数
+     */
+    public static int getUsersPerPage(int pageSize, boolean pinned) {
+        return Math.max(1, pageSize - (pinned ? 1 : 0));
+    }
+
+    /**
+     * @param userCount 所有用户数，包含置顶用户
+     * @return 总页数，至少为 1
+     */
+    public static int getPageCount(int userCount, int pageSize, boolean pinned) {
+        int perPage = getUsersPerPage(pageSize, pinned);
+        int others = userCount - (pinned ? 1 : 0);
+        return Math.max(1, (others + perPage - 1) / perPage);
+    }
+
+    /**
+     * @param users      所有用户，按照显示顺序遍历，可以包含置顶用户
+     * @param pinnedUser 置顶用户，没有时为 null
+     * @return 第 pageIndex 页显示的用户，置顶用户在首位
+     */
+    public static <K> List<K> getPageUsers(Iterable<K> users, K pinnedUser, int pageSize, int pageIndex) {
+        List<K> pageUsers = new ArrayList<>(pageSize);
+        boolean pinned = pinnedUser != null;
+        if (pinned) {
+            pageUsers.add(pinnedUser);
+        }
+        int first = pageIndex * getUsersPerPage(pageSize, pinned);
+        int index = 0;
+        for (K user : users) {
+            if (pinned && user.equals(pinnedUser)) {
+                continue;
+            }
+            if (index++ >= first && pageUsers.size() < pageSize) {
+                pageUsers.add(user);
+            }
+        }
+        return pageUsers;
+    }
+}
@@ -0,0 +1,120 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import com.qiniu.droid.rtc.QNRenderMode;
+import com.qiniu.droid.rtc.QNTranscodingLiveStreamingTrack;
+import com.qiniu.droid.rtc.demo.model.RTCTrackMergeOption;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合流布局增量更新
+ *
+ * 记录上一次已下发的合流布局快照（按 trackId 记录 x, y, z, w, h, renderMode），
+ * 每次只下发新增或发生变化的 Track，以及从合流中移除的 Track，避免大房间内每次变化都全量下发。
+ *
+ * 当合流任务重新开始（例如切换 streamID、重新加入房间）时需要调用 {@link #reset()} 以触发全量下发。
+ */
+public class MergeLayoutDiffer {
+
+    /**
+     * 合流配置下发接口，线上实现为对 {@link com.qiniu.droid.rtc.QNRTCClient} 的简单转发
+     */
+    public interface TrackSink {
+        void setTracks(List<QNTranscodingLiveStreamingTrack> tracks);
+
+        void removeTracks(List<QNTranscodingLiveStreamingTrack> tracks);
+    }
+
+    private static class Snapshot {
+        boolean mIncluded;
+        int mX;
+        int mY;
+        int mZOrder;
+        int mWidth;
+        int mHeight;
+        QNRenderMode mRenderMode;
+        // generation of the last apply() which saw this track
+        int mGeneration;
+
+        boolean sameAs(QNTranscodingLiveStreamingTrack track) {
+            return mX == track.getX() && mY == track.getY() && mZOrder == track.getZOrder()
+                    && mWidth == track.getWidth() && mHeight == track.getHeight()
+                    && mRenderMode == track.getRenderMode();
+        }
+
+        void copyFrom(QNTranscodingLiveStreamingTrack track) {
+            mX = track.getX();
+            mY = track.getY();
+            mZOrder = track.getZOrder();
+            mWidth = track.getWidth();
+            mHeight = track.getHeight();
+            mRenderMode = track.getRenderMode();
+        }
+    }
+
+    private final Map<String, Snapshot> mApplied = new HashMap<>();
+    private final List<QNTranscodingLiveStreamingTrack> mChangedTracks = new ArrayList<>();
+    private final List<QNTranscodingLiveStreamingTrack> mRemovedTracks = new ArrayList<>();
+    private int mGeneration;
+
+    /**
+     * 对比当前合流配置与上次下发的快照，只下发差异部分
+     *
+     * @param options 当前房间内所有参与合流配置的 Track
+     * @param sink    合流配置下发接口
+     */
+    public void apply(List<RTCTrackMergeOption> options, TrackSink sink) {
+        mGeneration++;
+        mChangedTracks.clear();
+        mRemovedTracks.clear();
+        for (int i = 0; i < options.size(); i++) {
+            RTCTrackMergeOption option = options.get(i);
+            QNTranscodingLiveStreamingTrack mergeTrack = option.getMergeTrack();
+            Snapshot snapshot = mApplied.get(option.getTrackId());
+            if (snapshot == null) {
+                snapshot = new Snapshot();
+                mApplied.put(option.getTrackId(), snapshot);
+                if (option.isTrackInclude()) {
+                    mChangedTracks.add(mergeTrack);
+                } else {
+                    mRemovedTracks.add(mergeTrack);
+                }
+            } else if (option.isTrackInclude()) {
+                if (!snapshot.mIncluded || !snapshot.sameAs(mergeTrack)) {
+                    mChangedTracks.add(mergeTrack);
+                }
+            } else if (snapshot.mIncluded) {
+                mRemovedTracks.add(mergeTrack);
+            }
+            snapshot.mIncluded = option.isTrackInclude();
+            snapshot.copyFrom(mergeTrack);
+            snapshot.mGeneration = mGeneration;
+        }
+
+        // tracks which are no longer published are dropped by the server, just forget them.
+        Iterator<Snapshot> iterator = mApplied.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mGeneration != mGeneration) {
+                iterator.remove();
+            }
+        }
+
+        if (!mChangedTracks.isEmpty()) {
+            sink.setTracks(new ArrayList<>(mChangedTracks));
+        }
+        if (!mRemovedTracks.isEmpty()) {
+            sink.removeTracks(new ArrayList<>(mRemovedTracks));
+        }
+    }
+
+    /**
+     * 清空快照，下一次 {@link #apply(List, TrackSink)} 将全量下发
+     */
+    public void reset() {
+        mApplied.clear();
+    }
+}
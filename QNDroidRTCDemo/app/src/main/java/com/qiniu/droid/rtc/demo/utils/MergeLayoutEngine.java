@@ -0,0 +1,148 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+/**
+ * 合流布局计算：递归地将画布沿长边对半切分，直到每一路视频占据一个区域。
+ *
+ * 计算结果按 (count, width, height) 缓存在一个容量固定的 LRU 中，
+ * 并写入调用方提供的 int 数组，命中缓存时不产生任何对象分配。
+ * 非线程安全，请在同一线程中使用。
+ */
+public class MergeLayoutEngine {
+
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    private final int[] mKeyCount;
+    private final int[] mKeyWidth;
+    private final int[] mKeyHeight;
+    private final long[] mLastUsed;
+    // x, y, w, h interleaved for each tile
+    private final int[][] mGeometries;
+    private long mClock;
+    private int mCacheHits;
+    private int mCacheMisses;
+
+    public MergeLayoutEngine() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public MergeLayoutEngine(int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be positive");
+        }
+        mKeyCount = new int[cacheSize];
+        mKeyWidth = new int[cacheSize];
+        mKeyHeight = new int[cacheSize];
+        mLastUsed = new long[cacheSize];
+        mGeometries = new int[cacheSize][];
+    }
+
+    /**
+     * 计算 count 路视频铺满 width x height 画布时每一路的位置和尺寸
+     *
+     * @param count  video track count
+     * @param width  merge layout width
+     * @param height merge layout height
+     * @param outX   x of each tile, length >= count
+     * @param outY   y of each tile, length >= count
+     * @param outW   width of each tile, length >= count
+     * @param outH   height of each tile, length >= count
+     * @return tile count written
+     */
+    public int layout(int count, int width, int height, int[] outX, int[] outY, int[] outW, int[] outH) {
+        if (count <= 0) {
+            return 0;
+        }
+        if (outX.length < count || outY.length < count || outW.length < count || outH.length < count) {
+            throw new IllegalArgumentException("output arrays are smaller than count " + count);
+        }
+        int[] geometry = lookup(count, width, height);
+        for (int i = 0, j = 0; i < count; i++, j += 4) {
+            outX[i] = geometry[j];
+            outY[i] = geometry[j + 1];
+            outW[i] = geometry[j + 2];
+            outH[i] = geometry[j + 3];
+        }
+        return count;
+    }
+
+    public int getCacheHits() {
+        return mCacheHits;
+    }
+
+    public int getCacheMisses() {
+        return mCacheMisses;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mGeometries.length; i++) {
+            mGeometries[i] = null;
+            mLastUsed[i] = 0;
+        }
+    }
+
+    private int[] lookup(int count, int width, int height) {
+        int victim = 0;
+        for (int i = 0; i < mGeometries.length; i++) {
+            if (mGeometries[i] == null) {
+                victim = i;
+                mLastUsed[i] = -1;
+                continue;
+            }
+            if (mKeyCount[i] == count && mKeyWidth[i] == width && mKeyHeight[i] == height) {
+                mLastUsed[i] = ++mClock;
+                mCacheHits++;
+                return mGeometries[i];
+            }
+            if (mLastUsed[i] < mLastUsed[victim]) {
+                victim = i;
+            }
+        }
+        mCacheMisses++;
+        int[] geometry = new int[count * 4];
+        split(geometry, 0, count, 0, 0, width, height);
+        mKeyCount[victim] = count;
+        mKeyWidth[victim] = width;
+        mKeyHeight[victim] = height;
+        mGeometries[victim] = geometry;
+        mLastUsed[victim] = ++mClock;
+        return geometry;
+    }
+
+    private static int split(int[] out, int index, int count, int x, int y, int width, int height) {
+        if (count == 0) {
+            return index;
+        }
+        if (count == 1) {
+            int pos = index * 4;
+            out[pos] = x;
+            out[pos + 1] = y;
+            out[pos + 2] = width;
+            out[pos + 3] = height;
+            return index + 1;
+        }
+        int splitPoint = calculateSplitPoint(count);
+        if (width > height) {
+            int splitWidth = width / 2;
+            index = split(out, index, splitPoint, x, y, splitWidth, height);
+            return split(out, index, count - splitPoint, x + splitWidth, y, splitWidth, height);
+        } else {
+            int splitHeight = height / 2;
+            index = split(out, index, splitPoint, x, y, width, splitHeight);
+            return split(out, index, count - splitPoint, x, y + splitHeight, width, splitHeight);
+        }
+    }
+
+    /**
+     * 切分点取决于 round(log2(count)) 是否等于 floor(log2(count))，
+     * 即 count < 2^floor * sqrt(2)，等价于整数比较 count^2 < 2^(2 * floor + 1)
+     */
+    private static int calculateSplitPoint(int count) {
+        int floor = 31 - Integer.numberOfLeadingZeros(count);
+        int pow = 1 << floor;
+        if ((long) count * count < ((long) pow * pow) << 1) {
+            return count - (pow >> 1);
+        } else {
+            return pow;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 保持插入顺序的一对一键值表，例如 userId 与显示窗口的对应关系
+ *
+ * 所有条目以侵入式双向链表连接，键和值各有一个索引，因此查找、插入、移动到首位与删除均为 O(1)；
+ * 遍历直接沿链表进行，不复制，并且可以跳过某个值（例如全屏窗口）。
+ * 一个值只能属于一个键，值按照引用比较：put 一个已经属于其他键的值时，其他键的条目会被移除。
+ * 遍历过程中修改会抛出 {@link ConcurrentModificationException}。非线程安全。
+ */
+public class OrderedRegistry<K, V> {
+
+    private static final class Node<K, V> {
+        final K mKey;
+        V mValue;
+        Node<K, V> mPrev;
+        Node<K, V> mNext;
+
+        Node(K key, V value) {
+            mKey = key;
+            mValue = value;
+        }
+    }
+
+    private final Map<K, Node<K, V>> mNodesByKey = new HashMap<>();
+    private final Map<V, Node<K, V>> mNodesByValue = new IdentityHashMap<>();
+    private Node<K, V> mHead;
+    private Node<K, V> mTail;
+    private int mModCount;
+
+    public int size() {
+        return mNodesByKey.size();
+    }
+
+    public boolean isEmpty() {
+        return mNodesByKey.isEmpty();
+    }
+
+    public V get(K key) {
+        Node<K, V> node = mNodesByKey.get(key);
+        return node == null ? null : node.mValue;
+    }
+
+    public boolean containsValue(V value) {
+        return mNodesByValue.containsKey(value);
+    }
+
+    /**
+     * 添加到末尾，键已存在时更新值并移动到末尾
+     *
+     * @return 键原来对应的值
+     */
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * @param insertToFirst true 表示添加或移动到首位，否则添加或移动到末尾
+     * @return 键原来对应的值
+     */
+    public V put(K key, V value, boolean insertToFirst) {
+        Node<K, V> owner = mNodesByValue.get(value);
+        if (owner != null && !owner.mKey.equals(key)) {
+            // a value belongs to one key only
+            remove(owner.mKey);
+        }
+        Node<K, V> node = mNodesByKey.get(key);
+        V previous = null;
+        if (node == null) {
+            node = new Node<>(key, value);
+            mNodesByKey.put(key, node);
+        } else {
+            previous = node.mValue;
+            mNodesByValue.remove(previous);
+            node.mValue = value;
+            unlink(node);
+        }
+        mNodesByValue.put(value, node);
+        if (insertToFirst) {
+            linkFirst(node);
+        } else {
+            linkLast(node);
+        }
+        mModCount++;
+        return previous;
+    }
+
+    /**
+     * @return 键对应的值，不存在时返回 null
+     */
+    public V remove(K key) {
+        Node<K, V> node = mNodesByKey.remove(key);
+        if (node == null) {
+            return null;
+        }
+        mNodesByValue.remove(node.mValue);
+        unlink(node);
+        mModCount++;
+        return node.mValue;
+    }
+
+    public void clear() {
+        mNodesByKey.clear();
+        mNodesByValue.clear();
+        mHead = null;
+        mTail = null;
+        mModCount++;
+    }
+
+    /**
+     * @return 排在首位的值，为空时返回 null
+     */
+    public V first() {
+        return first(null);
+    }
+
+    /**
+     * @return 除 exclude 之外排在首位的值，不存在时返回 null
+     */
+    public V first(V exclude) {
+        for (Node<K, V> node = mHead; node != null; node = node.mNext) {
+            if (node.mValue != exclude) {
+                return node.mValue;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 按照顺序遍历所有键
+     */
+    public Iterable<K> keys() {
+        return () -> new NodeIterator<K>(null) {
+            @Override
+            K valueOf(Node<K, V> node) {
+                return node.mKey;
+            }
+        };
+    }
+
+    /**
+     * @return 按照顺序遍历所有值
+     */
+    public Iterable<V> values() {
+        return values(null);
+    }
+
+    /**
+     * @return 按照顺序遍历除 exclude 之外的所有值
+     */
+    public Iterable<V> values(V exclude) {
+        return () -> new NodeIterator<V>(exclude) {
+            @Override
+            V valueOf(Node<K, V> node) {
+                return node.mValue;
+            }
+        };
+    }
+
+    private void linkFirst(Node<K, V> node) {
+        node.mPrev = null;
+        node.mNext = mHead;
+        if (mHead != null) {
+            mHead.mPrev = node;
+        } else {
+            mTail = node;
+        }
+        mHead = node;
+    }
+
+    private void linkLast(Node<K, V> node) {
+        node.mNext = null;
+        node.mPrev = mTail;
+        if (mTail != null) {
+            mTail.mNext = node;
+        } else {
+            mHead = node;
+        }
+        mTail = node;
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.mPrev != null) {
+            node.mPrev.mNext = node.mNext;
+        } else {
+            mHead = node.mNext;
+        }
+        if (node.mNext != null) {
+            node.mNext.mPrev = node.mPrev;
+        } else {
+            mTail = node.mPrev;
+        }
+        node.mPrev = null;
+        node.mNext = null;
+    }
+
+    private abstract class NodeIterator<T> implements Iterator<T> {
+        private final V mExclude;
+        private final int mExpectedModCount = mModCount;
+        private Node<K, V> mNext;
+
+        NodeIterator(V exclude) {
+            mExclude = exclude;
+            mNext = skipExcluded(mHead);
+        }
+
+        abstract T valueOf(Node<K, V> node);
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public T next() {
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (mNext == null) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = mNext;
+            mNext = skipExcluded(node.mNext);
+            return valueOf(node);
+        }
+
+        private Node<K, V> skipExcluded(Node<K, V> node) {
+            while (node != null && mExclude != null && node.mValue == mExclude) {
+                node = node.mNext;
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import android.os.SystemClock;
+
+import com.qiniu.droid.rtc.demo.model.ProgressEvent;
+
+/**
+ * 按时间节流的下载进度上报
+ *
+ * 下载过程中每写入一块数据调用一次 {@link #onBytes(long, long)}，两次上报之间至少间隔 minIntervalMs，
+ * 首次调用与 {@link #complete()} 总是立即上报。每次上报的 {@link ProgressEvent} 都是新的不可变对象。
+ *
+ * 下载速度为各上报区间平均速度的指数加权移动平均，权重随区间时长变化：alpha = 1 - e^(-dt / rateTimeConstantMs)，
+ * 因此平滑程度与上报频率无关。断点续传时首次调用的已下载长度作为起点，不计入速度。
+ *
+ * 时间通过 {@link Clock} 注入，默认使用不受系统时间调整影响的 {@link SystemClock#elapsedRealtime()}。
+ * 非线程安全，调用方需保证不并发调用。
+ */
+public class ProgressReporter {
+
+    public static final long DEFAULT_MIN_INTERVAL_MS = 250;
+    public static final long DEFAULT_RATE_TIME_CONSTANT_MS = 2000;
+
+    public interface Clock {
+        /**
+         * @return 单调递增的时间，单位 ms
+         */
+        long nowMs();
+    }
+
+    public interface Listener {
+        void onProgress(ProgressEvent event);
+    }
+
+    private final Listener mListener;
+    private final Clock mClock;
+    private final long mMinIntervalMs;
+    private final long mRateTimeConstantMs;
+
+    private boolean mStarted;
+    private long mDownloadedBytes;
+    private long mTotalBytes = -1;
+    private long mSampleBytes;
+    private long mSampleAtMs;
+    // bytes per ms, negative until the first sample
+    private double mRate = -1;
+    private ProgressEvent mLastEvent;
+    private long mReportCount;
+    private long mSkippedCount;
+
+    public ProgressReporter(Listener listener) {
+        this(listener, SystemClock::elapsedRealtime, DEFAULT_MIN_INTERVAL_MS, DEFAULT_RATE_TIME_CONSTANT_MS);
+    }
+
+    /**
+     * @param minIntervalMs      两次上报的最小间隔
+     * @param rateTimeConstantMs 速度平滑的时间常数，越大越平滑
+     */
+    public ProgressReporter(Listener listener, Clock clock, long minIntervalMs, long rateTimeConstantMs) {
+        if (minIntervalMs < 0 || rateTimeConstantMs <= 0) {
+            throw new IllegalArgumentException("invalid progress reporter parameters");
+        }
+        mListener = listener;
+        mClock = clock;
+        mMinIntervalMs = minIntervalMs;
+        mRateTimeConstantMs = rateTimeConstantMs;
+    }
+
+    /**
+     * @param totalBytes 总长度，未知时为 -1
+     */
+    public void onBytes(long downloadedBytes, long totalBytes) {
+        long now = mClock.nowMs();
+        mDownloadedBytes = downloadedBytes;
+        mTotalBytes = totalBytes;
+        if (!mStarted) {
+            mStarted = true;
+            mSampleBytes = downloadedBytes;
+            mSampleAtMs = now;
+            report();
+            return;
+        }
+        if (now - mSampleAtMs < mMinIntervalMs) {
+            mSkippedCount++;
+            return;
+        }
+        sample(now);
+        report();
+    }
+
+    /**
+     * 下载完成时调用，上报 100%，已经上报过时不会重复上报
+     */
+    public void complete() {
+        if (mTotalBytes >= 0) {
+            mDownloadedBytes = mTotalBytes;
+        }
+        if (mLastEvent != null && mLastEvent.getProgress() == 100 && mLastEvent.getDownloadedBytes() == mDownloadedBytes) {
+            return;
+        }
+        if (mStarted) {
+            sample(mClock.nowMs());
+        }
+        mStarted = true;
+        mLastEvent = new ProgressEvent(100, mDownloadedBytes, mTotalBytes, getBytesPerSecond(), 0);
+        mReportCount++;
+        mListener.onProgress(mLastEvent);
+    }
+
+    /**
+     * 下载中断后重新开始前调用，下一次 {@link #onBytes(long, long)} 作为新的起点，平滑后的速度保留
+     */
+    public void restart() {
+        mStarted = false;
+    }
+
+    /**
+     * @return 最近一次上报的进度，尚未上报时返回 null
+     */
+    public ProgressEvent getLastEvent() {
+        return mLastEvent;
+    }
+
+    public long getReportCount() {
+        return mReportCount;
+    }
+
+    /**
+     * @return 因节流而没有上报的次数
+     */
+    public long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    private void sample(long now) {
+        long elapsedMs = now - mSampleAtMs;
+        if (elapsedMs <= 0) {
+            return;
+        }
+        double rate = (double) (mDownloadedBytes - mSampleBytes) / elapsedMs;
+        if (mRate < 0) {
+            mRate = rate;
+        } else {
+            double alpha = 1 - Math.exp(-(double) elapsedMs / mRateTimeConstantMs);
+            mRate += alpha * (rate - mRate);
+        }
+        mSampleBytes = mDownloadedBytes;
+        mSampleAtMs = now;
+    }
+
+    private void report() {
+        int progress = 0;
+        if (mTotalBytes > 0) {
+            progress = (int) Math.min(100, mDownloadedBytes * 100L / mTotalBytes);
+        }
+        long etaMs = -1;
+        if (mTotalBytes >= 0 && mRate > 0) {
+            etaMs = Math.round(Math.max(0, mTotalBytes - mDownloadedBytes) / mRate);
+        }
+        mLastEvent = new ProgressEvent(progress, mDownloadedBytes, mTotalBytes, getBytesPerSecond(), etaMs);
+        mReportCount++;
+        mListener.onProgress(mLastEvent);
+    }
+
+    private long getBytesPerSecond() {
+        return mRate < 0 ? -1 : Math.round(mRate * 1000);
+    }
+}
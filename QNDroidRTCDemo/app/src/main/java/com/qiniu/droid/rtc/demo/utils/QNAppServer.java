@@ -2,6 +2,8 @@ package com.qiniu.droid.rtc.demo.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.qiniu.droid.rtc.demo.R;
 import com.qiniu.droid.rtc.demo.model.UpdateInfo;
@@ -10,8 +12,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 
@@ -29,60 +37,250 @@ public class QNAppServer {
     public static final String APP_ID = "d8lk7l4ed";
     public static final String TEST_MODE_APP_ID = "d8dre8w1p";
 
+    public static final long DEFAULT_CONNECT_TIMEOUT_MS = 10_000;
+    public static final long DEFAULT_READ_TIMEOUT_MS = 10_000;
+    // idle connections kept alive for the next request, so that it skips the TCP and TLS handshake
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    /**
+     * 异步请求的结果回调，在主线程中执行
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        /**
+         * @param e 网络错误、服务端返回错误状态码或者返回内容解析失败
+         */
+        void onFailure(Exception e);
+    }
+
     private static class QNAppServerHolder {
         private static final QNAppServer instance = new QNAppServer();
     }
 
+    private final String mServerAddress;
+    // delivers the async results, the main thread except in tests
+    private final Executor mCallbackExecutor;
+    private final RoomTokenCache mRoomTokenCache;
+    private volatile OkHttpClient mHttpClient;
+
     private QNAppServer() {
+        this(APP_SERVER_ADDR, mainThreadExecutor(), new RoomTokenCache());
+    }
+
+    /**
+     * 仅用于测试，指向本地的模拟服务器并在指定的线程池中回调
+     *
+     * @param serverAddress 业务服务器地址，不以 "/" 结尾
+     */
+    QNAppServer(String serverAddress, Executor callbackExecutor, RoomTokenCache roomTokenCache) {
+        mServerAddress = serverAddress;
+        mCallbackExecutor = callbackExecutor;
+        mRoomTokenCache = roomTokenCache;
+        mHttpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(DEFAULT_CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(DEFAULT_READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
     }
 
     public static QNAppServer getInstance() {
         return QNAppServerHolder.instance;
     }
 
+    private static Executor mainThreadExecutor() {
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        return mainHandler::post;
+    }
+
+    /**
+     * 所有请求共用的 OkHttpClient，需要不同配置时通过 {@link OkHttpClient#newBuilder()} 派生，以共享连接池与线程池
+     */
+    public OkHttpClient getHttpClient() {
+        return mHttpClient;
+    }
+
+    /**
+     * 修改超时时间，连接池与线程池保持不变
+     */
+    public void setTimeouts(long connectTimeoutMs, long readTimeoutMs) {
+        mHttpClient = mHttpClient.newBuilder()
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 同步获取 RoomToken，不能在主线程中调用
+     *
+     * @return 失败时返回 null
+     */
     public String requestRoomToken(Context context, String userId, String roomName) {
-        /**
-         * 此处服务器 URL 仅用于 Demo 测试，随时可能修改/失效，请勿用于 App 线上环境！！
-         * 此处服务器 URL 仅用于 Demo 测试，随时可能修改/失效，请勿用于 App 线上环境！！
-         * 此处服务器 URL 仅用于 Demo 测试，随时可能修改/失效，请勿用于 App 线上环境！！
-         */
-        String url = APP_SERVER_ADDR + "/v1/rtc/token/admin/app/" + getAppId(context) + "/room/" + roomName + "/user/" + userId + "?bundleId=" + packageName(context);
-        try {
-            OkHttpClient okHttpClient = new OkHttpClient.Builder().build();
-            Request request = new Request.Builder().url(url).build();
-            Response response = okHttpClient.newCall(request).execute();
-            return response.body().string();
-        } catch (Exception e) {
+        try (Response response = mHttpClient.newCall(roomTokenRequest(getAppId(context), packageName(context), userId, roomName)).execute()) {
+            return parseRoomToken(response);
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * 异步获取 RoomToken
+     *
+     * @return 可用于取消请求，取消后不会回调
+     */
+    public Call requestRoomTokenAsync(Context context, String userId, String roomName, Callback<String> callback) {
+        return requestRoomTokenAsync(getAppId(context), packageName(context), userId, roomName, callback);
+    }
+
+    Call requestRoomTokenAsync(String appId, String bundleId, String userId, String roomName, Callback<String> callback) {
+        return enqueue(roomTokenRequest(appId, bundleId, userId, roomName), callback, this::parseRoomToken);
+    }
+
+    /**
+     * 获取 RoomToken，优先使用缓存中未过期的 token，同一房间与用户同时只发出一个请求
+     */
+    public void getRoomTokenAsync(Context context, String userId, String roomName, Callback<String> callback) {
+        getRoomTokenAsync(getAppId(context), packageName(context), userId, roomName, callback);
+    }
+
+    void getRoomTokenAsync(String appId, String bundleId, String userId, String roomName, Callback<String> callback) {
+        mRoomTokenCache.get(roomTokenKey(appId, userId, roomName), roomTokenFetcher(appId, bundleId, userId, roomName), callback);
+    }
+
+    /**
+     * 在后台提前获取 RoomToken，例如断线重连时，避免 token 过期后再等待请求
+     */
+    public void prefetchRoomToken(Context context, String userId, String roomName) {
+        prefetchRoomToken(getAppId(context), packageName(context), userId, roomName);
+    }
+
+    void prefetchRoomToken(String appId, String bundleId, String userId, String roomName) {
+        mRoomTokenCache.prefetch(roomTokenKey(appId, userId, roomName), roomTokenFetcher(appId, bundleId, userId, roomName));
+    }
+
+    /**
+     * 丢弃缓存的 RoomToken，加入房间提示 token 无效或者已过期时调用
+     */
+    public void invalidateRoomToken(Context context, String userId, String roomName) {
+        invalidateRoomToken(getAppId(context), userId, roomName);
+    }
+
+    void invalidateRoomToken(String appId, String userId, String roomName) {
+        mRoomTokenCache.invalidate(roomTokenKey(appId, userId, roomName));
+    }
+
+    /**
+     * 同步获取更新信息，不能在主线程中调用
+     *
+     * @return 失败时返回 null
+     */
     public UpdateInfo getUpdateInfo() {
-        String url = APP_SERVER_ADDR + "/v1/upgrade/app?appId=com.qiniu.droid.rtc.demo";
-
-        OkHttpClient okHttpClient = new OkHttpClient.Builder().build();
-        Request request = new Request.Builder().url(url).build();
-        try {
-            Response response = okHttpClient.newCall(request).execute();
-            if (response.isSuccessful()) {
-                JSONObject jsonObject = new JSONObject(response.body().string());
-                UpdateInfo updateInfo = new UpdateInfo();
-                updateInfo.setAppID(jsonObject.getString(Config.APP_ID));
-                updateInfo.setVersion(jsonObject.getInt(Config.VERSION));
-                updateInfo.setDescription(jsonObject.getString(Config.DESCRIPTION));
-                updateInfo.setDownloadURL(jsonObject.getString(Config.DOWNLOAD_URL));
-                updateInfo.setCreateTime(jsonObject.getString(Config.CREATE_TIME));
-                return updateInfo;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (JSONException e) {
+        try (Response response = mHttpClient.newCall(updateInfoRequest()).execute()) {
+            return parseUpdateInfo(response);
+        } catch (IOException | JSONException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * 异步获取更新信息
+     *
+     * @return 可用于取消请求，取消后不会回调
+     */
+    public Call getUpdateInfoAsync(Callback<UpdateInfo> callback) {
+        return enqueue(updateInfoRequest(), callback, this::parseUpdateInfo);
+    }
+
+    private Request roomTokenRequest(String appId, String bundleId, String userId, String roomName) {
+        /**
+         * 此处服务器 URL 仅用于 Demo 测试，随时可能修改/失效，请勿用于 App 线上环境！！
+         * 此处服务器 URL 仅用于 Demo 测试，随时可能修改/失效，请勿用于 App 线上环境！！
+         * 此处服务器 URL 仅用于 Demo 测试，随时可能修改/失效，请勿用于 App 线上环境！！
+         */
+        String url = mServerAddress + "/v1/rtc/token/admin/app/" + appId + "/room/" + roomName + "/user/" + userId + "?bundleId=" + bundleId;
+        return new Request.Builder().url(url).build();
+    }
+
+    private String roomTokenKey(String appId, String userId, String roomName) {
+        return appId + "/" + roomName + "/" + userId;
+    }
+
+    private RoomTokenCache.Fetcher roomTokenFetcher(String appId, String bundleId, String userId, String roomName) {
+        return callback -> requestRoomTokenAsync(appId, bundleId, userId, roomName, callback);
+    }
+
+    private Request updateInfoRequest() {
+        String url = mServerAddress + "/v1/upgrade/app?appId=com.qiniu.droid.rtc.demo";
+        return new Request.Builder().url(url).build();
+    }
+
+    private String parseRoomToken(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("request room token failed: " + response.code());
+        }
+        return response.body().string();
+    }
+
+    private UpdateInfo parseUpdateInfo(Response response) throws IOException, JSONException {
+        if (!response.isSuccessful()) {
+            throw new IOException("request update info failed: " + response.code());
+        }
+        JSONObject jsonObject = new JSONObject(response.body().string());
+        UpdateInfo updateInfo = new UpdateInfo();
+        updateInfo.setAppID(jsonObject.getString(Config.APP_ID));
+        updateInfo.setVersion(jsonObject.getInt(Config.VERSION));
+        updateInfo.setDescription(jsonObject.getString(Config.DESCRIPTION));
+        updateInfo.setDownloadURL(jsonObject.getString(Config.DOWNLOAD_URL));
+        // optional, only the length of the apk is verified without it
+        updateInfo.setDownloadMD5(jsonObject.optString(Config.DOWNLOAD_MD5, null));
+        updateInfo.setCreateTime(jsonObject.getString(Config.CREATE_TIME));
+        return updateInfo;
+    }
+
+    private interface ResponseParser<T> {
+        T parse(Response response) throws IOException, JSONException;
+    }
+
+    private <T> Call enqueue(Request request, final Callback<T> callback, final ResponseParser<T> parser) {
+        Call call = mHttpClient.newCall(request);
+        call.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                deliverFailure(call, callback, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                // the body is read and the connection returned to the pool on the dispatcher thread
+                final T result;
+                try (Response r = response) {
+                    result = parser.parse(r);
+                } catch (IOException | JSONException e) {
+                    deliverFailure(call, callback, e);
+                    return;
+                }
+                mCallbackExecutor.execute(() -> {
+                    if (!call.isCanceled()) {
+                        callback.onSuccess(result);
+                    }
+                });
+            }
+        });
+        return call;
+    }
+
+    private <T> void deliverFailure(final Call call, final Callback<T> callback, final Exception e) {
+        mCallbackExecutor.execute(() -> {
+            if (!call.isCanceled()) {
+                callback.onFailure(e);
+            }
+        });
+    }
+
     private String getAppId(Context context) {
         SharedPreferences sharedPreferences = context.getSharedPreferences(context.getString(R.string.app_name), Context.MODE_PRIVATE);
         return sharedPreferences.getString(Config.APP_ID, APP_ID);
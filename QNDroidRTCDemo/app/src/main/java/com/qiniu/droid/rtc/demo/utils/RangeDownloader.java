@@ -0,0 +1,495 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 支持断点续传与分段并行下载的文件下载器
+ *
+ * 下载中的数据写入 "目标文件.part"，各分段的进度保存在 "目标文件.part.state" 中。再次下载同一个 URL 时，
+ * 通过 Range 请求从中断的位置继续，并通过 If-Range 携带上次的 ETag 或 Last-Modified，服务器上的文件变化时从头下载。
+ * 文件不小于 parallelThresholdBytes 且服务器支持 Range 时拆分为多个分段并行下载，各分段通过 FileChannel 按位置写入。
+ * 下载完成后校验长度与可选的 MD5，通过后重命名为目标文件。
+ *
+ * 不依赖 Android。{@link #download(String, String, Listener)} 为阻塞调用，应在工作线程中执行，同一个实例不能同时下载。
+ */
+public class RangeDownloader {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final long DEFAULT_PARALLEL_THRESHOLD_BYTES = 8 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 3;
+    public static final int DEFAULT_TIMEOUT_MS = 10 * 1000;
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".part.state";
+    // persist the segment positions every few MB so that a crash loses little
+    private static final long STATE_SAVE_INTERVAL_BYTES = 2 * 1024 * 1024;
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    public interface Listener {
+        /**
+         * 在下载线程中回调，多个分段的回调不会并发执行
+         *
+         * @param totalBytes 文件总长度，服务器未返回长度时为 -1
+         */
+        void onProgress(long downloadedBytes, long totalBytes);
+    }
+
+    private static class Segment {
+        final long mStart;
+        // inclusive, -1 while the length of the file is unknown
+        long mEnd;
+        // next byte to write, only advanced after the bytes before it are written
+        volatile long mPosition;
+
+        Segment(long start, long position, long end) {
+            mStart = start;
+            mPosition = position;
+            mEnd = end;
+        }
+
+        boolean isDone() {
+            return mEnd >= 0 && mPosition > mEnd;
+        }
+    }
+
+    private static class State {
+        String mUrl;
+        // ETag or Last-Modified of the file, null when the server returns neither
+        String mValidator;
+        long mTotalBytes = -1;
+        final List<Segment> mSegments = new ArrayList<>();
+    }
+
+    private final File mTargetFile;
+    private final File mPartFile;
+    private final File mStateFile;
+    private int mBufferSize = DEFAULT_BUFFER_SIZE;
+    private long mParallelThresholdBytes = DEFAULT_PARALLEL_THRESHOLD_BYTES;
+    private int mMaxSegments = DEFAULT_MAX_SEGMENTS;
+    private int mConnectTimeoutMs = DEFAULT_TIMEOUT_MS;
+    private int mReadTimeoutMs = DEFAULT_TIMEOUT_MS;
+
+    private State mState;
+    private Listener mListener;
+    private long mDownloadedBytes;
+    private long mUnsavedBytes;
+    private volatile boolean mAborted;
+
+    public RangeDownloader(File targetFile) {
+        mTargetFile = targetFile;
+        mPartFile = new File(targetFile.getPath() + PART_SUFFIX);
+        mStateFile = new File(targetFile.getPath() + STATE_SUFFIX);
+    }
+
+    /**
+     * @param maxSegments    最多并行的分段数，为 1 时不拆分
+     * @param thresholdBytes 不小于此大小的文件才拆分
+     */
+    public void setParallelism(int maxSegments, long thresholdBytes) {
+        if (maxSegments < 1 || thresholdBytes < 0) {
+            throw new IllegalArgumentException("invalid parallelism");
+        }
+        mMaxSegments = maxSegments;
+        mParallelThresholdBytes = thresholdBytes;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        mBufferSize = bufferSize;
+    }
+
+    public void setTimeouts(int connectTimeoutMs, int readTimeoutMs) {
+        mConnectTimeoutMs = connectTimeoutMs;
+        mReadTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * 下载文件，失败时保留已下载的部分，再次调用会继续下载
+     *
+     * @param expectedMd5 文件的 MD5，不区分大小写，为 null 时只校验长度；校验失败会删除已下载的部分
+     * @return 下载完成的目标文件
+     */
+    public File download(String url, String expectedMd5, Listener listener) throws IOException {
+        mListener = listener;
+        mAborted = false;
+        mState = loadState(url);
+        try (RandomAccessFile file = new RandomAccessFile(mPartFile, "rw")) {
+            FileChannel channel = file.getChannel();
+            HttpURLConnection first = null;
+            Segment pending = firstPendingSegment();
+            if (pending != null) {
+                first = open(url, pending.mPosition, pending.mEnd, mState.mValidator);
+                if (first.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                    // the file changed on the server or ranges are no longer supported, the response is the whole file
+                    mState = null;
+                } else if (isLengthChanged(first)) {
+                    // without a validator a changed file is only noticed by its length
+                    first.disconnect();
+                    first = null;
+                    mState = null;
+                }
+            }
+            if (mState == null) {
+                if (first == null) {
+                    first = open(url, 0, -1, null);
+                }
+                mState = newState(url, first);
+                channel.truncate(0);
+                if (mState.mSegments.size() > 1) {
+                    // preallocate so that every segment writes inside the file
+                    file.setLength(mState.mTotalBytes);
+                }
+            }
+            mDownloadedBytes = 0;
+            for (Segment segment : mState.mSegments) {
+                mDownloadedBytes += segment.mPosition - segment.mStart;
+            }
+            try {
+                downloadSegments(channel, first);
+            } finally {
+                saveState();
+            }
+            if (mState.mTotalBytes >= 0 && channel.size() != mState.mTotalBytes) {
+                discard();
+                throw new IOException("unexpected file length " + channel.size() + ", expected " + mState.mTotalBytes);
+            }
+            if (expectedMd5 != null && !expectedMd5.equalsIgnoreCase(md5Of(channel))) {
+                discard();
+                throw new IOException("md5 mismatch");
+            }
+        }
+        if (mTargetFile.exists() && !mTargetFile.delete()) {
+            throw new IOException("can't delete " + mTargetFile);
+        }
+        if (!mPartFile.renameTo(mTargetFile)) {
+            throw new IOException("can't rename " + mPartFile + " to " + mTargetFile);
+        }
+        mStateFile.delete();
+        return mTargetFile;
+    }
+
+    private void downloadSegments(FileChannel channel, HttpURLConnection first) throws IOException {
+        List<Segment> pending = new ArrayList<>();
+        for (Segment segment : mState.mSegments) {
+            if (!segment.isDone()) {
+                pending.add(segment);
+            }
+        }
+        if (pending.isEmpty()) {
+            if (first != null) {
+                first.disconnect();
+            }
+            return;
+        }
+        if (pending.size() == 1) {
+            downloadSegment(channel, pending.get(0), first);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(pending.size());
+        // the first failure is reported, not the aborts it caused in the other segments
+        final AtomicReference<IOException> firstError = new AtomicReference<>();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            final Segment segment = pending.get(i);
+            final HttpURLConnection connection = i == 0 ? first : null;
+            futures.add(executor.submit(() -> {
+                try {
+                    downloadSegment(channel, segment, connection);
+                } catch (IOException | RuntimeException e) {
+                    firstError.compareAndSet(null, e instanceof IOException ? (IOException) e : new IOException(e));
+                    // stop the other segments right away instead of when their futures are checked
+                    mAborted = true;
+                    throw e;
+                }
+                return null;
+            }));
+        }
+        IOException error = null;
+        try {
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    error = firstError.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            mAborted = true;
+            Thread.currentThread().interrupt();
+            error = new InterruptedIOException("download interrupted");
+        } finally {
+            executor.shutdown();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void downloadSegment(FileChannel channel, Segment segment, HttpURLConnection connection) throws IOException {
+        if (connection == null) {
+            connection = open(mState.mUrl, segment.mPosition, segment.mEnd, mState.mValidator);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                connection.disconnect();
+                throw new IOException("range not supported, response code " + connection.getResponseCode());
+            }
+            if (isLengthChanged(connection)) {
+                connection.disconnect();
+                throw new IOException("file length changed on the server");
+            }
+        }
+        try (InputStream in = connection.getInputStream()) {
+            ByteBuffer buffer = ByteBuffer.allocate(mBufferSize);
+            while (!segment.isDone()) {
+                if (mAborted) {
+                    throw new InterruptedIOException("download aborted");
+                }
+                int length = buffer.capacity();
+                if (segment.mEnd >= 0) {
+                    length = (int) Math.min(length, segment.mEnd - segment.mPosition + 1);
+                }
+                int read = in.read(buffer.array(), 0, length);
+                if (read < 0) {
+                    if (segment.mEnd >= 0) {
+                        throw new IOException("unexpected end of stream at " + segment.mPosition);
+                    }
+                    // the length was unknown, the stream ends with the file
+                    segment.mEnd = segment.mPosition - 1;
+                    mState.mTotalBytes = segment.mPosition;
+                    break;
+                }
+                buffer.position(0).limit(read);
+                long position = segment.mPosition;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                segment.mPosition = position;
+                onBytesWritten(read);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private synchronized void onBytesWritten(int bytes) throws IOException {
+        mDownloadedBytes += bytes;
+        mUnsavedBytes += bytes;
+        if (mUnsavedBytes >= STATE_SAVE_INTERVAL_BYTES) {
+            saveState();
+        }
+        if (mListener != null) {
+            mListener.onProgress(mDownloadedBytes, mState.mTotalBytes);
+        }
+    }
+
+    private HttpURLConnection open(String url, long from, long to, String validator) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(mConnectTimeoutMs);
+        connection.setReadTimeout(mReadTimeoutMs);
+        // byte ranges refer to the file itself, a compressed body can't be resumed
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        connection.setRequestProperty("Range", "bytes=" + from + "-" + (to >= 0 ? String.valueOf(to) : ""));
+        if (validator != null) {
+            connection.setRequestProperty("If-Range", validator);
+        }
+        int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+            connection.disconnect();
+            throw new IOException("unexpected response code " + code);
+        }
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            Matcher matcher = CONTENT_RANGE_PATTERN.matcher(String.valueOf(connection.getHeaderField("Content-Range")));
+            if (!matcher.find() || Long.parseLong(matcher.group(1)) != from) {
+                connection.disconnect();
+                throw new IOException("unexpected content range " + connection.getHeaderField("Content-Range"));
+            }
+        }
+        return connection;
+    }
+
+    private State newState(String url, HttpURLConnection connection) throws IOException {
+        State state = new State();
+        state.mUrl = url;
+        state.mValidator = connection.getHeaderField("ETag");
+        if (state.mValidator == null) {
+            state.mValidator = connection.getHeaderField("Last-Modified");
+        }
+        boolean ranged = connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+        if (ranged) {
+            state.mTotalBytes = totalOf(connection);
+        } else {
+            state.mTotalBytes = parseLong(connection.getHeaderField("Content-Length"), -1);
+        }
+        int count = 1;
+        if (ranged && state.mTotalBytes >= mParallelThresholdBytes) {
+            count = mMaxSegments;
+        }
+        if (state.mTotalBytes < 0) {
+            state.mSegments.add(new Segment(0, 0, -1));
+            return state;
+        }
+        long size = state.mTotalBytes / count;
+        for (int i = 0; i < count; i++) {
+            long start = i * size;
+            long end = i == count - 1 ? state.mTotalBytes - 1 : start + size - 1;
+            state.mSegments.add(new Segment(start, start, end));
+        }
+        return state;
+    }
+
+    // the total length in the Content-Range of a partial response, -1 when the server doesn't know it
+    private static long totalOf(HttpURLConnection connection) {
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher(String.valueOf(connection.getHeaderField("Content-Range")));
+        if (!matcher.find() || "*".equals(matcher.group(3))) {
+            return -1;
+        }
+        return Long.parseLong(matcher.group(3));
+    }
+
+    private boolean isLengthChanged(HttpURLConnection connection) {
+        long total = totalOf(connection);
+        return mState.mTotalBytes >= 0 && total >= 0 && total != mState.mTotalBytes;
+    }
+
+    private Segment firstPendingSegment() {
+        if (mState == null) {
+            return null;
+        }
+        for (Segment segment : mState.mSegments) {
+            if (!segment.isDone()) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    // the state of a previous download of the same url, null when it can't be resumed
+    private State loadState(String url) {
+        if (!mPartFile.exists() || !mStateFile.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(mStateFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!url.equals(properties.getProperty("url"))) {
+            return null;
+        }
+        State state = new State();
+        state.mUrl = url;
+        state.mValidator = properties.getProperty("validator");
+        state.mTotalBytes = parseLong(properties.getProperty("total"), -1);
+        int count = (int) parseLong(properties.getProperty("segments"), 0);
+        for (int i = 0; i < count; i++) {
+            String[] values = properties.getProperty("segment." + i, "").split(",");
+            if (values.length != 3) {
+                return null;
+            }
+            long start = parseLong(values[0], -1);
+            long position = parseLong(values[1], -1);
+            long end = parseLong(values[2], -1);
+            if (start < 0 || position < start || end < 0 || position > end + 1 || position > mPartFile.length()) {
+                return null;
+            }
+            state.mSegments.add(new Segment(start, position, end));
+        }
+        // a download of unknown length can't be resumed by range
+        return state.mTotalBytes < 0 || state.mSegments.isEmpty() ? null : state;
+    }
+
+    private synchronized void saveState() throws IOException {
+        mUnsavedBytes = 0;
+        if (mState == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("url", mState.mUrl);
+        if (mState.mValidator != null) {
+            properties.setProperty("validator", mState.mValidator);
+        }
+        properties.setProperty("total", String.valueOf(mState.mTotalBytes));
+        properties.setProperty("segments", String.valueOf(mState.mSegments.size()));
+        for (int i = 0; i < mState.mSegments.size(); i++) {
+            Segment segment = mState.mSegments.get(i);
+            properties.setProperty("segment." + i, segment.mStart + "," + segment.mPosition + "," + segment.mEnd);
+        }
+        // write a temporary file first so that a crash never leaves a broken state behind
+        File tmpFile = new File(mStateFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            properties.store(out, null);
+        }
+        if (!tmpFile.renameTo(mStateFile)) {
+            throw new IOException("can't save download state");
+        }
+    }
+
+    private void discard() {
+        synchronized (this) {
+            mState = null;
+        }
+        mStateFile.delete();
+        mPartFile.delete();
+    }
+
+    private String md5Of(FileChannel channel) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(mBufferSize);
+        long position = 0;
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            position += read;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(String.format(Locale.US, "%02x", b & 0xFF));
+        }
+        return builder.toString();
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
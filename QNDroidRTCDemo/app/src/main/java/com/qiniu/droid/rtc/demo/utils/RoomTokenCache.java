@@ -0,0 +1,268 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * RoomToken 缓存
+ *
+ * RoomToken 的格式为 "AccessKey:签名:RoomAccess"，其中 RoomAccess 为 URL 安全的 base64 编码的 JSON，
+ * 包含以 unix 秒表示的过期时间 expireAt。缓存按照 key（一般由 appId、房间名与用户名组成）保存 token：
+ * 1. 距离过期超过 expiryMarginMs 的 token 直接返回；
+ * 2. 距离过期不足 refreshAheadMs 时，在返回缓存的同时在后台重新获取；
+ * 3. 同一个 key 同时只有一个获取请求，期间的其他调用方等待同一个结果。
+ * 无法解析过期时间的 token 不会被缓存。获取方式由调用方通过 {@link Fetcher} 提供，时间通过 {@link Clock} 注入，
+ * 不依赖 Android。线程安全，回调在调用 get 的线程或者 Fetcher 回调的线程中执行。
+ */
+public class RoomTokenCache {
+
+    public static final long DEFAULT_EXPIRY_MARGIN_MS = 60_000;
+    public static final long DEFAULT_REFRESH_AHEAD_MS = 5 * 60_000;
+
+    private static final Pattern EXPIRE_AT_PATTERN = Pattern.compile("\"expireAt\"\\s*:\\s*(\\d+)");
+
+    public interface Clock {
+        long nowMs();
+    }
+
+    public interface Fetcher {
+        /**
+         * 从业务服务器获取 token，完成后必须回调一次
+         */
+        void fetch(QNAppServer.Callback<String> callback);
+    }
+
+    private static class Entry {
+        String mToken;
+        long mExpireAtMs;
+        // callers waiting for the request in flight, empty for a background refresh
+        List<QNAppServer.Callback<String>> mWaiters;
+    }
+
+    private final Clock mClock;
+    private final long mExpiryMarginMs;
+    private final long mRefreshAheadMs;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    private long mHitCount;
+    private long mFetchCount;
+    private long mSharedCount;
+
+    public RoomTokenCache() {
+        this(System::currentTimeMillis, DEFAULT_EXPIRY_MARGIN_MS, DEFAULT_REFRESH_AHEAD_MS);
+    }
+
+    /**
+     * @param expiryMarginMs 距离过期不足此时长的 token 视为已过期，留出加入房间所需的时间
+     * @param refreshAheadMs 距离过期不足此时长时在后台重新获取，应大于 expiryMarginMs
+     */
+    public RoomTokenCache(Clock clock, long expiryMarginMs, long refreshAheadMs) {
+        if (expiryMarginMs < 0 || refreshAheadMs < expiryMarginMs) {
+            throw new IllegalArgumentException("invalid token cache parameters");
+        }
+        mClock = clock;
+        mExpiryMarginMs = expiryMarginMs;
+        mRefreshAheadMs = refreshAheadMs;
+    }
+
+    /**
+     * 获取 token，缓存有效时立即回调
+     */
+    public void get(String key, Fetcher fetcher, QNAppServer.Callback<String> callback) {
+        String token = null;
+        boolean fetch = false;
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                mEntries.put(key, entry);
+            }
+            long now = mClock.nowMs();
+            if (entry.mToken != null && now < entry.mExpireAtMs - mExpiryMarginMs) {
+                token = entry.mToken;
+                mHitCount++;
+                if (now >= entry.mExpireAtMs - mRefreshAheadMs && entry.mWaiters == null) {
+                    entry.mWaiters = new ArrayList<>();
+                    fetch = true;
+                }
+            } else if (entry.mWaiters != null) {
+                entry.mWaiters.add(callback);
+                mSharedCount++;
+            } else {
+                entry.mWaiters = new ArrayList<>();
+                entry.mWaiters.add(callback);
+                fetch = true;
+            }
+        }
+        if (token != null) {
+            callback.onSuccess(token);
+        }
+        if (fetch) {
+            fetch(key, fetcher);
+        }
+    }
+
+    /**
+     * 在后台获取 token，缓存仍然有效且不需要提前刷新时不做任何操作
+     */
+    public void prefetch(String key, Fetcher fetcher) {
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                mEntries.put(key, entry);
+            }
+            if (entry.mWaiters != null
+                    || (entry.mToken != null && mClock.nowMs() < entry.mExpireAtMs - mRefreshAheadMs)) {
+                return;
+            }
+            entry.mWaiters = new ArrayList<>();
+        }
+        fetch(key, fetcher);
+    }
+
+    /**
+     * 丢弃缓存的 token，例如加入房间时提示 token 无效或者已过期，进行中的请求不受影响
+     */
+    public synchronized void invalidate(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            entry.mToken = null;
+        }
+    }
+
+    /**
+     * @return 直接使用缓存的次数
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return 向业务服务器请求的次数
+     */
+    public synchronized long getFetchCount() {
+        return mFetchCount;
+    }
+
+    /**
+     * @return 等待已有请求、没有发出新请求的次数
+     */
+    public synchronized long getSharedCount() {
+        return mSharedCount;
+    }
+
+    /**
+     * @return token 的过期时间，单位 ms；格式不正确时返回 -1
+     */
+    public static long decodeExpireAtMs(String token) {
+        if (token == null) {
+            return -1;
+        }
+        int index = token.lastIndexOf(':');
+        if (index < 0) {
+            return -1;
+        }
+        byte[] roomAccess = decodeUrlSafeBase64(token.substring(index + 1).trim());
+        if (roomAccess == null) {
+            return -1;
+        }
+        Matcher matcher = EXPIRE_AT_PATTERN.matcher(new String(roomAccess, Charset.forName("UTF-8")));
+        if (!matcher.find()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(matcher.group(1)) * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void fetch(final String key, Fetcher fetcher) {
+        synchronized (this) {
+            mFetchCount++;
+        }
+        fetcher.fetch(new QNAppServer.Callback<String>() {
+            @Override
+            public void onSuccess(String token) {
+                long expireAtMs = decodeExpireAtMs(token);
+                List<QNAppServer.Callback<String>> waiters;
+                synchronized (RoomTokenCache.this) {
+                    Entry entry = mEntries.get(key);
+                    waiters = entry.mWaiters;
+                    entry.mWaiters = null;
+                    if (expireAtMs > 0) {
+                        entry.mToken = token;
+                        entry.mExpireAtMs = expireAtMs;
+                    }
+                }
+                for (QNAppServer.Callback<String> waiter : waiters) {
+                    waiter.onSuccess(token);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                List<QNAppServer.Callback<String>> waiters;
+                synchronized (RoomTokenCache.this) {
+                    Entry entry = mEntries.get(key);
+                    waiters = entry.mWaiters;
+                    entry.mWaiters = null;
+                }
+                for (QNAppServer.Callback<String> waiter : waiters) {
+                    waiter.onFailure(e);
+                }
+            }
+        });
+    }
+
+    private static byte[] decodeUrlSafeBase64(String text) {
+        int length = text.length();
+        while (length > 0 && text.charAt(length - 1) == '=') {
+            length--;
+        }
+        byte[] out = new byte[length * 3 / 4];
+        int buffer = 0;
+        int bits = 0;
+        int pos = 0;
+        for (int i = 0; i < length; i++) {
+            int value = base64Value(text.charAt(i));
+            if (value < 0) {
+                return null;
+            }
+            // keep the bits not yet written only
+            buffer = ((buffer << 6) | value) & 0x3FFF;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                out[pos++] = (byte) (buffer >> bits);
+            }
+        }
+        return out;
+    }
+
+    private static int base64Value(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        // accept both the url safe and the standard alphabet
+        if (c == '-' || c == '+') {
+            return 62;
+        }
+        if (c == '_' || c == '/') {
+            return 63;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,306 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import com.qiniu.droid.rtc.QNRemoteTrack;
+import com.qiniu.droid.rtc.QNRemoteVideoTrack;
+import com.qiniu.droid.rtc.QNTrackProfile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 根据远端视频窗口的像素尺寸自动选择大小流的 profile
+ *
+ * 大小流中 HIGH、MEDIUM、LOW 的分辨率依次为发布分辨率的 1、1/2、1/4，对每个开启了大小流的远端视频 track，
+ * 选择足以覆盖窗口的最小一层；窗口不可见时选择 LOW。布局变化时调用 {@link #requestEvaluation(long)}，
+ * 连续的布局变化合并为 debounceMs 之后的一次计算，profile 未变化的 track 不会重复设置。
+ * 被取消订阅的 track（例如 {@link VideoSubscriptionManager} 取消订阅不可见用户的视频）不再设置 profile，直到重新订阅。
+ *
+ * 同时根据各层的估算码率统计相对于全部订阅 HIGH 节省的下行码率，取消订阅的 track 按照节省全部码率统计。窗口尺寸通过 {@link TileSizeProvider} 注入，
+ * 时间由调用方传入，不依赖 Android。非线程安全，应在主线程使用。
+ */
+public class SimulcastProfileSelector {
+
+    public static final long DEFAULT_DEBOUNCE_MS = 300;
+
+    // resolution of the medium and low layers is 1/2 and 1/4 of the high one
+    private static final int MEDIUM_SCALE_DOWN = 2;
+    private static final int LOW_SCALE_DOWN = 4;
+    // estimated bitrate of the medium and low layers relative to the high one, bitrate grows slower than pixel count
+    private static final float MEDIUM_BITRATE_RATIO = 0.3f;
+    private static final float LOW_BITRATE_RATIO = 0.1f;
+    // a layer slightly smaller than the tile is still adequate, the upscaling is hardly visible
+    private static final float MIN_COVERAGE = 0.8f;
+
+    public interface TileSizeProvider {
+        /**
+         * @return 用户窗口的像素宽度，窗口不可见时返回 0
+         */
+        int getTileWidth(String userId);
+
+        /**
+         * @return 用户窗口的像素高度，窗口不可见时返回 0
+         */
+        int getTileHeight(String userId);
+    }
+
+    private static class TrackState {
+        final String mUserId;
+        final QNRemoteVideoTrack mTrack;
+        // null before the first evaluation, the track is received at its default profile
+        QNTrackProfile mProfile;
+        boolean mUnsubscribed;
+
+        TrackState(String userId, QNRemoteVideoTrack track) {
+            mUserId = userId;
+            mTrack = track;
+        }
+    }
+
+    private final TileSizeProvider mTileSizeProvider;
+    private final int mHighLongSide;
+    private final int mHighShortSide;
+    private final int mHighBitrateKbps;
+    private final long mDebounceMs;
+    // map trackId to state
+    private final Map<String, TrackState> mTracks = new LinkedHashMap<>();
+    // -1 when no evaluation is pending
+    private long mEvaluateAtMs = -1;
+
+    private int mSavedKbps;
+    private double mSavedKbit;
+    private long mAccountedAtMs = -1;
+    private long mSwitchCount;
+
+    /**
+     * @param highWidth       大流的发布宽度，远端的实际分辨率未知时可以使用本地的编码配置估算
+     * @param highHeight      大流的发布高度
+     * @param highBitrateKbps 大流的发布码率，用于估算节省的下行码率
+     */
+    public SimulcastProfileSelector(TileSizeProvider tileSizeProvider, int highWidth, int highHeight, int highBitrateKbps) {
+        this(tileSizeProvider, highWidth, highHeight, highBitrateKbps, DEFAULT_DEBOUNCE_MS);
+    }
+
+    /**
+     * @param debounceMs 布局变化后等待多久再计算，期间新的布局变化会重新计时
+     */
+    public SimulcastProfileSelector(TileSizeProvider tileSizeProvider, int highWidth, int highHeight, int highBitrateKbps,
+                                    long debounceMs) {
+        if (highWidth <= 0 || highHeight <= 0 || highBitrateKbps < 0 || debounceMs < 0) {
+            throw new IllegalArgumentException("invalid simulcast parameters");
+        }
+        mTileSizeProvider = tileSizeProvider;
+        mHighLongSide = Math.max(highWidth, highHeight);
+        mHighShortSide = Math.min(highWidth, highHeight);
+        mHighBitrateKbps = highBitrateKbps;
+        mDebounceMs = debounceMs;
+    }
+
+    /**
+     * 选择足以覆盖窗口的最小一层，长边与短边分别比较，与窗口和视频的方向无关
+     *
+     * @return 窗口尺寸不大于 0 时返回 LOW
+     */
+    public QNTrackProfile selectProfile(int tileWidth, int tileHeight) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            return QNTrackProfile.LOW;
+        }
+        int tileLongSide = Math.max(tileWidth, tileHeight);
+        int tileShortSide = Math.min(tileWidth, tileHeight);
+        if (covers(LOW_SCALE_DOWN, tileLongSide, tileShortSide)) {
+            return QNTrackProfile.LOW;
+        }
+        if (covers(MEDIUM_SCALE_DOWN, tileLongSide, tileShortSide)) {
+            return QNTrackProfile.MEDIUM;
+        }
+        return QNTrackProfile.HIGH;
+    }
+
+    /**
+     * 远端视频 track 订阅成功时调用，未开启大小流的 track 会被忽略
+     */
+    public void onVideoTracksSubscribed(String userId, List<? extends QNRemoteVideoTrack> videoTracks, long nowMs) {
+        boolean added = false;
+        for (QNRemoteVideoTrack track : videoTracks) {
+            if (!track.isMultiProfileEnabled()) {
+                continue;
+            }
+            // a track subscribed again is a new instance, the profile has to be set again
+            removeTrack(track.getTrackID(), nowMs);
+            mTracks.put(track.getTrackID(), new TrackState(userId, track));
+            added = true;
+        }
+        if (added) {
+            requestEvaluation(nowMs);
+        }
+    }
+
+    /**
+     * 远端 track 取消发布时调用，非视频 track 会被忽略
+     */
+    public void onTracksUnpublished(List<? extends QNRemoteTrack> tracks, long nowMs) {
+        for (QNRemoteTrack track : tracks) {
+            removeTrack(track.getTrackID(), nowMs);
+        }
+    }
+
+    /**
+     * 远端视频 track 被取消订阅时调用，之后不再为其设置 profile
+     */
+    public void onVideoTracksUnsubscribed(List<? extends QNRemoteTrack> tracks, long nowMs) {
+        account(nowMs);
+        for (QNRemoteTrack track : tracks) {
+            TrackState state = mTracks.get(track.getTrackID());
+            if (state == null || state.mUnsubscribed) {
+                continue;
+            }
+            mSavedKbps += mHighBitrateKbps - savedKbpsOf(state);
+            state.mUnsubscribed = true;
+        }
+    }
+
+    /**
+     * 重新订阅远端视频 track 时调用，profile 需要重新设置；订阅成功回调中的
+     * {@link #onVideoTracksSubscribed(String, List, long)} 同样会重新设置
+     */
+    public void onVideoTracksResubscribed(List<? extends QNRemoteTrack> tracks, long nowMs) {
+        account(nowMs);
+        boolean resubscribed = false;
+        for (QNRemoteTrack track : tracks) {
+            TrackState state = mTracks.get(track.getTrackID());
+            if (state == null || !state.mUnsubscribed) {
+                continue;
+            }
+            mSavedKbps -= mHighBitrateKbps;
+            state.mUnsubscribed = false;
+            // received at its default profile again
+            state.mProfile = null;
+            resubscribed = true;
+        }
+        if (resubscribed) {
+            requestEvaluation(nowMs);
+        }
+    }
+
+    public void removeUser(String userId, long nowMs) {
+        account(nowMs);
+        for (Iterator<TrackState> it = mTracks.values().iterator(); it.hasNext(); ) {
+            TrackState state = it.next();
+            if (state.mUserId.equals(userId)) {
+                mSavedKbps -= savedKbpsOf(state);
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        mTracks.clear();
+        mEvaluateAtMs = -1;
+        mSavedKbps = 0;
+        mAccountedAtMs = -1;
+    }
+
+    /**
+     * 布局变化时调用，debounceMs 内没有新的变化时由 {@link #update(long)} 重新计算
+     */
+    public void requestEvaluation(long nowMs) {
+        mEvaluateAtMs = nowMs + mDebounceMs;
+    }
+
+    /**
+     * 到达计算时间时为每个 track 重新选择 profile
+     *
+     * @return 是否进行了计算
+     */
+    public boolean update(long nowMs) {
+        if (mEvaluateAtMs < 0 || nowMs < mEvaluateAtMs) {
+            return false;
+        }
+        mEvaluateAtMs = -1;
+        account(nowMs);
+        for (TrackState state : mTracks.values()) {
+            if (state.mUnsubscribed) {
+                continue;
+            }
+            QNTrackProfile profile = selectProfile(mTileSizeProvider.getTileWidth(state.mUserId),
+                    mTileSizeProvider.getTileHeight(state.mUserId));
+            if (profile == state.mProfile) {
+                continue;
+            }
+            mSavedKbps += savedKbpsOf(profile) - savedKbpsOf(state.mProfile);
+            if (state.mProfile != null) {
+                mSwitchCount++;
+            }
+            state.mProfile = profile;
+            state.mTrack.setProfile(profile);
+        }
+        return true;
+    }
+
+    /**
+     * @return 下一次计算的时间，没有待进行的计算时返回 -1
+     */
+    public long getEvaluateAtMs() {
+        return mEvaluateAtMs;
+    }
+
+    /**
+     * @return 当前估算节省的下行码率，单位 kbps
+     */
+    public int getEstimatedSavedKbps() {
+        return mSavedKbps;
+    }
+
+    /**
+     * @return 累计估算节省的下行流量，单位 kbit
+     */
+    public double getEstimatedSavedKbit(long nowMs) {
+        account(nowMs);
+        return mSavedKbit;
+    }
+
+    /**
+     * @return 因窗口尺寸变化而切换 profile 的次数，不包含首次设置
+     */
+    public long getSwitchCount() {
+        return mSwitchCount;
+    }
+
+    private boolean covers(int scaleDown, int tileLongSide, int tileShortSide) {
+        return mHighLongSide / scaleDown >= tileLongSide * MIN_COVERAGE
+                && mHighShortSide / scaleDown >= tileShortSide * MIN_COVERAGE;
+    }
+
+    private int savedKbpsOf(TrackState state) {
+        return state.mUnsubscribed ? mHighBitrateKbps : savedKbpsOf(state.mProfile);
+    }
+
+    private int savedKbpsOf(QNTrackProfile profile) {
+        if (profile == QNTrackProfile.LOW) {
+            return Math.round(mHighBitrateKbps * (1 - LOW_BITRATE_RATIO));
+        }
+        if (profile == QNTrackProfile.MEDIUM) {
+            return Math.round(mHighBitrateKbps * (1 - MEDIUM_BITRATE_RATIO));
+        }
+        return 0;
+    }
+
+    private void removeTrack(String trackId, long nowMs) {
+        TrackState state = mTracks.remove(trackId);
+        if (state != null) {
+            account(nowMs);
+            mSavedKbps -= savedKbpsOf(state);
+        }
+    }
+
+    // integrate the saved bitrate up to now before it changes
+    private void account(long nowMs) {
+        if (mAccountedAtMs >= 0 && nowMs > mAccountedAtMs) {
+            mSavedKbit += mSavedKbps * (nowMs - mAccountedAtMs) / 1000.0;
+        }
+        if (nowMs > mAccountedAtMs) {
+            mAccountedAtMs = nowMs;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 房间内用户的说话活跃度排序
+ *
+ * 每个用户的电平（dBFS）映射为 [0, 1] 的活跃度后做指数平滑：开始说话时快速上升，停止说话后缓慢衰减，
+ * 避免字间停顿导致排序频繁变化。长时间没有电平更新的用户按照静音衰减。
+ * 不依赖 Android，时间由调用方传入。线程安全。
+ */
+public class SpeakerActivityRanking {
+
+    // levels at or below this are silence, at or above the upper bound are full activity
+    public static final float SILENT_LEVEL_DBFS = -60;
+    public static final float LOUD_LEVEL_DBFS = -20;
+
+    private static final float ATTACK_TIME_CONSTANT_MS = 150;
+    private static final float RELEASE_TIME_CONSTANT_MS = 1500;
+    private static final long STALE_MS = 500;
+
+    private static class Entry {
+        final String mUserId;
+        float mScore;
+        float mSortScore;
+        long mLastUpdateMs;
+
+        Entry(String userId, long nowMs) {
+            mUserId = userId;
+            mLastUpdateMs = nowMs;
+        }
+    }
+
+    private static final Comparator<Entry> BY_SCORE_DESCENDING = (o1, o2) -> Float.compare(o2.mSortScore, o1.mSortScore);
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private final List<Entry> mSorted = new ArrayList<>();
+
+    /**
+     * 更新用户的电平
+     *
+     * @param levelDb 电平，单位 dBFS，例如 {@link AudioLevelMeter#getRmsDb()}
+     * @param nowMs   单调时钟，单位 ms
+     */
+    public synchronized void update(String userId, float levelDb, long nowMs) {
+        Entry entry = mEntries.get(userId);
+        if (entry == null) {
+            entry = new Entry(userId, nowMs);
+            mEntries.put(userId, entry);
+        }
+        float activity = (levelDb - SILENT_LEVEL_DBFS) / (LOUD_LEVEL_DBFS - SILENT_LEVEL_DBFS);
+        activity = Math.max(0, Math.min(1, activity));
+        smooth(entry, activity, nowMs);
+    }
+
+    public synchronized void remove(String userId) {
+        mEntries.remove(userId);
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * @return 用户当前的活跃度，[0, 1]，未知用户返回 0
+     */
+    public synchronized float getScore(String userId, long nowMs) {
+        Entry entry = mEntries.get(userId);
+        return entry == null ? 0 : currentScore(entry, nowMs);
+    }
+
+    /**
+     * 按照活跃度由高到低输出用户 id
+     *
+     * @param minScore 活跃度低于此值的用户不输出
+     * @param out      输出列表，会先被清空
+     */
+    public synchronized void getRanking(float minScore, long nowMs, List<String> out) {
+        out.clear();
+        mSorted.clear();
+        for (Entry entry : mEntries.values()) {
+            entry.mSortScore = currentScore(entry, nowMs);
+            if (entry.mSortScore >= minScore) {
+                mSorted.add(entry);
+            }
+        }
+        Collections.sort(mSorted, BY_SCORE_DESCENDING);
+        for (Entry entry : mSorted) {
+            out.add(entry.mUserId);
+        }
+        mSorted.clear();
+    }
+
+    /**
+     * 电平正常按照固定间隔更新，超过 STALE_MS 没有更新时（例如 track 被取消发布）将之后的时间按照静音衰减
+     */
+    private static float currentScore(Entry entry, long nowMs) {
+        long staleMs = nowMs - entry.mLastUpdateMs - STALE_MS;
+        if (staleMs <= 0) {
+            return entry.mScore;
+        }
+        return entry.mScore * (float) Math.exp(-staleMs / RELEASE_TIME_CONSTANT_MS);
+    }
+
+    private static void smooth(Entry entry, float activity, long nowMs) {
+        // continue from the decayed score if the user has been stale, the stale part is already accounted for
+        float score = currentScore(entry, nowMs);
+        long elapsedMs = Math.min(Math.max(0, nowMs - entry.mLastUpdateMs), STALE_MS);
+        entry.mLastUpdateMs = Math.max(entry.mLastUpdateMs, nowMs);
+        float timeConstant = activity > score ? ATTACK_TIME_CONSTANT_MS : RELEASE_TIME_CONSTANT_MS;
+        // a first update with no elapsed time still moves the score by one 10ms step
+        float alpha = 1 - (float) Math.exp(-Math.max(elapsedMs, 10) / timeConstant);
+        entry.mScore = score + (activity - score) * alpha;
+    }
+}
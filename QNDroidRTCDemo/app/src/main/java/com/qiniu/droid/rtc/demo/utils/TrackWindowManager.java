@@ -1,5 +1,6 @@
 package com.qiniu.droid.rtc.demo.utils;
 
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.View;
@@ -17,12 +18,28 @@ public class TrackWindowManager {
 
     private static final String TAG = "TrackWindowManager";
 
+    // aspect ratio of windows in grid
+    private static final float GRID_WINDOW_ASPECT = 1.0f;
+
+    public interface OnPageChangedListener {
+        /**
+         * 当前页或者总页数变化时回调，房间内的用户超过一页可显示的窗口数时分页显示
+         */
+        void onPageChanged(int pageIndex, int pageCount);
+    }
+
+    public interface OnLayoutChangedListener {
+        /**
+         * 窗口的尺寸或者可见性可能发生变化时回调，一次操作中可能回调多次
+         */
+        void onLayoutChanged();
+    }
+
     // Current userId.
     private final String mCurrentUserId;
     // Screen resolution.
     private final int mScreenWidth;
-    @SuppressWarnings("all")
-    private int mScreenHeight;
+    private final int mScreenHeight;
     // Screen density.
     private final float mDensity;
     // QNRTCEngine instance.
@@ -31,10 +48,28 @@ public class TrackWindowManager {
     private final UserTrackView mTrackFullScreenWin;
     // TrackView item in grid.
     private final List<UserTrackView> mTrackCandidateWins;
-    // Map userId to TrackView.
-    private final MyHashMap<String, UserTrackView> mUserWindowMap = new MyHashMap<>();
+    // Map userId to TrackView, users of the current page only.
+    private final OrderedRegistry<String, UserTrackView> mUserWindowMap = new OrderedRegistry<>();
+    // Map userId to tracks, all users in the room.
+    private final OrderedRegistry<String, List<QNTrack>> mUserTracks = new OrderedRegistry<>();
+    // Users displayed in one page, equals to the number of windows in grid.
+    private final int mPageSize;
+    private int mPageIndex;
+    private int mPageCount = 1;
+    private OnPageChangedListener mOnPageChangedListener;
+    private OnLayoutChangedListener mOnLayoutChangedListener;
+    // Geometry of 1 ~ mPageSize windows in grid.
+    private final GridLayoutTable mGridLayoutTable;
+    // Flag, skip layout while windows of a page are being rebound.
+    private boolean mLayoutDeferred;
     // Flag, Windows mode p2p, otherwise multi user.
     private Boolean mTrackWindowP2PMode = null;
+    // Flag, switch the full screen window to the active speaker automatically.
+    private boolean mActiveSpeakerMode;
+    // Decide the active speaker from the speaker activity of users.
+    private final ActiveSpeakerSelector mActiveSpeakerSelector;
+    // Users ranked by speaker activity, reused between rounds.
+    private final List<String> mRankedSpeakers = new ArrayList<>();
 
     public TrackWindowManager(String currentUserId, int screenWidth, int screenHeight, float density
             , QNRTCClient client, UserTrackView trackFullScreenWin, List<UserTrackView> trackCandidateWins) {
@@ -45,6 +80,10 @@ public class TrackWindowManager {
         mClient = client;
         mTrackFullScreenWin = trackFullScreenWin;
         mTrackCandidateWins = new ArrayList<>(trackCandidateWins);
+        mActiveSpeakerSelector = new ActiveSpeakerSelector(currentUserId);
+        mPageSize = mTrackCandidateWins.size();
+        // keep the grid within a 3:4 area on the top, so that the controls on the bottom stay uncovered
+        mGridLayoutTable = new GridLayoutTable(screenWidth, Math.min(screenHeight, screenWidth * 4 / 3), GRID_WINDOW_ASPECT, mPageSize);
 
         mTrackFullScreenWin.setZOrderMediaOverlay(false, true);
         mTrackFullScreenWin.changeViewBackgroundByPos(0);
@@ -54,21 +93,11 @@ public class TrackWindowManager {
                 Log.d(TAG, "skip for single user.");
             } else if (mUserWindowMap.size() == 2) {
                 // swap
-                switchToFullScreenWindow(mUserWindowMap.getOrderedValues(mTrackFullScreenWin).get(0));
+                switchToFullScreenWindow(mUserWindowMap.first(mTrackFullScreenWin));
             } else {
-                // exit from full screen and display all
-                if (mTrackCandidateWins.isEmpty()) {
-                    mTrackFullScreenWin.unSetUserTrack();
-                    mTrackFullScreenWin.setVisibility(View.GONE);
-                } else {
-                    UserTrackView userTrackView = mTrackCandidateWins.remove(0);
-                    switchToFullScreenWindow(userTrackView);
-                    userTrackView.changeViewBackgroundByPos(mUserWindowMap.size());
-
-                    setTrackUserWindowsVisibility(View.VISIBLE);
-                    updateTrackWindowsLayout();
-                }
+                exitFullScreenWindow();
             }
+            onFullScreenWindowSwitchedManually();
         });
 
         for (final UserTrackView view : mTrackCandidateWins) {
@@ -84,30 +113,139 @@ public class TrackWindowManager {
                     switchToFullScreenWindow(view);
                     setTrackUserWindowsVisibility(View.GONE);
                 }
+                onFullScreenWindowSwitchedManually();
             });
         }
     }
 
     public void addTrack(String userId, List<QNTrack> trackList) {
-        if (mTrackCandidateWins.size() == 0) {
-            Log.e(TAG, "There were more than 9 published users in the room, with no unUsedWindow to draw.");
-            return;
+        List<QNTrack> userTracks = mUserTracks.get(userId);
+        if (userTracks == null) {
+            userTracks = new ArrayList<>();
+            mUserTracks.put(userId, userTracks, userId.equals(mCurrentUserId));
+        }
+        // tracks subscribed again, e.g. video unsubscribed while the window was hidden, replace the known ones
+        List<QNTrack> knownTracks = new ArrayList<>();
+        for (QNTrack track : trackList) {
+            for (QNTrack userTrack : userTracks) {
+                if (userTrack.getTrackID().equals(track.getTrackID())) {
+                    knownTracks.add(userTrack);
+                }
+            }
         }
+        userTracks.removeAll(knownTracks);
+        userTracks.addAll(trackList);
         UserTrackView userTrackView = mUserWindowMap.get(userId);
         if (userTrackView != null) {
             // user has already displayed in screen
+            if (!knownTracks.isEmpty()) {
+                // play them again
+                userTrackView.onRemoveTrack(knownTracks);
+            }
             userTrackView.onAddTrack(trackList);
         } else {
-            // allocate new track windows
-            userTrackView = mTrackCandidateWins.remove(0);
-            mUserWindowMap.put(userId, userTrackView, userId.equals(mCurrentUserId));
-            userTrackView.setUserTrack(mClient, userId, trackList);
-            userTrackView.changeViewBackgroundByPos(mUserWindowMap.size());
+            // allocate new track windows if the user is on the current page
+            refreshPage();
+        }
+    }
 
-            userTrackView.setVisibility(View.VISIBLE);
+    /**
+     * @return 用户的窗口当前是否可见，不在当前页或者被全屏窗口隐藏时返回 false
+     */
+    public boolean isUserVisible(String userId) {
+        UserTrackView userTrackView = mUserWindowMap.get(userId);
+        return userTrackView != null && userTrackView.getVisibility() == View.VISIBLE;
+    }
 
-            // update whole layout
-            updateTrackWindowsLayout();
+    /**
+     * @return 用户窗口的像素宽度，窗口不可见时返回 0
+     */
+    public int getUserWindowWidth(String userId) {
+        UserTrackView userTrackView = mUserWindowMap.get(userId);
+        if (userTrackView == null || userTrackView.getVisibility() != View.VISIBLE) {
+            return 0;
+        }
+        int width = userTrackView.getLayoutParams().width;
+        // the full screen window matches parent
+        return width < 0 ? mScreenWidth : width;
+    }
+
+    /**
+     * @return 用户窗口的像素高度，窗口不可见时返回 0
+     */
+    public int getUserWindowHeight(String userId) {
+        UserTrackView userTrackView = mUserWindowMap.get(userId);
+        if (userTrackView == null || userTrackView.getVisibility() != View.VISIBLE) {
+            return 0;
+        }
+        int height = userTrackView.getLayoutParams().height;
+        return height < 0 ? mScreenHeight : height;
+    }
+
+    public void setOnLayoutChangedListener(OnLayoutChangedListener listener) {
+        mOnLayoutChangedListener = listener;
+    }
+
+    public void setOnPageChangedListener(OnPageChangedListener listener) {
+        mOnPageChangedListener = listener;
+    }
+
+    public int getPageIndex() {
+        return mPageIndex;
+    }
+
+    /**
+     * 本地用户固定显示在每一页，其余用户按照加入顺序分页
+     */
+    public int getPageCount() {
+        return GridPagination.getPageCount(mUserTracks.size(), mPageSize, isCurrentUserPinned());
+    }
+
+    /**
+     * 切换到指定页，不在该页的用户停止渲染并释放窗口
+     */
+    public void setPageIndex(int pageIndex) {
+        if (pageIndex < 0 || pageIndex >= getPageCount() || pageIndex == mPageIndex) {
+            return;
+        }
+        Log.d(TAG, "switch to page " + pageIndex);
+        mPageIndex = pageIndex;
+        refreshPage();
+    }
+
+    /**
+     * 切换到下一页，最后一页之后回到第一页
+     */
+    public void nextPage() {
+        setPageIndex((mPageIndex + 1) % getPageCount());
+    }
+
+    /**
+     * 开启后根据说话活跃度自动将主讲人切换到全屏窗口，需要定时调用 {@link #onSpeakerActivity(SpeakerActivityRanking, long)}
+     */
+    public void setActiveSpeakerMode(boolean enabled) {
+        mActiveSpeakerMode = enabled;
+        mActiveSpeakerSelector.reset();
+    }
+
+    /**
+     * 以各用户当前的说话活跃度做一轮主讲人选择，主讲人变化时只做一次窗口交换与布局
+     *
+     * @param nowMs 单调时钟，与更新 ranking 时使用的时钟一致
+     */
+    public void onSpeakerActivity(SpeakerActivityRanking ranking, long nowMs) {
+        if (!mActiveSpeakerMode) {
+            return;
+        }
+        ranking.getRanking(0, nowMs, mRankedSpeakers);
+        for (String userId : mRankedSpeakers) {
+            // the ranking may still hold users who left, or whose tracks are not added yet
+            if (mUserTracks.get(userId) != null) {
+                mActiveSpeakerSelector.setLevel(userId, ranking.getScore(userId, nowMs));
+            }
+        }
+        if (mActiveSpeakerSelector.evaluate(nowMs)) {
+            switchToActiveSpeaker(mActiveSpeakerSelector.getActiveSpeaker());
         }
     }
 
@@ -119,30 +257,108 @@ public class TrackWindowManager {
     }
 
     public void removeTrack(String userId, List<QNTrack> trackList) {
-        UserTrackView remoteVideoView = mUserWindowMap.get(userId);
-        if (remoteVideoView == null) {
+        List<QNTrack> userTracks = mUserTracks.get(userId);
+        if (userTracks == null) {
             return;
         }
-        boolean trackRemain = remoteVideoView.onRemoveTrack(trackList);
+        userTracks.removeAll(trackList);
+        UserTrackView remoteVideoView = mUserWindowMap.get(userId);
+        if (remoteVideoView != null) {
+            remoteVideoView.onRemoveTrack(trackList);
+        }
         if (userId.equals(mCurrentUserId)) {
             // always show myself in screen
             return;
         }
-        if (!trackRemain) {
+        if (userTracks.isEmpty()) {
             // check, if no more tracks for this user. remove it
-            removeTrackWindow(userId);
+            mUserTracks.remove(userId);
+            mActiveSpeakerSelector.removeUser(userId);
+            removeTrackWindow(userId, false);
+            // users of the following pages move forward
+            refreshPage();
         }
     }
 
-    private void removeTrackWindow(String remoteUserId) {
+    /**
+     * 根据当前页重新分配窗口：释放不在当前页的用户的窗口，为当前页中尚未显示的用户分配窗口，最后统一布局一次
+     */
+    private void refreshPage() {
+        int pageCount = getPageCount();
+        mPageIndex = Math.min(mPageIndex, pageCount - 1);
+        List<String> pageUsers = getPageUsers(mPageIndex);
+
+        List<String> offPageUsers = new ArrayList<>();
+        for (String userId : mUserWindowMap.keys()) {
+            if (!pageUsers.contains(userId)) {
+                offPageUsers.add(userId);
+            }
+        }
+        if (Boolean.FALSE.equals(mTrackWindowP2PMode) && offPageUsers.contains(mTrackFullScreenWin.getUserId())) {
+            // the page changes under the user in full screen, display all users of the new page instead
+            exitFullScreenWindow();
+        }
+        mLayoutDeferred = true;
+        for (String userId : offPageUsers) {
+            removeTrackWindow(userId, true);
+        }
+        for (String userId : pageUsers) {
+            if (mUserWindowMap.get(userId) == null) {
+                addTrackWindow(userId);
+            }
+        }
+        mLayoutDeferred = false;
+        updateTrackWindowsLayout();
+
+        if (!offPageUsers.isEmpty() || pageCount != mPageCount) {
+            mPageCount = pageCount;
+            if (mOnPageChangedListener != null) {
+                mOnPageChangedListener.onPageChanged(mPageIndex, pageCount);
+            }
+        }
+    }
+
+    private List<String> getPageUsers(int pageIndex) {
+        return GridPagination.getPageUsers(mUserTracks.keys(), isCurrentUserPinned() ? mCurrentUserId : null, mPageSize, pageIndex);
+    }
+
+    private boolean isCurrentUserPinned() {
+        return mUserTracks.get(mCurrentUserId) != null;
+    }
+
+    private void addTrackWindow(String userId) {
+        if (mTrackCandidateWins.isEmpty()) {
+            Log.e(TAG, "no unUsedWindow to draw " + userId);
+            return;
+        }
+        // allocate new track windows
+        UserTrackView userTrackView = mTrackCandidateWins.remove(0);
+        mUserWindowMap.put(userId, userTrackView, userId.equals(mCurrentUserId));
+        userTrackView.setUserTrack(mClient, userId, new ArrayList<>(mUserTracks.get(userId)));
+        userTrackView.changeViewBackgroundByPos(mUserWindowMap.size());
+
+        userTrackView.setVisibility(View.VISIBLE);
+
+        // update whole layout
+        updateTrackWindowsLayout();
+    }
+
+    /**
+     * @param stopRendering 用户仍在房间内、仅是离开当前页时需要停止渲染
+     */
+    private void removeTrackWindow(String remoteUserId, boolean stopRendering) {
         UserTrackView remoteVideoView = mUserWindowMap.remove(remoteUserId);
         if (remoteVideoView == null) {
             return;
         }
-        remoteVideoView.reset();
+        if (stopRendering) {
+            remoteVideoView.unSetUserTrack();
+        } else {
+            remoteVideoView.reset();
+        }
         if (mTrackFullScreenWin == remoteVideoView) {
             if (mUserWindowMap.size() == 1) {
-                switchToFullScreenWindow(mUserWindowMap.getOrderedValues().get(0));
+                switchToFullScreenWindow(mUserWindowMap.first());
             } else {
                 mTrackFullScreenWin.setVisibility(View.GONE);
                 updateTrackWindowsLayout();
@@ -155,17 +371,17 @@ public class TrackWindowManager {
     }
 
     private void updateTrackWindowsLayout() {
-        if (mUserWindowMap.isEmpty()) {
+        if (mLayoutDeferred || mUserWindowMap.isEmpty()) {
             return;
         }
-        updateTrackWindowMode(mUserWindowMap.size() <= 2);
+        updateTrackWindowMode(mUserTracks.size() <= 2);
 
-        List<UserTrackView> userWindows = mUserWindowMap.getOrderedValues(mTrackFullScreenWin);
-        int userCountInGridWindow = userWindows.size();
-        for (int i = 0; i < userCountInGridWindow; i++) {
-            UserTrackView trackView = userWindows.get(i);
-            setTargetWindowParams(userCountInGridWindow, i, trackView);
+        int userCountInGridWindow = mUserWindowMap.size() - (mUserWindowMap.containsValue(mTrackFullScreenWin) ? 1 : 0);
+        int i = 0;
+        for (UserTrackView trackView : mUserWindowMap.values(mTrackFullScreenWin)) {
+            setTargetWindowParams(userCountInGridWindow, i++, trackView);
         }
+        notifyLayoutChanged();
     }
 
     private void switchToFullScreenWindow(UserTrackView userTrackView) {
@@ -195,14 +411,62 @@ public class TrackWindowManager {
             // recycle
             mTrackCandidateWins.add(userTrackView);
         }
+        // users swapped windows of different sizes
+        notifyLayoutChanged();
+    }
+
+    private void switchToActiveSpeaker(String userId) {
+        UserTrackView speakerWindow = mUserWindowMap.get(userId);
+        // only follow the speaker while someone is in full screen, displaying all users is a manual choice
+        if (speakerWindow == null || speakerWindow == mTrackFullScreenWin || !mTrackFullScreenWin.isTaken()) {
+            return;
+        }
+        Log.d(TAG, "switch active speaker " + userId + " to full screen");
+        boolean othersHidden = speakerWindow.getVisibility() != View.VISIBLE;
+        switchToFullScreenWindow(speakerWindow);
+        if (othersHidden) {
+            // the previous full screen user now takes the speaker's window, keep it hidden like the others
+            speakerWindow.setVisibility(View.GONE);
+            notifyLayoutChanged();
+        } else {
+            updateTrackWindowsLayout();
+        }
+    }
+
+    /**
+     * exit from full screen and display all
+     */
+    private void exitFullScreenWindow() {
+        if (mTrackCandidateWins.isEmpty()) {
+            mTrackFullScreenWin.unSetUserTrack();
+            mTrackFullScreenWin.setVisibility(View.GONE);
+        } else {
+            UserTrackView userTrackView = mTrackCandidateWins.remove(0);
+            switchToFullScreenWindow(userTrackView);
+            userTrackView.changeViewBackgroundByPos(mUserWindowMap.size());
+
+            setTrackUserWindowsVisibility(View.VISIBLE);
+            updateTrackWindowsLayout();
+        }
+    }
+
+    private void onFullScreenWindowSwitchedManually() {
+        // keep the user's choice for a while before following the active speaker again
+        String userId = mTrackFullScreenWin.isTaken() ? mTrackFullScreenWin.getUserId() : null;
+        mActiveSpeakerSelector.setActiveSpeaker(userId, SystemClock.elapsedRealtime());
     }
 
     private void setTrackUserWindowsVisibility(int visibility) {
-        List<UserTrackView> userWindows = mUserWindowMap.getOrderedValues(mTrackFullScreenWin);
-        for (int i = 0; i < userWindows.size(); i++) {
-            UserTrackView trackView = userWindows.get(i);
+        for (UserTrackView trackView : mUserWindowMap.values(mTrackFullScreenWin)) {
             trackView.setVisibility(visibility);
         }
+        notifyLayoutChanged();
+    }
+
+    private void notifyLayoutChanged() {
+        if (mOnLayoutChangedListener != null) {
+            mOnLayoutChangedListener.onLayoutChanged();
+        }
     }
 
     private void updateTrackWindowMode(boolean trackWindowP2PMode) {
@@ -216,7 +480,7 @@ public class TrackWindowManager {
             Log.d(TAG, "switch to p2p mode");
             // relayout. switch to p2p mode. put first user to full screen.
             // ( 0 user -> 1 user || 3 users -> 2 users)
-            switchToFullScreenWindow(mUserWindowMap.getOrderedValues().get(0));
+            switchToFullScreenWindow(mUserWindowMap.first());
         } else {
             Log.d(TAG, "switch to multi user mode");
             // relayout. switch to multi user mode.
@@ -233,63 +497,17 @@ public class TrackWindowManager {
     }
 
     private void setTargetWindowParams(final int userCount, final int targetPos, final UserTrackView targetWindow) {
-        switch (userCount) {
-            case 1:
-                if (targetPos == 0) {
-                    updateLayoutParams(targetWindow, (int) (120 * mDensity + 0.5f), (int) (160 * mDensity + 0.5f), 0, 0, Gravity.TOP | Gravity.END);
-                }
-                break;
-            case 2:
-                // never in this case.
-                break;
-            case 3:
-                if (targetPos == 0) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 2, mScreenWidth / 2, 0, 0, -1);
-                } else if (targetPos == 1) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 2, mScreenWidth / 2, mScreenWidth / 2, 0, -1);
-                } else {
-                    updateLayoutParams(targetWindow, mScreenWidth / 2, mScreenWidth / 2, 0, mScreenWidth / 2, Gravity.CENTER_HORIZONTAL);
-                }
-                break;
-            case 4:
-                if (targetPos == 0) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 2, mScreenWidth / 2, 0, 0, -1);
-                } else if (targetPos == 1) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 2, mScreenWidth / 2, mScreenWidth / 2, 0, -1);
-                } else if (targetPos == 2) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 2, mScreenWidth / 2, 0, mScreenWidth / 2, Gravity.START);
-                } else {
-                    updateLayoutParams(targetWindow, mScreenWidth / 2, mScreenWidth / 2, mScreenWidth / 2, mScreenWidth / 2, -1);
-                }
-                break;
-            case 5:
-            case 6:
-            case 7:
-            case 8:
-            case 9:
-                if (targetPos == 0) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 3, mScreenWidth / 3, 0, 0, -1);
-                } else if (targetPos == 1) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 3, mScreenWidth / 3, mScreenWidth / 3, 0, -1);
-                } else if (targetPos == 2) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 3, mScreenWidth / 3, mScreenWidth * 2 / 3, 0, Gravity.END);
-                } else if (targetPos == 3) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 3, mScreenWidth / 3, 0, mScreenWidth / 3, -1);
-                } else if (targetPos == 4) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 3, mScreenWidth / 3, mScreenWidth / 3, mScreenWidth / 3, -1);
-                } else if (targetPos == 5) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 3, mScreenWidth / 3, mScreenWidth * 2 / 3, mScreenWidth / 3, -1);
-                } else if (targetPos == 6) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 3, mScreenWidth / 3, 0, mScreenWidth * 2 / 3, -1);
-                } else if (targetPos == 7) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 3, mScreenWidth / 3, mScreenWidth / 3, mScreenWidth * 2 / 3, -1);
-                } else if (targetPos == 8) {
-                    updateLayoutParams(targetWindow, mScreenWidth / 3, mScreenWidth / 3, mScreenWidth * 2 / 3, mScreenWidth * 2 / 3, -1);
-                }
-                break;
-            default:
-                break;
+        if (userCount == 1) {
+            if (targetPos == 0) {
+                updateLayoutParams(targetWindow, (int) (120 * mDensity + 0.5f), (int) (160 * mDensity + 0.5f), 0, 0, Gravity.TOP | Gravity.END);
+            }
+            return;
         }
+        if (userCount > mGridLayoutTable.getMaxTiles()) {
+            return;
+        }
+        updateLayoutParams(targetWindow, mGridLayoutTable.getTileWidth(userCount), mGridLayoutTable.getTileHeight(userCount),
+                mGridLayoutTable.getX(userCount, targetPos), mGridLayoutTable.getY(userCount, targetPos), -1);
     }
 
     private void updateLayoutParams(UserTrackView targetView, int width, int height, int marginStart, int marginTop, int gravity) {
@@ -303,10 +521,19 @@ public class TrackWindowManager {
     }
 
     public void reset() {
-        Collection<String> users = new ArrayList<>(mUserWindowMap.keySet());
+        Collection<String> users = new ArrayList<>();
+        for (String userId : mUserWindowMap.keys()) {
+            users.add(userId);
+        }
+        mLayoutDeferred = true;
         for (String userId : users) {
-            removeTrackWindow(userId);
+            removeTrackWindow(userId, false);
         }
+        mLayoutDeferred = false;
+        mUserTracks.clear();
+        mPageIndex = 0;
+        mPageCount = 1;
         mTrackWindowP2PMode = null;
+        mActiveSpeakerSelector.reset();
     }
 }
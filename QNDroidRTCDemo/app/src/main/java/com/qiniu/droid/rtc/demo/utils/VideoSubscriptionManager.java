@@ -0,0 +1,195 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import com.qiniu.droid.rtc.QNRemoteTrack;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 根据用户窗口是否可见自动订阅、取消订阅远端视频 track
+ *
+ * 用户窗口不可见（不在当前页，或全屏模式下被隐藏）持续 hideGraceMs 后取消订阅其视频 track，停止接收与解码；
+ * 重新可见持续 showGraceMs 后重新订阅。宽限时间内的来回切换不会产生任何订阅操作。
+ * 每次 {@link #update(long)} 中需要取消订阅与重新订阅的 track 分别合并为一次调用。音频 track 始终保持订阅。
+ *
+ * 订阅操作与可见性分别通过 {@link SubscriptionClient} 与 {@link VisibilityProvider} 注入，时间由调用方传入，
+ * 不依赖 Android。非线程安全，应在主线程使用。
+ */
+public class VideoSubscriptionManager {
+
+    public static final long DEFAULT_HIDE_GRACE_MS = 3000;
+    public static final long DEFAULT_SHOW_GRACE_MS = 0;
+
+    public interface SubscriptionClient {
+        void subscribe(List<QNRemoteTrack> tracks);
+
+        void unsubscribe(List<QNRemoteTrack> tracks);
+    }
+
+    public interface VisibilityProvider {
+        boolean isVisible(String userId);
+    }
+
+    private static class UserState {
+        // a track published while the window is hidden is subscribed although the others are not
+        final List<QNRemoteTrack> mSubscribedTracks = new ArrayList<>();
+        final List<QNRemoteTrack> mUnsubscribedTracks = new ArrayList<>();
+        boolean mVisible = true;
+        long mVisibilityChangedMs;
+
+        boolean isEmpty() {
+            return mSubscribedTracks.isEmpty() && mUnsubscribedTracks.isEmpty();
+        }
+    }
+
+    private final SubscriptionClient mClient;
+    private final VisibilityProvider mVisibilityProvider;
+    private final long mHideGraceMs;
+    private final long mShowGraceMs;
+    private final Map<String, UserState> mUsers = new LinkedHashMap<>();
+    private final List<QNRemoteTrack> mToSubscribe = new ArrayList<>();
+    private final List<QNRemoteTrack> mToUnsubscribe = new ArrayList<>();
+
+    private long mUnsubscribeCount;
+    private long mResubscribeCount;
+
+    public VideoSubscriptionManager(SubscriptionClient client, VisibilityProvider visibilityProvider) {
+        this(client, visibilityProvider, DEFAULT_HIDE_GRACE_MS, DEFAULT_SHOW_GRACE_MS);
+    }
+
+    /**
+     * @param hideGraceMs 窗口不可见持续多久后取消订阅
+     * @param showGraceMs 窗口重新可见持续多久后重新订阅
+     */
+    public VideoSubscriptionManager(SubscriptionClient client, VisibilityProvider visibilityProvider,
+                                    long hideGraceMs, long showGraceMs) {
+        if (hideGraceMs < 0 || showGraceMs < 0) {
+            throw new IllegalArgumentException("grace periods must not be negative");
+        }
+        mClient = client;
+        mVisibilityProvider = visibilityProvider;
+        mHideGraceMs = hideGraceMs;
+        mShowGraceMs = showGraceMs;
+    }
+
+    /**
+     * 远端视频 track 订阅成功时调用，包括由本类发起的重新订阅
+     */
+    public void onVideoTracksSubscribed(String userId, List<? extends QNRemoteTrack> videoTracks, long nowMs) {
+        if (videoTracks.isEmpty()) {
+            return;
+        }
+        UserState state = mUsers.get(userId);
+        if (state == null) {
+            state = new UserState();
+            state.mVisibilityChangedMs = nowMs;
+            mUsers.put(userId, state);
+        }
+        for (QNRemoteTrack track : videoTracks) {
+            removeTrack(state.mSubscribedTracks, track.getTrackID());
+            removeTrack(state.mUnsubscribedTracks, track.getTrackID());
+            // e.g. a track published while the window is hidden, it is unsubscribed by the next update
+            state.mSubscribedTracks.add(track);
+        }
+    }
+
+    /**
+     * 远端 track 取消发布时调用，非视频 track 会被忽略
+     */
+    public void onTracksUnpublished(String userId, List<? extends QNRemoteTrack> tracks) {
+        UserState state = mUsers.get(userId);
+        if (state == null) {
+            return;
+        }
+        for (QNRemoteTrack track : tracks) {
+            removeTrack(state.mSubscribedTracks, track.getTrackID());
+            removeTrack(state.mUnsubscribedTracks, track.getTrackID());
+        }
+        if (state.isEmpty()) {
+            mUsers.remove(userId);
+        }
+    }
+
+    public void removeUser(String userId) {
+        mUsers.remove(userId);
+    }
+
+    public void clear() {
+        mUsers.clear();
+    }
+
+    /**
+     * 检查所有用户的可见性，对宽限时间已满的用户执行订阅或取消订阅
+     */
+    public void update(long nowMs) {
+        for (Map.Entry<String, UserState> entry : mUsers.entrySet()) {
+            UserState state = entry.getValue();
+            boolean visible = mVisibilityProvider.isVisible(entry.getKey());
+            if (visible != state.mVisible) {
+                state.mVisible = visible;
+                state.mVisibilityChangedMs = nowMs;
+            }
+            long stableMs = nowMs - state.mVisibilityChangedMs;
+            if (!visible && !state.mSubscribedTracks.isEmpty() && stableMs >= mHideGraceMs) {
+                move(state.mSubscribedTracks, state.mUnsubscribedTracks, mToUnsubscribe);
+            } else if (visible && !state.mUnsubscribedTracks.isEmpty() && stableMs >= mShowGraceMs) {
+                move(state.mUnsubscribedTracks, state.mSubscribedTracks, mToSubscribe);
+            }
+        }
+        if (!mToUnsubscribe.isEmpty()) {
+            mUnsubscribeCount += mToUnsubscribe.size();
+            mClient.unsubscribe(new ArrayList<>(mToUnsubscribe));
+            mToUnsubscribe.clear();
+        }
+        if (!mToSubscribe.isEmpty()) {
+            mResubscribeCount += mToSubscribe.size();
+            mClient.subscribe(new ArrayList<>(mToSubscribe));
+            mToSubscribe.clear();
+        }
+    }
+
+    /**
+     * @return 用户的视频 track 当前是否全部处于订阅状态，未知用户返回 true
+     */
+    public boolean isSubscribed(String userId) {
+        UserState state = mUsers.get(userId);
+        return state == null || state.mUnsubscribedTracks.isEmpty();
+    }
+
+    /**
+     * @return 当前因不可见而取消订阅的视频 track 数
+     */
+    public int getUnsubscribedTrackCount() {
+        int count = 0;
+        for (UserState state : mUsers.values()) {
+            count += state.mUnsubscribedTracks.size();
+        }
+        return count;
+    }
+
+    public long getUnsubscribeCount() {
+        return mUnsubscribeCount;
+    }
+
+    public long getResubscribeCount() {
+        return mResubscribeCount;
+    }
+
+    private static void move(List<QNRemoteTrack> from, List<QNRemoteTrack> to, List<QNRemoteTrack> batch) {
+        batch.addAll(from);
+        to.addAll(from);
+        from.clear();
+    }
+
+    private static void removeTrack(List<QNRemoteTrack> tracks, String trackId) {
+        for (Iterator<QNRemoteTrack> it = tracks.iterator(); it.hasNext(); ) {
+            if (it.next().getTrackID().equals(trackId)) {
+                it.remove();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.qiniu.droid.rtc.demo;
+
+import com.qiniu.droid.rtc.QNTrack;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * 测试用的 Track，SDK 中的 Track 均为接口，通过动态代理实现，未用到的方法返回默认值
+ */
+public final class FakeTracks {
+
+    private FakeTracks() {
+    }
+
+    public static QNTrack videoTrack(String trackId) {
+        return track(QNTrack.class, trackId, "user", true);
+    }
+
+    public static QNTrack audioTrack(String trackId) {
+        return track(QNTrack.class, trackId, "user", false);
+    }
+
+    public static <T extends QNTrack> T track(Class<T> type, String trackId, String userId, boolean video) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            switch (method.getName()) {
+                case "getTrackID":
+                    return trackId;
+                case "getUserID":
+                    return userId;
+                case "isVideo":
+                    return video;
+                case "isAudio":
+                    return !video;
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return trackId;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+        return type.cast(proxy);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,89 @@
+package com.qiniu.droid.rtc.demo.model;
+
+import com.qiniu.droid.rtc.QNTrack;
+import com.qiniu.droid.rtc.demo.FakeTracks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 房间内 Track 数从 2 到 500 时，单个 Track 发布、取消发布与查找的耗时
+ *
+ * 不属于单元测试，通过 main 方法运行。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RTCRoomMergeOptionBenchmark {
+
+    private static final int TRACKS_PER_USER = 2;
+
+    @Param({"2", "10", "50", "100", "500"})
+    public int mTrackCount;
+
+    private RTCRoomMergeOption mOption;
+    private String mUserId;
+    private List<QNTrack> mChurnTrack;
+    private String mLookupTrackId;
+
+    @Setup
+    public void setUp() {
+        mOption = new RTCRoomMergeOption();
+        for (int i = 0; i < mTrackCount; i += TRACKS_PER_USER) {
+            String userId = "user" + i;
+            mOption.onUserJoined(userId, "");
+            List<QNTrack> tracks = new ArrayList<>();
+            for (int j = i; j < Math.min(i + TRACKS_PER_USER, mTrackCount); j++) {
+                tracks.add(FakeTracks.videoTrack("track" + j));
+            }
+            mOption.onTracksPublished(userId, tracks);
+        }
+        // a user in the middle of the room publishes and unpublishes a screen track
+        mUserId = "user" + (mTrackCount / 2 / TRACKS_PER_USER * TRACKS_PER_USER);
+        mChurnTrack = Collections.singletonList(FakeTracks.videoTrack("screen"));
+        mLookupTrackId = "track" + (mTrackCount - 1);
+    }
+
+    @Benchmark
+    public void publishAndUnpublish(Blackhole blackhole) {
+        mOption.onTracksPublished(mUserId, mChurnTrack);
+        blackhole.consume(mOption.getVideoMergeOptions());
+        mOption.onTracksUnPublished(mUserId, mChurnTrack);
+        blackhole.consume(mOption.getVideoMergeOptions());
+    }
+
+    @Benchmark
+    public RTCTrackMergeOption lookup() {
+        return mOption.getVideoMergeOptionByTrackId(mLookupTrackId);
+    }
+
+    @Benchmark
+    public List<RTCTrackMergeOption> audioTrackOptions() {
+        return mOption.getAudioTrackOptions();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RTCRoomMergeOptionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,184 @@
+package com.qiniu.droid.rtc.demo.model;
+
+import com.qiniu.droid.rtc.QNTrack;
+import com.qiniu.droid.rtc.demo.FakeTracks;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RTCRoomMergeOptionTest {
+
+    private final RTCRoomMergeOption mOption = new RTCRoomMergeOption();
+
+    @Test
+    public void publishAndUnpublishKeepIndexAndOrder() {
+        mOption.onUserJoined("u1", "");
+        mOption.onUserJoined("u2", "");
+        QNTrack v1 = FakeTracks.videoTrack("v1");
+        QNTrack v2 = FakeTracks.videoTrack("v2");
+        QNTrack v3 = FakeTracks.videoTrack("v3");
+        QNTrack a1 = FakeTracks.audioTrack("a1");
+        mOption.onTracksPublished("u1", Arrays.asList(v1, a1));
+        mOption.onTracksPublished("u2", Arrays.asList(v2, v3));
+        assertEquals(Arrays.asList("v1", "v2", "v3"), videoIds());
+        assertEquals(Collections.singletonList("a1"), audioIds());
+        assertSame(v2, mOption.getVideoMergeOptionByTrackId("v2").getTrack());
+
+        mOption.onTracksUnPublished("u2", Collections.singletonList(v2));
+        assertEquals(Arrays.asList("v1", "v3"), videoIds());
+        assertNull(mOption.getVideoMergeOptionByTrackId("v2"));
+        assertEquals(Collections.singletonList("v3"), ids(mOption.getUserMergeOptionByUserId("u2").getVideoMergeOptions()));
+
+        mOption.onTracksUnPublished("u1", Collections.singletonList(a1));
+        assertEquals(Collections.emptyList(), audioIds());
+    }
+
+    @Test
+    public void republishedTrackMovesToTheEnd() {
+        mOption.onUserJoined("u1", "");
+        QNTrack v1 = FakeTracks.videoTrack("v1");
+        mOption.onTracksPublished("u1", Arrays.asList(v1, FakeTracks.videoTrack("v2")));
+        RTCTrackMergeOption before = mOption.getVideoMergeOptionByTrackId("v1");
+        mOption.onTracksPublished("u1", Collections.singletonList(v1));
+        assertEquals(Arrays.asList("v2", "v1"), videoIds());
+        assertEquals(Arrays.asList("v2", "v1"), ids(mOption.getUserMergeOptionByUserId("u1").getVideoMergeOptions()));
+        assertNotNull(mOption.getVideoMergeOptionByTrackId("v1"));
+        assertNotSame(before, mOption.getVideoMergeOptionByTrackId("v1"));
+    }
+
+    @Test
+    public void userLeftRemovesAllItsTracks() {
+        mOption.onUserJoined("u1", "");
+        mOption.onUserJoined("u2", "");
+        mOption.onTracksPublished("u1", Arrays.asList(FakeTracks.videoTrack("v1"), FakeTracks.audioTrack("a1")));
+        mOption.onTracksPublished("u2", Arrays.asList(FakeTracks.videoTrack("v2"), FakeTracks.audioTrack("a2")));
+        mOption.onUserLeft("u1");
+        assertEquals(Collections.singletonList("v2"), videoIds());
+        assertEquals(Collections.singletonList("a2"), audioIds());
+        assertNull(mOption.getVideoMergeOptionByTrackId("v1"));
+        assertEquals(1, mOption.size());
+        assertEquals("u2", mOption.getUserMergeOptionByPosition(0).getUserID());
+
+        mOption.onUserLeft();
+        assertEquals(0, mOption.size());
+        assertEquals(Collections.emptyList(), videoIds());
+        assertEquals(Collections.emptyList(), audioIds());
+    }
+
+    @Test
+    public void tracksOfUnknownUsersAreIgnored() {
+        mOption.onTracksPublished("nobody", Collections.singletonList(FakeTracks.videoTrack("v1")));
+        assertEquals(Collections.emptyList(), videoIds());
+        assertNull(mOption.getVideoMergeOptionByTrackId("v1"));
+    }
+
+    @Test
+    public void listsAreCachedUntilChanged() {
+        mOption.onUserJoined("u1", "");
+        mOption.onTracksPublished("u1", Arrays.asList(FakeTracks.videoTrack("v1"), FakeTracks.audioTrack("a1")));
+        assertSame(mOption.getVideoMergeOptions(), mOption.getVideoMergeOptions());
+        assertSame(mOption.getAudioTrackOptions(), mOption.getAudioTrackOptions());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void videoListIsReadOnly() {
+        mOption.getVideoMergeOptions().clear();
+    }
+
+    @Test
+    public void randomOperationsMatchAReferenceModel() {
+        Random random = new Random(4);
+        // userId -> trackIds in publish order, audio tracks start with "a"
+        Map<String, List<String>> reference = new LinkedHashMap<>();
+        List<String> videoOrder = new ArrayList<>();
+        for (int step = 0; step < 2000; step++) {
+            String userId = "u" + random.nextInt(8);
+            String trackId = (random.nextInt(4) == 0 ? "a" : "v") + userId + "-" + random.nextInt(3);
+            QNTrack track = trackId.startsWith("a") ? FakeTracks.audioTrack(trackId) : FakeTracks.videoTrack(trackId);
+            switch (random.nextInt(5)) {
+                case 0:
+                    mOption.onUserJoined(userId, "");
+                    if (!reference.containsKey(userId)) {
+                        reference.put(userId, new ArrayList<>());
+                    }
+                    break;
+                case 1:
+                    mOption.onUserLeft(userId);
+                    List<String> left = reference.remove(userId);
+                    if (left != null) {
+                        videoOrder.removeAll(left);
+                    }
+                    break;
+                case 2:
+                case 3:
+                    mOption.onTracksPublished(userId, Collections.singletonList(track));
+                    if (reference.containsKey(userId)) {
+                        List<String> tracks = reference.get(userId);
+                        if (trackId.startsWith("a")) {
+                            tracks.removeIf(id -> id.startsWith("a"));
+                        } else {
+                            videoOrder.remove(trackId);
+                            videoOrder.add(trackId);
+                        }
+                        tracks.remove(trackId);
+                        tracks.add(trackId);
+                    }
+                    break;
+                default:
+                    mOption.onTracksUnPublished(userId, Collections.singletonList(track));
+                    if (reference.containsKey(userId)) {
+                        if (trackId.startsWith("a")) {
+                            reference.get(userId).removeIf(id -> id.startsWith("a"));
+                        } else {
+                            reference.get(userId).remove(trackId);
+                            videoOrder.remove(trackId);
+                        }
+                    }
+                    break;
+            }
+            assertEquals("step " + step, videoOrder, videoIds());
+            List<String> audio = new ArrayList<>();
+            for (List<String> tracks : reference.values()) {
+                for (String id : tracks) {
+                    if (id.startsWith("a")) {
+                        audio.add(id);
+                    }
+                }
+            }
+            assertEquals("step " + step, audio, audioIds());
+            for (String id : videoOrder) {
+                assertEquals(id, mOption.getVideoMergeOptionByTrackId(id).getTrackId());
+            }
+            assertEquals(reference.size(), mOption.size());
+        }
+    }
+
+    private List<String> videoIds() {
+        return ids(mOption.getVideoMergeOptions());
+    }
+
+    private List<String> audioIds() {
+        return ids(mOption.getAudioTrackOptions());
+    }
+
+    private static List<String> ids(List<RTCTrackMergeOption> options) {
+        List<String> ids = new ArrayList<>();
+        for (RTCTrackMergeOption option : options) {
+            ids.add(option.getTrackId());
+        }
+        return ids;
+    }
+}
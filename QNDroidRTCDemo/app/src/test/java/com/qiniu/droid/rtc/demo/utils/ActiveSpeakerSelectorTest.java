@@ -0,0 +1,206 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ActiveSpeakerSelectorTest {
+
+    private static final String LOCAL = "local";
+    private static final long ROUND_MS = 200;
+
+    /**
+     * 按照固定间隔回放音量序列，每一轮写入 "userId=level" 形式的音量后做一次决策
+     */
+    private static class Script {
+        final ActiveSpeakerSelector mSelector = new ActiveSpeakerSelector(LOCAL);
+        long mNowMs;
+        int mSwitches;
+
+        boolean round(String... levels) {
+            for (String level : levels) {
+                String[] pair = level.split("=");
+                mSelector.setLevel(pair[0], Float.parseFloat(pair[1]));
+            }
+            boolean switched = mSelector.evaluate(mNowMs);
+            if (switched) {
+                mSwitches++;
+            }
+            mNowMs += ROUND_MS;
+            return switched;
+        }
+
+        /**
+         * 重复 durationMs 时长，返回期间是否切换过主讲人
+         */
+        boolean repeat(long durationMs, String... levels) {
+            boolean switched = false;
+            for (long end = mNowMs + durationMs; mNowMs < end; ) {
+                switched |= round(levels);
+            }
+            return switched;
+        }
+
+        String active() {
+            return mSelector.getActiveSpeaker();
+        }
+    }
+
+    private static Script withActiveSpeaker(String userId) {
+        Script script = new Script();
+        script.repeat(1000, userId + "=0.5");
+        assertEquals(userId, script.active());
+        // let the dwell time of the first switch pass
+        script.repeat(2000, userId + "=0.5");
+        return script;
+    }
+
+    @Test
+    public void firstSpeakerIsSelectedAfterHold() {
+        Script script = new Script();
+        assertFalse(script.round("a=0.5"));
+        assertFalse(script.round("a=0.5"));
+        assertFalse(script.round("a=0.5"));
+        assertNull(script.active());
+        // led for 600 ms
+        assertTrue(script.round("a=0.5"));
+        assertEquals("a", script.active());
+        assertEquals(1, script.mSelector.getSwitchCount());
+    }
+
+    @Test
+    public void levelBelowThresholdIsNotSpeech() {
+        Script script = new Script();
+        assertFalse(script.repeat(5000, "a=0.09", "b=0.05"));
+        assertNull(script.active());
+    }
+
+    @Test
+    public void localUserIsNeverSelected() {
+        Script script = new Script();
+        assertFalse(script.repeat(5000, LOCAL + "=1", "a=0.05"));
+        assertNull(script.active());
+        assertTrue(script.repeat(1000, LOCAL + "=1", "a=0.2"));
+        assertEquals("a", script.active());
+    }
+
+    @Test
+    public void shortInterjectionDoesNotSwitch() {
+        Script script = withActiveSpeaker("a");
+        // b interjects for 400 ms, shorter than the candidate hold
+        assertFalse(script.repeat(400, "a=0.3", "b=0.8"));
+        assertFalse(script.repeat(2000, "a=0.5", "b=0.0"));
+        assertEquals("a", script.active());
+    }
+
+    @Test
+    public void interruptedInterjectionRestartsTheHold() {
+        Script script = withActiveSpeaker("a");
+        assertFalse(script.repeat(400, "a=0.3", "b=0.8"));
+        assertFalse(script.round("a=0.6", "b=0.5"));
+        assertFalse(script.repeat(400, "a=0.3", "b=0.8"));
+        assertEquals("a", script.active());
+        assertTrue(script.repeat(400, "a=0.3", "b=0.8"));
+        assertEquals("b", script.active());
+    }
+
+    @Test
+    public void challengerNeedsTheMargin() {
+        Script script = withActiveSpeaker("a");
+        assertFalse(script.repeat(5000, "a=0.5", "b=0.54"));
+        assertEquals("a", script.active());
+        assertTrue(script.repeat(1000, "a=0.5", "b=0.56"));
+        assertEquals("b", script.active());
+    }
+
+    @Test
+    public void silentActiveSpeakerCountsAsZero() {
+        Script script = withActiveSpeaker("a");
+        // a is muted and no longer reported
+        assertTrue(script.repeat(1000, "b=0.2"));
+        assertEquals("b", script.active());
+    }
+
+    @Test
+    public void switchedSpeakerDwells() {
+        Script script = withActiveSpeaker("a");
+        assertTrue(script.repeat(800, "a=0.1", "b=0.8"));
+        long switchedAt = script.mNowMs - ROUND_MS;
+        assertEquals("b", script.active());
+
+        // c leads from now on, long enough for the hold but not for the dwell of b
+        assertFalse(script.repeat(1800, "b=0.1", "c=0.9"));
+        assertEquals("b", script.active());
+        while (!script.round("b=0.1", "c=0.9")) {
+            assertTrue(script.mNowMs - switchedAt < 3000);
+        }
+        assertEquals("c", script.active());
+        assertTrue(script.mNowMs - ROUND_MS - switchedAt >= ActiveSpeakerSelector.DEFAULT_MIN_DWELL_MS);
+        assertEquals(3, script.mSelector.getSwitchCount());
+    }
+
+    @Test
+    public void manualPinHoldsLonger() {
+        Script script = withActiveSpeaker("a");
+        long pinnedAt = script.mNowMs;
+        script.mSelector.setActiveSpeaker("c", pinnedAt);
+        assertEquals("c", script.active());
+
+        assertFalse(script.repeat(ActiveSpeakerSelector.DEFAULT_MANUAL_DWELL_MS, "a=0.8", "c=0.1"));
+        assertEquals("c", script.active());
+        assertTrue(script.round("a=0.8", "c=0.1"));
+        assertEquals("a", script.active());
+        // the manual switch is not counted
+        assertEquals(2, script.mSelector.getSwitchCount());
+    }
+
+    @Test
+    public void manualPinOfTheLoudestUserKeepsIt() {
+        Script script = withActiveSpeaker("a");
+        script.mSelector.setActiveSpeaker("b", script.mNowMs);
+        assertFalse(script.repeat(10000, "a=0.2", "b=0.6"));
+        assertEquals("b", script.active());
+    }
+
+    @Test
+    public void leavingSpeakerIsReplacedWithoutDwell() {
+        Script script = new Script();
+        assertTrue(script.repeat(800, "a=0.5", "b=0.3"));
+        assertEquals("a", script.active());
+
+        // a leaves right after being selected, before its dwell time ends
+        script.mSelector.removeUser("a");
+        assertNull(script.active());
+        assertFalse(script.repeat(600, "b=0.3"));
+        assertTrue(script.round("b=0.3"));
+        assertEquals("b", script.active());
+    }
+
+    @Test
+    public void leavingCandidateIsForgotten() {
+        Script script = withActiveSpeaker("a");
+        assertFalse(script.repeat(400, "a=0.2", "b=0.8"));
+        script.mSelector.removeUser("b");
+        // b joins again, the hold starts over
+        assertFalse(script.repeat(400, "a=0.2", "b=0.8"));
+        assertEquals("a", script.active());
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        Script script = withActiveSpeaker("a");
+        script.mSelector.reset();
+        assertNull(script.active());
+        assertEquals(0, script.mSelector.getSwitchCount());
+        assertFalse(script.repeat(600, "b=0.5"));
+        assertTrue(script.round("b=0.5"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroThreshold() {
+        new ActiveSpeakerSelector(LOCAL, 0, 0.05f, 600, 2000, 5000);
+    }
+}
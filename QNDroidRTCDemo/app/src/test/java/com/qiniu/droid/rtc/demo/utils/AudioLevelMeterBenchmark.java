@@ -0,0 +1,70 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AudioLevelMeter 处理一帧 48kHz 立体声 10ms PCM 的耗时，SDK 回调的数据分别以堆内与直接缓冲区验证
+ *
+ * 不属于单元测试，通过 main 方法运行。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioLevelMeterBenchmark {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final int FRAME_BYTES = SAMPLE_RATE / 100 * CHANNELS * 2;
+
+    @Param({"false", "true"})
+    public boolean mDirect;
+
+    private AudioLevelMeter mMeter;
+    private ByteBuffer mFrame;
+
+    @Setup
+    public void setUp() {
+        mMeter = new AudioLevelMeter();
+        mFrame = (mDirect ? ByteBuffer.allocateDirect(FRAME_BYTES) : ByteBuffer.allocate(FRAME_BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        Random random = new Random(1);
+        while (mFrame.hasRemaining()) {
+            mFrame.putShort((short) (random.nextGaussian() * 4000));
+        }
+        mFrame.flip();
+    }
+
+    /**
+     * 处理一帧，每 10 帧发布一次电平
+     */
+    @Benchmark
+    public long process10msFrame() {
+        mMeter.process(mFrame, FRAME_BYTES, 16, SAMPLE_RATE, CHANNELS);
+        return mMeter.getLevel();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AudioLevelMeterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
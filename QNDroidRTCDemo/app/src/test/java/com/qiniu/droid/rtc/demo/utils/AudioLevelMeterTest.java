@@ -0,0 +1,177 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AudioLevelMeterTest {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 2;
+    // 10 ms frames
+    private static final int FRAME_SAMPLES = SAMPLE_RATE / 100;
+    private static final float DB_TOLERANCE = 0.02f;
+
+    /**
+     * 生成 10ms 的 16 位小端立体声正弦帧，两个声道相同
+     */
+    private static ByteBuffer sineFrame(double amplitude, int frameIndex) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_SAMPLES * CHANNELS * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            // 1 kHz, a whole number of periods per frame
+            double t = (double) (frameIndex * FRAME_SAMPLES + i) / SAMPLE_RATE;
+            short sample = (short) Math.round(amplitude * Math.sin(2 * Math.PI * 1000 * t));
+            for (int c = 0; c < CHANNELS; c++) {
+                frame.putShort(sample);
+            }
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static void feed(AudioLevelMeter meter, double amplitude, int frames) {
+        for (int i = 0; i < frames; i++) {
+            ByteBuffer frame = sineFrame(amplitude, i);
+            meter.process(frame, frame.remaining(), 16, SAMPLE_RATE, CHANNELS);
+        }
+    }
+
+    @Test
+    public void fullScaleSineIsMinusThreeDbRms() {
+        AudioLevelMeter meter = new AudioLevelMeter();
+        feed(meter, 32767, 30);
+        assertEquals(-3.0f, meter.getRmsDb(), DB_TOLERANCE);
+        assertEquals(0f, meter.getPeakDb(), DB_TOLERANCE);
+    }
+
+    @Test
+    public void halfScaleSineIsSixDbLower() {
+        AudioLevelMeter meter = new AudioLevelMeter();
+        feed(meter, 16384, 30);
+        assertEquals(-9.03f, meter.getRmsDb(), DB_TOLERANCE);
+        assertEquals(-6.02f, meter.getPeakDb(), DB_TOLERANCE);
+    }
+
+    @Test
+    public void silenceIsTheFloor() {
+        AudioLevelMeter meter = new AudioLevelMeter();
+        feed(meter, 0, 30);
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, meter.getRmsDb(), 0);
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, meter.getPeakDb(), 0);
+    }
+
+    @Test
+    public void oldFramesLeaveTheWindow() {
+        AudioLevelMeter meter = new AudioLevelMeter(300, 100);
+        feed(meter, 32767, 30);
+        // 10 loud frames of 30 are left in the window, a third of the energy
+        feed(meter, 0, 20);
+        assertEquals(-3.01f + 10 * (float) Math.log10(1 / 3.0), meter.getRmsDb(), DB_TOLERANCE);
+        assertEquals(0f, meter.getPeakDb(), DB_TOLERANCE);
+        feed(meter, 0, 10);
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, meter.getRmsDb(), 0);
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, meter.getPeakDb(), 0);
+    }
+
+    @Test
+    public void frameLongerThanTheWindowIsKept() {
+        AudioLevelMeter meter = new AudioLevelMeter(50, 10);
+        meter.update(1000L * 32768 * 32768 / 4, 1000, 16384, 100_000);
+        assertEquals(-6.02f, meter.getRmsDb(), DB_TOLERANCE);
+        assertEquals(-6.02f, meter.getPeakDb(), DB_TOLERANCE);
+    }
+
+    @Test
+    public void levelIsPublishedEveryHundredMillisecondsOfAudio() {
+        AudioLevelMeter meter = new AudioLevelMeter();
+        List<float[]> published = new ArrayList<>();
+        meter.setListener((rmsDb, peakDb) -> published.add(new float[]{rmsDb, peakDb}));
+        feed(meter, 16384, 9);
+        assertEquals(0, meter.getPublishCount());
+        // nothing published yet
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, meter.getRmsDb(), 0);
+        feed(meter, 16384, 1);
+        assertEquals(1, meter.getPublishCount());
+        feed(meter, 16384, 85);
+        assertEquals(9, meter.getPublishCount());
+        assertEquals(9, published.size());
+        float[] last = published.get(published.size() - 1);
+        assertEquals(last[0], meter.getRmsDb(), 0);
+        assertEquals(last[1], meter.getPeakDb(), 0);
+    }
+
+    @Test
+    public void cadenceFollowsTheFrameDuration() {
+        AudioLevelMeter meter = new AudioLevelMeter();
+        // 30 ms frames, the interval is reached on every 4th frame
+        for (int i = 0; i < 12; i++) {
+            meter.update(0, 1440, 0, 30_000);
+        }
+        assertEquals(3, meter.getPublishCount());
+    }
+
+    @Test
+    public void rmsAndPeakArePackedIntoOneLong() {
+        AudioLevelMeter meter = new AudioLevelMeter(300, 10);
+        long initial = meter.getLevel();
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, AudioLevelMeter.rmsDbOf(initial), 0);
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, AudioLevelMeter.peakDbOf(initial), 0);
+        meter.update(480L * 3000 * 3000, 480, 12000, 10_000);
+        long level = meter.getLevel();
+        float rmsDb = (float) (20 * Math.log10(3000 / 32768.0));
+        float peakDb = (float) (20 * Math.log10(12000 / 32768.0));
+        assertEquals(rmsDb, AudioLevelMeter.rmsDbOf(level), 1e-4f);
+        assertEquals(peakDb, AudioLevelMeter.peakDbOf(level), 1e-4f);
+        // both halves decode independently, a negative peak doesn't leak into the rms bits
+        assertEquals(Float.floatToIntBits(AudioLevelMeter.rmsDbOf(level)), (int) (level >>> 32));
+        assertEquals(Float.floatToIntBits(AudioLevelMeter.peakDbOf(level)), (int) level);
+    }
+
+    @Test
+    public void resetClearsTheWindow() {
+        AudioLevelMeter meter = new AudioLevelMeter();
+        feed(meter, 32767, 30);
+        meter.reset();
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, meter.getRmsDb(), 0);
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, meter.getPeakDb(), 0);
+        // the loud frames are gone, and the publish interval starts again
+        feed(meter, 16384, 9);
+        assertEquals(AudioLevelMeter.SILENCE_DBFS, meter.getRmsDb(), 0);
+        feed(meter, 16384, 1);
+        assertEquals(-9.03f, meter.getRmsDb(), DB_TOLERANCE);
+        assertEquals(-6.02f, meter.getPeakDb(), DB_TOLERANCE);
+    }
+
+    @Test
+    public void processReadsFromThePositionWithoutMovingIt() {
+        AudioLevelMeter meter = new AudioLevelMeter(300, 10);
+        ByteBuffer frame = sineFrame(16384, 0);
+        ByteBuffer padded = ByteBuffer.allocateDirect(frame.remaining() + 6);
+        padded.put(new byte[]{0x7f, 0x7f, 0x7f, 0x7f, 0x7f, 0x7f});
+        padded.put(frame);
+        padded.position(6);
+        meter.process(padded, frame.capacity(), 16, SAMPLE_RATE, CHANNELS);
+        assertEquals(6, padded.position());
+        assertEquals(-6.02f, meter.getPeakDb(), DB_TOLERANCE);
+    }
+
+    @Test
+    public void unsupportedFramesAreIgnored() {
+        AudioLevelMeter meter = new AudioLevelMeter(300, 10);
+        ByteBuffer frame = sineFrame(32767, 0);
+        meter.process(frame, frame.remaining(), 8, SAMPLE_RATE, CHANNELS);
+        meter.process(frame, frame.remaining(), 16, 0, CHANNELS);
+        meter.process(frame, 2, 16, SAMPLE_RATE, CHANNELS);
+        assertEquals(0, meter.getPublishCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveWindow() {
+        new AudioLevelMeter(0, 100);
+    }
+}
@@ -0,0 +1,237 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CoalescingSchedulerTest {
+
+    /**
+     * 虚拟时钟上的单线程调度器，任务只在 {@link #advance(long)} 中按到期时间依次执行
+     */
+    private static class VirtualClockExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+        private class Task implements ScheduledFuture<Object> {
+            final Runnable mRunnable;
+            final long mDueMs;
+            final long mSequence;
+            boolean mCancelled;
+
+            Task(Runnable runnable, long dueMs, long sequence) {
+                mRunnable = runnable;
+                mDueMs = dueMs;
+                mSequence = sequence;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(mDueMs - mNowMs, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                Task task = (Task) other;
+                return mDueMs != task.mDueMs ? Long.compare(mDueMs, task.mDueMs) : Long.compare(mSequence, task.mSequence);
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                mCancelled = true;
+                return mQueue.remove(this);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return mCancelled;
+            }
+
+            @Override
+            public boolean isDone() {
+                return mCancelled || !mQueue.contains(this);
+            }
+
+            @Override
+            public Object get() {
+                return null;
+            }
+
+            @Override
+            public Object get(long timeout, TimeUnit unit) {
+                return null;
+            }
+        }
+
+        private final PriorityQueue<Task> mQueue = new PriorityQueue<>();
+        private long mNowMs;
+        private long mSequence;
+        private boolean mShutdown;
+
+        void advance(long ms) {
+            long target = mNowMs + ms;
+            while (!mQueue.isEmpty() && mQueue.peek().mDueMs <= target) {
+                Task task = mQueue.poll();
+                mNowMs = task.mDueMs;
+                task.mRunnable.run();
+            }
+            mNowMs = target;
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            Task task = new Task(command, mNowMs + unit.toMillis(delay), mSequence++);
+            if (!mShutdown) {
+                mQueue.add(task);
+            }
+            return task;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void shutdown() {
+            mShutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            mShutdown = true;
+            mQueue.clear();
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return mShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return mShutdown && mQueue.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return isTerminated();
+        }
+    }
+
+    private final VirtualClockExecutor mExecutor = new VirtualClockExecutor();
+    private final List<Long> mRunAtMs = new ArrayList<>();
+
+    private CoalescingScheduler newScheduler(long windowMs) {
+        return new CoalescingScheduler(windowMs, () -> mRunAtMs.add(mExecutor.mNowMs), mExecutor);
+    }
+
+    @Test
+    public void burstWithinWindowRunsOnce() {
+        CoalescingScheduler scheduler = newScheduler(200);
+        // ten users publishing within one second, all inside the first window
+        for (int i = 0; i < 10; i++) {
+            scheduler.request();
+            mExecutor.advance(15);
+        }
+        assertEquals(Collections.emptyList(), mRunAtMs);
+        mExecutor.advance(200);
+        assertEquals(Collections.singletonList(200L), mRunAtMs);
+        assertEquals(10, scheduler.getRequestedCount());
+        assertEquals(9, scheduler.getCoalescedCount());
+        assertEquals(1, scheduler.getAppliedCount());
+    }
+
+    @Test
+    public void windowStartsAtTheFirstRequest() {
+        CoalescingScheduler scheduler = newScheduler(200);
+        mExecutor.advance(50);
+        scheduler.request();
+        mExecutor.advance(199);
+        assertEquals(0, mRunAtMs.size());
+        mExecutor.advance(1);
+        assertEquals(Collections.singletonList(250L), mRunAtMs);
+    }
+
+    @Test
+    public void requestsAfterAWindowOpenANewOne() {
+        CoalescingScheduler scheduler = newScheduler(100);
+        // one request every 60 ms for 600 ms
+        for (int i = 0; i < 10; i++) {
+            scheduler.request();
+            mExecutor.advance(60);
+        }
+        mExecutor.advance(1000);
+        assertEquals(Arrays.asList(100L, 220L, 340L, 460L, 580L), mRunAtMs);
+        assertEquals(5, scheduler.getAppliedCount());
+        assertEquals(5, scheduler.getCoalescedCount());
+    }
+
+    @Test
+    public void requestFromTheTaskOpensANewWindow() {
+        CoalescingScheduler[] scheduler = new CoalescingScheduler[1];
+        scheduler[0] = new CoalescingScheduler(200, () -> {
+            mRunAtMs.add(mExecutor.mNowMs);
+            if (mRunAtMs.size() == 1) {
+                scheduler[0].request();
+            }
+        }, mExecutor);
+        scheduler[0].request();
+        mExecutor.advance(1000);
+        assertEquals(Arrays.asList(200L, 400L), mRunAtMs);
+    }
+
+    @Test
+    public void releaseDropsThePendingWindow() {
+        CoalescingScheduler scheduler = newScheduler(200);
+        scheduler.request();
+        scheduler.release();
+        scheduler.request();
+        mExecutor.advance(1000);
+        assertEquals(0, mRunAtMs.size());
+        assertEquals(0, scheduler.getAppliedCount());
+        // the executor belongs to the caller and is left running
+        assertFalse(mExecutor.isShutdown());
+    }
+
+    @Test
+    public void zeroWindowRunsOnTheNextTick() {
+        CoalescingScheduler scheduler = newScheduler(0);
+        scheduler.request();
+        scheduler.request();
+        mExecutor.advance(0);
+        assertEquals(Collections.singletonList(0L), mRunAtMs);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeWindowIsRejected() {
+        newScheduler(-1);
+    }
+}
@@ -0,0 +1,125 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GridLayoutTableTest {
+
+    private static final int MAX_TILES = 50;
+    // portrait, landscape and square areas
+    private static final int[][] AREAS = {{1080, 1440}, {720, 960}, {1920, 1080}, {1000, 1000}, {480, 200}};
+    private static final float[] ASPECTS = {1.0f, 16 / 9f, 4 / 3f, 3 / 4f, 9 / 16f};
+
+    private static int widthFor(int areaWidth, int areaHeight, float aspect, int columns, int rows) {
+        return Math.min(areaWidth / columns, (int) (areaHeight / rows * aspect));
+    }
+
+    @Test
+    public void knownLayouts() {
+        GridLayoutTable table = new GridLayoutTable(1080, 1440, 1.0f, 9);
+        // one tile takes the full width
+        assertEquals(1, table.getColumns(1));
+        assertEquals(1080, table.getTileWidth(1));
+        assertEquals(1080, table.getTileHeight(1));
+        // two tiles are stacked, side by side they would be smaller
+        assertEquals(1, table.getColumns(2));
+        assertEquals(720, table.getTileWidth(2));
+        assertEquals(180, table.getX(2, 0));
+        assertEquals(720, table.getY(2, 1));
+        assertEquals(2, table.getColumns(4));
+        assertEquals(540, table.getTileWidth(4));
+        assertEquals(3, table.getColumns(9));
+        assertEquals(3, table.getRows(9));
+        assertEquals(360, table.getTileWidth(9));
+        assertEquals(720, table.getX(9, 8));
+        assertEquals(720, table.getY(9, 8));
+    }
+
+    @Test
+    public void tilesFitTheAreaWithoutOverlap() {
+        for (int[] area : AREAS) {
+            for (float aspect : ASPECTS) {
+                GridLayoutTable table = new GridLayoutTable(area[0], area[1], aspect, MAX_TILES);
+                for (int n = 1; n <= MAX_TILES; n++) {
+                    String name = area[0] + "x" + area[1] + " aspect " + aspect + " tiles " + n;
+                    int width = table.getTileWidth(n);
+                    int height = table.getTileHeight(n);
+                    assertTrue(name, width > 0 && height > 0);
+                    assertEquals(name, (int) (width / aspect), height);
+                    for (int i = 0; i < n; i++) {
+                        int x = table.getX(n, i);
+                        int y = table.getY(n, i);
+                        assertTrue(name + " tile " + i, x >= 0 && x + width <= area[0]);
+                        assertTrue(name + " tile " + i, y >= 0 && y + height <= area[1]);
+                        for (int j = 0; j < i; j++) {
+                            boolean apart = x >= table.getX(n, j) + width || table.getX(n, j) >= x + width
+                                    || y >= table.getY(n, j) + height || table.getY(n, j) >= y + height;
+                            assertTrue(name + " tiles " + j + " and " + i, apart);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void columnCountMaximizesTheTileSize() {
+        for (int[] area : AREAS) {
+            for (float aspect : ASPECTS) {
+                GridLayoutTable table = new GridLayoutTable(area[0], area[1], aspect, MAX_TILES);
+                for (int n = 1; n <= MAX_TILES; n++) {
+                    int columns = table.getColumns(n);
+                    int rows = table.getRows(n);
+                    assertEquals((n + columns - 1) / columns, rows);
+                    assertEquals(widthFor(area[0], area[1], aspect, columns, rows), table.getTileWidth(n));
+                    for (int c = 1; c <= n; c++) {
+                        int other = widthFor(area[0], area[1], aspect, c, (n + c - 1) / c);
+                        assertTrue(n + " tiles in " + c + " columns", other < table.getTileWidth(n)
+                                || other == table.getTileWidth(n) && c <= columns);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rowsAreFilledInOrderAndCentered() {
+        for (int[] area : AREAS) {
+            for (float aspect : ASPECTS) {
+                GridLayoutTable table = new GridLayoutTable(area[0], area[1], aspect, MAX_TILES);
+                for (int n = 1; n <= MAX_TILES; n++) {
+                    int columns = table.getColumns(n);
+                    int width = table.getTileWidth(n);
+                    for (int row = 0; row < table.getRows(n); row++) {
+                        int first = row * columns;
+                        int last = Math.min(n, first + columns) - 1;
+                        int left = table.getX(n, first);
+                        int right = area[0] - table.getX(n, last) - width;
+                        assertTrue(n + " tiles, row " + row, Math.abs(left - right) <= 1);
+                        for (int i = first; i <= last; i++) {
+                            assertEquals(row * table.getTileHeight(n), table.getY(n, i));
+                            assertEquals(left + (i - first) * width, table.getX(n, i));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTileCountAboveMax() {
+        new GridLayoutTable(1080, 1440, 1.0f, 9).getTileWidth(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroTiles() {
+        new GridLayoutTable(1080, 1440, 1.0f, 9).getColumns(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidAspect() {
+        new GridLayoutTable(1080, 1440, 0, 9);
+    }
+}
@@ -0,0 +1,94 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GridPaginationTest {
+
+    private static final String LOCAL = "local";
+    private static final int PAGE_SIZE = 9;
+
+    /**
+     * 与 TrackWindowManager 一致，本地用户插入到首位，远端用户按照加入顺序
+     */
+    private static List<String> users(int remoteCount, boolean withLocal) {
+        List<String> users = new ArrayList<>();
+        if (withLocal) {
+            users.add(LOCAL);
+        }
+        for (int i = 0; i < remoteCount; i++) {
+            users.add("user" + i);
+        }
+        return users;
+    }
+
+    @Test
+    public void pinnedLocalUserIsOnEveryPage() {
+        for (int userCount = 1; userCount <= 50; userCount++) {
+            List<String> users = users(userCount - 1, true);
+            int pageCount = GridPagination.getPageCount(users.size(), PAGE_SIZE, true);
+            assertEquals(Math.max(1, (userCount - 1 + 7) / 8), pageCount);
+
+            Set<String> seen = new HashSet<>();
+            List<String> remoteInOrder = new ArrayList<>();
+            for (int page = 0; page < pageCount; page++) {
+                List<String> pageUsers = GridPagination.getPageUsers(users, LOCAL, PAGE_SIZE, page);
+                String name = userCount + " users, page " + page;
+                assertEquals(name, LOCAL, pageUsers.get(0));
+                assertTrue(name, pageUsers.size() <= PAGE_SIZE);
+                if (page < pageCount - 1) {
+                    assertEquals(name, PAGE_SIZE, pageUsers.size());
+                }
+                for (String user : pageUsers.subList(1, pageUsers.size())) {
+                    assertFalse(name, user.equals(LOCAL));
+                    assertTrue(name + " " + user + " on two pages", seen.add(user));
+                    remoteInOrder.add(user);
+                }
+            }
+            assertEquals(users.subList(1, users.size()), remoteInOrder);
+        }
+    }
+
+    @Test
+    public void pinnedUserAnywhereInTheOrderIsMovedFirst() {
+        List<String> users = Arrays.asList("a", "b", LOCAL, "c");
+        assertEquals(Arrays.asList(LOCAL, "a", "b"), GridPagination.getPageUsers(users, LOCAL, 3, 0));
+        assertEquals(Arrays.asList(LOCAL, "c"), GridPagination.getPageUsers(users, LOCAL, 3, 1));
+    }
+
+    @Test
+    public void withoutPinnedUserPagesHoldFullPageSize() {
+        for (int userCount = 1; userCount <= 50; userCount++) {
+            List<String> users = users(userCount, false);
+            int pageCount = GridPagination.getPageCount(users.size(), PAGE_SIZE, false);
+            assertEquals((userCount + PAGE_SIZE - 1) / PAGE_SIZE, pageCount);
+            List<String> all = new ArrayList<>();
+            for (int page = 0; page < pageCount; page++) {
+                all.addAll(GridPagination.getPageUsers(users, null, PAGE_SIZE, page));
+            }
+            assertEquals(users, all);
+        }
+    }
+
+    @Test
+    public void emptyRoomHasOnePage() {
+        assertEquals(1, GridPagination.getPageCount(0, PAGE_SIZE, false));
+        assertEquals(1, GridPagination.getPageCount(1, PAGE_SIZE, true));
+        assertEquals(Arrays.asList(LOCAL), GridPagination.getPageUsers(users(0, true), LOCAL, PAGE_SIZE, 0));
+    }
+
+    @Test
+    public void pageBeyondTheLastIsEmpty() {
+        List<String> users = users(5, true);
+        assertEquals(Arrays.asList(LOCAL), GridPagination.getPageUsers(users, LOCAL, PAGE_SIZE, 1));
+    }
+}
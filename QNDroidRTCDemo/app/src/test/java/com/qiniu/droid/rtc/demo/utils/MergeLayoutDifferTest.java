@@ -0,0 +1,162 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import com.qiniu.droid.rtc.QNRenderMode;
+import com.qiniu.droid.rtc.QNTranscodingLiveStreamingTrack;
+import com.qiniu.droid.rtc.demo.FakeTracks;
+import com.qiniu.droid.rtc.demo.model.RTCTrackMergeOption;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MergeLayoutDifferTest {
+
+    private static class RecordingSink implements MergeLayoutDiffer.TrackSink {
+        final List<List<String>> mSetCalls = new ArrayList<>();
+        final List<List<String>> mRemoveCalls = new ArrayList<>();
+
+        @Override
+        public void setTracks(List<QNTranscodingLiveStreamingTrack> tracks) {
+            mSetCalls.add(ids(tracks));
+        }
+
+        @Override
+        public void removeTracks(List<QNTranscodingLiveStreamingTrack> tracks) {
+            mRemoveCalls.add(ids(tracks));
+        }
+
+        void clear() {
+            mSetCalls.clear();
+            mRemoveCalls.clear();
+        }
+
+        private static List<String> ids(List<QNTranscodingLiveStreamingTrack> tracks) {
+            List<String> ids = new ArrayList<>();
+            for (QNTranscodingLiveStreamingTrack track : tracks) {
+                ids.add(track.getTrackID());
+            }
+            return ids;
+        }
+    }
+
+    private final MergeLayoutDiffer mDiffer = new MergeLayoutDiffer();
+    private final RecordingSink mSink = new RecordingSink();
+    private RTCTrackMergeOption mVideoA;
+    private RTCTrackMergeOption mVideoB;
+    private RTCTrackMergeOption mAudio;
+
+    @Before
+    public void setUp() {
+        mVideoA = new RTCTrackMergeOption(FakeTracks.videoTrack("a"));
+        mVideoB = new RTCTrackMergeOption(FakeTracks.videoTrack("b"));
+        mAudio = new RTCTrackMergeOption(FakeTracks.audioTrack("c"));
+    }
+
+    @Test
+    public void firstApplySendsEveryIncludedTrack() {
+        mVideoB.setTrackInclude(false);
+        mDiffer.apply(Arrays.asList(mVideoA, mVideoB, mAudio), mSink);
+        assertEquals(Arrays.asList(Arrays.asList("a", "c")), mSink.mSetCalls);
+        assertEquals(Arrays.asList(Arrays.asList("b")), mSink.mRemoveCalls);
+    }
+
+    @Test
+    public void unchangedLayoutSendsNothing() {
+        List<RTCTrackMergeOption> options = Arrays.asList(mVideoA, mVideoB, mAudio);
+        mDiffer.apply(options, mSink);
+        mSink.clear();
+        mDiffer.apply(options, mSink);
+        assertTrue(mSink.mSetCalls.isEmpty());
+        assertTrue(mSink.mRemoveCalls.isEmpty());
+    }
+
+    @Test
+    public void onlyChangedTracksAreSent() {
+        List<RTCTrackMergeOption> options = Arrays.asList(mVideoA, mVideoB, mAudio);
+        mDiffer.apply(options, mSink);
+        mSink.clear();
+
+        mVideoB.getMergeTrack().setX(240);
+        mDiffer.apply(options, mSink);
+        assertEquals(Arrays.asList(Arrays.asList("b")), mSink.mSetCalls);
+
+        mSink.clear();
+        mVideoA.getMergeTrack().setZOrder(1);
+        mVideoB.getMergeTrack().setRenderMode(QNRenderMode.ASPECT_FIT);
+        mDiffer.apply(options, mSink);
+        assertEquals(Arrays.asList(Arrays.asList("a", "b")), mSink.mSetCalls);
+        assertTrue(mSink.mRemoveCalls.isEmpty());
+    }
+
+    @Test
+    public void excludingAndIncludingAgain() {
+        List<RTCTrackMergeOption> options = Arrays.asList(mVideoA, mVideoB);
+        mDiffer.apply(options, mSink);
+        mSink.clear();
+
+        mVideoA.setTrackInclude(false);
+        mDiffer.apply(options, mSink);
+        assertTrue(mSink.mSetCalls.isEmpty());
+        assertEquals(Arrays.asList(Arrays.asList("a")), mSink.mRemoveCalls);
+
+        mSink.clear();
+        mDiffer.apply(options, mSink);
+        assertTrue(mSink.mRemoveCalls.isEmpty());
+
+        // same geometry as before the exclusion, it still has to be sent again
+        mVideoA.setTrackInclude(true);
+        mDiffer.apply(options, mSink);
+        assertEquals(Arrays.asList(Arrays.asList("a")), mSink.mSetCalls);
+    }
+
+    @Test
+    public void unpublishedTrackIsForgotten() {
+        mDiffer.apply(Arrays.asList(mVideoA, mVideoB), mSink);
+        mSink.clear();
+
+        // the server drops unpublished tracks itself, nothing is sent
+        mDiffer.apply(Arrays.asList(mVideoA), mSink);
+        assertTrue(mSink.mSetCalls.isEmpty());
+        assertTrue(mSink.mRemoveCalls.isEmpty());
+
+        // published again with the same id, it is a new track to the server
+        mDiffer.apply(Arrays.asList(mVideoA, mVideoB), mSink);
+        assertEquals(Arrays.asList(Arrays.asList("b")), mSink.mSetCalls);
+    }
+
+    @Test
+    public void resetSendsEverythingAgain() {
+        List<RTCTrackMergeOption> options = Arrays.asList(mVideoA, mVideoB, mAudio);
+        mDiffer.apply(options, mSink);
+        mSink.clear();
+        mDiffer.reset();
+        mDiffer.apply(options, mSink);
+        assertEquals(Arrays.asList(Arrays.asList("a", "b", "c")), mSink.mSetCalls);
+    }
+
+    @Test
+    public void sinkReceivesCopies() {
+        List<QNTranscodingLiveStreamingTrack> received = new ArrayList<>();
+        mDiffer.apply(Arrays.asList(mVideoA, mVideoB), new MergeLayoutDiffer.TrackSink() {
+            @Override
+            public void setTracks(List<QNTranscodingLiveStreamingTrack> tracks) {
+                received.addAll(tracks);
+                tracks.clear();
+            }
+
+            @Override
+            public void removeTracks(List<QNTranscodingLiveStreamingTrack> tracks) {
+            }
+        });
+        assertEquals(2, received.size());
+        mVideoA.getMergeTrack().setY(10);
+        mDiffer.apply(Arrays.asList(mVideoA, mVideoB), mSink);
+        assertEquals(Arrays.asList(Arrays.asList("a")), mSink.mSetCalls);
+    }
+}
@@ -0,0 +1,110 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MergeLayoutEngineTest {
+
+    private static final int MAX_COUNT = 64;
+    private static final int[][] STREAM_SIZES = {
+            {480, 848}, {848, 480}, {640, 480}, {480, 640}, {1280, 720}, {720, 1280},
+            {1920, 1080}, {1080, 1920}, {368, 640}, {1, 1}
+    };
+
+    @Test
+    public void layoutMatchesLegacySplitUtils() {
+        MergeLayoutEngine engine = new MergeLayoutEngine();
+        int[] x = new int[MAX_COUNT];
+        int[] y = new int[MAX_COUNT];
+        int[] w = new int[MAX_COUNT];
+        int[] h = new int[MAX_COUNT];
+        for (int[] size : STREAM_SIZES) {
+            for (int count = 1; count <= MAX_COUNT; count++) {
+                List<int[]> expected = legacySplit(count, size[0], size[1]);
+                assertEquals(count, engine.layout(count, size[0], size[1], x, y, w, h));
+                for (int i = 0; i < count; i++) {
+                    String tile = count + " tiles on " + size[0] + "x" + size[1] + ", tile " + i;
+                    assertArrayEquals(tile, expected.get(i), new int[]{x[i], y[i], w[i], h[i]});
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cachedLayoutIsReused() {
+        MergeLayoutEngine engine = new MergeLayoutEngine(2);
+        int[] x = new int[4];
+        int[] y = new int[4];
+        int[] w = new int[4];
+        int[] h = new int[4];
+        engine.layout(4, 1280, 720, x, y, w, h);
+        engine.layout(4, 1280, 720, x, y, w, h);
+        assertEquals(1, engine.getCacheMisses());
+        assertEquals(1, engine.getCacheHits());
+
+        engine.layout(3, 1280, 720, x, y, w, h);
+        // touch the first key so that the second one is the least recently used
+        engine.layout(4, 1280, 720, x, y, w, h);
+        engine.layout(2, 1280, 720, x, y, w, h);
+        engine.layout(4, 1280, 720, x, y, w, h);
+        assertEquals(3, engine.getCacheMisses());
+        engine.layout(3, 1280, 720, x, y, w, h);
+        assertEquals(4, engine.getCacheMisses());
+    }
+
+    @Test
+    public void zeroCountWritesNothing() {
+        int[] x = {7};
+        assertEquals(0, new MergeLayoutEngine().layout(0, 1280, 720, x, x, x, x));
+        assertEquals(7, x[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortOutputArraysAreRejected() {
+        int[] out = new int[2];
+        new MergeLayoutEngine().layout(3, 1280, 720, out, out, out, out);
+    }
+
+    // the removed SplitUtils.split, kept verbatim apart from returning {x, y, w, h} per tile
+    private static List<int[]> legacySplit(int count, int width, int height) {
+        List<int[]> tiles = new ArrayList<>();
+        legacySplit(tiles, count, 0, 0, width, height);
+        return tiles;
+    }
+
+    private static void legacySplit(List<int[]> tiles, int count, int x, int y, int width, int height) {
+        if (count == 0) {
+            return;
+        }
+        if (count == 1) {
+            tiles.add(new int[]{x, y, width, height});
+            return;
+        }
+        int splitPoint = legacySplitPoint(count);
+        if (width > height) {
+            int splitWidth = width / 2;
+            legacySplit(tiles, splitPoint, x, y, splitWidth, height);
+            legacySplit(tiles, count - splitPoint, x + splitWidth, y, splitWidth, height);
+        } else {
+            int splitHeight = height / 2;
+            legacySplit(tiles, splitPoint, x, y, width, splitHeight);
+            legacySplit(tiles, count - splitPoint, x, y + splitHeight, width, splitHeight);
+        }
+    }
+
+    private static int legacySplitPoint(int count) {
+        double log2 = Math.log(count) / Math.log(2);
+        double logRound = Math.round(log2);
+        double logFloor = Math.floor(log2);
+        if (logRound == logFloor) {
+            return count - (int) Math.pow(2, logRound - 1);
+        } else {
+            return (int) Math.pow(2, logRound - 1);
+        }
+    }
+}
@@ -5,6 +5,9 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * 被 {@link OrderedRegistry} 替换之前 TrackWindowManager 使用的实现，原样保留，仅用于 {@link OrderedRegistryBenchmark} 对比
+ */
 public class MyHashMap<K, V> extends HashMap<K, V> {
 
     private final List<V> mOrderedValues = new LinkedList<>();
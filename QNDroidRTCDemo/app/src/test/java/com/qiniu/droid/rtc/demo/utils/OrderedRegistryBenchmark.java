@@ -0,0 +1,111 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TrackWindowManager 中用户与窗口对应关系的常见操作，OrderedRegistry 与原来的 MyHashMap 对比：
+ * 全屏窗口交换、布局时跳过全屏窗口遍历、用户离开后重新加入
+ *
+ * 不属于单元测试，通过 main 方法运行。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderedRegistryBenchmark {
+
+    @Param({"4", "9", "16", "64"})
+    public int mUserCount;
+
+    private OrderedRegistry<String, Object> mRegistry;
+    private MyHashMap<String, Object> mMyHashMap;
+    private String[] mUserIds;
+    private Object[] mWindows;
+    private Object mFullScreenWindow;
+
+    @Setup
+    public void setUp() {
+        mRegistry = new OrderedRegistry<>();
+        mMyHashMap = new MyHashMap<>();
+        mUserIds = new String[mUserCount];
+        mWindows = new Object[mUserCount];
+        for (int i = 0; i < mUserCount; i++) {
+            mUserIds[i] = "user" + i;
+            mWindows[i] = new Object();
+            mRegistry.put(mUserIds[i], mWindows[i], i == 0);
+            mMyHashMap.put(mUserIds[i], mWindows[i], i == 0);
+        }
+        mFullScreenWindow = mWindows[0];
+    }
+
+    /**
+     * 全屏窗口与最后一个窗口交换用户，再交换回来，与 switchToFullScreenWindow 一样分两步写回
+     */
+    @Benchmark
+    public void swapRegistry() {
+        int last = mUserCount - 1;
+        mRegistry.put(mUserIds[last], mWindows[0], false);
+        mRegistry.put(mUserIds[0], mWindows[last], true);
+        mRegistry.put(mUserIds[0], mWindows[0], true);
+        mRegistry.put(mUserIds[last], mWindows[last], false);
+    }
+
+    @Benchmark
+    public void swapMyHashMap() {
+        int last = mUserCount - 1;
+        mMyHashMap.put(mUserIds[last], mWindows[0], false);
+        mMyHashMap.put(mUserIds[0], mWindows[last], true);
+        mMyHashMap.put(mUserIds[0], mWindows[0], true);
+        mMyHashMap.put(mUserIds[last], mWindows[last], false);
+    }
+
+    @Benchmark
+    public void layoutRegistry(Blackhole blackhole) {
+        for (Object window : mRegistry.values(mFullScreenWindow)) {
+            blackhole.consume(window);
+        }
+    }
+
+    @Benchmark
+    public void layoutMyHashMap(Blackhole blackhole) {
+        for (Object window : mMyHashMap.getOrderedValues(mFullScreenWindow)) {
+            blackhole.consume(window);
+        }
+    }
+
+    @Benchmark
+    public void rejoinRegistry() {
+        int middle = mUserCount / 2;
+        mRegistry.remove(mUserIds[middle]);
+        mRegistry.put(mUserIds[middle], mWindows[middle]);
+    }
+
+    @Benchmark
+    public void rejoinMyHashMap() {
+        int middle = mUserCount / 2;
+        mMyHashMap.remove(mUserIds[middle]);
+        mMyHashMap.put(mUserIds[middle], mWindows[middle]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OrderedRegistryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,281 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OrderedRegistryTest {
+
+    /**
+     * 代替显示窗口，按引用比较
+     */
+    private static final class Window {
+        final String mName;
+
+        Window(String name) {
+            mName = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            // equal names must not matter, windows are compared by reference
+            return o instanceof Window && ((Window) o).mName.equals(mName);
+        }
+
+        @Override
+        public int hashCode() {
+            return mName.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
+    private static <T> List<T> list(Iterable<T> iterable) {
+        List<T> out = new ArrayList<>();
+        for (T t : iterable) {
+            out.add(t);
+        }
+        return out;
+    }
+
+    @Test
+    public void putAppendsAndInsertToFirstPrepends() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        Window a = new Window("a");
+        Window b = new Window("b");
+        Window local = new Window("local");
+        assertNull(registry.put("a", a));
+        assertNull(registry.put("b", b));
+        assertNull(registry.put("local", local, true));
+        assertEquals(Arrays.asList("local", "a", "b"), list(registry.keys()));
+        assertEquals(Arrays.asList(local, a, b), list(registry.values()));
+        assertEquals(3, registry.size());
+        assertSame(a, registry.get("a"));
+        assertNull(registry.get("c"));
+    }
+
+    @Test
+    public void putOfAnExistingKeyReplacesAndMoves() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        Window a = new Window("a");
+        Window b = new Window("b");
+        Window other = new Window("other");
+        registry.put("a", a);
+        registry.put("b", b);
+        assertSame(a, registry.put("a", other));
+        assertEquals(Arrays.asList("b", "a"), list(registry.keys()));
+        assertSame(other, registry.get("a"));
+        assertFalse(registry.containsValue(a));
+        assertTrue(registry.containsValue(other));
+
+        // same key and value, only moved
+        assertSame(b, registry.put("b", b, false));
+        assertEquals(Arrays.asList("a", "b"), list(registry.keys()));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void putOfAValueOwnedByAnotherKeyDropsThatKey() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        Window a = new Window("a");
+        registry.put("a", a);
+        registry.put("b", new Window("b"));
+        assertNull(registry.put("c", a));
+        assertNull(registry.get("a"));
+        assertSame(a, registry.get("c"));
+        assertEquals(Arrays.asList("b", "c"), list(registry.keys()));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void valuesAreComparedByReference() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        Window first = new Window("same");
+        Window second = new Window("same");
+        registry.put("a", first);
+        registry.put("b", second);
+        assertEquals(2, registry.size());
+        assertSame(first, registry.get("a"));
+        assertTrue(registry.containsValue(first));
+        assertTrue(registry.containsValue(second));
+        assertFalse(registry.containsValue(new Window("same")));
+        assertEquals(Arrays.asList(first), list(registry.values(second)));
+    }
+
+    /**
+     * switchToFullScreenWindow 交换两个窗口的用户后分两步写回：第一步会暂时丢掉另一个用户，第二步再加回来
+     */
+    @Test
+    public void twoStepSwapKeepsBothUsers() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        Window fullScreen = new Window("full");
+        Window grid1 = new Window("grid1");
+        Window grid2 = new Window("grid2");
+        registry.put("local", fullScreen, true);
+        registry.put("a", grid1);
+        registry.put("b", grid2);
+
+        // windows swapped their users: full screen shows a, grid1 shows local
+        registry.put("a", fullScreen, false);
+        assertNull(registry.get("local"));
+        assertEquals(2, registry.size());
+        registry.put("local", grid1, true);
+
+        assertSame(fullScreen, registry.get("a"));
+        assertSame(grid1, registry.get("local"));
+        assertSame(grid2, registry.get("b"));
+        assertEquals(Arrays.asList("local", "b", "a"), list(registry.keys()));
+        assertEquals(Arrays.asList(grid1, grid2), list(registry.values(fullScreen)));
+        assertSame(grid1, registry.first(fullScreen));
+
+        // and back again, from a remote user in the full screen window to another one
+        registry.put("b", fullScreen, false);
+        registry.put("a", grid2, false);
+        assertEquals(3, registry.size());
+        assertSame(fullScreen, registry.get("b"));
+        assertSame(grid2, registry.get("a"));
+        assertEquals(Arrays.asList("local", "b", "a"), list(registry.keys()));
+    }
+
+    /**
+     * 只有一个窗口被占用时的交换，例如退出全屏时全屏窗口被回收
+     */
+    @Test
+    public void swapIntoARecycledWindowMovesTheUser() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        Window fullScreen = new Window("full");
+        Window grid = new Window("grid");
+        registry.put("a", fullScreen);
+        registry.put("a", grid);
+        assertEquals(1, registry.size());
+        assertSame(grid, registry.get("a"));
+        assertFalse(registry.containsValue(fullScreen));
+    }
+
+    @Test
+    public void removeUnlinksTheEntry() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        Window a = new Window("a");
+        Window b = new Window("b");
+        Window c = new Window("c");
+        registry.put("a", a);
+        registry.put("b", b);
+        registry.put("c", c);
+        assertSame(b, registry.remove("b"));
+        assertNull(registry.remove("b"));
+        assertFalse(registry.containsValue(b));
+        assertEquals(Arrays.asList("a", "c"), list(registry.keys()));
+        assertSame(a, registry.remove("a"));
+        assertSame(c, registry.remove("c"));
+        assertTrue(registry.isEmpty());
+        assertNull(registry.first());
+        assertFalse(registry.values().iterator().hasNext());
+
+        registry.put("d", b);
+        assertEquals(Arrays.asList("d"), list(registry.keys()));
+    }
+
+    @Test
+    public void firstSkipsTheExcludedValue() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        Window fullScreen = new Window("full");
+        Window grid = new Window("grid");
+        assertNull(registry.first(fullScreen));
+        registry.put("a", fullScreen);
+        assertSame(fullScreen, registry.first());
+        assertNull(registry.first(fullScreen));
+        registry.put("b", grid);
+        assertSame(grid, registry.first(fullScreen));
+        assertEquals(Arrays.asList(fullScreen, grid), list(registry.values(null)));
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        Window a = new Window("a");
+        registry.put("a", a);
+        registry.put("b", new Window("b"));
+        registry.clear();
+        assertTrue(registry.isEmpty());
+        assertFalse(registry.containsValue(a));
+        assertNull(registry.get("a"));
+        assertFalse(registry.keys().iterator().hasNext());
+        registry.put("a", a);
+        assertEquals(1, registry.size());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void modificationDuringIterationThrows() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        registry.put("a", new Window("a"));
+        registry.put("b", new Window("b"));
+        for (String key : registry.keys()) {
+            registry.remove(key);
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void exhaustedIteratorThrows() {
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        registry.put("a", new Window("a"));
+        Iterator<Window> iterator = registry.values().iterator();
+        iterator.next();
+        iterator.next();
+    }
+
+    @Test
+    public void matchesAReferenceModelUnderRandomOperations() {
+        Random random = new Random(3);
+        Window[] windows = new Window[6];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = new Window("w" + i);
+        }
+        OrderedRegistry<String, Window> registry = new OrderedRegistry<>();
+        List<String> order = new ArrayList<>();
+        Map<String, Window> model = new HashMap<>();
+        for (int step = 0; step < 20000; step++) {
+            String key = "u" + random.nextInt(8);
+            int op = random.nextInt(10);
+            if (op < 6) {
+                Window window = windows[random.nextInt(windows.length)];
+                boolean first = random.nextBoolean();
+                for (Map.Entry<String, Window> entry : new ArrayList<>(model.entrySet())) {
+                    if (entry.getValue() == window && !entry.getKey().equals(key)) {
+                        model.remove(entry.getKey());
+                        order.remove(entry.getKey());
+                    }
+                }
+                assertSame(model.put(key, window), registry.put(key, window, first));
+                order.remove(key);
+                order.add(first ? 0 : order.size(), key);
+            } else if (op < 9) {
+                order.remove(key);
+                assertSame(model.remove(key), registry.remove(key));
+            } else {
+                assertSame(model.get(key), registry.get(key));
+            }
+            assertEquals(order, list(registry.keys()));
+            assertEquals(model.size(), registry.size());
+            for (Window window : windows) {
+                assertEquals(model.containsValue(window), registry.containsValue(window));
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import com.qiniu.droid.rtc.demo.model.ProgressEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ProgressReporterTest {
+
+    private static final long MIN_INTERVAL_MS = 250;
+    private static final long RATE_TIME_CONSTANT_MS = 2000;
+
+    private long mNowMs;
+    private final List<ProgressEvent> mEvents = new ArrayList<>();
+    private final ProgressReporter mReporter = newReporter(mEvents);
+
+    private ProgressReporter newReporter(List<ProgressEvent> events) {
+        return new ProgressReporter(events::add, () -> mNowMs, MIN_INTERVAL_MS, RATE_TIME_CONSTANT_MS);
+    }
+
+    private ProgressEvent last() {
+        return mEvents.get(mEvents.size() - 1);
+    }
+
+    @Test
+    public void reportsAreThrottled() {
+        assertNull(mReporter.getLastEvent());
+        mReporter.onBytes(0, 1000);
+        assertEquals(1, mEvents.size());
+        mNowMs = 100;
+        mReporter.onBytes(100, 1000);
+        mNowMs = 249;
+        mReporter.onBytes(200, 1000);
+        assertEquals(1, mEvents.size());
+        mNowMs = 250;
+        mReporter.onBytes(300, 1000);
+        assertEquals(2, mEvents.size());
+        assertEquals(30, last().getProgress());
+        assertEquals(2, mReporter.getReportCount());
+        assertEquals(2, mReporter.getSkippedCount());
+        assertEquals(last(), mReporter.getLastEvent());
+    }
+
+    @Test
+    public void firstIntervalGivesTheRateAndEta() {
+        mReporter.onBytes(0, 5000);
+        assertEquals(-1, last().getBytesPerSecond());
+        assertEquals(-1, last().getEtaMs());
+        mNowMs = 1000;
+        mReporter.onBytes(1000, 5000);
+        assertEquals(1000, last().getBytesPerSecond());
+        assertEquals(4000, last().getEtaMs());
+        assertEquals(20, last().getProgress());
+    }
+
+    @Test
+    public void rateIsSmoothedByElapsedTime() {
+        mReporter.onBytes(0, -1);
+        mNowMs = 1000;
+        mReporter.onBytes(1000, -1);
+        mNowMs = 2000;
+        mReporter.onBytes(4000, -1);
+        double alpha = 1 - Math.exp(-1000.0 / RATE_TIME_CONSTANT_MS);
+        assertEquals(Math.round((1 + alpha * 2) * 1000), last().getBytesPerSecond());
+        // the total is unknown
+        assertEquals(0, last().getProgress());
+        assertEquals(-1, last().getEtaMs());
+    }
+
+    @Test
+    public void smoothingDoesNotDependOnTheReportInterval() {
+        List<ProgressEvent> sparseEvents = new ArrayList<>();
+        ProgressReporter sparse = newReporter(sparseEvents);
+        // 1 byte per ms for 2 s, then 3 bytes per ms
+        long bytes = 0;
+        for (mNowMs = 0; mNowMs <= 4000; mNowMs += 250) {
+            mReporter.onBytes(bytes, -1);
+            if (mNowMs % 1000 == 0) {
+                sparse.onBytes(bytes, -1);
+            }
+            bytes += mNowMs < 2000 ? 250 : 750;
+        }
+        assertEquals(sparseEvents.get(sparseEvents.size() - 1).getBytesPerSecond(), last().getBytesPerSecond(), 1);
+        assertEquals(5, sparseEvents.size());
+    }
+
+    @Test
+    public void resumedBytesDoNotCountAsSpeed() {
+        mReporter.onBytes(10_000, 20_000);
+        assertEquals(50, last().getProgress());
+        mNowMs = 1000;
+        mReporter.onBytes(11_000, 20_000);
+        assertEquals(1000, last().getBytesPerSecond());
+        assertEquals(9000, last().getEtaMs());
+    }
+
+    @Test
+    public void restartKeepsTheRate() {
+        mReporter.onBytes(0, 10_000);
+        mNowMs = 1000;
+        mReporter.onBytes(2000, 10_000);
+        mReporter.restart();
+        // the interruption took a while, it is not counted as a slow interval
+        mNowMs = 5000;
+        mReporter.onBytes(2000, 10_000);
+        assertEquals(3, mEvents.size());
+        assertEquals(2000, last().getBytesPerSecond());
+        mNowMs = 5100;
+        mReporter.onBytes(2100, 10_000);
+        assertEquals(3, mEvents.size());
+    }
+
+    @Test
+    public void completeReportsOneHundredOnce() {
+        mReporter.onBytes(0, 4000);
+        mNowMs = 1000;
+        mReporter.onBytes(3000, 4000);
+        mNowMs = 1100;
+        mReporter.complete();
+        assertEquals(100, last().getProgress());
+        assertEquals(4000, last().getDownloadedBytes());
+        assertEquals(0, last().getEtaMs());
+        mReporter.complete();
+        assertEquals(3, mEvents.size());
+    }
+
+    @Test
+    public void completeOfAnUnknownLengthKeepsTheDownloadedBytes() {
+        mReporter.onBytes(0, -1);
+        mNowMs = 300;
+        mReporter.onBytes(300, -1);
+        mReporter.complete();
+        assertEquals(100, last().getProgress());
+        assertEquals(300, last().getDownloadedBytes());
+        assertEquals(-1, last().getTotalBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveTimeConstant() {
+        new ProgressReporter(event -> {
+        }, () -> 0, MIN_INTERVAL_MS, 0);
+    }
+}
@@ -0,0 +1,294 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import com.qiniu.droid.rtc.demo.model.UpdateInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ServerSocketFactory;
+
+import okhttp3.Call;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QNAppServerTest {
+
+    private static final String UPDATE_INFO = "{\"AppId\":\"com.qiniu.droid.rtc.demo\",\"Version\":54,"
+            + "\"Description\":\"fix\",\"DownloadURL\":\"https://example.com/demo.apk\",\"CreateAt\":\"2021-08-01\"}";
+    private static final long TIMEOUT_MS = 5000;
+    private static final int LATENCY_SAMPLES = 100;
+
+    /**
+     * 模拟主线程的消息队列，回调只在 {@link #runNext()} 中执行
+     */
+    static class QueueExecutor implements Executor {
+        private final BlockingQueue<Runnable> mTasks = new LinkedBlockingQueue<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runNext() throws InterruptedException {
+            Runnable task = mTasks.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("nothing was delivered", task);
+            task.run();
+        }
+
+        boolean isEmpty() {
+            return mTasks.isEmpty();
+        }
+    }
+
+    /**
+     * 记录异步请求的结果
+     */
+    static class Result<T> implements QNAppServer.Callback<T> {
+        T mValue;
+        Exception mError;
+        int mCallCount;
+
+        @Override
+        public void onSuccess(T result) {
+            mValue = result;
+            mCallCount++;
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            mError = e;
+            mCallCount++;
+        }
+    }
+
+    private MockWebServer mServer;
+    private QueueExecutor mCallbackExecutor;
+    private QNAppServer mAppServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = newServer();
+        mCallbackExecutor = new QueueExecutor();
+        mAppServer = new QNAppServer(serverAddress(mServer), mCallbackExecutor, new RoomTokenCache());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    /**
+     * 关闭 Nagle 算法的模拟服务器：响应头与响应体分两次写出，否则复用的连接上每个响应都要等待客户端的延迟 ACK
+     */
+    static MockWebServer newServer() throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.setServerSocketFactory(new ServerSocketFactory() {
+            @Override
+            public ServerSocket createServerSocket() throws IOException {
+                return new ServerSocket() {
+                    @Override
+                    public Socket accept() throws IOException {
+                        Socket socket = super.accept();
+                        socket.setTcpNoDelay(true);
+                        return socket;
+                    }
+                };
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port) throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+                throw new UnsupportedOperationException();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    static String serverAddress(MockWebServer server) {
+        String url = server.url("/").toString();
+        return url.substring(0, url.length() - 1);
+    }
+
+    @Test
+    public void updateInfoIsParsed() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(UPDATE_INFO));
+        UpdateInfo updateInfo = mAppServer.getUpdateInfo();
+        assertNotNull(updateInfo);
+        assertEquals(54, updateInfo.getVersion());
+        assertEquals("https://example.com/demo.apk", updateInfo.getDownloadURL());
+        // the md5 is optional
+        assertNull(updateInfo.getDownloadMD5());
+        RecordedRequest request = mServer.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("/v1/upgrade/app?appId=com.qiniu.droid.rtc.demo", request.getPath());
+    }
+
+    @Test
+    public void errorStatusReturnsNull() {
+        mServer.enqueue(new MockResponse().setResponseCode(500).setBody(UPDATE_INFO));
+        assertNull(mAppServer.getUpdateInfo());
+    }
+
+    @Test
+    public void consecutiveRequestsReuseTheConnection() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(new MockResponse().setBody(UPDATE_INFO));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(mAppServer.getUpdateInfo());
+        }
+        // the sequence number counts the requests served on the same connection
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, mServer.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber());
+        }
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void connectionIsReusedAfterChangingTimeouts() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(UPDATE_INFO));
+        mServer.enqueue(new MockResponse().setBody(UPDATE_INFO));
+        assertNotNull(mAppServer.getUpdateInfo());
+        mAppServer.setTimeouts(5_000, 5_000);
+        assertNotNull(mAppServer.getUpdateInfo());
+        assertEquals(0, mServer.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber());
+        assertEquals(1, mServer.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber());
+    }
+
+    @Test
+    public void connectionIsReusedAfterAnErrorStatus() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+        mServer.enqueue(new MockResponse().setBody(UPDATE_INFO));
+        assertNull(mAppServer.getUpdateInfo());
+        assertNotNull(mAppServer.getUpdateInfo());
+        mServer.takeRequest(1, TimeUnit.SECONDS);
+        // the error response is closed, so its connection goes back to the pool
+        assertEquals(1, mServer.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber());
+    }
+
+    @Test
+    public void updateInfoIsDeliveredOnTheCallbackExecutor() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(UPDATE_INFO));
+        Result<UpdateInfo> result = new Result<>();
+        mAppServer.getUpdateInfoAsync(result);
+        mCallbackExecutor.runNext();
+        assertEquals(1, result.mCallCount);
+        assertEquals(54, result.mValue.getVersion());
+    }
+
+    @Test
+    public void asyncErrorStatusIsDeliveredAsFailure() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        Result<UpdateInfo> result = new Result<>();
+        mAppServer.getUpdateInfoAsync(result);
+        mCallbackExecutor.runNext();
+        assertTrue(result.mError instanceof IOException);
+        assertTrue(result.mError.getMessage().contains("503"));
+    }
+
+    @Test
+    public void roomTokenIsRequestedAsync() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("ak:sign:access"));
+        Result<String> result = new Result<>();
+        mAppServer.requestRoomTokenAsync("app1", "com.example", "user1", "room1", result);
+        mCallbackExecutor.runNext();
+        assertEquals("ak:sign:access", result.mValue);
+        assertEquals("/v1/rtc/token/admin/app/app1/room/room1/user/user1?bundleId=com.example",
+                mServer.takeRequest(1, TimeUnit.SECONDS).getPath());
+    }
+
+    @Test
+    public void cancelledRequestIsNotDelivered() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("ak:sign:access").setHeadersDelay(500, TimeUnit.MILLISECONDS));
+        Result<String> result = new Result<>();
+        Call call = mAppServer.requestRoomTokenAsync("app1", "com.example", "user1", "room1", result);
+        assertNotNull(mServer.takeRequest(1, TimeUnit.SECONDS));
+        call.cancel();
+        // okhttp reports the cancellation as a failure, which is dropped
+        mCallbackExecutor.runNext();
+        assertEquals(0, result.mCallCount);
+    }
+
+    @Test
+    public void resultOfACallCancelledBeforeDeliveryIsDropped() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(UPDATE_INFO));
+        Result<UpdateInfo> result = new Result<>();
+        Call call = mAppServer.getUpdateInfoAsync(result);
+        // the response is parsed, but the activity cancels before the main thread runs the callback
+        while (mCallbackExecutor.isEmpty()) {
+            Thread.sleep(5);
+        }
+        call.cancel();
+        mCallbackExecutor.runNext();
+        assertEquals(0, result.mCallCount);
+    }
+
+    @Test
+    public void pooledRequestsSkipTheConnectionSetup() throws Exception {
+        // warm up the code paths first, so that the cold samples measure the connection setup only
+        for (int i = 0; i < LATENCY_SAMPLES / 5; i++) {
+            mServer.enqueue(new MockResponse().setBody(UPDATE_INFO).setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+            timeUpdateInfoNs();
+            mServer.takeRequest(1, TimeUnit.SECONDS);
+        }
+        long[] cold = new long[LATENCY_SAMPLES];
+        for (int i = 0; i < LATENCY_SAMPLES; i++) {
+            // the server closes every connection, so each request opens a new one
+            mServer.enqueue(new MockResponse().setBody(UPDATE_INFO).setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+            cold[i] = timeUpdateInfoNs();
+            assertEquals(0, mServer.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber());
+        }
+        long[] pooled = new long[LATENCY_SAMPLES];
+        for (int i = 0; i < LATENCY_SAMPLES; i++) {
+            mServer.enqueue(new MockResponse().setBody(UPDATE_INFO));
+            pooled[i] = timeUpdateInfoNs();
+            assertEquals(i, mServer.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber());
+        }
+        System.out.println(String.format(Locale.US, "update info latency, cold: p50 %.2f ms, p99 %.2f ms;"
+                        + " pooled: p50 %.2f ms, p99 %.2f ms", percentileMs(cold, 50), percentileMs(cold, 99),
+                percentileMs(pooled, 50), percentileMs(pooled, 99)));
+        // loopback without TLS, the handshake saved is only the TCP one
+        assertTrue(percentileMs(pooled, 50) <= percentileMs(cold, 50));
+    }
+
+    private long timeUpdateInfoNs() {
+        long start = System.nanoTime();
+        assertNotNull(mAppServer.getUpdateInfo());
+        return System.nanoTime() - start;
+    }
+
+    private static double percentileMs(long[] samplesNs, int percentile) {
+        long[] sorted = samplesNs.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,263 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RangeDownloaderTest {
+
+    private static final int FILE_SIZE = 300 * 1024;
+    private static final int CHUNK_SIZE = 4 * 1024;
+
+    /**
+     * 支持 Range 与 If-Range 的本地文件服务器，可以模拟中途断开、慢速传输与错误响应
+     */
+    private static class FileServer {
+        final HttpServer mServer;
+        final List<String> mRanges = new CopyOnWriteArrayList<>();
+        volatile byte[] mContent;
+        // null to send neither ETag nor Last-Modified
+        volatile String mETag = "\"v1\"";
+        // the body of the next response is cut after this many bytes, -1 to send it all
+        volatile long mTruncateAfter = -1;
+        // requests for a range starting here are answered with 500, -1 for none
+        volatile long mFailingRangeStart = -1;
+        volatile long mChunkDelayMs;
+        volatile long mServedBytes;
+
+        FileServer(byte[] content) throws IOException {
+            mContent = content;
+            mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            mServer.setExecutor(Executors.newCachedThreadPool());
+            mServer.createContext("/file", this::handle);
+            mServer.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/file";
+        }
+
+        void handle(HttpExchange exchange) throws IOException {
+            try {
+                byte[] content = mContent;
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                mRanges.add(String.valueOf(range));
+                String etag = mETag;
+                if (etag != null) {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                }
+                long start = 0;
+                long end = content.length - 1;
+                boolean partial = false;
+                if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                    String[] values = range.substring("bytes=".length()).split("-", -1);
+                    start = Long.parseLong(values[0]);
+                    if (!values[1].isEmpty()) {
+                        end = Long.parseLong(values[1]);
+                    }
+                    partial = true;
+                }
+                if (partial && start == mFailingRangeStart) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                if (partial) {
+                    exchange.getResponseHeaders().set("Content-Range",
+                            "bytes " + start + "-" + end + "/" + content.length);
+                }
+                exchange.sendResponseHeaders(partial ? 206 : 200, end - start + 1);
+                long limit = end + 1;
+                if (mTruncateAfter >= 0) {
+                    limit = Math.min(limit, start + mTruncateAfter);
+                    mTruncateAfter = -1;
+                }
+                OutputStream out = exchange.getResponseBody();
+                for (long position = start; position < limit; position += CHUNK_SIZE) {
+                    int length = (int) Math.min(CHUNK_SIZE, limit - position);
+                    out.write(content, (int) position, length);
+                    out.flush();
+                    synchronized (this) {
+                        mServedBytes += length;
+                    }
+                    if (mChunkDelayMs > 0) {
+                        Thread.sleep(mChunkDelayMs);
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // the client went away
+            } finally {
+                exchange.close();
+            }
+        }
+
+        void stop() {
+            mServer.stop(0);
+        }
+    }
+
+    private File mDir;
+    private File mTarget;
+    private byte[] mContent;
+    private FileServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = Files.createTempDirectory("range-downloader").toFile();
+        mTarget = new File(mDir, "demo.apk");
+        mContent = randomBytes(FILE_SIZE, 1);
+        mServer = new FileServer(mContent);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String md5Of(byte[] content) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+            builder.append(String.format("%02x", b & 0xFF));
+        }
+        return builder.toString();
+    }
+
+    private RangeDownloader newDownloader(int maxSegments) {
+        RangeDownloader downloader = new RangeDownloader(mTarget);
+        downloader.setBufferSize(8 * 1024);
+        downloader.setParallelism(maxSegments, 64 * 1024);
+        downloader.setTimeouts(5000, 5000);
+        return downloader;
+    }
+
+    @Test
+    public void downloadsInOneRequest() throws Exception {
+        long[] last = {0, 0};
+        File file = newDownloader(1).download(mServer.url(), md5Of(mContent).toUpperCase(), (downloaded, total) -> {
+            last[0] = downloaded;
+            last[1] = total;
+        });
+        assertArrayEquals(mContent, Files.readAllBytes(file.toPath()));
+        assertEquals(1, mServer.mRanges.size());
+        assertEquals(FILE_SIZE, last[0]);
+        assertEquals(FILE_SIZE, last[1]);
+        assertFalse(new File(mTarget.getPath() + ".part").exists());
+        assertFalse(new File(mTarget.getPath() + ".part.state").exists());
+    }
+
+    @Test
+    public void downloadsSegmentsInParallel() throws Exception {
+        newDownloader(3).download(mServer.url(), md5Of(mContent), null);
+        assertArrayEquals(mContent, Files.readAllBytes(mTarget.toPath()));
+        assertEquals(3, mServer.mRanges.size());
+        assertEquals("bytes=0-", mServer.mRanges.get(0));
+    }
+
+    @Test
+    public void resumesFromTheInterruptedPosition() throws Exception {
+        mServer.mTruncateAfter = 100 * 1024;
+        RangeDownloader downloader = newDownloader(1);
+        try {
+            downloader.download(mServer.url(), null, null);
+            fail("the first attempt is cut off");
+        } catch (IOException expected) {
+        }
+        long saved = new File(mTarget.getPath() + ".part").length();
+        assertTrue(saved > 0);
+
+        downloader.download(mServer.url(), md5Of(mContent), null);
+        assertArrayEquals(mContent, Files.readAllBytes(mTarget.toPath()));
+        assertEquals(2, mServer.mRanges.size());
+        assertEquals("bytes=" + saved + "-" + (FILE_SIZE - 1), mServer.mRanges.get(1));
+    }
+
+    @Test
+    public void changedFileIsDownloadedFromTheResumeResponse() throws Exception {
+        mServer.mTruncateAfter = 100 * 1024;
+        RangeDownloader downloader = newDownloader(1);
+        try {
+            downloader.download(mServer.url(), null, null);
+            fail("the first attempt is cut off");
+        } catch (IOException expected) {
+        }
+
+        // the If-Range validator no longer matches, so the server answers the resume request with the whole file
+        byte[] changed = randomBytes(FILE_SIZE - 1000, 2);
+        mServer.mContent = changed;
+        mServer.mETag = "\"v2\"";
+        downloader.download(mServer.url(), md5Of(changed), null);
+        assertArrayEquals(changed, Files.readAllBytes(mTarget.toPath()));
+        // no second full request after the 200 response
+        assertEquals(2, mServer.mRanges.size());
+    }
+
+    @Test
+    public void changedLengthRestartsWithoutAValidator() throws Exception {
+        mServer.mETag = null;
+        mServer.mTruncateAfter = 100 * 1024;
+        RangeDownloader downloader = newDownloader(1);
+        try {
+            downloader.download(mServer.url(), null, null);
+            fail("the first attempt is cut off");
+        } catch (IOException expected) {
+        }
+
+        // no If-Range to send, the server answers the resume request with a range of the new file
+        byte[] changed = randomBytes(FILE_SIZE + 1000, 2);
+        mServer.mContent = changed;
+        downloader.download(mServer.url(), md5Of(changed), null);
+        assertArrayEquals(changed, Files.readAllBytes(mTarget.toPath()));
+        assertEquals(3, mServer.mRanges.size());
+        assertEquals("bytes=0-", mServer.mRanges.get(2));
+    }
+
+    @Test
+    public void failingSegmentAbortsTheOthers() throws Exception {
+        // the second segment fails at once while the others trickle
+        mServer.mFailingRangeStart = FILE_SIZE / 3;
+        mServer.mChunkDelayMs = 50;
+        long startMs = System.currentTimeMillis();
+        try {
+            newDownloader(3).download(mServer.url(), null, null);
+            fail("a segment fails");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("500"));
+        }
+        // the slow segments would take about 25 * 50 ms each without the abort
+        assertTrue(System.currentTimeMillis() - startMs < 800);
+        assertTrue(mServer.mServedBytes < FILE_SIZE / 2);
+    }
+}
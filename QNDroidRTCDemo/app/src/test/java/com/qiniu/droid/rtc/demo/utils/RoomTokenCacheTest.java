@@ -0,0 +1,364 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RoomTokenCacheTest {
+
+    private static final long EXPIRY_MARGIN_MS = 60_000;
+    private static final long REFRESH_AHEAD_MS = 300_000;
+    private static final long HOUR_MS = 3600_000;
+
+    /**
+     * 记录获取请求的模拟 Fetcher，由测试决定何时完成
+     */
+    private static class FakeFetcher implements RoomTokenCache.Fetcher {
+        final List<QNAppServer.Callback<String>> mPending = new ArrayList<>();
+
+        @Override
+        public void fetch(QNAppServer.Callback<String> callback) {
+            mPending.add(callback);
+        }
+
+        void succeed(String token) {
+            mPending.remove(0).onSuccess(token);
+        }
+
+        void fail(Exception e) {
+            mPending.remove(0).onFailure(e);
+        }
+    }
+
+    /**
+     * 记录回调结果
+     */
+    private static class Result implements QNAppServer.Callback<String> {
+        final List<String> mTokens = new ArrayList<>();
+        final List<Exception> mErrors = new ArrayList<>();
+
+        @Override
+        public void onSuccess(String result) {
+            mTokens.add(result);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            mErrors.add(e);
+        }
+    }
+
+    private long mNowMs = 1_600_000_000_000L;
+    private final RoomTokenCache mCache = new RoomTokenCache(() -> mNowMs, EXPIRY_MARGIN_MS, REFRESH_AHEAD_MS);
+    private final FakeFetcher mFetcher = new FakeFetcher();
+
+    private static String token(String name, long expireAtMs) {
+        String roomAccess = "{\"appId\":\"d8lk7l4ed\",\"roomName\":\"" + name + "\",\"userId\":\"user\","
+                + "\"expireAt\":" + expireAtMs / 1000 + ",\"permission\":\"user\"}";
+        return "accessKey:signature=:" + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(roomAccess.getBytes(Charset.forName("UTF-8")));
+    }
+
+    private Result get() {
+        Result result = new Result();
+        mCache.get("room/user", mFetcher, result);
+        return result;
+    }
+
+    @Test
+    public void expireAtIsDecoded() {
+        assertEquals(1_600_003_600_000L, RoomTokenCache.decodeExpireAtMs(token("room", 1_600_003_600_000L)));
+        // every padding length, with the standard alphabet as well
+        for (String name : new String[]{"r", "ro", "roo", "room?>>"}) {
+            String urlSafe = token(name, 2_000_000_000_000L);
+            assertEquals(2_000_000_000_000L, RoomTokenCache.decodeExpireAtMs(urlSafe));
+            String roomAccess = urlSafe.substring(urlSafe.lastIndexOf(':') + 1);
+            String standard = Base64.getEncoder().encodeToString(Base64.getUrlDecoder().decode(roomAccess));
+            assertEquals(2_000_000_000_000L, RoomTokenCache.decodeExpireAtMs("ak:sign:" + standard));
+        }
+    }
+
+    @Test
+    public void malformedTokensAreRejected() {
+        assertEquals(-1, RoomTokenCache.decodeExpireAtMs(null));
+        assertEquals(-1, RoomTokenCache.decodeExpireAtMs("no colon"));
+        assertEquals(-1, RoomTokenCache.decodeExpireAtMs("ak:sign:not*base64"));
+        String noExpireAt = Base64.getUrlEncoder().encodeToString("{\"roomName\":\"room\"}".getBytes());
+        assertEquals(-1, RoomTokenCache.decodeExpireAtMs("ak:sign:" + noExpireAt));
+    }
+
+    @Test
+    public void concurrentCallersShareOneRequest() {
+        Result first = get();
+        Result second = get();
+        Result third = get();
+        assertEquals(1, mFetcher.mPending.size());
+        assertEquals(2, mCache.getSharedCount());
+
+        String token = token("room", mNowMs + HOUR_MS);
+        mFetcher.succeed(token);
+        for (Result result : new Result[]{first, second, third}) {
+            assertEquals(1, result.mTokens.size());
+            assertEquals(token, result.mTokens.get(0));
+        }
+        assertEquals(1, mCache.getFetchCount());
+    }
+
+    @Test
+    public void validTokenIsServedFromTheCache() {
+        get();
+        String token = token("room", mNowMs + HOUR_MS);
+        mFetcher.succeed(token);
+        mNowMs += HOUR_MS - REFRESH_AHEAD_MS - 1;
+        assertEquals(token, get().mTokens.get(0));
+        assertTrue(mFetcher.mPending.isEmpty());
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getFetchCount());
+    }
+
+    @Test
+    public void tokenCloseToExpiryIsRefreshedAhead() {
+        get();
+        String token = token("room", mNowMs + HOUR_MS);
+        mFetcher.succeed(token);
+
+        mNowMs += HOUR_MS - REFRESH_AHEAD_MS;
+        Result result = get();
+        // the cached token is still returned, the refresh runs in the background
+        assertEquals(token, result.mTokens.get(0));
+        assertEquals(1, mFetcher.mPending.size());
+        // no second refresh while one is in flight
+        assertEquals(token, get().mTokens.get(0));
+        assertEquals(1, mFetcher.mPending.size());
+
+        String refreshed = token("room", mNowMs + HOUR_MS);
+        mFetcher.succeed(refreshed);
+        assertEquals(1, result.mTokens.size());
+        assertEquals(refreshed, get().mTokens.get(0));
+        assertEquals(2, mCache.getFetchCount());
+    }
+
+    @Test
+    public void tokenWithinTheMarginIsFetchedAgain() {
+        get();
+        mFetcher.succeed(token("room", mNowMs + HOUR_MS));
+        mNowMs += HOUR_MS - EXPIRY_MARGIN_MS;
+        Result result = get();
+        assertTrue(result.mTokens.isEmpty());
+        String token = token("room", mNowMs + HOUR_MS);
+        mFetcher.succeed(token);
+        assertEquals(token, result.mTokens.get(0));
+    }
+
+    @Test
+    public void invalidateDropsTheCachedToken() {
+        get();
+        mFetcher.succeed(token("room", mNowMs + HOUR_MS));
+        mCache.invalidate("room/user");
+        Result result = get();
+        assertTrue(result.mTokens.isEmpty());
+        assertEquals(1, mFetcher.mPending.size());
+        String token = token("room", mNowMs + HOUR_MS);
+        mFetcher.succeed(token);
+        assertEquals(token, result.mTokens.get(0));
+        // other keys are not affected
+        mCache.invalidate("other");
+        assertEquals(token, get().mTokens.get(0));
+    }
+
+    @Test
+    public void invalidateKeepsTheRequestInFlight() {
+        Result result = get();
+        mCache.invalidate("room/user");
+        String token = token("room", mNowMs + HOUR_MS);
+        mFetcher.succeed(token);
+        assertEquals(token, result.mTokens.get(0));
+        assertEquals(token, get().mTokens.get(0));
+    }
+
+    @Test
+    public void failureIsDeliveredToAllWaitersAndNotCached() {
+        Result first = get();
+        Result second = get();
+        Exception error = new Exception("network");
+        mFetcher.fail(error);
+        assertEquals(error, first.mErrors.get(0));
+        assertEquals(error, second.mErrors.get(0));
+        get();
+        assertEquals(1, mFetcher.mPending.size());
+    }
+
+    @Test
+    public void tokenWithoutExpiryIsNotCached() {
+        Result result = get();
+        mFetcher.succeed("ak:sign:opaque");
+        assertEquals("ak:sign:opaque", result.mTokens.get(0));
+        get();
+        assertEquals(1, mFetcher.mPending.size());
+    }
+
+    @Test
+    public void prefetchOnlyFetchesWhenNeeded() {
+        mCache.prefetch("room/user", mFetcher);
+        assertEquals(1, mFetcher.mPending.size());
+        // a caller joins the prefetch
+        Result result = get();
+        String token = token("room", mNowMs + HOUR_MS);
+        mFetcher.succeed(token);
+        assertEquals(token, result.mTokens.get(0));
+
+        mCache.prefetch("room/user", mFetcher);
+        assertTrue(mFetcher.mPending.isEmpty());
+        mNowMs += HOUR_MS - REFRESH_AHEAD_MS;
+        mCache.prefetch("room/user", mFetcher);
+        assertEquals(1, mFetcher.mPending.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRefreshShorterThanMargin() {
+        new RoomTokenCache(() -> 0, 10_000, 5_000);
+    }
+
+    private QNAppServer newAppServer(MockWebServer server, QNAppServerTest.QueueExecutor callbackExecutor) {
+        return new QNAppServer(QNAppServerTest.serverAddress(server), callbackExecutor, mCache);
+    }
+
+    private static MockResponse tokenResponse(String token) {
+        return new MockResponse().setBody(token);
+    }
+
+    @Test
+    public void concurrentCallersSendOneHttpRequest() throws Exception {
+        MockWebServer server = QNAppServerTest.newServer();
+        try {
+            QNAppServerTest.QueueExecutor mainThread = new QNAppServerTest.QueueExecutor();
+            QNAppServer appServer = newAppServer(server, mainThread);
+            String token = token("room", mNowMs + HOUR_MS);
+            server.enqueue(tokenResponse(token));
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Result result = new Result();
+                results.add(result);
+                appServer.getRoomTokenAsync("app", "com.example", "user", "room", result);
+            }
+            mainThread.runNext();
+            for (Result result : results) {
+                assertEquals(Collections.singletonList(token), result.mTokens);
+            }
+            assertEquals(1, server.getRequestCount());
+
+            // served from the cache without a request
+            Result cached = new Result();
+            appServer.getRoomTokenAsync("app", "com.example", "user", "room", cached);
+            assertEquals(token, cached.mTokens.get(0));
+            assertTrue(mainThread.isEmpty());
+            assertEquals(1, server.getRequestCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void refreshAheadSendsABackgroundRequest() throws Exception {
+        MockWebServer server = QNAppServerTest.newServer();
+        try {
+            QNAppServerTest.QueueExecutor mainThread = new QNAppServerTest.QueueExecutor();
+            QNAppServer appServer = newAppServer(server, mainThread);
+            String token = token("room", mNowMs + HOUR_MS);
+            server.enqueue(tokenResponse(token));
+            appServer.getRoomTokenAsync("app", "com.example", "user", "room", new Result());
+            mainThread.runNext();
+
+            mNowMs += HOUR_MS - REFRESH_AHEAD_MS;
+            String refreshed = token("room", mNowMs + HOUR_MS);
+            server.enqueue(tokenResponse(refreshed));
+            Result result = new Result();
+            appServer.getRoomTokenAsync("app", "com.example", "user", "room", result);
+            // the cached token is returned at once, the refresh goes out in the background
+            assertEquals(Collections.singletonList(token), result.mTokens);
+            assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+            assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+            mainThread.runNext();
+            assertEquals(1, result.mTokens.size());
+
+            Result next = new Result();
+            appServer.getRoomTokenAsync("app", "com.example", "user", "room", next);
+            assertEquals(refreshed, next.mTokens.get(0));
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void prefetchAndInvalidateGoThroughTheServer() throws Exception {
+        MockWebServer server = QNAppServerTest.newServer();
+        try {
+            QNAppServerTest.QueueExecutor mainThread = new QNAppServerTest.QueueExecutor();
+            QNAppServer appServer = newAppServer(server, mainThread);
+            String token = token("room", mNowMs + HOUR_MS);
+            server.enqueue(tokenResponse(token));
+            appServer.prefetchRoomToken("app", "com.example", "user", "room");
+            // a caller during the prefetch waits for it
+            Result joined = new Result();
+            appServer.getRoomTokenAsync("app", "com.example", "user", "room", joined);
+            mainThread.runNext();
+            assertEquals(Collections.singletonList(token), joined.mTokens);
+            assertEquals("/v1/rtc/token/admin/app/app/room/room/user/user?bundleId=com.example",
+                    server.takeRequest(1, TimeUnit.SECONDS).getPath());
+
+            // the token is valid, nothing to prefetch
+            appServer.prefetchRoomToken("app", "com.example", "user", "room");
+            assertEquals(1, server.getRequestCount());
+
+            appServer.invalidateRoomToken("app", "user", "room");
+            String renewed = token("room", mNowMs + HOUR_MS);
+            server.enqueue(tokenResponse(renewed));
+            Result result = new Result();
+            appServer.getRoomTokenAsync("app", "com.example", "user", "room", result);
+            assertTrue(result.mTokens.isEmpty());
+            mainThread.runNext();
+            assertEquals(Collections.singletonList(renewed), result.mTokens);
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void failedHttpRequestIsNotCached() throws Exception {
+        MockWebServer server = QNAppServerTest.newServer();
+        try {
+            QNAppServerTest.QueueExecutor mainThread = new QNAppServerTest.QueueExecutor();
+            QNAppServer appServer = newAppServer(server, mainThread);
+            server.enqueue(new MockResponse().setResponseCode(500));
+            Result failed = new Result();
+            appServer.getRoomTokenAsync("app", "com.example", "user", "room", failed);
+            mainThread.runNext();
+            assertTrue(failed.mErrors.get(0) instanceof IOException);
+
+            String token = token("room", mNowMs + HOUR_MS);
+            server.enqueue(tokenResponse(token));
+            Result result = new Result();
+            appServer.getRoomTokenAsync("app", "com.example", "user", "room", result);
+            mainThread.runNext();
+            assertEquals(Collections.singletonList(token), result.mTokens);
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+}
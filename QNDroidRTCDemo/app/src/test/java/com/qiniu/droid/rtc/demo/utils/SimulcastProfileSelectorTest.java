@@ -0,0 +1,233 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import com.qiniu.droid.rtc.QNRemoteVideoTrack;
+import com.qiniu.droid.rtc.QNTrackProfile;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SimulcastProfileSelectorTest {
+
+    private static final int HIGH_KBPS = 1000;
+    private static final int LOW_SAVED_KBPS = 900;
+    private static final int MEDIUM_SAVED_KBPS = 700;
+    private static final long DEBOUNCE_MS = 300;
+
+    /**
+     * 记录 setProfile 调用的远端视频 track
+     */
+    private static class FakeTrack {
+        final List<QNTrackProfile> mProfiles = new ArrayList<>();
+        final QNRemoteVideoTrack mTrack;
+
+        FakeTrack(String trackId, boolean multiProfile) {
+            mTrack = (QNRemoteVideoTrack) Proxy.newProxyInstance(QNRemoteVideoTrack.class.getClassLoader(),
+                    new Class<?>[]{QNRemoteVideoTrack.class}, (self, method, args) -> {
+                        switch (method.getName()) {
+                            case "getTrackID":
+                                return trackId;
+                            case "isMultiProfileEnabled":
+                                return multiProfile;
+                            case "isVideo":
+                                return true;
+                            case "setProfile":
+                                mProfiles.add((QNTrackProfile) args[0]);
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(self);
+                            case "equals":
+                                return self == args[0];
+                            default:
+                                return method.getReturnType() == boolean.class ? false : null;
+                        }
+                    });
+        }
+
+        QNTrackProfile last() {
+            return mProfiles.isEmpty() ? null : mProfiles.get(mProfiles.size() - 1);
+        }
+    }
+
+    private final Map<String, int[]> mTiles = new HashMap<>();
+    private final SimulcastProfileSelector mSelector = new SimulcastProfileSelector(
+            new SimulcastProfileSelector.TileSizeProvider() {
+                @Override
+                public int getTileWidth(String userId) {
+                    int[] tile = mTiles.get(userId);
+                    return tile == null ? 0 : tile[0];
+                }
+
+                @Override
+                public int getTileHeight(String userId) {
+                    int[] tile = mTiles.get(userId);
+                    return tile == null ? 0 : tile[1];
+                }
+            }, 1280, 720, HIGH_KBPS, DEBOUNCE_MS);
+
+    private FakeTrack subscribe(String userId, String trackId, long nowMs) {
+        FakeTrack track = new FakeTrack(trackId, true);
+        mSelector.onVideoTracksSubscribed(userId, Collections.singletonList(track.mTrack), nowMs);
+        return track;
+    }
+
+    @Test
+    public void smallestCoveringLayerIsSelected() {
+        assertEquals(QNTrackProfile.LOW, mSelector.selectProfile(0, 0));
+        assertEquals(QNTrackProfile.LOW, mSelector.selectProfile(400, 225));
+        assertEquals(QNTrackProfile.LOW, mSelector.selectProfile(225, 400));
+        assertEquals(QNTrackProfile.MEDIUM, mSelector.selectProfile(401, 225));
+        assertEquals(QNTrackProfile.MEDIUM, mSelector.selectProfile(450, 800));
+        assertEquals(QNTrackProfile.HIGH, mSelector.selectProfile(801, 450));
+        assertEquals(QNTrackProfile.HIGH, mSelector.selectProfile(1080, 1920));
+    }
+
+    @Test
+    public void layoutChangesAreDebounced() {
+        mTiles.put("a", new int[]{1080, 1920});
+        FakeTrack track = subscribe("a", "a1", 0);
+        assertEquals(DEBOUNCE_MS, mSelector.getEvaluateAtMs());
+        mSelector.requestEvaluation(200);
+        assertFalse(mSelector.update(400));
+        assertTrue(mSelector.update(500));
+        assertEquals(Arrays.asList(QNTrackProfile.HIGH), track.mProfiles);
+        assertEquals(-1, mSelector.getEvaluateAtMs());
+        assertFalse(mSelector.update(10000));
+    }
+
+    @Test
+    public void unchangedProfileIsNotSetAgain() {
+        mTiles.put("a", new int[]{320, 180});
+        FakeTrack track = subscribe("a", "a1", 0);
+        mSelector.update(300);
+        mTiles.put("a", new int[]{300, 170});
+        mSelector.requestEvaluation(1000);
+        mSelector.update(1300);
+        assertEquals(Arrays.asList(QNTrackProfile.LOW), track.mProfiles);
+        mTiles.put("a", new int[]{1080, 1920});
+        mSelector.requestEvaluation(2000);
+        mSelector.update(2300);
+        assertEquals(Arrays.asList(QNTrackProfile.LOW, QNTrackProfile.HIGH), track.mProfiles);
+        assertEquals(1, mSelector.getSwitchCount());
+    }
+
+    @Test
+    public void singleProfileTracksAreIgnored() {
+        FakeTrack track = new FakeTrack("a1", false);
+        mSelector.onVideoTracksSubscribed("a", Collections.singletonList(track.mTrack), 0);
+        assertEquals(-1, mSelector.getEvaluateAtMs());
+        mSelector.requestEvaluation(0);
+        mSelector.update(300);
+        assertTrue(track.mProfiles.isEmpty());
+    }
+
+    @Test
+    public void savedBitrateFollowsTheProfiles() {
+        mTiles.put("a", new int[]{320, 180});
+        mTiles.put("b", new int[]{640, 360});
+        subscribe("a", "a1", 0);
+        subscribe("b", "b1", 0);
+        mSelector.update(300);
+        assertEquals(LOW_SAVED_KBPS + MEDIUM_SAVED_KBPS, mSelector.getEstimatedSavedKbps());
+        assertEquals((LOW_SAVED_KBPS + MEDIUM_SAVED_KBPS) * 2.0, mSelector.getEstimatedSavedKbit(2300), 1e-6);
+        mSelector.removeUser("a", 2300);
+        assertEquals(MEDIUM_SAVED_KBPS, mSelector.getEstimatedSavedKbps());
+        mSelector.onTracksUnpublished(Collections.singletonList(new FakeTrack("b1", true).mTrack), 3300);
+        assertEquals(0, mSelector.getEstimatedSavedKbps());
+        assertEquals((LOW_SAVED_KBPS + MEDIUM_SAVED_KBPS) * 2.0 + MEDIUM_SAVED_KBPS, mSelector.getEstimatedSavedKbit(5000), 1e-6);
+    }
+
+    @Test
+    public void unsubscribedTrackIsSkippedAndFullySaved() {
+        mTiles.put("a", new int[]{640, 360});
+        FakeTrack track = subscribe("a", "a1", 0);
+        mSelector.update(300);
+        assertEquals(MEDIUM_SAVED_KBPS, mSelector.getEstimatedSavedKbps());
+
+        // the window is hidden, the subscription manager unsubscribes the track after its grace period
+        mTiles.remove("a");
+        mSelector.requestEvaluation(1000);
+        mSelector.onVideoTracksUnsubscribed(Collections.singletonList(track.mTrack), 1100);
+        assertEquals(HIGH_KBPS, mSelector.getEstimatedSavedKbps());
+        assertTrue(mSelector.update(1300));
+        // no LOW is set on a track that is not received
+        assertEquals(Arrays.asList(QNTrackProfile.MEDIUM), track.mProfiles);
+        assertEquals(HIGH_KBPS, mSelector.getEstimatedSavedKbps());
+        assertEquals(0, mSelector.getSwitchCount());
+
+        // unsubscribing twice changes nothing
+        mSelector.onVideoTracksUnsubscribed(Collections.singletonList(track.mTrack), 1300);
+        assertEquals(HIGH_KBPS, mSelector.getEstimatedSavedKbps());
+        assertEquals(MEDIUM_SAVED_KBPS * 0.8 + HIGH_KBPS * 1.9, mSelector.getEstimatedSavedKbit(3000), 1e-6);
+    }
+
+    @Test
+    public void resubscribedTrackGetsItsProfileAgain() {
+        mTiles.put("a", new int[]{640, 360});
+        FakeTrack track = subscribe("a", "a1", 0);
+        mSelector.update(300);
+        mSelector.onVideoTracksUnsubscribed(Collections.singletonList(track.mTrack), 1000);
+
+        mSelector.onVideoTracksResubscribed(Collections.singletonList(track.mTrack), 2000);
+        assertEquals(0, mSelector.getEstimatedSavedKbps());
+        assertEquals(2000 + DEBOUNCE_MS, mSelector.getEvaluateAtMs());
+        mSelector.update(2300);
+        // the same profile is set again, the subscription starts at the default profile
+        assertEquals(Arrays.asList(QNTrackProfile.MEDIUM, QNTrackProfile.MEDIUM), track.mProfiles);
+        assertEquals(MEDIUM_SAVED_KBPS, mSelector.getEstimatedSavedKbps());
+        assertEquals(0, mSelector.getSwitchCount());
+    }
+
+    @Test
+    public void resubscriptionCallbackReplacesTheUnsubscribedTrack() {
+        mTiles.put("a", new int[]{640, 360});
+        FakeTrack track = subscribe("a", "a1", 0);
+        mSelector.update(300);
+        mSelector.onVideoTracksUnsubscribed(Collections.singletonList(track.mTrack), 1000);
+
+        // the SDK reports the subscription with a new instance
+        FakeTrack again = subscribe("a", "a1", 2000);
+        assertEquals(0, mSelector.getEstimatedSavedKbps());
+        mSelector.update(2300);
+        assertEquals(QNTrackProfile.MEDIUM, again.last());
+        assertEquals(MEDIUM_SAVED_KBPS, mSelector.getEstimatedSavedKbps());
+        assertEquals(1, track.mProfiles.size());
+    }
+
+    @Test
+    public void resubscribingASubscribedTrackChangesNothing() {
+        mTiles.put("a", new int[]{640, 360});
+        FakeTrack track = subscribe("a", "a1", 0);
+        mSelector.update(300);
+        mSelector.onVideoTracksResubscribed(Collections.singletonList(track.mTrack), 1000);
+        assertEquals(-1, mSelector.getEvaluateAtMs());
+        assertEquals(MEDIUM_SAVED_KBPS, mSelector.getEstimatedSavedKbps());
+    }
+
+    @Test
+    public void removingAnUnsubscribedUserDropsItsSaving() {
+        mTiles.put("a", new int[]{640, 360});
+        FakeTrack track = subscribe("a", "a1", 0);
+        mSelector.update(300);
+        mSelector.onVideoTracksUnsubscribed(Collections.singletonList(track.mTrack), 1000);
+        mSelector.removeUser("a", 2000);
+        assertEquals(0, mSelector.getEstimatedSavedKbps());
+        mSelector.clear();
+        assertEquals(0, mSelector.getEstimatedSavedKbps());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidResolution() {
+        new SimulcastProfileSelector(null, 0, 720, HIGH_KBPS);
+    }
+}
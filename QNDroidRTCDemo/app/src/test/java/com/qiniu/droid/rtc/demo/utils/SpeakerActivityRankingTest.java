@@ -0,0 +1,79 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpeakerActivityRankingTest {
+
+    private static final long STEP_MS = 100;
+
+    private static long feed(SpeakerActivityRanking ranking, long nowMs, long durationMs, String userId, float levelDb) {
+        for (long end = nowMs + durationMs; nowMs < end; nowMs += STEP_MS) {
+            ranking.update(userId, levelDb, nowMs);
+        }
+        return nowMs;
+    }
+
+    @Test
+    public void levelsMapToScores() {
+        SpeakerActivityRanking ranking = new SpeakerActivityRanking();
+        feed(ranking, 0, 3000, "loud", -20);
+        feed(ranking, 0, 3000, "half", -40);
+        feed(ranking, 0, 3000, "silent", -70);
+        assertEquals(1, ranking.getScore("loud", 3000), 0.01);
+        assertEquals(0.5, ranking.getScore("half", 3000), 0.01);
+        assertEquals(0, ranking.getScore("silent", 3000), 0.01);
+        assertEquals(0, ranking.getScore("unknown", 3000), 0);
+    }
+
+    @Test
+    public void rankingIsOrderedAndFiltered() {
+        SpeakerActivityRanking ranking = new SpeakerActivityRanking();
+        feed(ranking, 0, 2000, "a", -45);
+        feed(ranking, 0, 2000, "b", -25);
+        feed(ranking, 0, 2000, "c", -35);
+        feed(ranking, 0, 2000, "d", -65);
+        List<String> out = new ArrayList<>(Arrays.asList("stale"));
+        ranking.getRanking(0.1f, 2000, out);
+        assertEquals(Arrays.asList("b", "c", "a"), out);
+    }
+
+    @Test
+    public void attackIsFasterThanRelease() {
+        SpeakerActivityRanking ranking = new SpeakerActivityRanking();
+        long now = feed(ranking, 0, 500, "a", -20);
+        assertTrue(ranking.getScore("a", now) > 0.8f);
+        now = feed(ranking, now, 300, "a", -70);
+        // a pause between words keeps most of the score
+        assertTrue(ranking.getScore("a", now) > 0.6f);
+    }
+
+    @Test
+    public void staleUserDecays() {
+        SpeakerActivityRanking ranking = new SpeakerActivityRanking();
+        long now = feed(ranking, 0, 1000, "a", -20);
+        float score = ranking.getScore("a", now);
+        assertEquals(score, ranking.getScore("a", now + 400), 0);
+        assertTrue(ranking.getScore("a", now + 5000) < 0.1f);
+    }
+
+    @Test
+    public void removedUserIsNotRanked() {
+        SpeakerActivityRanking ranking = new SpeakerActivityRanking();
+        feed(ranking, 0, 1000, "a", -20);
+        feed(ranking, 0, 1000, "b", -30);
+        ranking.remove("a");
+        List<String> out = new ArrayList<>();
+        ranking.getRanking(0, 1000, out);
+        assertEquals(Arrays.asList("b"), out);
+        ranking.clear();
+        ranking.getRanking(0, 1000, out);
+        assertTrue(out.isEmpty());
+    }
+}
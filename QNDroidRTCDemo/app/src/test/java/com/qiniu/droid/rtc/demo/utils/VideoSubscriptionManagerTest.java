@@ -0,0 +1,277 @@
+package com.qiniu.droid.rtc.demo.utils;
+
+import com.qiniu.droid.rtc.QNRemoteTrack;
+import com.qiniu.droid.rtc.QNRemoteVideoTrack;
+import com.qiniu.droid.rtc.demo.FakeTracks;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VideoSubscriptionManagerTest {
+
+    private static final long HIDE_GRACE_MS = 3000;
+    private static final long SHOW_GRACE_MS = 500;
+
+    /**
+     * 记录每一次订阅与取消订阅调用，以及当前的订阅状态
+     */
+    private static class FakeClient implements VideoSubscriptionManager.SubscriptionClient {
+        final List<List<String>> mSubscribeCalls = new ArrayList<>();
+        final List<List<String>> mUnsubscribeCalls = new ArrayList<>();
+        final Set<String> mUnsubscribed = new HashSet<>();
+
+        @Override
+        public void subscribe(List<QNRemoteTrack> tracks) {
+            List<String> ids = ids(tracks);
+            mSubscribeCalls.add(ids);
+            for (String id : ids) {
+                assertTrue(id + " subscribed twice", mUnsubscribed.remove(id));
+            }
+        }
+
+        @Override
+        public void unsubscribe(List<QNRemoteTrack> tracks) {
+            List<String> ids = ids(tracks);
+            mUnsubscribeCalls.add(ids);
+            for (String id : ids) {
+                assertTrue(id + " unsubscribed twice", mUnsubscribed.add(id));
+            }
+        }
+
+        int callCount() {
+            return mSubscribeCalls.size() + mUnsubscribeCalls.size();
+        }
+
+        static List<String> ids(List<QNRemoteTrack> tracks) {
+            List<String> ids = new ArrayList<>();
+            for (QNRemoteTrack track : tracks) {
+                ids.add(track.getTrackID());
+            }
+            Collections.sort(ids);
+            return ids;
+        }
+    }
+
+    private final FakeClient mClient = new FakeClient();
+    private final Set<String> mHidden = new HashSet<>();
+    private final VideoSubscriptionManager mManager = new VideoSubscriptionManager(mClient,
+            userId -> !mHidden.contains(userId), HIDE_GRACE_MS, SHOW_GRACE_MS);
+
+    private static List<QNRemoteVideoTrack> videoTracks(String userId, String... trackIds) {
+        List<QNRemoteVideoTrack> tracks = new ArrayList<>();
+        for (String trackId : trackIds) {
+            tracks.add(FakeTracks.track(QNRemoteVideoTrack.class, trackId, userId, true));
+        }
+        return tracks;
+    }
+
+    /**
+     * 按照 RoomActivity 中的更新间隔推进时间
+     */
+    private void run(long fromMs, long toMs) {
+        for (long now = fromMs; now <= toMs; now += 500) {
+            mManager.update(now);
+        }
+    }
+
+    @Test
+    public void hiddenUserIsUnsubscribedAfterTheGracePeriod() {
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1", "a2"), 0);
+        mHidden.add("a");
+        run(0, 2500);
+        assertEquals(0, mClient.callCount());
+        assertTrue(mManager.isSubscribed("a"));
+
+        mManager.update(3000);
+        assertEquals(Arrays.asList(Arrays.asList("a1", "a2")), mClient.mUnsubscribeCalls);
+        assertFalse(mManager.isSubscribed("a"));
+        assertEquals(2, mManager.getUnsubscribedTrackCount());
+        assertEquals(2, mManager.getUnsubscribeCount());
+
+        run(3500, 10000);
+        assertEquals(1, mClient.callCount());
+    }
+
+    @Test
+    public void flappingWithinTheGracePeriodDoesNothing() {
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1"), 0);
+        for (long now = 0; now < 20000; now += 500) {
+            // hidden for 2.5 s, visible for 0.5 s, e.g. the user pages back and forth
+            if (now % 3000 == 0) {
+                mHidden.add("a");
+            } else if (now % 3000 == 2500) {
+                mHidden.remove("a");
+            }
+            mManager.update(now);
+        }
+        assertEquals(0, mClient.callCount());
+    }
+
+    @Test
+    public void visibleUserIsResubscribedAfterTheShowGrace() {
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1"), 0);
+        mHidden.add("a");
+        run(0, 3000);
+        mHidden.remove("a");
+        mManager.update(4000);
+        assertEquals(0, mClient.mSubscribeCalls.size());
+        // hidden again before the show grace ends, stays unsubscribed
+        mHidden.add("a");
+        mManager.update(4200);
+        mHidden.remove("a");
+        mManager.update(4400);
+        mManager.update(4800);
+        assertEquals(0, mClient.mSubscribeCalls.size());
+        mManager.update(4900);
+        assertEquals(Arrays.asList(Arrays.asList("a1")), mClient.mSubscribeCalls);
+        assertTrue(mManager.isSubscribed("a"));
+        assertEquals(0, mManager.getUnsubscribedTrackCount());
+        assertEquals(1, mManager.getResubscribeCount());
+    }
+
+    @Test
+    public void usersChangingPageTogetherAreBatched() {
+        for (String user : new String[]{"a", "b", "c", "d"}) {
+            mManager.onVideoTracksSubscribed(user, videoTracks(user, user + "1"), 0);
+        }
+        // page 1 shows a and b, switching to page 2 shows c and d
+        mHidden.addAll(Arrays.asList("c", "d"));
+        run(0, 3000);
+        assertEquals(Arrays.asList(Arrays.asList("c1", "d1")), mClient.mUnsubscribeCalls);
+
+        mHidden.clear();
+        mHidden.addAll(Arrays.asList("a", "b"));
+        mManager.update(5000);
+        mManager.update(5500);
+        assertEquals(Arrays.asList(Arrays.asList("c1", "d1")), mClient.mSubscribeCalls);
+        mManager.update(8000);
+        assertEquals(Arrays.asList(Arrays.asList("c1", "d1"), Arrays.asList("a1", "b1")), mClient.mUnsubscribeCalls);
+        assertEquals(3, mClient.callCount());
+    }
+
+    @Test
+    public void subscribeAndUnsubscribeInOneUpdateAreOneCallEach() {
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1"), 0);
+        mManager.onVideoTracksSubscribed("b", videoTracks("b", "b1", "b2"), 0);
+        mHidden.add("a");
+        run(0, 3000);
+        mHidden.clear();
+        mHidden.add("b");
+        // a was hidden long enough, and b's grace starts now
+        mManager.update(3000 + HIDE_GRACE_MS);
+        mManager.update(3000 + 2 * HIDE_GRACE_MS);
+        assertEquals(Arrays.asList(Arrays.asList("a1"), Arrays.asList("b1", "b2")), mClient.mUnsubscribeCalls);
+        assertEquals(Arrays.asList(Arrays.asList("a1")), mClient.mSubscribeCalls);
+
+        mHidden.clear();
+        mHidden.add("a");
+        int calls = mClient.callCount();
+        mManager.update(20000);
+        mManager.update(23000);
+        assertEquals(calls + 2, mClient.callCount());
+        assertEquals(Arrays.asList("b1", "b2"), mClient.mSubscribeCalls.get(1));
+        assertEquals(Arrays.asList("a1"), mClient.mUnsubscribeCalls.get(2));
+    }
+
+    @Test
+    public void trackPublishedWhileHiddenIsUnsubscribedByTheNextUpdate() {
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1"), 0);
+        mHidden.add("a");
+        run(0, 3000);
+        // e.g. a screen track, the SDK subscribes it automatically
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a2"), 4000);
+        assertFalse(mManager.isSubscribed("a"));
+        mManager.update(4500);
+        assertEquals(Arrays.asList(Arrays.asList("a1"), Arrays.asList("a2")), mClient.mUnsubscribeCalls);
+        assertEquals(2, mManager.getUnsubscribedTrackCount());
+    }
+
+    @Test
+    public void trackPublishedWhileHiddenDoesNotHideTheOthersFromResubscription() {
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1"), 0);
+        mHidden.add("a");
+        run(0, 3000);
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a2"), 4000);
+        mHidden.clear();
+        mManager.update(4500);
+        mManager.update(5000);
+        assertEquals(Arrays.asList(Arrays.asList("a1")), mClient.mSubscribeCalls);
+        assertEquals(1, mClient.mUnsubscribeCalls.size());
+        assertTrue(mManager.isSubscribed("a"));
+    }
+
+    @Test
+    public void newUserOnAnotherPageWaitsForTheGrace() {
+        mHidden.add("a");
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1"), 10000);
+        mManager.update(10000);
+        mManager.update(12500);
+        assertEquals(0, mClient.callCount());
+        mManager.update(13000);
+        assertEquals(1, mClient.mUnsubscribeCalls.size());
+    }
+
+    @Test
+    public void resubscribedTrackReplacesTheOldOne() {
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1"), 0);
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1"), 100);
+        mHidden.add("a");
+        run(0, 3000);
+        assertEquals(Arrays.asList(Arrays.asList("a1")), mClient.mUnsubscribeCalls);
+    }
+
+    @Test
+    public void unpublishedTracksAreForgotten() {
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1", "a2"), 0);
+        mHidden.add("a");
+        run(0, 3000);
+        mManager.onTracksUnpublished("a", videoTracks("a", "a1"));
+        assertEquals(1, mManager.getUnsubscribedTrackCount());
+        mManager.onTracksUnpublished("a", videoTracks("a", "a2"));
+        assertEquals(0, mManager.getUnsubscribedTrackCount());
+        // unknown users count as subscribed
+        assertTrue(mManager.isSubscribed("a"));
+        mHidden.clear();
+        run(3500, 10000);
+        assertEquals(0, mClient.mSubscribeCalls.size());
+    }
+
+    @Test
+    public void audioOnlyUserIsIgnored() {
+        mManager.onVideoTracksSubscribed("a", Collections.emptyList(), 0);
+        mHidden.add("a");
+        run(0, 10000);
+        assertEquals(0, mClient.callCount());
+    }
+
+    @Test
+    public void removedUsersAreNotTouched() {
+        mManager.onVideoTracksSubscribed("a", videoTracks("a", "a1"), 0);
+        mManager.onVideoTracksSubscribed("b", videoTracks("b", "b1"), 0);
+        mHidden.add("a");
+        mHidden.add("b");
+        mManager.removeUser("a");
+        run(0, 3000);
+        assertEquals(Arrays.asList(Arrays.asList("b1")), mClient.mUnsubscribeCalls);
+        mManager.clear();
+        mHidden.clear();
+        run(3500, 10000);
+        assertEquals(0, mClient.mSubscribeCalls.size());
+        assertEquals(0, mManager.getUnsubscribedTrackCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeGrace() {
+        new VideoSubscriptionManager(mClient, userId -> true, -1, 0);
+    }
+}
@@ -37,14 +37,13 @@ import com.qiniu.droid.rtc.api.examples.APIApplication;
 import com.qiniu.droid.rtc.api.examples.R;
 import com.qiniu.droid.rtc.api.examples.adapter.AudioEffectAdapter;
 import com.qiniu.droid.rtc.api.examples.model.AudioEffect;
+import com.qiniu.droid.rtc.api.examples.utils.AssetExtractor;
 import com.qiniu.droid.rtc.api.examples.utils.Config;
 import com.qiniu.droid.rtc.api.examples.utils.ToastUtils;
 import com.qiniu.droid.rtc.model.QNAudioDevice;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -257,32 +256,9 @@ public class AudioEffectsMixingActivity extends AppCompatActivity {
      */
     public void checkAudioEffectFiles(Context context) {
         try {
-            String[] fileNames = context.getAssets().list(AUDIO_EFFECTS_DIR);
-            int fileCountHandled = 0;
-            for (String fileName : fileNames) {
-                String filePath = getExternalFilesDir(Environment.DIRECTORY_MUSIC) + File.separator + fileName;
-                File audioFile = new File(filePath);
-                if (audioFile.isDirectory()) {
-                    continue;
-                }
-                if (audioFile.exists()) {
-                    Log.i(TAG, fileName + " exist");
-                    continue;
-                }
-
-                InputStream is = getAssets().open(AUDIO_EFFECTS_DIR + File.separator + fileName);
-                FileOutputStream fos = new FileOutputStream(filePath);
-                byte[] buffer = new byte[1024];
-                int byteCount;
-                while ((byteCount = is.read(buffer)) != -1) {
-                    fos.write(buffer, 0, byteCount);
-                }
-                fos.flush();
-                is.close();
-                fos.close();
-                fileCountHandled++;
-            }
-            if (fileCountHandled != 0) {
+            AssetExtractor.Result result = new AssetExtractor(context, getExternalFilesDir(Environment.DIRECTORY_MUSIC))
+                    .extract(AUDIO_EFFECTS_DIR).get();
+            if (result.getExtractedCount() != 0) {
                 ToastUtils.showShortToast(this, "音效文件已准备");
             }
             setAudioMixerControllable(true);
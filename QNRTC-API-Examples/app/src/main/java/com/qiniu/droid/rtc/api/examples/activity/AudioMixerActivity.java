@@ -37,16 +37,16 @@ import com.qiniu.droid.rtc.QNRemoteTrack;
 import com.qiniu.droid.rtc.QNRemoteVideoTrack;
 import com.qiniu.droid.rtc.api.examples.APIApplication;
 import com.qiniu.droid.rtc.api.examples.R;
+import com.qiniu.droid.rtc.api.examples.utils.AssetExtractor;
 import com.qiniu.droid.rtc.api.examples.utils.Config;
 import com.qiniu.droid.rtc.api.examples.utils.ToastUtils;
 import com.qiniu.droid.rtc.model.QNAudioDevice;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Future;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
@@ -441,30 +441,30 @@ public class AudioMixerActivity extends AppCompatActivity {
      * 检查音乐文件是否存在，不存在则拷贝到存储中
      */
     private void checkMusicFile() {
-        try {
-            mMusicPath = getExternalFilesDir(Environment.DIRECTORY_MUSIC) + File.separator + "music.mp3";
-            File musicFile = new File(mMusicPath);
-            if (musicFile.exists()) {
-                return;
-            }
-            AlertDialog alertDialog = new AlertDialog.Builder(this)
-                    .setMessage(getString(R.string.prepare_music_tips))
-                    .setCancelable(false)
-                    .show();
-            InputStream is = getAssets().open("music.mp3");
-            FileOutputStream fos = new FileOutputStream(mMusicPath);
-            byte[] buffer = new byte[1024];
-            int byteCount;
-            while ((byteCount = is.read(buffer)) != -1) {
-                fos.write(buffer, 0, byteCount);
-            }
-            fos.flush();
-            is.close();
-            fos.close();
-            alertDialog.dismiss();
-        } catch (Exception e) {
-            e.printStackTrace();
+        File musicDir = getExternalFilesDir(Environment.DIRECTORY_MUSIC);
+        mMusicPath = musicDir + File.separator + "music.mp3";
+        AssetExtractor extractor = new AssetExtractor(this, musicDir);
+        // only the manifest and the file length are checked, the dialog is shown only when a copy is needed
+        if (extractor.isUpToDate("", "music.mp3")) {
+            return;
         }
+        Future<AssetExtractor.Result> extraction = extractor.extract("", "music.mp3");
+        AlertDialog alertDialog = new AlertDialog.Builder(this)
+                .setMessage(getString(R.string.prepare_music_tips))
+                .setCancelable(false)
+                .show();
+        mSubThreadHandler.post(() -> {
+            try {
+                extraction.get();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            runOnUiThread(() -> {
+                if (!isFinishing()) {
+                    alertDialog.dismiss();
+                }
+            });
+        });
     }
 
     private final QNRTCEventListener mRTCEventListener = new QNRTCEventListener() {
@@ -48,16 +48,21 @@ import com.qiniu.droid.rtc.api.examples.adapter.AudioEffectAdapter;
 import com.qiniu.droid.rtc.api.examples.adapter.AudioSourceAdapter;
 import com.qiniu.droid.rtc.api.examples.model.AudioEffect;
 import com.qiniu.droid.rtc.api.examples.model.AudioSource;
+import com.qiniu.droid.rtc.api.examples.utils.AssetExtractor;
 import com.qiniu.droid.rtc.api.examples.utils.Config;
+import com.qiniu.droid.rtc.api.examples.utils.PcmMixer;
 import com.qiniu.droid.rtc.api.examples.utils.ToastUtils;
 import com.qiniu.droid.rtc.model.QNAudioDevice;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 1v1 音频通话 + 音源混音场景
@@ -82,13 +87,25 @@ import java.util.List;
 public class AudioSourcesMixingActivity extends AppCompatActivity {
     private static final String TAG = "AudioSourcesMixingActivity";
     private static final String AUDIO_SOURCES_DIR = "effects";
+    private static final int APP_MIXED_SOURCE_ID = 1000;
+    private static final int APP_MIXING_SAMPLE_RATE = 48000;
+    private static final int APP_MIXING_CHANNELS = 2;
+    private static final long MIX_STOP_TIMEOUT_MS = 100;
     private QNRTCClient mClient;
     private QNMicrophoneAudioTrack mMicrophoneAudioTrack;
     private QNAudioSourceMixer mAudioSourceMixer;
     private AudioSourceAdapter mAdapter;
+    private PcmMixer mPcmMixer;
+    private int mAppMixedSourceID;
+    private ByteBuffer mAppMixBuffer;
+    private QNAudioFrame mAppMixFrame;
+    private ScheduledExecutorService mMixExecutor;
+    // 开启后在应用层混合所有音源，混音结果作为一个音源推送给 QNAudioSourceMixer，可以随时切换
+    private volatile boolean mAppSideMixing;
 
     private TextView mRemoteTrackTipsView;
     private Switch mEarMonitorOnSwitch;
+    private Switch mAppSideMixingSwitch;
     private SeekBar mMicrophoneAudioVolumeSeekBar;
     private SeekBar mMusicPlayVolumeSeekBar;
     private boolean mIsAudioMixerControllable = true;
@@ -162,6 +179,7 @@ public class AudioSourcesMixingActivity extends AppCompatActivity {
         super.onDestroy();
         mSubThreadHandler.getLooper().quit();
         mSubThreadHandler = null;
+        stopAppSideMixing();
         if (mMicrophoneAudioTrack != null) {
             mMicrophoneAudioTrack.destroy();
             mMicrophoneAudioTrack = null;
@@ -186,6 +204,9 @@ public class AudioSourcesMixingActivity extends AppCompatActivity {
             mMicrophoneAudioTrack.setEarMonitorEnabled(isChecked);
         });
 
+        mAppSideMixingSwitch = findViewById(R.id.app_side_mixing_on);
+        mAppSideMixingSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> setAppSideMixing(isChecked));
+
         // 初始化麦克风混音音量设置控件
         mMicrophoneAudioVolumeSeekBar = findViewById(R.id.seek_bar_microphone_volume);
         mMicrophoneAudioVolumeSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
@@ -257,6 +278,7 @@ public class AudioSourcesMixingActivity extends AppCompatActivity {
         mMicrophoneAudioVolumeSeekBar.setEnabled(mIsAudioMixerControllable);
         mMusicPlayVolumeSeekBar.setEnabled(mIsAudioMixerControllable);
         mEarMonitorOnSwitch.setEnabled(mIsAudioMixerControllable);
+        mAppSideMixingSwitch.setEnabled(mIsAudioMixerControllable);
     }
 
     /**
@@ -264,32 +286,9 @@ public class AudioSourcesMixingActivity extends AppCompatActivity {
      */
     public void checkAudioEffectFiles(Context context) {
         try {
-            String[] fileNames = context.getAssets().list(AUDIO_SOURCES_DIR);
-            int fileCountHandled = 0;
-            for (String fileName : fileNames) {
-                String filePath = getExternalFilesDir(Environment.DIRECTORY_MUSIC) + File.separator + fileName;
-                File audioFile = new File(filePath);
-                if (audioFile.isDirectory()) {
-                    continue;
-                }
-                if (audioFile.exists()) {
-                    Log.i(TAG, fileName + " exist");
-                    continue;
-                }
-
-                InputStream is = getAssets().open(AUDIO_SOURCES_DIR + File.separator + fileName);
-                FileOutputStream fos = new FileOutputStream(filePath);
-                byte[] buffer = new byte[1024];
-                int byteCount;
-                while ((byteCount = is.read(buffer)) != -1) {
-                    fos.write(buffer, 0, byteCount);
-                }
-                fos.flush();
-                is.close();
-                fos.close();
-                fileCountHandled++;
-            }
-            if (fileCountHandled != 0) {
+            AssetExtractor.Result result = new AssetExtractor(context, getExternalFilesDir(Environment.DIRECTORY_MUSIC))
+                    .extract(AUDIO_SOURCES_DIR).get();
+            if (result.getExtractedCount() != 0) {
                 ToastUtils.showShortToast(this, "音源文件已准备");
             }
             setAudioMixerControllable(true);
@@ -318,20 +317,27 @@ public class AudioSourcesMixingActivity extends AppCompatActivity {
             mMicrophoneAudioTrack.addAudioFilter(mAudioSourceMixer);
         }
 
+        if (mPcmMixer == null && mAudioSourceMixer != null) {
+            initAppSideMixer();
+        }
+
         List<AudioSource> audioSources = new ArrayList<>();
         int audioSourceID = 0;
         try {
             String[] fileNames = getAssets().list(AUDIO_SOURCES_DIR);
             for (String fileName : fileNames) {
-                // 创建 QNAudioSource 对象，用于进行音源混音配置
-                QNAudioSource audioSource = mAudioSourceMixer.createAudioSource(
-                        audioSourceID++, true);
+                // 创建 QNAudioSource 对象，用于进行音源混音配置；应用层混音使用相同的音源 ID
+                QNAudioSource audioSource = mAudioSourceMixer.createAudioSource(audioSourceID, true);
+                mPcmMixer.addSource(audioSourceID++);
                 audioSources.add(new AudioSource(
                         new File(getExternalFilesDir(Environment.DIRECTORY_MUSIC) + File.separator + fileName),
                         audioSource, new AudioSource.AudioSourceListener() {
                     @Override
                     public void onFrameAvailable(int sourceID, QNAudioFrame frame) {
-                        if (mAudioSourceMixer != null) {
+                        if (mAppSideMixing && mPcmMixer != null) {
+                            mPcmMixer.write(sourceID, frame.getData(), frame.getSize(),
+                                    frame.getSampleRate(), frame.getNumberOfChannels());
+                        } else if (mAudioSourceMixer != null) {
                             mAudioSourceMixer.pushAudioFrame(sourceID, frame);
                         }
                     }
@@ -355,6 +361,10 @@ public class AudioSourcesMixingActivity extends AppCompatActivity {
         mAdapter.init(audioSources, new AudioSourceAdapter.OnAudioSourceClickListener() {
             @Override
             public void onPublishClicked(int effectID, boolean publish) {
+                if (mPcmMixer != null) {
+                    // 应用层混音后所有音源合为一路，只能通过增益控制单个音源
+                    mPcmMixer.setGain(effectID, publish ? 1.0f : 0.0f);
+                }
                 if (mAudioSourceMixer == null) {
                     return;
                 }
@@ -365,6 +375,77 @@ public class AudioSourcesMixingActivity extends AppCompatActivity {
         audioSourceRv.setAdapter(mAdapter);
     }
 
+    /**
+     * 创建应用层混音器及混音结果对应的音源，开启应用层混音前各音源仍然直接推送给 QNAudioSourceMixer
+     */
+    private void initAppSideMixer() {
+        mPcmMixer = new PcmMixer(APP_MIXING_SAMPLE_RATE, APP_MIXING_CHANNELS);
+        mAppMixedSourceID = mAudioSourceMixer.createAudioSource(APP_MIXED_SOURCE_ID, true).getID();
+        mAppMixBuffer = ByteBuffer.allocateDirect(mPcmMixer.getFrameSize()).order(ByteOrder.nativeOrder());
+        mAppMixFrame = new QNAudioFrame(mAppMixBuffer, mPcmMixer.getFrameSize(), 16,
+                APP_MIXING_SAMPLE_RATE, APP_MIXING_CHANNELS);
+        if (mAppSideMixing) {
+            startAppSideMixing();
+        }
+    }
+
+    /**
+     * 切换应用层混音，音源文件准备完成前切换时在准备完成后生效
+     */
+    private void setAppSideMixing(boolean enabled) {
+        if (mAppSideMixing == enabled) {
+            return;
+        }
+        mAppSideMixing = enabled;
+        if (mPcmMixer == null) {
+            return;
+        }
+        if (enabled) {
+            startAppSideMixing();
+        } else {
+            stopAppSideMixing();
+        }
+    }
+
+    /**
+     * 在应用层混合所有音源，每 10ms 将混音结果推送给 QNAudioSourceMixer
+     */
+    private void startAppSideMixing() {
+        if (mMixExecutor != null) {
+            return;
+        }
+        // data buffered before the last switch is stale
+        mPcmMixer.flushAll();
+        final PcmMixer pcmMixer = mPcmMixer;
+        final int mixedSourceID = mAppMixedSourceID;
+        final ByteBuffer mixBuffer = mAppMixBuffer;
+        final QNAudioFrame mixFrame = mAppMixFrame;
+        mMixExecutor = Executors.newSingleThreadScheduledExecutor();
+        mMixExecutor.scheduleAtFixedRate(() -> {
+            QNAudioSourceMixer audioSourceMixer = mAudioSourceMixer;
+            if (audioSourceMixer == null) {
+                return;
+            }
+            pcmMixer.mixFrame(mixBuffer);
+            mixBuffer.clear();
+            audioSourceMixer.pushAudioFrame(mixedSourceID, mixFrame);
+        }, PcmMixer.FRAME_DURATION_MS, PcmMixer.FRAME_DURATION_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopAppSideMixing() {
+        if (mMixExecutor == null) {
+            return;
+        }
+        mMixExecutor.shutdownNow();
+        try {
+            // the mixer and the mix buffer are reused when mixing is switched on again
+            mMixExecutor.awaitTermination(MIX_STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mMixExecutor = null;
+    }
+
     private final QNRTCEventListener mRTCEventListener = new QNRTCEventListener() {
         /**
          * 当音频路由发生变化时会回调此方法
@@ -6,7 +6,6 @@ import android.view.SurfaceView;
 import android.view.View;
 import android.view.WindowManager;
 
-import com.qiniu.droid.rtc.QNAudioFrame;
 import com.qiniu.droid.rtc.QNAudioQuality;
 import com.qiniu.droid.rtc.QNAudioVolumeInfo;
 import com.qiniu.droid.rtc.QNClientEventListener;
@@ -31,15 +30,18 @@ import com.qiniu.droid.rtc.QNVideoFrame;
 import com.qiniu.droid.rtc.QNVideoFrameType;
 import com.qiniu.droid.rtc.api.examples.APIApplication;
 import com.qiniu.droid.rtc.api.examples.R;
+import com.qiniu.droid.rtc.api.examples.capture.AudioFramePool;
 import com.qiniu.droid.rtc.api.examples.capture.ExtAudioCapture;
 import com.qiniu.droid.rtc.api.examples.capture.ExtVideoCapture;
+import com.qiniu.droid.rtc.api.examples.capture.NV21Processor;
+import com.qiniu.droid.rtc.api.examples.capture.VoiceActivityDetector;
 import com.qiniu.droid.rtc.api.examples.utils.Config;
+import com.qiniu.droid.rtc.api.examples.utils.SpscRingBuffer;
 import com.qiniu.droid.rtc.api.examples.utils.ToastUtils;
 import com.qiniu.droid.rtc.model.QNAudioDevice;
 
 import org.qnwebrtc.RendererCommon;
 
-import java.nio.ByteBuffer;
 import java.util.List;
 
 import androidx.annotation.Nullable;
@@ -77,6 +79,8 @@ public class CustomAVCaptureActivity extends AppCompatActivity {
 
     private ExtAudioCapture mExtAudioCapture;
     private ExtVideoCapture mExtVideoCapture;
+    // 预览尺寸与编码尺寸不一致时，居中裁剪并缩放到编码尺寸，中间缓存复用
+    private final NV21Processor.Transformer mFrameTransformer = new NV21Processor.Transformer(Config.DEFAULT_WIDTH, Config.DEFAULT_HEIGHT);
 
     private String mFirstRemoteUserID = null;
 
@@ -178,7 +182,11 @@ public class CustomAVCaptureActivity extends AppCompatActivity {
         mExtVideoCapture = new ExtVideoCapture(mLocalRenderView);
         mExtVideoCapture.setOnPreviewFrameCallback(mOnPreviewFrameCallback);
         mExtAudioCapture = new ExtAudioCapture();
-        mExtAudioCapture.setOnAudioFrameCapturedListener(mOnAudioFrameCapturedListener);
+        mExtAudioCapture.setOnPooledAudioFrameCapturedListener(mOnAudioFrameCapturedListener);
+        // 在独立线程中推送音频数据，避免推送耗时影响音频采集
+        mExtAudioCapture.setAsyncDelivery(8, SpscRingBuffer.OverflowPolicy.DROP_OLDEST);
+        // 仅标记语音活动，数据原样推送；改为 COMFORT_SILENCE 可在静音时推送数字静音，降低编码开销与上行带宽
+        mExtAudioCapture.setVoiceActivityDetector(new VoiceActivityDetector(VoiceActivityDetector.SuppressionMode.ANNOTATE));
     }
 
     private final ExtVideoCapture.OnPreviewFrameCallback mOnPreviewFrameCallback = new ExtVideoCapture.OnPreviewFrameCallback() {
@@ -189,28 +197,32 @@ public class CustomAVCaptureActivity extends AppCompatActivity {
             }
             // 推送自定义视频数据
             // 数据导入支持情况，请参考 https://developer.qiniu.com/rtc/8767/audio-and-video-collection-android#3
+            byte[] frameData = mFrameTransformer.process(data, width, height, orientation);
             QNVideoFrame videoFrame = new QNVideoFrame();
-            videoFrame.buffer = data;
-            videoFrame.width = width;
-            videoFrame.height = height;
-            videoFrame.rotation = orientation;
+            videoFrame.buffer = frameData;
+            videoFrame.width = mFrameTransformer.getWidth();
+            videoFrame.height = mFrameTransformer.getHeight();
+            videoFrame.rotation = mFrameTransformer.getRotation();
             videoFrame.type = QNVideoFrameType.YUV_NV21;
             videoFrame.timestampNs = tsInNanoTime;
             mCustomVideoTrack.pushVideoFrame(videoFrame);
         }
     };
 
-    private final ExtAudioCapture.OnAudioFrameCapturedListener mOnAudioFrameCapturedListener = new ExtAudioCapture.OnAudioFrameCapturedListener() {
+    private final ExtAudioCapture.OnPooledAudioFrameCapturedListener mOnAudioFrameCapturedListener = new ExtAudioCapture.OnPooledAudioFrameCapturedListener() {
         @Override
-        public void onAudioFrameCaptured(byte[] audioData) {
-            if (mCustomAudioTrack == null || TextUtils.isEmpty(mCustomAudioTrack.getTrackID())) {
-                return;
+        public void onAudioFrameCaptured(AudioFramePool.Frame frame) {
+            try {
+                if (mCustomAudioTrack == null || TextUtils.isEmpty(mCustomAudioTrack.getTrackID())) {
+                    return;
+                }
+                // 推送自定义音频数据
+                // 数据导入支持情况，请参考 https://developer.qiniu.com/rtc/8767/audio-and-video-collection-android#5
+                mCustomAudioTrack.pushAudioFrame(frame.toQNAudioFrame());
+            } finally {
+                // 推送完成后归还音频帧
+                frame.release();
             }
-            // 推送自定义音频数据
-            // 数据导入支持情况，请参考 https://developer.qiniu.com/rtc/8767/audio-and-video-collection-android#5
-            QNAudioFrame audioFrame = new QNAudioFrame(ByteBuffer.wrap(audioData), audioData.length,
-                    16, Config.DEFAULT_AUDIO_SAMPLE_RATE, Config.DEFAULT_AUDIO_CHANNEL_COUNT);
-            mCustomAudioTrack.pushAudioFrame(audioFrame);
         }
     };
 
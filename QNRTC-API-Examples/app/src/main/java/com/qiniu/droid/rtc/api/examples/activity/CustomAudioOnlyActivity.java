@@ -6,7 +6,6 @@ import android.view.View;
 import android.view.WindowManager;
 import android.widget.TextView;
 
-import com.qiniu.droid.rtc.QNAudioFrame;
 import com.qiniu.droid.rtc.QNAudioQuality;
 import com.qiniu.droid.rtc.QNAudioVolumeInfo;
 import com.qiniu.droid.rtc.QNClientEventListener;
@@ -25,12 +24,15 @@ import com.qiniu.droid.rtc.QNRemoteTrack;
 import com.qiniu.droid.rtc.QNRemoteVideoTrack;
 import com.qiniu.droid.rtc.api.examples.APIApplication;
 import com.qiniu.droid.rtc.api.examples.R;
+import com.qiniu.droid.rtc.api.examples.capture.AudioFramePool;
 import com.qiniu.droid.rtc.api.examples.capture.ExtAudioCapture;
+import com.qiniu.droid.rtc.api.examples.capture.VoiceActivityDetector;
 import com.qiniu.droid.rtc.api.examples.utils.Config;
+import com.qiniu.droid.rtc.api.examples.utils.PolyphaseResampler;
+import com.qiniu.droid.rtc.api.examples.utils.SpscRingBuffer;
 import com.qiniu.droid.rtc.api.examples.utils.ToastUtils;
 import com.qiniu.droid.rtc.model.QNAudioDevice;
 
-import java.nio.ByteBuffer;
 import java.util.List;
 
 import androidx.annotation.Nullable;
@@ -57,6 +59,7 @@ import androidx.appcompat.app.AppCompatActivity;
  */
 public class CustomAudioOnlyActivity extends AppCompatActivity {
     private static final String TAG = "CustomAudioOnlyActivity";
+    private static final int CAPTURE_SAMPLE_RATE = 48000;
     private QNRTCClient mClient;
     private QNCustomAudioTrack mCustomAudioTrack;
 
@@ -91,7 +94,9 @@ public class CustomAudioOnlyActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        mExtAudioCapture.startCapture();
+        // 以设备常见的原生采样率采集，避免系统内部重采样，再由应用层转换为编码采样率
+        mExtAudioCapture.startCapture(ExtAudioCapture.DEFAULT_SOURCE, CAPTURE_SAMPLE_RATE,
+                ExtAudioCapture.DEFAULT_CHANNEL_CONFIG, ExtAudioCapture.DEFAULT_DATA_FORMAT);
     }
 
     @Override
@@ -142,20 +147,29 @@ public class CustomAudioOnlyActivity extends AppCompatActivity {
      */
     private void initExtCapture() {
         mExtAudioCapture = new ExtAudioCapture();
-        mExtAudioCapture.setOnAudioFrameCapturedListener(mOnAudioFrameCapturedListener);
+        mExtAudioCapture.setOnPooledAudioFrameCapturedListener(mOnAudioFrameCapturedListener);
+        // 在独立线程中推送音频数据，避免推送耗时影响音频采集
+        mExtAudioCapture.setAsyncDelivery(8, SpscRingBuffer.OverflowPolicy.DROP_OLDEST);
+        // 仅标记语音活动，数据原样推送；改为 COMFORT_SILENCE 可在静音时推送数字静音，降低编码开销与上行带宽
+        mExtAudioCapture.setVoiceActivityDetector(new VoiceActivityDetector(VoiceActivityDetector.SuppressionMode.ANNOTATE));
+        // 将采集数据重采样为外部音频 Track 配置的采样率
+        mExtAudioCapture.setOutputSampleRate(Config.DEFAULT_AUDIO_SAMPLE_RATE, PolyphaseResampler.Quality.MEDIUM);
     }
 
-    private final ExtAudioCapture.OnAudioFrameCapturedListener mOnAudioFrameCapturedListener = new ExtAudioCapture.OnAudioFrameCapturedListener() {
+    private final ExtAudioCapture.OnPooledAudioFrameCapturedListener mOnAudioFrameCapturedListener = new ExtAudioCapture.OnPooledAudioFrameCapturedListener() {
         @Override
-        public void onAudioFrameCaptured(byte[] audioData) {
-            if (mCustomAudioTrack == null || TextUtils.isEmpty(mCustomAudioTrack.getTrackID())) {
-                return;
+        public void onAudioFrameCaptured(AudioFramePool.Frame frame) {
+            try {
+                if (mCustomAudioTrack == null || TextUtils.isEmpty(mCustomAudioTrack.getTrackID())) {
+                    return;
+                }
+                // 推送自定义音频数据
+                // 数据导入支持情况，请参考 https://developer.qiniu.com/rtc/8767/audio-and-video-collection-android#5
+                mCustomAudioTrack.pushAudioFrame(frame.toQNAudioFrame());
+            } finally {
+                // 推送完成后归还音频帧
+                frame.release();
             }
-            // 推送自定义音频数据
-            // 数据导入支持情况，请参考 https://developer.qiniu.com/rtc/8767/audio-and-video-collection-android#5
-            QNAudioFrame audioFrame = new QNAudioFrame(ByteBuffer.wrap(audioData), audioData.length,
-                    16, Config.DEFAULT_AUDIO_SAMPLE_RATE, Config.DEFAULT_AUDIO_CHANNEL_COUNT);
-            mCustomAudioTrack.pushAudioFrame(audioFrame);
         }
     };
 
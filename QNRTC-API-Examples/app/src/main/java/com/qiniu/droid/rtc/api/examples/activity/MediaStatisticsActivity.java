@@ -15,8 +15,6 @@ import com.qiniu.droid.rtc.QNClientEventListener;
 import com.qiniu.droid.rtc.QNConnectionDisconnectedInfo;
 import com.qiniu.droid.rtc.QNConnectionState;
 import com.qiniu.droid.rtc.QNCustomMessage;
-import com.qiniu.droid.rtc.QNLocalAudioTrackStats;
-import com.qiniu.droid.rtc.QNLocalVideoTrackStats;
 import com.qiniu.droid.rtc.QNMediaRelayState;
 import com.qiniu.droid.rtc.QNMicrophoneAudioTrack;
 import com.qiniu.droid.rtc.QNMicrophoneAudioTrackConfig;
@@ -26,23 +24,20 @@ import com.qiniu.droid.rtc.QNRTC;
 import com.qiniu.droid.rtc.QNRTCClient;
 import com.qiniu.droid.rtc.QNRTCEventListener;
 import com.qiniu.droid.rtc.QNRemoteAudioTrack;
-import com.qiniu.droid.rtc.QNRemoteAudioTrackStats;
 import com.qiniu.droid.rtc.QNRemoteTrack;
 import com.qiniu.droid.rtc.QNRemoteVideoTrack;
-import com.qiniu.droid.rtc.QNRemoteVideoTrackStats;
 import com.qiniu.droid.rtc.QNSurfaceView;
 import com.qiniu.droid.rtc.QNVideoCaptureConfigPreset;
 import com.qiniu.droid.rtc.QNVideoEncoderConfig;
 import com.qiniu.droid.rtc.api.examples.APIApplication;
 import com.qiniu.droid.rtc.api.examples.R;
 import com.qiniu.droid.rtc.api.examples.utils.Config;
+import com.qiniu.droid.rtc.api.examples.utils.StatsCollector;
 import com.qiniu.droid.rtc.api.examples.utils.ToastUtils;
 import com.qiniu.droid.rtc.model.QNAudioDevice;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
@@ -78,7 +73,12 @@ public class MediaStatisticsActivity extends AppCompatActivity {
     private String mFirstRemoteUserID = null;
     private boolean mMicrophoneError;
 
-    private Timer mStatsTimer;
+    private StatsCollector mStatsCollector;
+    // 统计数值的格式，只读取一次
+    private String mBitrateFormat;
+    private String mLostRateFormat;
+    private String mRttFormat;
+    private String mFpsFormat;
     private TextView mLocalUplinkNetworkQualityText;
     private TextView mLocalDownlinkNetworkQualityText;
     private TextView mLocalAudioUplinkBitrateText;
@@ -118,6 +118,8 @@ public class MediaStatisticsActivity extends AppCompatActivity {
         mClient = QNRTC.createClient(mClientEventListener);
         // 本示例仅针对 1v1 连麦场景，因此，关闭自动订阅选项。关于自动订阅的配置，可参考 https://developer.qiniu.com/rtc/8769/publish-and-subscribe-android#3
         mClient.setAutoSubscribe(false);
+        mStatsCollector = new StatsCollector(StatsCollector.sourceOf(mClient));
+        mStatsCollector.addListener(snapshot -> runOnUiThread(() -> updateStatisticsView(snapshot)));
         // 4. 创建本地音视频 Track
         initLocalTracks();
         // 5. 加入房间
@@ -159,6 +161,7 @@ public class MediaStatisticsActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        stopStatisticsScheduler();
         if (mClient != null) {
             // 9. 离开房间
             mClient.leave();
@@ -206,6 +209,11 @@ public class MediaStatisticsActivity extends AppCompatActivity {
         mRemoteVideoDownlinkLostRateText = findViewById(R.id.remote_video_downlink_lost_rate);
         mRemoteVideoUplinkRttText = findViewById(R.id.remote_video_uplink_rtt);
         mRemoteVideoUplinkLostRateText = findViewById(R.id.remote_video_uplink_lost_rate);
+
+        mBitrateFormat = getString(R.string.bitrate);
+        mLostRateFormat = getString(R.string.lost_rate);
+        mRttFormat = getString(R.string.rtt);
+        mFpsFormat = getString(R.string.fps);
     }
 
     /**
@@ -257,64 +265,8 @@ public class MediaStatisticsActivity extends AppCompatActivity {
     /**
      * 开始通话质量统计
      */
-    private synchronized void startStatisticsScheduler() {
-        mStatsTimer = new Timer();
-        mStatsTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                runOnUiThread(() -> {
-                    if (mClient != null) {
-                        // 本地视频 Track 质量统计
-                        Map<String, List<QNLocalVideoTrackStats>> localVideoTrackStats = mClient.getLocalVideoTrackStats();
-                        for (Map.Entry<String, List<QNLocalVideoTrackStats>> entry : localVideoTrackStats.entrySet()) {
-                            for (QNLocalVideoTrackStats stats : entry.getValue()) {
-                                mLocalVideoProfileText.setText(stats.profile.name());
-                                mLocalVideoUplinkBitrateText.setText(String.format(getString(R.string.bitrate), stats.uplinkBitrate / 1000));
-                                mLocalVideoUplinkLostRateText.setText(String.format(getString(R.string.lost_rate), stats.uplinkLostRate));
-                                mLocalVideoUplinkFrameRateText.setText(String.format(getString(R.string.fps), stats.uplinkFrameRate));
-                                mLocalVideoUplinkRttText.setText(String.format(getString(R.string.rtt), stats.uplinkRTT));
-                            }
-                        }
-                        // 本地音频 Track 质量统计
-                        Map<String, QNLocalAudioTrackStats> localAudioTrackStats = mClient.getLocalAudioTrackStats();
-                        for (Map.Entry<String, QNLocalAudioTrackStats> entry : localAudioTrackStats.entrySet()) {
-                            QNLocalAudioTrackStats stats = entry.getValue();
-                            mLocalAudioUplinkBitrateText.setText(String.format(getString(R.string.bitrate), stats.uplinkBitrate / 1000));
-                            mLocalAudioUplinkLostRateText.setText(String.format(getString(R.string.lost_rate), stats.uplinkLostRate));
-                            mLocalAudioUplinkRttText.setText(String.format(getString(R.string.rtt), stats.uplinkRTT));
-                        }
-                        // 远端视频 Track 质量统计
-                        Map<String, QNRemoteVideoTrackStats> remoteVideoTrackStats = mClient.getRemoteVideoTrackStats();
-                        for (Map.Entry<String, QNRemoteVideoTrackStats> entry : remoteVideoTrackStats.entrySet()) {
-                            QNRemoteVideoTrackStats stats = entry.getValue();
-                            if (stats.profile != null) {
-                                mRemoteVideoProfileText.setText(stats.profile.name());
-                            }
-                            mRemoteVideoUplinkLostRateText.setText(String.format(getString(R.string.lost_rate), stats.uplinkLostRate));
-                            mRemoteVideoUplinkRttText.setText(String.format(getString(R.string.rtt), stats.uplinkRTT));
-                            mRemoteVideoDownlinkBitrateText.setText(String.format(getString(R.string.bitrate), stats.downlinkBitrate / 1000));
-                            mRemoteVideoDownlinkFrameRateText.setText(String.format(getString(R.string.fps), stats.downlinkFrameRate));
-                            mRemoteVideoDownlinkLostRateText.setText(String.format(getString(R.string.lost_rate), stats.downlinkLostRate));
-                        }
-                        // 远端音频 Track 质量统计
-                        Map<String, QNRemoteAudioTrackStats> remoteAudioTrackStats = mClient.getRemoteAudioTrackStats();
-                        for (Map.Entry<String, QNRemoteAudioTrackStats> entry : remoteAudioTrackStats.entrySet()) {
-                            QNRemoteAudioTrackStats stats = entry.getValue();
-                            mRemoteAudioUplinkLostRateText.setText(String.format(getString(R.string.lost_rate), stats.uplinkLostRate));
-                            mRemoteAudioUplinkRttText.setText(String.format(getString(R.string.rtt), stats.uplinkRTT));
-                            mRemoteAudioDownlinkBitrateText.setText(String.format(getString(R.string.bitrate), stats.downlinkBitrate / 1000));
-                            mRemoteAudioDownlinkLostRateText.setText(String.format(getString(R.string.lost_rate), stats.downlinkLostRate));
-                        }
-                        // 远端用户网络质量统计
-                        Map<String, QNNetworkQuality> userNetworkQuality = mClient.getUserNetworkQuality();
-                        for (Map.Entry<String, QNNetworkQuality> entry : userNetworkQuality.entrySet()) {
-                            mRemoteDownlinkNetworkQualityText.setText(entry.getValue().downlinkNetworkGrade.name());
-                            mRemoteUplinkNetworkQualityText.setText(entry.getValue().uplinkNetworkGrade.name());
-                        }
-                    }
-                });
-            }
-        }, 0, 5000);
+    private void startStatisticsScheduler() {
+        mStatsCollector.start();
         if (mClient != null) {
             // 设置本地网络质量统计
             mClient.setNetworkQualityListener(networkQuality -> runOnUiThread(() -> {
@@ -327,14 +279,72 @@ public class MediaStatisticsActivity extends AppCompatActivity {
     /**
      * 停止通话质量统计
      */
-    public synchronized void stopStatisticsScheduler() {
+    public void stopStatisticsScheduler() {
         if (mClient != null) {
             mClient.setNetworkQualityListener(null);
         }
-        if (mStatsTimer != null) {
-            mStatsTimer.cancel();
-            mStatsTimer = null;
+        mStatsCollector.stop();
+    }
+
+    /**
+     * 在主线程中更新通话质量统计，本示例仅针对 1v1 场景，每一类 track 只显示一个
+     */
+    private void updateStatisticsView(StatsCollector.Snapshot snapshot) {
+        // 本地视频 Track 质量统计
+        StatsCollector.TrackStats localVideo = snapshot.getFirstTrack(StatsCollector.TrackKind.LOCAL_VIDEO);
+        if (localVideo != null) {
+            if (localVideo.getProfile() != null) {
+                mLocalVideoProfileText.setText(localVideo.getProfile().name());
+            }
+            setStatText(mLocalVideoUplinkBitrateText, mBitrateFormat, localVideo.getBitrateKbps());
+            setStatText(mLocalVideoUplinkLostRateText, mLostRateFormat, localVideo.getLostRate());
+            setStatText(mLocalVideoUplinkFrameRateText, mFpsFormat, localVideo.getFrameRate());
+            setStatText(mLocalVideoUplinkRttText, mRttFormat, localVideo.getRtt());
+        }
+        // 本地音频 Track 质量统计
+        StatsCollector.TrackStats localAudio = snapshot.getFirstTrack(StatsCollector.TrackKind.LOCAL_AUDIO);
+        if (localAudio != null) {
+            setStatText(mLocalAudioUplinkBitrateText, mBitrateFormat, localAudio.getBitrateKbps());
+            setStatText(mLocalAudioUplinkLostRateText, mLostRateFormat, localAudio.getLostRate());
+            setStatText(mLocalAudioUplinkRttText, mRttFormat, localAudio.getRtt());
+        }
+        // 远端视频 Track 质量统计
+        StatsCollector.TrackStats remoteVideo = snapshot.getFirstTrack(StatsCollector.TrackKind.REMOTE_VIDEO);
+        if (remoteVideo != null) {
+            if (remoteVideo.getProfile() != null) {
+                mRemoteVideoProfileText.setText(remoteVideo.getProfile().name());
+            }
+            setStatText(mRemoteVideoUplinkLostRateText, mLostRateFormat, remoteVideo.getUplinkLostRate());
+            setStatText(mRemoteVideoUplinkRttText, mRttFormat, remoteVideo.getRtt());
+            setStatText(mRemoteVideoDownlinkBitrateText, mBitrateFormat, remoteVideo.getBitrateKbps());
+            setStatText(mRemoteVideoDownlinkFrameRateText, mFpsFormat, remoteVideo.getFrameRate());
+            setStatText(mRemoteVideoDownlinkLostRateText, mLostRateFormat, remoteVideo.getLostRate());
+        }
+        // 远端音频 Track 质量统计
+        StatsCollector.TrackStats remoteAudio = snapshot.getFirstTrack(StatsCollector.TrackKind.REMOTE_AUDIO);
+        if (remoteAudio != null) {
+            setStatText(mRemoteAudioUplinkLostRateText, mLostRateFormat, remoteAudio.getUplinkLostRate());
+            setStatText(mRemoteAudioUplinkRttText, mRttFormat, remoteAudio.getRtt());
+            setStatText(mRemoteAudioDownlinkBitrateText, mBitrateFormat, remoteAudio.getBitrateKbps());
+            setStatText(mRemoteAudioDownlinkLostRateText, mLostRateFormat, remoteAudio.getLostRate());
+        }
+        // 远端用户网络质量统计
+        for (Map.Entry<String, QNNetworkQuality> entry : snapshot.getNetworkQualities().entrySet()) {
+            mRemoteDownlinkNetworkQualityText.setText(entry.getValue().downlinkNetworkGrade.name());
+            mRemoteUplinkNetworkQualityText.setText(entry.getValue().uplinkNetworkGrade.name());
+        }
+    }
+
+    /**
+     * 数值未变化时不重新格式化
+     */
+    private static void setStatText(TextView view, String format, int value) {
+        Object last = view.getTag();
+        if (last instanceof Integer && (Integer) last == value) {
+            return;
         }
+        view.setTag(value);
+        view.setText(String.format(format, value));
     }
 
     /**
@@ -343,16 +353,16 @@ public class MediaStatisticsActivity extends AppCompatActivity {
     private void resetRemoteStatisticsView() {
         mRemoteDownlinkNetworkQualityText.setText(getString(R.string.none));
         mRemoteUplinkNetworkQualityText.setText(getString(R.string.none));
-        mRemoteAudioUplinkLostRateText.setText(String.format(getString(R.string.lost_rate), 0));
-        mRemoteAudioUplinkRttText.setText(String.format(getString(R.string.rtt), 0));
-        mRemoteAudioDownlinkBitrateText.setText(String.format(getString(R.string.bitrate), 0));
-        mRemoteAudioDownlinkLostRateText.setText(String.format(getString(R.string.lost_rate), 0));
+        setStatText(mRemoteAudioUplinkLostRateText, mLostRateFormat, 0);
+        setStatText(mRemoteAudioUplinkRttText, mRttFormat, 0);
+        setStatText(mRemoteAudioDownlinkBitrateText, mBitrateFormat, 0);
+        setStatText(mRemoteAudioDownlinkLostRateText, mLostRateFormat, 0);
         mRemoteVideoProfileText.setText(getString(R.string.none));
-        mRemoteVideoUplinkLostRateText.setText(String.format(getString(R.string.lost_rate), 0));
-        mRemoteVideoUplinkRttText.setText(String.format(getString(R.string.rtt), 0));
-        mRemoteVideoDownlinkBitrateText.setText(String.format(getString(R.string.bitrate), 0));
-        mRemoteVideoDownlinkFrameRateText.setText(String.format(getString(R.string.fps), 0));
-        mRemoteVideoDownlinkLostRateText.setText(String.format(getString(R.string.lost_rate), 0));
+        setStatText(mRemoteVideoUplinkLostRateText, mLostRateFormat, 0);
+        setStatText(mRemoteVideoUplinkRttText, mRttFormat, 0);
+        setStatText(mRemoteVideoDownlinkBitrateText, mBitrateFormat, 0);
+        setStatText(mRemoteVideoDownlinkFrameRateText, mFpsFormat, 0);
+        setStatText(mRemoteVideoDownlinkLostRateText, mLostRateFormat, 0);
     }
 
     private final QNRTCEventListener mRTCEventListener = new QNRTCEventListener() {
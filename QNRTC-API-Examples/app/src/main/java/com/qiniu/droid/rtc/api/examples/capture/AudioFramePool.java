@@ -0,0 +1,223 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+import com.qiniu.droid.rtc.QNAudioFrame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 固定深度的音频帧缓存池
+ *
+ * 每一帧持有一块 direct ByteBuffer，采集线程通过 {@link #acquire()} 取出空闲帧并写入数据，
+ * 消费方使用完毕后必须调用 {@link Frame#release()} 归还，否则该帧不会被复用。
+ * 池中没有空闲帧时 {@link #acquire()} 返回 null，由调用方决定丢弃本次数据。
+ */
+public final class AudioFramePool {
+
+    public static final int DEFAULT_DEPTH = 4;
+
+    public static final class Frame {
+        private final AudioFramePool mPool;
+        private final ByteBuffer mData;
+        private final AtomicInteger mRefCount = new AtomicInteger();
+        private int mSize;
+        private int mBitsPerSample;
+        private int mSampleRate;
+        private int mChannels;
+        private long mTimestampNs;
+        private boolean mVoiceActive = true;
+        private QNAudioFrame mAudioFrame;
+
+        private Frame(AudioFramePool pool, int capacity) {
+            mPool = pool;
+            mData = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * @return 帧数据，有效数据为 [0, {@link #getSize()})
+         */
+        public ByteBuffer getData() {
+            return mData;
+        }
+
+        public int getCapacity() {
+            return mData.capacity();
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+
+        public int getBitsPerSample() {
+            return mBitsPerSample;
+        }
+
+        public int getSampleRate() {
+            return mSampleRate;
+        }
+
+        public int getChannels() {
+            return mChannels;
+        }
+
+        public long getTimestampNs() {
+            return mTimestampNs;
+        }
+
+        /**
+         * @return 语音活动检测的结果，未进行检测时为 true
+         */
+        public boolean isVoiceActive() {
+            return mVoiceActive;
+        }
+
+        public void setVoiceActive(boolean voiceActive) {
+            mVoiceActive = voiceActive;
+        }
+
+        public void set(int size, int bitsPerSample, int sampleRate, int channels, long timestampNs) {
+            if (size < 0 || size > mData.capacity()) {
+                throw new IllegalArgumentException("invalid frame size " + size);
+            }
+            mSize = size;
+            mBitsPerSample = bitsPerSample;
+            mSampleRate = sampleRate;
+            mChannels = channels;
+            mTimestampNs = timestampNs;
+            mVoiceActive = true;
+            mData.clear();
+            mData.limit(size);
+        }
+
+        /**
+         * 转换为 SDK 的音频帧，参数不变时复用同一个对象，不产生额外分配
+         */
+        public QNAudioFrame toQNAudioFrame() {
+            if (mAudioFrame == null || mAudioFrame.getSize() != mSize
+                    || mAudioFrame.getBitsPerSample() != mBitsPerSample
+                    || mAudioFrame.getSampleRate() != mSampleRate
+                    || mAudioFrame.getNumberOfChannels() != mChannels) {
+                mAudioFrame = new QNAudioFrame(mData, mSize, mBitsPerSample, mSampleRate, mChannels);
+            }
+            mData.position(0);
+            return mAudioFrame;
+        }
+
+        /**
+         * 增加一次引用，需要与 {@link #release()} 成对调用
+         */
+        public Frame retain() {
+            mRefCount.incrementAndGet();
+            return this;
+        }
+
+        /**
+         * 归还到缓存池，引用计数归零后才会被复用
+         */
+        public void release() {
+            int refCount = mRefCount.decrementAndGet();
+            if (refCount == 0) {
+                mPool.recycle(this);
+            } else if (refCount < 0) {
+                throw new IllegalStateException("frame released more than acquired");
+            }
+        }
+    }
+
+    private final ArrayBlockingQueue<Frame> mFreeFrames;
+    private final int mDepth;
+    private final int mFrameCapacity;
+    private final AtomicLong mAcquiredCount = new AtomicLong();
+    private final AtomicLong mExhaustedCount = new AtomicLong();
+
+    /**
+     * @param depth         缓存帧数
+     * @param frameCapacity 每帧的最大字节数
+     */
+    public AudioFramePool(int depth, int frameCapacity) {
+        if (depth <= 0 || frameCapacity <= 0) {
+            throw new IllegalArgumentException("depth and frameCapacity must be positive");
+        }
+        mDepth = depth;
+        mFrameCapacity = frameCapacity;
+        mFreeFrames = new ArrayBlockingQueue<>(depth);
+        for (int i = 0; i < depth; i++) {
+            mFreeFrames.offer(new Frame(this, frameCapacity));
+        }
+    }
+
+    /**
+     * 取出一个空闲帧，引用计数为 1，数据的 position 为 0、limit 为容量
+     *
+     * @return 空闲帧，没有空闲帧时返回 null
+     */
+    public Frame acquire() {
+        Frame frame = mFreeFrames.poll();
+        if (frame == null) {
+            mExhaustedCount.incrementAndGet();
+            return null;
+        }
+        return prepare(frame);
+    }
+
+    /**
+     * 取出一个空闲帧，没有空闲帧时最多等待 timeout，适用于解码文件等可以等待消费方的场景
+     *
+     * @return 空闲帧，超时或者被中断时返回 null
+     */
+    public Frame acquire(long timeout, TimeUnit unit) {
+        Frame frame = mFreeFrames.poll();
+        if (frame == null) {
+            try {
+                frame = mFreeFrames.poll(timeout, unit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (frame == null) {
+                // a wait that ends with a frame isn't a failure
+                mExhaustedCount.incrementAndGet();
+                return null;
+            }
+        }
+        return prepare(frame);
+    }
+
+    public int getDepth() {
+        return mDepth;
+    }
+
+    public int getFrameCapacity() {
+        return mFrameCapacity;
+    }
+
+    public int getAvailableCount() {
+        return mFreeFrames.size();
+    }
+
+    public long getAcquiredCount() {
+        return mAcquiredCount.get();
+    }
+
+    /**
+     * @return 因没有空闲帧而获取失败的次数
+     */
+    public long getExhaustedCount() {
+        return mExhaustedCount.get();
+    }
+
+    private Frame prepare(Frame frame) {
+        mAcquiredCount.incrementAndGet();
+        frame.mRefCount.set(1);
+        // the limit left by the last set() would cut off absolute writes of a larger frame
+        frame.mData.clear();
+        return frame;
+    }
+
+    private void recycle(Frame frame) {
+        mFreeFrames.offer(frame);
+    }
+}
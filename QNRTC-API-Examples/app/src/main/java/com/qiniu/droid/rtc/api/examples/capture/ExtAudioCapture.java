@@ -10,6 +10,12 @@ import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 
+import com.qiniu.droid.rtc.api.examples.utils.PolyphaseResampler;
+import com.qiniu.droid.rtc.api.examples.utils.SpscRingBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 public final class ExtAudioCapture {
     private static final String TAG = "ExtAudioCapture";
 
@@ -22,22 +28,120 @@ public final class ExtAudioCapture {
     private static final int SAMPLES_PER_FRAME = 1024;
 
     private AudioRecord mAudioRecord;
+    private PcmReader mPcmReader;
 
     private Thread mCaptureThread;
+    // deliver pooled frames on a separate thread, so that a slow consumer never stalls AudioRecord.read
+    private Thread mDeliveryThread;
+    private SpscRingBuffer<AudioFramePool.Frame> mDeliveryQueue;
+    private int mDeliveryQueueCapacity;
+    private SpscRingBuffer.OverflowPolicy mDeliveryOverflowPolicy = SpscRingBuffer.OverflowPolicy.DROP_OLDEST;
     private boolean mIsCaptureStarted = false;
     private volatile boolean mIsLoopExit = false;
     private byte[] mAudioSrcBuffer = new byte[SAMPLES_PER_FRAME * 2];
 
+    private int mFramePoolDepth = AudioFramePool.DEFAULT_DEPTH;
+    private AudioFramePool mFramePool;
+    // used to drain AudioRecord when no pooled frame is available
+    private ByteBuffer mDropBuffer;
+    private int mSampleRate;
+    private int mChannels;
+    private int mOutputSampleRate;
+    private PolyphaseResampler.Quality mResampleQuality = PolyphaseResampler.Quality.MEDIUM;
+    // only used when the output rate differs from the capture rate
+    private PolyphaseResampler mResampler;
+    private ByteBuffer mCaptureBuffer;
+    private volatile VoiceActivityDetector mVoiceActivityDetector;
+
     private OnAudioFrameCapturedListener mOnAudioFrameCapturedListener;
+    private OnPooledAudioFrameCapturedListener mOnPooledAudioFrameCapturedListener;
+
+    /**
+     * 读取采集数据，线上实现为 AudioRecord#read(ByteBuffer, int)，可以在 JVM 上模拟
+     */
+    interface PcmReader {
+        int read(ByteBuffer buffer, int sizeInBytes);
+    }
 
+    /**
+     * 注意：回调的数组会在下一次采集时被覆盖，如需异步使用请拷贝，或使用 {@link OnPooledAudioFrameCapturedListener}
+     */
     public interface OnAudioFrameCapturedListener {
         void onAudioFrameCaptured(byte[] audioData);
     }
 
+    /**
+     * 回调缓存池中的音频帧，使用完毕后必须调用 {@link AudioFramePool.Frame#release()} 归还
+     */
+    public interface OnPooledAudioFrameCapturedListener {
+        void onAudioFrameCaptured(AudioFramePool.Frame frame);
+    }
+
     public void setOnAudioFrameCapturedListener(OnAudioFrameCapturedListener listener) {
         mOnAudioFrameCapturedListener = listener;
     }
 
+    public void setOnPooledAudioFrameCapturedListener(OnPooledAudioFrameCapturedListener listener) {
+        mOnPooledAudioFrameCapturedListener = listener;
+    }
+
+    /**
+     * 设置音频帧缓存池深度，需要在 {@link #startCapture()} 之前调用
+     */
+    public void setFramePoolDepth(int depth) {
+        mFramePoolDepth = depth;
+    }
+
+    /**
+     * 开启异步回调：采集线程只负责读取数据并入队，由独立的线程回调 {@link OnPooledAudioFrameCapturedListener}，
+     * 需要在 {@link #startCapture()} 之前调用
+     *
+     * @param queueCapacity  队列容量，会向上取整为 2 的幂，小于等于 0 表示关闭异步回调
+     * @param overflowPolicy 队列满时的处理策略
+     */
+    public void setAsyncDelivery(int queueCapacity, SpscRingBuffer.OverflowPolicy overflowPolicy) {
+        mDeliveryQueueCapacity = queueCapacity;
+        mDeliveryOverflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * 设置回调音频帧的采样率，与采集采样率不同时在采集线程中重采样，需要在 {@link #startCapture()} 之前调用
+     *
+     * 通常以设备原生采样率（多为 48000）采集可以避免系统内部重采样，再转换为编码所需的采样率。
+     * 仅对 {@link OnPooledAudioFrameCapturedListener} 生效。
+     *
+     * @param sampleRate 输出采样率，小于等于 0 表示与采集采样率相同
+     */
+    public void setOutputSampleRate(int sampleRate, PolyphaseResampler.Quality quality) {
+        mOutputSampleRate = sampleRate;
+        mResampleQuality = quality;
+    }
+
+    /**
+     * 设置语音活动检测，在采集线程中对每一帧进行检测，并按照 {@link VoiceActivityDetector#getMode()} 处理静音帧
+     *
+     * 仅对 {@link OnPooledAudioFrameCapturedListener} 生效，检测结果可以通过 {@link AudioFramePool.Frame#isVoiceActive()} 获取。
+     *
+     * @param detector 为 null 时关闭检测
+     */
+    public void setVoiceActivityDetector(VoiceActivityDetector detector) {
+        mVoiceActivityDetector = detector;
+    }
+
+    /**
+     * @return 因消费方未及时归还音频帧而丢弃的帧数
+     */
+    public long getDroppedFrameCount() {
+        return mFramePool == null ? 0 : mFramePool.getExhaustedCount();
+    }
+
+    /**
+     * @return 因异步回调队列已满而丢弃的帧数
+     */
+    public long getOverrunCount() {
+        return mDeliveryQueue == null ? 0 : mDeliveryQueue.getOverrunCount();
+    }
+
     public boolean isCaptureStarted() {
         return mIsCaptureStarted;
     }
@@ -65,9 +169,15 @@ public final class ExtAudioCapture {
             return false;
         }
 
+        prepare(mAudioRecord::read, sampleRateInHz, channelConfig == AudioFormat.CHANNEL_IN_STEREO ? 2 : 1);
+
         mAudioRecord.startRecording();
 
         mIsLoopExit = false;
+        if (mDeliveryQueue != null) {
+            mDeliveryThread = new Thread(new AudioDeliveryRunnable(mDeliveryQueue), "ExtAudioDelivery");
+            mDeliveryThread.start();
+        }
         mCaptureThread = new Thread(new AudioCaptureRunnable());
         mCaptureThread.start();
 
@@ -91,33 +201,187 @@ public final class ExtAudioCapture {
             e.printStackTrace();
         }
 
+        if (mDeliveryThread != null) {
+            mDeliveryQueue.close();
+            try {
+                mDeliveryThread.join(1000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            mDeliveryThread = null;
+        }
+
         if (mAudioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
             mAudioRecord.stop();
         }
 
         mAudioRecord.release();
 
+        VoiceActivityDetector detector = mVoiceActivityDetector;
+        if (detector != null) {
+            Log.i(TAG, "speech frames: " + detector.getSpeechFrames()
+                    + ", silence frames: " + detector.getSilenceFrames()
+                    + ", speech ratio: " + detector.getSpeechRatio());
+        }
+
         mIsCaptureStarted = false;
         mOnAudioFrameCapturedListener = null;
+        mOnPooledAudioFrameCapturedListener = null;
 
         Log.d(TAG, "Stop audio capture success !");
     }
 
+    /**
+     * 按照采集格式创建缓存池、重采样器与异步回调队列
+     */
+    void prepare(PcmReader reader, int sampleRate, int channels) {
+        mPcmReader = reader;
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mDropBuffer = ByteBuffer.allocateDirect(mAudioSrcBuffer.length);
+        int frameCapacity = mAudioSrcBuffer.length;
+        if (mOutputSampleRate > 0 && mOutputSampleRate != sampleRate) {
+            mResampler = new PolyphaseResampler(sampleRate, mOutputSampleRate, mChannels, mResampleQuality);
+            mCaptureBuffer = ByteBuffer.allocateDirect(mAudioSrcBuffer.length).order(ByteOrder.nativeOrder());
+            frameCapacity = Math.max(frameCapacity,
+                    mResampler.getMaxOutputFrames(mAudioSrcBuffer.length / (2 * mChannels)) * 2 * mChannels);
+        } else {
+            mResampler = null;
+            mCaptureBuffer = null;
+        }
+        if (mDeliveryQueueCapacity > 0) {
+            mDeliveryQueue = new SpscRingBuffer<>(mDeliveryQueueCapacity, mDeliveryOverflowPolicy, AudioFramePool.Frame::release);
+            // frames in the queue, plus the one being captured and the one being consumed
+            mFramePool = new AudioFramePool(Math.max(mFramePoolDepth, mDeliveryQueue.capacity() + 2), frameCapacity);
+        } else {
+            mDeliveryQueue = null;
+            mFramePool = new AudioFramePool(mFramePoolDepth, frameCapacity);
+        }
+    }
+
+    /**
+     * 采集一帧到缓存池中的音频帧，处理后回调或入队；没有空闲帧时读取并丢弃数据
+     */
+    void capturePooledFrame() {
+        AudioFramePool.Frame frame = mFramePool.acquire();
+        if (frame == null) {
+            // keep reading so that AudioRecord does not overrun, the data is dropped
+            mDropBuffer.clear();
+            checkReadResult(mPcmReader.read(mDropBuffer, mDropBuffer.capacity()));
+            return;
+        }
+        PolyphaseResampler resampler = mResampler;
+        ByteBuffer target = resampler == null ? frame.getData() : mCaptureBuffer;
+        int ret = mPcmReader.read(target, Math.min(target.capacity(), mAudioSrcBuffer.length));
+        OnPooledAudioFrameCapturedListener listener = mOnPooledAudioFrameCapturedListener;
+        if (!checkReadResult(ret) || ret == 0 || listener == null) {
+            frame.release();
+            return;
+        }
+        int sampleRate = mSampleRate;
+        if (resampler != null) {
+            target.position(0);
+            ret = resampler.process(target, ret, frame.getData());
+            sampleRate = resampler.getOutputRate();
+        }
+        frame.set(ret, 16, sampleRate, mChannels, System.nanoTime());
+        VoiceActivityDetector detector = mVoiceActivityDetector;
+        if (detector != null && !applyVoiceActivity(detector, frame)) {
+            frame.release();
+            return;
+        }
+        if (mDeliveryQueue != null) {
+            // the queue releases the frame when it is dropped
+            mDeliveryQueue.offer(frame);
+        } else {
+            listener.onAudioFrameCaptured(frame);
+        }
+    }
+
+    /**
+     * @return 是否继续回调该帧
+     */
+    private boolean applyVoiceActivity(VoiceActivityDetector detector, AudioFramePool.Frame frame) {
+        boolean speaking = detector.process(frame.getData(), frame.getSize(), frame.getSampleRate(), frame.getChannels());
+        frame.setVoiceActive(speaking);
+        if (speaking) {
+            return true;
+        }
+        switch (detector.getMode()) {
+            case COMFORT_SILENCE:
+                ByteBuffer data = frame.getData();
+                for (int i = 0; i < frame.getSize(); i++) {
+                    data.put(i, (byte) 0);
+                }
+                return true;
+            case SKIP:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static boolean checkReadResult(int ret) {
+        if (ret == AudioRecord.ERROR_INVALID_OPERATION) {
+            Log.e(TAG, "Error ERROR_INVALID_OPERATION");
+            return false;
+        } else if (ret == AudioRecord.ERROR_BAD_VALUE) {
+            Log.e(TAG, "Error ERROR_BAD_VALUE");
+            return false;
+        } else if (ret < 0) {
+            Log.e(TAG, "Error " + ret);
+            return false;
+        }
+        return true;
+    }
+
     private class AudioCaptureRunnable implements Runnable {
         @Override
         public void run() {
             while (!mIsLoopExit) {
+                if (mOnPooledAudioFrameCapturedListener != null) {
+                    capturePooledFrame();
+                    continue;
+                }
                 int ret = mAudioRecord.read(mAudioSrcBuffer, 0, mAudioSrcBuffer.length);
-                if (ret == AudioRecord.ERROR_INVALID_OPERATION) {
-                    Log.e(TAG, "Error ERROR_INVALID_OPERATION");
-                } else if (ret == AudioRecord.ERROR_BAD_VALUE) {
-                    Log.e(TAG, "Error ERROR_BAD_VALUE");
-                } else {
-                    if (mOnAudioFrameCapturedListener != null) {
-                        mOnAudioFrameCapturedListener.onAudioFrameCaptured(mAudioSrcBuffer);
-                    }
+                if (checkReadResult(ret) && mOnAudioFrameCapturedListener != null) {
+                    mOnAudioFrameCapturedListener.onAudioFrameCaptured(mAudioSrcBuffer);
                 }
             }
         }
     }
+
+    private class AudioDeliveryRunnable implements Runnable {
+        private static final long POLL_TIMEOUT_NS = 50_000_000;
+
+        private final SpscRingBuffer<AudioFramePool.Frame> mQueue;
+
+        AudioDeliveryRunnable(SpscRingBuffer<AudioFramePool.Frame> queue) {
+            mQueue = queue;
+        }
+
+        @Override
+        public void run() {
+            while (!mQueue.isClosed()) {
+                AudioFramePool.Frame frame = mQueue.poll(POLL_TIMEOUT_NS);
+                if (frame != null) {
+                    deliver(frame);
+                }
+            }
+            // release the frames left in the queue
+            AudioFramePool.Frame frame;
+            while ((frame = mQueue.poll()) != null) {
+                frame.release();
+            }
+        }
+
+        private void deliver(AudioFramePool.Frame frame) {
+            OnPooledAudioFrameCapturedListener listener = mOnPooledAudioFrameCapturedListener;
+            if (listener != null) {
+                listener.onAudioFrameCaptured(frame);
+            } else {
+                frame.release();
+            }
+        }
+    }
 }
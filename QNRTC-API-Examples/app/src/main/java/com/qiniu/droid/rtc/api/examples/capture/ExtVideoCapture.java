@@ -21,12 +21,14 @@ public final class ExtVideoCapture implements SurfaceHolder.Callback, Camera.Pre
         void onPreviewFrameCaptured(byte[] data, int width, int height, int orientation, boolean mirror, long tsInNanoTime);
     }
 
-    public static final int MAX_CALLBACK_BUFFER_NUM = 2;
+    public static final int DEFAULT_CALLBACK_BUFFER_NUM = PreviewFrameDispatcher.DEFAULT_BUFFER_COUNT;
 
-    private Camera mCamera;
+    private volatile Camera mCamera;
+    private final Object mCameraLock = new Object();
+    private final PreviewFrameDispatcher mFrameDispatcher;
     private int mCurrentFacingId = Camera.CameraInfo.CAMERA_FACING_BACK;
 
-    private OnPreviewFrameCallback mOnPreviewFrameCallback;
+    private volatile OnPreviewFrameCallback mOnPreviewFrameCallback;
 
     private int mPreviewWidth = 0;
     private int mPreviewHeight = 0;
@@ -35,8 +37,19 @@ public final class ExtVideoCapture implements SurfaceHolder.Callback, Camera.Pre
     private int mCameraPreviewDegree;
 
     public ExtVideoCapture(SurfaceView sv) {
+        this(sv, DEFAULT_CALLBACK_BUFFER_NUM);
+    }
+
+    /**
+     * @param callbackBufferNum 预览回调缓存个数，回调异步进行，缓存越多越不容易因回调耗时而丢帧
+     */
+    public ExtVideoCapture(SurfaceView sv, int callbackBufferNum) {
         sv.getHolder().addCallback(this);
         mContext = sv.getContext();
+        // keep at least one buffer for the camera, and only a short backlog to bound the latency
+        int maxPendingFrames = Math.max(1, Math.min(PreviewFrameDispatcher.DEFAULT_MAX_PENDING_FRAMES, callbackBufferNum - 1));
+        mFrameDispatcher = new PreviewFrameDispatcher(callbackBufferNum, maxPendingFrames,
+                this::returnCallbackBuffer, this::deliverPreviewFrame);
     }
 
     public void setOnPreviewFrameCallback(OnPreviewFrameCallback callback) {
@@ -96,15 +109,14 @@ public final class ExtVideoCapture implements SurfaceHolder.Callback, Camera.Pre
 
         final Camera.Size previewSize = params.getPreviewSize();
         Log.i(TAG, "final preview size : " + previewSize.width + ", " + previewSize.height);
-        final int bitsPerPixel = ImageFormat.getBitsPerPixel(params.getPreviewFormat());
-        final int previewBufferSize = (previewSize.width * previewSize.height * bitsPerPixel) / 8;
-        for (int i = 0; i < MAX_CALLBACK_BUFFER_NUM; i++) {
-            mCamera.addCallbackBuffer(new byte[previewBufferSize]);
+        for (byte[] buffer : mFrameDispatcher.allocateBuffers(previewSize.width, previewSize.height)) {
+            mCamera.addCallbackBuffer(buffer);
         }
 
         mPreviewWidth = previewSize.width;
         mPreviewHeight = previewSize.height;
 
+        mFrameDispatcher.start();
         mCamera.setPreviewCallbackWithBuffer(this);
         mCamera.startPreview();
     }
@@ -112,6 +124,16 @@ public final class ExtVideoCapture implements SurfaceHolder.Callback, Camera.Pre
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
         stopPreviewAndFreeCamera();
+        mFrameDispatcher.stop();
+        Log.i(TAG, "preview frames received: " + mFrameDispatcher.getReceivedCount()
+                + ", delivered: " + mFrameDispatcher.getDeliveredCount()
+                + ", dropped: " + mFrameDispatcher.getDroppedCount()
+                + ", avg latency: " + mFrameDispatcher.getAverageLatencyNs() / 1000 + "us"
+                + ", max latency: " + mFrameDispatcher.getMaxLatencyNs() / 1000 + "us");
+    }
+
+    public PreviewFrameDispatcher getFrameDispatcher() {
+        return mFrameDispatcher;
     }
 
     private boolean safeCameraOpen(int id) {
@@ -134,9 +156,11 @@ public final class ExtVideoCapture implements SurfaceHolder.Callback, Camera.Pre
     }
 
     private void releaseCameraAndPreview() {
-        if (mCamera != null) {
-            mCamera.release();
-            mCamera = null;
+        synchronized (mCameraLock) {
+            if (mCamera != null) {
+                mCamera.release();
+                mCamera = null;
+            }
         }
     }
 
@@ -144,16 +168,18 @@ public final class ExtVideoCapture implements SurfaceHolder.Callback, Camera.Pre
      * When this function returns, mCamera will be null.
      */
     private void stopPreviewAndFreeCamera() {
-        if (mCamera != null) {
-            // Call stopPreview() to stop updating the preview surface.
-            mCamera.stopPreview();
+        synchronized (mCameraLock) {
+            if (mCamera != null) {
+                // Call stopPreview() to stop updating the preview surface.
+                mCamera.stopPreview();
 
-            // Important: Call release() to release the camera for use by other
-            // applications. Applications should release the camera immediately
-            // during onPause() and re-open() it during onResume()).
-            mCamera.release();
+                // Important: Call release() to release the camera for use by other
+                // applications. Applications should release the camera immediately
+                // during onPause() and re-open() it during onResume()).
+                mCamera.release();
 
-            mCamera = null;
+                mCamera = null;
+            }
         }
     }
 
@@ -163,12 +189,22 @@ public final class ExtVideoCapture implements SurfaceHolder.Callback, Camera.Pre
             return;
         }
 
-        if (mOnPreviewFrameCallback != null) {
-            mOnPreviewFrameCallback.onPreviewFrameCaptured(data, mPreviewWidth, mPreviewHeight, mCameraPreviewDegree, false, System.nanoTime());
+        // the buffer is returned to the camera after the consumer thread has finished with it
+        mFrameDispatcher.onPreviewFrame(data, mPreviewWidth, mPreviewHeight, mCameraPreviewDegree, false, System.nanoTime());
+    }
+
+    private void deliverPreviewFrame(byte[] data, int width, int height, int rotation, boolean mirror, long timestampNs) {
+        OnPreviewFrameCallback callback = mOnPreviewFrameCallback;
+        if (callback != null) {
+            callback.onPreviewFrameCaptured(data, width, height, rotation, mirror, timestampNs);
         }
+    }
 
-        if (mCamera != null) {
-            mCamera.addCallbackBuffer(data);
+    private void returnCallbackBuffer(byte[] buffer) {
+        synchronized (mCameraLock) {
+            if (mCamera != null) {
+                mCamera.addCallbackBuffer(buffer);
+            }
         }
     }
 
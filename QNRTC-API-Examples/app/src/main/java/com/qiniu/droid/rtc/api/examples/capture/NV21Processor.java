@@ -0,0 +1,357 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+/**
+ * NV21 / I420 帧处理工具：旋转、水平镜像、裁剪、双线性缩放以及 NV21 与 I420 互转
+ *
+ * 所有方法都将结果写入调用方提供的目标缓存，不产生任何内存分配；宽高必须为偶数，
+ * 目标缓存不能小于 {@link #getBufferSize(int, int)}。除 {@link #mirror} 外，源缓存与目标缓存不能为同一块内存。
+ * 如需串联多个处理步骤，可以使用复用中间缓存的 {@link Transformer}。
+ */
+public final class NV21Processor {
+
+    // rotation is done in square tiles so that both the reads and the strided writes stay in cache
+    private static final int TILE_SIZE = 16;
+
+    private NV21Processor() {
+    }
+
+    public static int getBufferSize(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * 顺时针旋转，旋转 90 或 270 度时目标帧的宽高互换
+     *
+     * @param degrees 0, 90, 180 或 270
+     */
+    public static void rotate(byte[] src, int width, int height, int degrees, byte[] dst) {
+        checkFrame(src, width, height);
+        checkFrame(dst, width, height);
+        checkNotSame(src, dst);
+        int ySize = width * height;
+        switch (degrees) {
+            case 0:
+                System.arraycopy(src, 0, dst, 0, getBufferSize(width, height));
+                break;
+            case 90:
+            case 180:
+            case 270:
+                rotatePlane(src, 0, dst, 0, width, height, 1, degrees);
+                rotatePlane(src, ySize, dst, ySize, width / 2, height / 2, 2, degrees);
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported rotation " + degrees);
+        }
+    }
+
+    /**
+     * 水平镜像，源缓存与目标缓存可以为同一块内存
+     */
+    public static void mirror(byte[] src, int width, int height, byte[] dst) {
+        checkFrame(src, width, height);
+        checkFrame(dst, width, height);
+        int ySize = width * height;
+        mirrorPlane(src, 0, dst, 0, width, height, 1);
+        mirrorPlane(src, ySize, dst, ySize, width / 2, height / 2, 2);
+    }
+
+    /**
+     * 裁剪出 [x, x + cropWidth) x [y, y + cropHeight) 区域，x 和 y 会向下对齐到偶数
+     */
+    public static void crop(byte[] src, int width, int height, int x, int y, int cropWidth, int cropHeight, byte[] dst) {
+        checkFrame(src, width, height);
+        checkFrame(dst, cropWidth, cropHeight);
+        checkNotSame(src, dst);
+        x &= ~1;
+        y &= ~1;
+        if (x < 0 || y < 0 || x + cropWidth > width || y + cropHeight > height) {
+            throw new IllegalArgumentException("crop region out of bounds");
+        }
+        for (int row = 0; row < cropHeight; row++) {
+            System.arraycopy(src, (y + row) * width + x, dst, row * cropWidth, cropWidth);
+        }
+        int srcUV = width * height + (y / 2) * width + x;
+        int dstUV = cropWidth * cropHeight;
+        for (int row = 0; row < cropHeight / 2; row++) {
+            System.arraycopy(src, srcUV + row * width, dst, dstUV + row * cropWidth, cropWidth);
+        }
+    }
+
+    /**
+     * 居中裁剪为指定宽高比
+     *
+     * @param outSize 输出裁剪后的宽高，长度至少为 2
+     */
+    public static void centerCrop(byte[] src, int width, int height, int aspectWidth, int aspectHeight, byte[] dst, int[] outSize) {
+        int cropWidth = width;
+        int cropHeight = height;
+        if ((long) width * aspectHeight > (long) height * aspectWidth) {
+            cropWidth = (int) ((long) height * aspectWidth / aspectHeight) & ~1;
+        } else {
+            cropHeight = (int) ((long) width * aspectHeight / aspectWidth) & ~1;
+        }
+        crop(src, width, height, (width - cropWidth) / 2, (height - cropHeight) / 2, cropWidth, cropHeight, dst);
+        outSize[0] = cropWidth;
+        outSize[1] = cropHeight;
+    }
+
+    /**
+     * 双线性缩放，采样点按像素中心对齐
+     */
+    public static void scale(byte[] src, int width, int height, byte[] dst, int dstWidth, int dstHeight) {
+        checkFrame(src, width, height);
+        checkFrame(dst, dstWidth, dstHeight);
+        checkNotSame(src, dst);
+        scalePlane(src, 0, width, height, dst, 0, dstWidth, dstHeight, 1);
+        scalePlane(src, width * height, width / 2, height / 2,
+                dst, dstWidth * dstHeight, dstWidth / 2, dstHeight / 2, 2);
+    }
+
+    /**
+     * NV21 (Y + VU 交错) 转换为 I420 (Y + U + V)
+     */
+    public static void nv21ToI420(byte[] src, int width, int height, byte[] dst) {
+        checkFrame(src, width, height);
+        checkFrame(dst, width, height);
+        checkNotSame(src, dst);
+        int ySize = width * height;
+        int uvCount = ySize / 4;
+        System.arraycopy(src, 0, dst, 0, ySize);
+        int u = ySize;
+        int v = ySize + uvCount;
+        for (int i = 0, p = ySize; i < uvCount; i++, p += 2) {
+            dst[v + i] = src[p];
+            dst[u + i] = src[p + 1];
+        }
+    }
+
+    /**
+     * I420 (Y + U + V) 转换为 NV21 (Y + VU 交错)
+     */
+    public static void i420ToNV21(byte[] src, int width, int height, byte[] dst) {
+        checkFrame(src, width, height);
+        checkFrame(dst, width, height);
+        checkNotSame(src, dst);
+        int ySize = width * height;
+        int uvCount = ySize / 4;
+        System.arraycopy(src, 0, dst, 0, ySize);
+        int u = ySize;
+        int v = ySize + uvCount;
+        for (int i = 0, p = ySize; i < uvCount; i++, p += 2) {
+            dst[p] = src[v + i];
+            dst[p + 1] = src[u + i];
+        }
+    }
+
+    /**
+     * 旋转一个平面，pixelSize 为每个像素的字节数（Y 平面为 1，VU 交错平面为 2）
+     */
+    private static void rotatePlane(byte[] src, int srcOffset, byte[] dst, int dstOffset,
+                                    int width, int height, int pixelSize, int degrees) {
+        int srcStride = width * pixelSize;
+        for (int tileY = 0; tileY < height; tileY += TILE_SIZE) {
+            int endY = Math.min(tileY + TILE_SIZE, height);
+            for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+                int endX = Math.min(tileX + TILE_SIZE, width);
+                for (int y = tileY; y < endY; y++) {
+                    int s = srcOffset + y * srcStride + tileX * pixelSize;
+                    for (int x = tileX; x < endX; x++, s += pixelSize) {
+                        int d;
+                        if (degrees == 90) {
+                            d = x * height + (height - 1 - y);
+                        } else if (degrees == 180) {
+                            d = (height - 1 - y) * width + (width - 1 - x);
+                        } else {
+                            d = (width - 1 - x) * height + y;
+                        }
+                        d = dstOffset + d * pixelSize;
+                        dst[d] = src[s];
+                        if (pixelSize == 2) {
+                            dst[d + 1] = src[s + 1];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void mirrorPlane(byte[] src, int srcOffset, byte[] dst, int dstOffset,
+                                    int width, int height, int pixelSize) {
+        int stride = width * pixelSize;
+        for (int y = 0; y < height; y++) {
+            int left = y * stride;
+            int right = left + stride - pixelSize;
+            // walk from both ends so that mirroring in place works as well
+            while (left <= right) {
+                for (int i = 0; i < pixelSize; i++) {
+                    byte l = src[srcOffset + left + i];
+                    byte r = src[srcOffset + right + i];
+                    dst[dstOffset + left + i] = r;
+                    dst[dstOffset + right + i] = l;
+                }
+                left += pixelSize;
+                right -= pixelSize;
+            }
+        }
+    }
+
+    /**
+     * 定点双线性缩放一个平面，坐标精度 16 位，插值权重 8 位
+     */
+    private static void scalePlane(byte[] src, int srcOffset, int width, int height,
+                                   byte[] dst, int dstOffset, int dstWidth, int dstHeight, int pixelSize) {
+        int srcStride = width * pixelSize;
+        long stepX = ((long) width << 16) / dstWidth;
+        long stepY = ((long) height << 16) / dstHeight;
+        int d = dstOffset;
+        for (int dy = 0; dy < dstHeight; dy++) {
+            long fy = ((stepY * (2 * dy + 1)) >> 1) - 0x8000;
+            int y0 = fy < 0 ? 0 : (int) (fy >> 16);
+            int wy = fy < 0 ? 0 : (int) (fy >> 8) & 0xff;
+            int y1 = Math.min(y0 + 1, height - 1);
+            int row0 = srcOffset + y0 * srcStride;
+            int row1 = srcOffset + y1 * srcStride;
+            for (int dx = 0; dx < dstWidth; dx++) {
+                long fx = ((stepX * (2 * dx + 1)) >> 1) - 0x8000;
+                int x0 = fx < 0 ? 0 : (int) (fx >> 16);
+                int wx = fx < 0 ? 0 : (int) (fx >> 8) & 0xff;
+                int x1 = Math.min(x0 + 1, width - 1);
+                int s0 = x0 * pixelSize;
+                int s1 = x1 * pixelSize;
+                for (int i = 0; i < pixelSize; i++) {
+                    int top = (src[row0 + s0 + i] & 0xff) * (256 - wx) + (src[row0 + s1 + i] & 0xff) * wx;
+                    int bottom = (src[row1 + s0 + i] & 0xff) * (256 - wx) + (src[row1 + s1 + i] & 0xff) * wx;
+                    dst[d++] = (byte) ((top * (256 - wy) + bottom * wy + 0x8000) >> 16);
+                }
+            }
+        }
+    }
+
+    private static void checkFrame(byte[] frame, int width, int height) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("invalid frame size " + width + "x" + height);
+        }
+        if (frame.length < getBufferSize(width, height)) {
+            throw new IllegalArgumentException("buffer too small for " + width + "x" + height);
+        }
+    }
+
+    private static void checkNotSame(byte[] src, byte[] dst) {
+        if (src == dst) {
+            throw new IllegalArgumentException("src and dst must be different buffers");
+        }
+    }
+
+    /**
+     * 按照 居中裁剪 -> 缩放 -> 旋转 -> 镜像 的顺序处理 NV21 帧，中间缓存在帧尺寸不变时复用
+     *
+     * 先裁剪和缩放以减少后续步骤的数据量；不需要处理时直接返回源缓存。只能在单个线程中使用，
+     * 返回的缓存在下一次调用 {@link #process} 前有效。
+     */
+    public static final class Transformer {
+        private int mOutputWidth;
+        private int mOutputHeight;
+        private boolean mPreRotate;
+        private boolean mMirror;
+
+        private byte[] mCropBuffer;
+        private byte[] mScaleBuffer;
+        private byte[] mRotateBuffer;
+        private final int[] mCropSize = new int[2];
+
+        private int mWidth;
+        private int mHeight;
+        private int mRotation;
+
+        /**
+         * @param outputWidth  旋转前的输出宽度，为 0 时不裁剪、不缩放
+         * @param outputHeight 旋转前的输出高度，为 0 时不裁剪、不缩放
+         */
+        public Transformer(int outputWidth, int outputHeight) {
+            setOutputSize(outputWidth, outputHeight);
+        }
+
+        public void setOutputSize(int outputWidth, int outputHeight) {
+            if (outputWidth < 0 || outputHeight < 0 || (outputWidth & 1) != 0 || (outputHeight & 1) != 0) {
+                throw new IllegalArgumentException("invalid output size " + outputWidth + "x" + outputHeight);
+            }
+            mOutputWidth = outputWidth;
+            mOutputHeight = outputHeight;
+        }
+
+        /**
+         * 是否预先旋转帧数据，开启后 {@link #getRotation()} 始终为 0
+         */
+        public void setPreRotate(boolean preRotate) {
+            mPreRotate = preRotate;
+        }
+
+        /**
+         * 是否在旋转后做水平镜像；未开启预旋转且源缓存即为当前数据时，镜像直接在源缓存上进行
+         */
+        public void setMirror(boolean mirror) {
+            mMirror = mirror;
+        }
+
+        /**
+         * @return 处理后的帧数据，宽高与剩余的旋转角度通过 {@link #getWidth()}、{@link #getHeight()}、{@link #getRotation()} 获取
+         */
+        public byte[] process(byte[] src, int width, int height, int rotation) {
+            byte[] current = src;
+            int w = width;
+            int h = height;
+            if (mOutputWidth > 0 && mOutputHeight > 0 && (w != mOutputWidth || h != mOutputHeight)) {
+                if ((long) w * mOutputHeight != (long) h * mOutputWidth) {
+                    mCropBuffer = ensureCapacity(mCropBuffer, w, h);
+                    centerCrop(current, w, h, mOutputWidth, mOutputHeight, mCropBuffer, mCropSize);
+                    current = mCropBuffer;
+                    w = mCropSize[0];
+                    h = mCropSize[1];
+                }
+                if (w != mOutputWidth || h != mOutputHeight) {
+                    mScaleBuffer = ensureCapacity(mScaleBuffer, mOutputWidth, mOutputHeight);
+                    scale(current, w, h, mScaleBuffer, mOutputWidth, mOutputHeight);
+                    current = mScaleBuffer;
+                    w = mOutputWidth;
+                    h = mOutputHeight;
+                }
+            }
+            int remainingRotation = rotation;
+            if (mPreRotate && rotation != 0) {
+                mRotateBuffer = ensureCapacity(mRotateBuffer, w, h);
+                rotate(current, w, h, rotation, mRotateBuffer);
+                current = mRotateBuffer;
+                if (rotation == 90 || rotation == 270) {
+                    int tmp = w;
+                    w = h;
+                    h = tmp;
+                }
+                remainingRotation = 0;
+            }
+            if (mMirror) {
+                mirror(current, w, h, current);
+            }
+            mWidth = w;
+            mHeight = h;
+            mRotation = remainingRotation;
+            return current;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        public int getRotation() {
+            return mRotation;
+        }
+
+        private static byte[] ensureCapacity(byte[] buffer, int width, int height) {
+            int size = getBufferSize(width, height);
+            return buffer != null && buffer.length >= size ? buffer : new byte[size];
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NV21 预览帧缓存池及异步分发
+ *
+ * 相机回调线程调用 {@link #onPreviewFrame} 后立即返回，帧数据在独立的消费线程中回调给 {@link FrameConsumer}，
+ * 回调结束后缓存才通过 {@link BufferRecycler} 归还给相机。消费线程处理不过来时，丢弃最旧的待处理帧并立即归还其缓存。
+ * 本类不依赖 Android，相机相关操作均通过 {@link BufferRecycler} 完成。
+ */
+public final class PreviewFrameDispatcher {
+
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+    public static final int DEFAULT_MAX_PENDING_FRAMES = 2;
+
+    /**
+     * 将缓存归还给相机，例如 Camera#addCallbackBuffer
+     */
+    public interface BufferRecycler {
+        void recycle(byte[] buffer);
+    }
+
+    public interface FrameConsumer {
+        void onFrame(byte[] data, int width, int height, int rotation, boolean mirror, long timestampNs);
+    }
+
+    private static final class Frame {
+        final byte[] mData;
+        int mWidth;
+        int mHeight;
+        int mRotation;
+        boolean mMirror;
+        long mTimestampNs;
+
+        Frame(byte[] data) {
+            mData = data;
+        }
+    }
+
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final long STOP_TIMEOUT_MS = 1000;
+
+    private final int mBufferCount;
+    private final BufferRecycler mRecycler;
+    private final FrameConsumer mConsumer;
+    private final ArrayBlockingQueue<Frame> mPendingFrames;
+    // buffer -> holder, only buffers allocated for the current preview size are recycled
+    private final Map<byte[], Frame> mFrames = new IdentityHashMap<>();
+
+    // also the stop flag of the consume loop, a loop whose thread is no longer current exits
+    private volatile Thread mConsumerThread;
+    private volatile boolean mRunning;
+
+    private final AtomicLong mReceivedCount = new AtomicLong();
+    private final AtomicLong mDeliveredCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mTotalLatencyNs = new AtomicLong();
+    private volatile long mMaxLatencyNs;
+
+    public PreviewFrameDispatcher(BufferRecycler recycler, FrameConsumer consumer) {
+        this(DEFAULT_BUFFER_COUNT, DEFAULT_MAX_PENDING_FRAMES, recycler, consumer);
+    }
+
+    /**
+     * @param bufferCount      相机回调缓存个数
+     * @param maxPendingFrames 等待消费线程处理的最大帧数，需小于 bufferCount 以保证相机始终有可用缓存
+     */
+    public PreviewFrameDispatcher(int bufferCount, int maxPendingFrames, BufferRecycler recycler, FrameConsumer consumer) {
+        if (bufferCount <= 0 || maxPendingFrames <= 0) {
+            throw new IllegalArgumentException("bufferCount and maxPendingFrames must be positive");
+        }
+        mBufferCount = bufferCount;
+        mRecycler = recycler;
+        mConsumer = consumer;
+        mPendingFrames = new ArrayBlockingQueue<>(maxPendingFrames);
+    }
+
+    public static int getNV21BufferSize(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * 按照预览尺寸重新分配缓存，之前分配的缓存将不再被归还给相机
+     *
+     * @return 新分配的缓存，需要全部交给相机
+     */
+    public List<byte[]> allocateBuffers(int width, int height) {
+        int size = getNV21BufferSize(width, height);
+        List<byte[]> buffers = new ArrayList<>(mBufferCount);
+        synchronized (mFrames) {
+            mFrames.clear();
+            for (int i = 0; i < mBufferCount; i++) {
+                byte[] buffer = new byte[size];
+                mFrames.put(buffer, new Frame(buffer));
+                buffers.add(buffer);
+            }
+        }
+        return buffers;
+    }
+
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mConsumerThread = new Thread(this::consumeLoop, "PreviewFrameDispatcher");
+        mConsumerThread.start();
+    }
+
+    /**
+     * 停止消费线程并等待正在进行的回调结束，未处理的帧直接丢弃并归还缓存
+     *
+     * 不会中断消费线程，回调中可能正在推送帧给 SDK，中断会影响其中的阻塞操作。
+     */
+    public synchronized void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Thread consumerThread = mConsumerThread;
+        mConsumerThread = null;
+        try {
+            // the loop polls with a timeout, it sees the flag after the current frame at the latest
+            consumerThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Frame frame;
+        while ((frame = mPendingFrames.poll()) != null) {
+            mDroppedCount.incrementAndGet();
+            release(frame.mData);
+        }
+    }
+
+    /**
+     * 相机回调线程调用
+     */
+    public void onPreviewFrame(byte[] data, int width, int height, int rotation, boolean mirror, long timestampNs) {
+        mReceivedCount.incrementAndGet();
+        Frame frame;
+        synchronized (mFrames) {
+            frame = mFrames.get(data);
+        }
+        if (frame == null || !mRunning) {
+            // stale buffer of the previous preview size, or not started
+            mDroppedCount.incrementAndGet();
+            release(data);
+            return;
+        }
+        frame.mWidth = width;
+        frame.mHeight = height;
+        frame.mRotation = rotation;
+        frame.mMirror = mirror;
+        frame.mTimestampNs = timestampNs;
+        while (!mPendingFrames.offer(frame)) {
+            Frame oldest = mPendingFrames.poll();
+            if (oldest != null) {
+                mDroppedCount.incrementAndGet();
+                release(oldest.mData);
+            }
+        }
+        if (!mRunning && mPendingFrames.remove(frame)) {
+            // stop() drained the queue between the check above and the offer
+            mDroppedCount.incrementAndGet();
+            release(data);
+        }
+    }
+
+    public long getReceivedCount() {
+        return mReceivedCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return mDeliveredCount.get();
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return 从采集到开始回调的平均延迟，单位 ns
+     */
+    public long getAverageLatencyNs() {
+        long delivered = mDeliveredCount.get();
+        return delivered == 0 ? 0 : mTotalLatencyNs.get() / delivered;
+    }
+
+    public long getMaxLatencyNs() {
+        return mMaxLatencyNs;
+    }
+
+    private void consumeLoop() {
+        Thread current = Thread.currentThread();
+        while (mConsumerThread == current) {
+            Frame frame;
+            try {
+                frame = mPendingFrames.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) {
+                continue;
+            }
+            if (mConsumerThread != current) {
+                // stopped while waiting, or a restarted loop owns the queue now
+                mDroppedCount.incrementAndGet();
+                release(frame.mData);
+                break;
+            }
+            long latency = System.nanoTime() - frame.mTimestampNs;
+            mTotalLatencyNs.addAndGet(latency);
+            if (latency > mMaxLatencyNs) {
+                mMaxLatencyNs = latency;
+            }
+            mDeliveredCount.incrementAndGet();
+            try {
+                mConsumer.onFrame(frame.mData, frame.mWidth, frame.mHeight, frame.mRotation, frame.mMirror, frame.mTimestampNs);
+            } finally {
+                release(frame.mData);
+            }
+        }
+    }
+
+    private void release(byte[] buffer) {
+        boolean current;
+        synchronized (mFrames) {
+            current = mFrames.containsKey(buffer);
+        }
+        if (current) {
+            mRecycler.recycle(buffer);
+        }
+    }
+}
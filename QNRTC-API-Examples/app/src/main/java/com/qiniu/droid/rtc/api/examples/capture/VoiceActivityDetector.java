@@ -0,0 +1,193 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 基于能量与过零率的轻量语音活动检测
+ *
+ * 帧能量高于自适应噪声底一定幅度、且过零率不像宽带噪声时判定为语音；语音结束后保持 hangover 时长，
+ * 避免句尾与字间停顿被截断。噪声底在非语音帧上快速下降、缓慢上升，以适应环境噪声变化；在语音帧上以更慢的速度上升，
+ * 环境噪声突然变大而被误判为语音时，噪声底最终会追上新的噪声，而正常说话的字间停顿足以把噪声底拉回。
+ * 不依赖 Android，处理过程中不产生内存分配。非线程安全，应在采集线程中使用。
+ */
+public final class VoiceActivityDetector {
+
+    /**
+     * 检测到静音时对音频帧的处理方式
+     */
+    public enum SuppressionMode {
+        /**
+         * 仅标记帧是否为语音，数据原样推送
+         */
+        ANNOTATE,
+        /**
+         * 用数字静音替换帧数据，保持推送节奏的同时降低编码开销
+         */
+        COMFORT_SILENCE,
+        /**
+         * 不推送静音帧
+         */
+        SKIP
+    }
+
+    public static final int DEFAULT_HANGOVER_MS = 300;
+    public static final float DEFAULT_SPEECH_MARGIN_DB = 10;
+
+    // frames quieter than this are never speech
+    private static final float MIN_SPEECH_DBFS = -50;
+    // loud enough to be speech (e.g. fricatives) regardless of the zero crossing rate
+    private static final float LOUD_MARGIN_DB = 20;
+    // broadband noise crosses zero far more often than voiced speech
+    private static final float MAX_SPEECH_ZCR = 0.35f;
+    private static final float INITIAL_NOISE_FLOOR_DBFS = -60;
+    private static final float NOISE_FLOOR_RISE_DB_PER_SECOND = 3.0f;
+    // a sudden stationary noise looks like speech, follow it slowly so it is not voiced forever
+    private static final float NOISE_FLOOR_VOICED_RISE_DB_PER_SECOND = 1.0f;
+    private static final float NOISE_FLOOR_FALL_FACTOR = 0.2f;
+    private static final float SILENCE_DBFS = -96;
+
+    private final SuppressionMode mMode;
+    private final int mHangoverMs;
+    private final float mSpeechMarginDb;
+
+    private float mNoiseFloorDb = INITIAL_NOISE_FLOOR_DBFS;
+    private int mHangoverRemainingMs;
+    private float mLastEnergyDb = SILENCE_DBFS;
+    private float mLastZeroCrossingRate;
+
+    private long mSpeechFrames;
+    private long mSilenceFrames;
+    private long mSpeechDurationMs;
+    private long mSilenceDurationMs;
+
+    public VoiceActivityDetector(SuppressionMode mode) {
+        this(mode, DEFAULT_HANGOVER_MS, DEFAULT_SPEECH_MARGIN_DB);
+    }
+
+    /**
+     * @param hangoverMs     语音结束后继续判定为语音的时长
+     * @param speechMarginDb 帧能量需要高出噪声底的幅度
+     */
+    public VoiceActivityDetector(SuppressionMode mode, int hangoverMs, float speechMarginDb) {
+        if (hangoverMs < 0 || speechMarginDb <= 0) {
+            throw new IllegalArgumentException("invalid vad parameters");
+        }
+        mMode = mode;
+        mHangoverMs = hangoverMs;
+        mSpeechMarginDb = speechMarginDb;
+    }
+
+    public SuppressionMode getMode() {
+        return mMode;
+    }
+
+    /**
+     * 检测一帧 16 位 PCM 数据，读取 [data.position(), data.position() + size)，按照 data 的字节序读取，不改变 position
+     *
+     * @return 是否为语音（包含 hangover）
+     */
+    public boolean process(ByteBuffer data, int size, int sampleRate, int channels) {
+        int frames = size / (2 * channels);
+        if (frames == 0 || sampleRate <= 0) {
+            return isSpeaking();
+        }
+        int base = data.position();
+        long sumSquares = 0;
+        int zeroCrossings = 0;
+        int previous = 0;
+        int frameBytes = 2 * channels;
+        for (int i = 0; i < frames; i++) {
+            int p = base + i * frameBytes;
+            for (int c = 0; c < channels; c++) {
+                int sample = data.getShort(p + c * 2);
+                sumSquares += sample * sample;
+            }
+            // zero crossings of the first channel only
+            int first = data.getShort(p);
+            if (i > 0 && (first ^ previous) < 0) {
+                zeroCrossings++;
+            }
+            previous = first;
+        }
+        int durationMs = frames * 1000 / sampleRate;
+        float meanSquare = (float) sumSquares / (frames * channels);
+        float energyDb = meanSquare <= 0 ? SILENCE_DBFS
+                : (float) (10 * Math.log10(meanSquare / (32768.0 * 32768.0)));
+        float zcr = (float) zeroCrossings / frames;
+        return update(energyDb, zcr, durationMs);
+    }
+
+    /**
+     * 根据帧能量与过零率更新状态，便于使用离线数据验证
+     */
+    boolean update(float energyDb, float zeroCrossingRate, int durationMs) {
+        mLastEnergyDb = energyDb;
+        mLastZeroCrossingRate = zeroCrossingRate;
+        float threshold = Math.max(mNoiseFloorDb + mSpeechMarginDb, MIN_SPEECH_DBFS);
+        boolean voiced = energyDb > threshold
+                && (zeroCrossingRate < MAX_SPEECH_ZCR || energyDb > threshold + LOUD_MARGIN_DB);
+        if (voiced) {
+            mHangoverRemainingMs = mHangoverMs;
+            mNoiseFloorDb = Math.min(energyDb, mNoiseFloorDb + NOISE_FLOOR_VOICED_RISE_DB_PER_SECOND * durationMs / 1000f);
+        } else {
+            mHangoverRemainingMs = Math.max(0, mHangoverRemainingMs - durationMs);
+            if (energyDb < mNoiseFloorDb) {
+                mNoiseFloorDb += (energyDb - mNoiseFloorDb) * NOISE_FLOOR_FALL_FACTOR;
+            } else {
+                mNoiseFloorDb = Math.min(energyDb, mNoiseFloorDb + NOISE_FLOOR_RISE_DB_PER_SECOND * durationMs / 1000f);
+            }
+        }
+        boolean speaking = voiced || mHangoverRemainingMs > 0;
+        if (speaking) {
+            mSpeechFrames++;
+            mSpeechDurationMs += durationMs;
+        } else {
+            mSilenceFrames++;
+            mSilenceDurationMs += durationMs;
+        }
+        return speaking;
+    }
+
+    public boolean isSpeaking() {
+        return mHangoverRemainingMs > 0;
+    }
+
+    public void reset() {
+        mNoiseFloorDb = INITIAL_NOISE_FLOOR_DBFS;
+        mHangoverRemainingMs = 0;
+        mLastEnergyDb = SILENCE_DBFS;
+        mLastZeroCrossingRate = 0;
+        mSpeechFrames = 0;
+        mSilenceFrames = 0;
+        mSpeechDurationMs = 0;
+        mSilenceDurationMs = 0;
+    }
+
+    public float getNoiseFloorDb() {
+        return mNoiseFloorDb;
+    }
+
+    public float getLastEnergyDb() {
+        return mLastEnergyDb;
+    }
+
+    public float getLastZeroCrossingRate() {
+        return mLastZeroCrossingRate;
+    }
+
+    public long getSpeechFrames() {
+        return mSpeechFrames;
+    }
+
+    public long getSilenceFrames() {
+        return mSilenceFrames;
+    }
+
+    /**
+     * @return 语音时长占比，[0, 1]
+     */
+    public float getSpeechRatio() {
+        long total = mSpeechDurationMs + mSilenceDurationMs;
+        return total == 0 ? 0 : (float) mSpeechDurationMs / total;
+    }
+}
@@ -0,0 +1,239 @@
+package com.qiniu.droid.rtc.api.examples.model;
+
+/**
+ * 按照时间戳实时释放音频帧
+ *
+ * 第一帧到达时记录时间戳与单调时钟的对应关系，之后每一帧在 (时间戳 - 第一帧时间戳) 对应的时刻释放，
+ * 允许提前 leadMs 释放以给下游留出缓冲。支持暂停、恢复与 seek，并统计实际释放时刻相对计划时刻的抖动。
+ *
+ * {@link #await(long)} 由推送线程调用，其余方法可以在任意线程调用。
+ * 时钟通过 {@link Clock} 注入，使用模拟时钟时行为是确定的。
+ */
+public class AudioFramePacer {
+
+    public static final long DEFAULT_LEAD_MS = 100;
+
+    // frames later than this re-anchor the timeline instead of being released in a burst
+    private static final long REANCHOR_THRESHOLD_NS = 1000_000_000L;
+    // sleep in slices so that pause, seek and stop take effect quickly
+    private static final long SLEEP_SLICE_NS = 10_000_000L;
+
+    public interface Clock {
+        long nanoTime();
+
+        void sleepNanos(long nanos) throws InterruptedException;
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepNanos(long nanos) throws InterruptedException {
+            Thread.sleep(nanos / 1000_000L, (int) (nanos % 1000_000L));
+        }
+    };
+
+    private final Clock mClock;
+    private volatile long mLeadNs;
+
+    private final Object mLock = new Object();
+    private boolean mStopped;
+    private boolean mPaused;
+    private long mPauseStartNs;
+    private int mSeekGeneration;
+
+    private boolean mAnchored;
+    private long mAnchorPtsUs;
+    private long mAnchorTimeNs;
+
+    private long mReleasedCount;
+    private long mLateCount;
+    private long mReanchorCount;
+    private long mTotalJitterNs;
+    private long mMaxJitterNs;
+
+    public AudioFramePacer() {
+        this(SYSTEM_CLOCK, DEFAULT_LEAD_MS);
+    }
+
+    public AudioFramePacer(Clock clock, long leadMs) {
+        mClock = clock;
+        setLeadMs(leadMs);
+    }
+
+    /**
+     * 设置允许提前释放的时长
+     */
+    public void setLeadMs(long leadMs) {
+        if (leadMs < 0) {
+            throw new IllegalArgumentException("leadMs must not be negative");
+        }
+        mLeadNs = leadMs * 1000_000L;
+    }
+
+    /**
+     * 重新开始，清空时间轴与统计数据
+     */
+    public void start() {
+        synchronized (mLock) {
+            mStopped = false;
+            mPaused = false;
+            mAnchored = false;
+            mSeekGeneration++;
+            mReleasedCount = 0;
+            mLateCount = 0;
+            mReanchorCount = 0;
+            mTotalJitterNs = 0;
+            mMaxJitterNs = 0;
+        }
+    }
+
+    /**
+     * 停止后 {@link #await(long)} 立即返回 false
+     */
+    public void stop() {
+        synchronized (mLock) {
+            mStopped = true;
+        }
+    }
+
+    public void pause() {
+        synchronized (mLock) {
+            if (!mPaused) {
+                mPaused = true;
+                mPauseStartNs = mClock.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * 恢复后时间轴整体顺延暂停的时长
+     */
+    public void resume() {
+        synchronized (mLock) {
+            if (mPaused) {
+                mPaused = false;
+                mAnchorTimeNs += mClock.nanoTime() - mPauseStartNs;
+            }
+        }
+    }
+
+    public boolean isPaused() {
+        synchronized (mLock) {
+            return mPaused;
+        }
+    }
+
+    /**
+     * seek 后正在等待的帧被丢弃，下一帧重新建立时间轴
+     */
+    public void seek() {
+        synchronized (mLock) {
+            mAnchored = false;
+            mSeekGeneration++;
+        }
+    }
+
+    /**
+     * 等待直到时间戳为 ptsUs 的帧可以释放
+     *
+     * @return true 表示可以释放；停止、seek 或者线程被中断时返回 false，该帧应被丢弃
+     */
+    public boolean await(long ptsUs) {
+        int generation;
+        synchronized (mLock) {
+            generation = mSeekGeneration;
+        }
+        try {
+            while (true) {
+                long sleepNs = SLEEP_SLICE_NS;
+                synchronized (mLock) {
+                    if (mStopped || generation != mSeekGeneration) {
+                        return false;
+                    }
+                    if (!mPaused) {
+                        long now = mClock.nanoTime();
+                        if (!mAnchored) {
+                            anchor(ptsUs, now);
+                        }
+                        long dueNs = mAnchorTimeNs + (ptsUs - mAnchorPtsUs) * 1000L;
+                        if (now - dueNs > REANCHOR_THRESHOLD_NS) {
+                            // e.g. the consumer stalled for a long time, restart the timeline here
+                            mReanchorCount++;
+                            anchor(ptsUs, now);
+                            dueNs = now;
+                        }
+                        long releaseNs = dueNs - mLeadNs;
+                        if (now >= releaseNs) {
+                            // frames of the initial lead burst are not late, measure them against the anchor
+                            onReleased(now - Math.max(releaseNs, mAnchorTimeNs), now > dueNs);
+                            return true;
+                        }
+                        sleepNs = Math.min(releaseNs - now, SLEEP_SLICE_NS);
+                    }
+                }
+                mClock.sleepNanos(sleepNs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public long getReleasedCount() {
+        synchronized (mLock) {
+            return mReleasedCount;
+        }
+    }
+
+    /**
+     * @return 释放时刻晚于计划时刻（未利用提前量）的帧数，即下游可能出现欠载的次数
+     */
+    public long getLateCount() {
+        synchronized (mLock) {
+            return mLateCount;
+        }
+    }
+
+    public long getReanchorCount() {
+        synchronized (mLock) {
+            return mReanchorCount;
+        }
+    }
+
+    /**
+     * @return 释放时刻相对 (计划时刻 - 提前量) 的平均延后，单位 ns
+     */
+    public long getAverageJitterNs() {
+        synchronized (mLock) {
+            return mReleasedCount == 0 ? 0 : mTotalJitterNs / mReleasedCount;
+        }
+    }
+
+    public long getMaxJitterNs() {
+        synchronized (mLock) {
+            return mMaxJitterNs;
+        }
+    }
+
+    private void anchor(long ptsUs, long nowNs) {
+        mAnchored = true;
+        mAnchorPtsUs = ptsUs;
+        // frames within the lead are released at once, so the consumer starts with a full lead buffered
+        mAnchorTimeNs = nowNs;
+    }
+
+    private void onReleased(long jitterNs, boolean late) {
+        mReleasedCount++;
+        mTotalJitterNs += jitterNs;
+        if (jitterNs > mMaxJitterNs) {
+            mMaxJitterNs = jitterNs;
+        }
+        if (late) {
+            mLateCount++;
+        }
+    }
+}
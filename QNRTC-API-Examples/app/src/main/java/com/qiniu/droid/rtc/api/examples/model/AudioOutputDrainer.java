@@ -0,0 +1,170 @@
+package com.qiniu.droid.rtc.api.examples.model;
+
+import com.qiniu.droid.rtc.api.examples.capture.AudioFramePool;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解码器输出缓存的取出与回收
+ *
+ * 每个解码输出只拷贝一次，写入缓存池中按照解码器最大输出大小分配的 direct ByteBuffer，随后立即将输出缓存归还给解码器。
+ * 缓存池中没有空闲帧时等待消费方归还，从而对解码形成反压，而不是丢弃数据。
+ * 解码器通过 {@link OutputBufferSource} 访问，不依赖 MediaCodec，可以在 JVM 上使用模拟的解码器验证。
+ */
+public class AudioOutputDrainer {
+
+    public static final int DEFAULT_POOL_DEPTH = AudioFramePool.DEFAULT_DEPTH;
+
+    private static final long ACQUIRE_TIMEOUT_MS = 10;
+
+    /**
+     * 解码器输出缓存，线上实现为对 MediaCodec 的简单转发
+     */
+    public interface OutputBufferSource {
+        ByteBuffer getOutputBuffer(int index);
+
+        void releaseOutputBuffer(int index);
+    }
+
+    /**
+     * 解码后的音频帧回调，需要保留帧数据时调用 {@link AudioFramePool.Frame#retain()}，
+     * 回调返回后帧会被释放一次
+     */
+    public interface FrameListener {
+        void onFrameDecoded(AudioFramePool.Frame frame);
+    }
+
+    /**
+     * 等待空闲帧时判断是否继续等待
+     */
+    public interface KeepRunning {
+        boolean isRunning();
+    }
+
+    private final int mPoolDepth;
+    private AudioFramePool mPool;
+
+    private long mStartTimeNs;
+    private long mDecodedFrameCount;
+    private long mDecodedBytes;
+    private long mDecodedDurationUs;
+    private long mBackPressureCount;
+
+    public AudioOutputDrainer() {
+        this(DEFAULT_POOL_DEPTH);
+    }
+
+    public AudioOutputDrainer(int poolDepth) {
+        if (poolDepth <= 0) {
+            throw new IllegalArgumentException("poolDepth must be positive");
+        }
+        mPoolDepth = poolDepth;
+    }
+
+    /**
+     * 取出一个解码输出，拷贝到缓存池后立即将输出缓存归还给解码器，再回调音频帧
+     *
+     * @param keepRunning 等待空闲帧期间用于判断是否继续等待，为 null 时一直等待
+     * @return 是否回调了音频帧；输出为空或者停止等待时返回 false
+     */
+    public boolean drain(OutputBufferSource source, int index, int offset, int size, long ptsUs,
+                         int sampleRate, int channels, KeepRunning keepRunning, FrameListener listener) {
+        boolean released = false;
+        try {
+            if (size <= 0) {
+                return false;
+            }
+            ByteBuffer output = source.getOutputBuffer(index);
+            AudioFramePool pool = ensurePool(Math.max(size, output.capacity()));
+            AudioFramePool.Frame frame = pool.acquire(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            while (frame == null) {
+                mBackPressureCount++;
+                if (keepRunning != null && !keepRunning.isRunning()) {
+                    return false;
+                }
+                frame = pool.acquire(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+            try {
+                frame.set(size, 16, sampleRate, channels, ptsUs * 1000);
+                output.limit(offset + size);
+                output.position(offset);
+                ByteBuffer data = frame.getData();
+                data.put(output);
+                data.position(0);
+                // the codec gets its buffer back before the listener runs, however long that takes
+                source.releaseOutputBuffer(index);
+                released = true;
+                updateStats(size, sampleRate, channels);
+                listener.onFrameDecoded(frame);
+                return true;
+            } finally {
+                frame.release();
+            }
+        } finally {
+            if (!released) {
+                source.releaseOutputBuffer(index);
+            }
+        }
+    }
+
+    /**
+     * 重置统计数据，重新开始解码时调用
+     */
+    public void resetStats() {
+        mStartTimeNs = 0;
+        mDecodedFrameCount = 0;
+        mDecodedBytes = 0;
+        mDecodedDurationUs = 0;
+        mBackPressureCount = 0;
+    }
+
+    public long getDecodedFrameCount() {
+        return mDecodedFrameCount;
+    }
+
+    public long getDecodedBytes() {
+        return mDecodedBytes;
+    }
+
+    /**
+     * @return 已解码的音频时长，单位 us
+     */
+    public long getDecodedDurationUs() {
+        return mDecodedDurationUs;
+    }
+
+    /**
+     * @return 因缓存池没有空闲帧而等待消费方的次数
+     */
+    public long getBackPressureCount() {
+        return mBackPressureCount;
+    }
+
+    /**
+     * @return 解码速度，即每秒解码出的音频时长（秒），大于 1 表示快于实时
+     */
+    public double getDecodeSpeed() {
+        long elapsedNs = mStartTimeNs == 0 ? 0 : System.nanoTime() - mStartTimeNs;
+        return elapsedNs <= 0 ? 0 : mDecodedDurationUs * 1000.0 / elapsedNs;
+    }
+
+    private AudioFramePool ensurePool(int frameCapacity) {
+        // frames still held by consumers go back to the old pool and are simply dropped with it
+        if (mPool == null || mPool.getFrameCapacity() < frameCapacity) {
+            mPool = new AudioFramePool(mPoolDepth, frameCapacity);
+        }
+        return mPool;
+    }
+
+    private void updateStats(int size, int sampleRate, int channels) {
+        if (mStartTimeNs == 0) {
+            mStartTimeNs = System.nanoTime();
+        }
+        mDecodedFrameCount++;
+        mDecodedBytes += size;
+        if (sampleRate > 0 && channels > 0) {
+            mDecodedDurationUs += size / (2L * channels) * 1000_000L / sampleRate;
+        }
+    }
+}
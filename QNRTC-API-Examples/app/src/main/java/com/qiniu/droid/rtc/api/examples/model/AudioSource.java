@@ -14,14 +14,17 @@ import com.qiniu.droid.rtc.QNAudioSource;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Locale;
 
 @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
 public class AudioSource {
     private static final String TAG = "AudioSource";
+    // one frame being decoded and one being pushed, so the decoder never waits for a free frame
+    private static final int PACED_QUEUE_CAPACITY = AudioOutputDrainer.DEFAULT_POOL_DEPTH - 2;
 
     QNAudioSource mAudioSource;
     AudioSourceListener mSourceListener;
-    boolean mIsStarted = false;
+    volatile boolean mIsStarted = false;
     boolean mIsPublish = true;
 
     File mSourceFile;
@@ -34,7 +37,32 @@ public class AudioSource {
     final Object mWaitDone = new Object();
     boolean mTheadActive;
 
+    final AudioOutputDrainer mOutputDrainer = new AudioOutputDrainer();
+    final AudioFramePacer mPacer = new AudioFramePacer();
+    volatile long mPendingSeekUs = -1;
+    final AudioOutputDrainer.OutputBufferSource mOutputBufferSource = new AudioOutputDrainer.OutputBufferSource() {
+        @Override
+        public ByteBuffer getOutputBuffer(int index) {
+            return mCodec.getOutputBuffer(index);
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index) {
+            mCodec.releaseOutputBuffer(index, false);
+        }
+    };
+    // 按照时间戳实时推送，避免文件音源在短时间内推送大量数据；节流在推送线程中进行，不占用解码器
+    final PacedFrameQueue mPacedFrames = new PacedFrameQueue(mPacer, PACED_QUEUE_CAPACITY, frame -> {
+        if (mSourceListener != null && mIsStarted) {
+            mSourceListener.onFrameAvailable(mAudioSource.getID(), frame.toQNAudioFrame());
+        }
+    });
+    final AudioOutputDrainer.FrameListener mFrameListener = mPacedFrames::offer;
+
     public interface AudioSourceListener {
+        /**
+         * 音频帧的数据在回调返回后会被复用，需要在回调中同步处理
+         */
         void onFrameAvailable(int sourceID, QNAudioFrame frame);
     }
 
@@ -67,13 +95,49 @@ public class AudioSource {
     public void setStarted(boolean started) {
         mIsStarted = started;
         if (mIsStarted) {
+            mPendingSeekUs = -1;
+            mPacer.start();
+            mPacedFrames.start();
             initDecoder();
             new Thread(this::doDecode).start();
         } else {
+            // frames still queued are dropped instead of being paced
+            mPacer.stop();
             deinitDecoder();
+            mPacedFrames.stop();
         }
     }
 
+    /**
+     * 暂停推送音频帧，队列满后解码线程随之阻塞
+     */
+    public void pause() {
+        mPacer.pause();
+    }
+
+    public void resume() {
+        mPacer.resume();
+    }
+
+    public boolean isPaused() {
+        return mPacer.isPaused();
+    }
+
+    /**
+     * 跳转到指定位置，在解码线程中执行；文件已全部送入解码器后无效
+     */
+    public void seekTo(long positionMs) {
+        mPendingSeekUs = Math.max(0, positionMs) * 1000;
+        mPacer.seek();
+    }
+
+    /**
+     * 设置音频帧允许提前于实时推送的时长
+     */
+    public void setLeadMs(long leadMs) {
+        mPacer.setLeadMs(leadMs);
+    }
+
     private void initDecoder() {
         mExtractor = new MediaExtractor();
         try {
@@ -106,6 +170,8 @@ public class AudioSource {
             return;
         }
         mCodec.configure(useFormat, null, null, 0);
+        mOutFormat = null;
+        mOutputDrainer.resetStats();
         mExtractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
         mCodec.start();
         Log.i(TAG, "decoder start ok");
@@ -126,6 +192,15 @@ public class AudioSource {
         }
         waitAndQueueEOS();
         waitForAllOutputs();
+        Log.i(TAG, mSourceFile.getName() + " decoded frames: " + mOutputDrainer.getDecodedFrameCount()
+                + ", bytes: " + mOutputDrainer.getDecodedBytes()
+                + ", duration: " + mOutputDrainer.getDecodedDurationUs() / 1000 + "ms"
+                + ", speed: " + String.format(Locale.US, "%.1fx", mOutputDrainer.getDecodeSpeed())
+                + ", back pressure: " + mOutputDrainer.getBackPressureCount()
+                + ", paced frames: " + mPacer.getReleasedCount()
+                + ", late: " + mPacer.getLateCount()
+                + ", avg jitter: " + mPacer.getAverageJitterNs() / 1000 + "us"
+                + ", max jitter: " + mPacer.getMaxJitterNs() / 1000 + "us");
         mCodec.stop();
         mCodec.release();
         mExtractor.release();
@@ -141,6 +216,14 @@ public class AudioSource {
         }
         MediaCodec.BufferInfo outInfo = new MediaCodec.BufferInfo();
         while (!mSawInputEOS && mIsStarted) {
+            long seekUs = mPendingSeekUs;
+            if (seekUs >= 0) {
+                mPendingSeekUs = -1;
+                mCodec.flush();
+                mExtractor.seekTo(seekUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                // frames decoded before the seek must not be pushed
+                mPacedFrames.flush();
+            }
             int outputBufferId = mCodec.dequeueOutputBuffer(outInfo, 5000);
             if (outputBufferId >= 0) {
                 dequeueOutput(outputBufferId, outInfo);
@@ -181,21 +264,14 @@ public class AudioSource {
         if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
             mSawOutputEOS = true;
         }
-        final ByteBuffer buffer = mCodec.getOutputBuffer(bufferIndex);
-        final byte[] audio = new byte[info.size];
-        buffer.clear(); // prepare buffer for reading
-        buffer.get(audio);
-
-        ByteBuffer qnbuffer = ByteBuffer.allocateDirect(info.size);
-        qnbuffer.rewind();
-        qnbuffer.put(audio);
-        if (mSourceListener != null && mIsStarted) {
-            mSourceListener.onFrameAvailable(mAudioSource.getID(),
-                    new QNAudioFrame(qnbuffer, info.size, 16,
-                            mOutFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
-                            mOutFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT)));
+        if (mOutFormat == null) {
+            mOutFormat = mCodec.getOutputFormat();
         }
-        mCodec.releaseOutputBuffer(bufferIndex, false);
+        // 拷贝到复用的 direct buffer 后立即归还解码器输出缓存，回调返回后音频帧被回收
+        mOutputDrainer.drain(mOutputBufferSource, bufferIndex, info.offset, info.size, info.presentationTimeUs,
+                mOutFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                mOutFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT),
+                this::isStarted, mFrameListener);
     }
 
     private void waitForAllOutputs() {
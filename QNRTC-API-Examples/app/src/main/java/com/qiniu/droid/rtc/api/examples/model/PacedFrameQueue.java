@@ -0,0 +1,162 @@
+package com.qiniu.droid.rtc.api.examples.model;
+
+import com.qiniu.droid.rtc.api.examples.capture.AudioFramePool;
+import com.qiniu.droid.rtc.api.examples.utils.SpscRingBuffer;
+
+/**
+ * 解码线程与推送线程之间的音频帧队列
+ *
+ * 解码线程在归还解码器输出缓存之后调用 {@link #offer}，帧在独立的推送线程中经过 {@link AudioFramePacer} 节流后回调，
+ * 节流期间的等待不会占用解码器。队列满时阻塞解码线程，对解码形成反压；队列容量需小于缓存池深度减 1，
+ * 以保证解码线程取空闲帧时不需要等待。
+ */
+public class PacedFrameQueue {
+
+    private static final long POLL_TIMEOUT_NS = 50_000_000L;
+    private static final long FLUSH_WAIT_MS = 10;
+    private static final long STOP_TIMEOUT_MS = 1000;
+
+    /**
+     * 在推送线程中回调节流后的音频帧，回调返回后帧会被释放一次
+     */
+    public interface FrameConsumer {
+        void onFrame(AudioFramePool.Frame frame);
+    }
+
+    private final AudioFramePacer mPacer;
+    private final int mCapacity;
+    private final FrameConsumer mConsumer;
+
+    private final Object mFlushLock = new Object();
+    private int mFlushRequest;
+    private int mFlushDone;
+
+    private volatile SpscRingBuffer<AudioFramePool.Frame> mQueue;
+    private Thread mThread;
+
+    public PacedFrameQueue(AudioFramePacer pacer, int capacity, FrameConsumer consumer) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mPacer = pacer;
+        mCapacity = capacity;
+        mConsumer = consumer;
+    }
+
+    /**
+     * 启动推送线程，节流器需要由调用方启动
+     */
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+        SpscRingBuffer<AudioFramePool.Frame> queue = new SpscRingBuffer<>(mCapacity,
+                SpscRingBuffer.OverflowPolicy.BLOCK, AudioFramePool.Frame::release);
+        mQueue = queue;
+        mThread = new Thread(() -> consumeLoop(queue), "PacedFrameQueue");
+        mThread.start();
+    }
+
+    /**
+     * 停止推送线程，未推送的帧直接释放；需要先停止节流器，否则正在等待的帧最多延后一个时间片
+     */
+    public synchronized void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mQueue.close();
+        try {
+            mThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mThread = null;
+        synchronized (mFlushLock) {
+            // nobody drains the queue any more, do not keep a flush waiting
+            mFlushDone = mFlushRequest;
+            mFlushLock.notifyAll();
+        }
+    }
+
+    /**
+     * 解码线程调用，帧被引用一次后入队，队列满时阻塞
+     *
+     * @return 是否入队；未启动或已停止时返回 false
+     */
+    public boolean offer(AudioFramePool.Frame frame) {
+        SpscRingBuffer<AudioFramePool.Frame> queue = mQueue;
+        if (queue == null) {
+            return false;
+        }
+        // a closed queue releases the frame again through the drop listener
+        return queue.offer(frame.retain());
+    }
+
+    /**
+     * 解码线程在 seek 时调用，丢弃所有已入队的帧，返回后入队的帧属于新的位置
+     */
+    public void flush() {
+        mPacer.seek();
+        synchronized (mFlushLock) {
+            int request = ++mFlushRequest;
+            while (mFlushDone - request < 0 && isRunning()) {
+                try {
+                    mFlushLock.wait(FLUSH_WAIT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        SpscRingBuffer<AudioFramePool.Frame> queue = mQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    private boolean isRunning() {
+        SpscRingBuffer<AudioFramePool.Frame> queue = mQueue;
+        return queue != null && !queue.isClosed();
+    }
+
+    private void consumeLoop(SpscRingBuffer<AudioFramePool.Frame> queue) {
+        while (!queue.isClosed()) {
+            if (checkFlush(queue)) {
+                continue;
+            }
+            AudioFramePool.Frame frame = queue.poll(POLL_TIMEOUT_NS);
+            if (frame == null) {
+                continue;
+            }
+            try {
+                if (mPacer.await(frame.getTimestampNs() / 1000)) {
+                    mConsumer.onFrame(frame);
+                }
+            } finally {
+                frame.release();
+            }
+        }
+        releaseAll(queue);
+    }
+
+    // the decoder waits in flush() meanwhile, so nothing is offered while the queue is drained
+    private boolean checkFlush(SpscRingBuffer<AudioFramePool.Frame> queue) {
+        synchronized (mFlushLock) {
+            if (mFlushDone == mFlushRequest) {
+                return false;
+            }
+            releaseAll(queue);
+            mFlushDone = mFlushRequest;
+            mFlushLock.notifyAll();
+            return true;
+        }
+    }
+
+    private static void releaseAll(SpscRingBuffer<AudioFramePool.Frame> queue) {
+        AudioFramePool.Frame frame;
+        while ((frame = queue.poll()) != null) {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * 将 assets 中的文件提取到本地目录，已提取且未变化的文件直接跳过
+ *
+ * 目标目录中的清单文件记录每个文件提取时的 App 版本、长度与 CRC32：版本与长度均一致时不读取任何数据直接跳过；
+ * 仅版本不一致时读取 assets 计算 CRC32，内容未变化则只更新清单；否则重新提取。文件先写入名称唯一的临时文件再重命名，
+ * 中途退出不会留下不完整的文件，同时进行的提取也不会写入同一个临时文件。
+ * {@link #isUpToDate(String, String...)} 只读取清单与文件长度，可以在提取之前同步判断是否需要等待。
+ *
+ * 多个文件在有界的线程池上并行提取，通过 FileChannel 以较大的缓冲写入，{@link #extract(String, String...)} 返回的
+ * Future 在全部文件处理完成后结束，任一文件失败时 get 抛出 ExecutionException。
+ * 资源通过 {@link AssetSource} 访问，线上实现为对 AssetManager 的简单转发，可以在 JVM 上使用目录模拟。
+ */
+public class AssetExtractor {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_PARALLELISM = 2;
+
+    private static final String MANIFEST_NAME = ".asset_manifest";
+    private static final String TMP_SUFFIX = ".tmp";
+    // the manifest of a directory may be updated by extractors of several activities
+    private static final Object MANIFEST_LOCK = new Object();
+
+    private static Executor sSharedExecutor;
+
+    /**
+     * 资源来源，接口与 AssetManager 一致，目录中只能包含文件
+     */
+    public interface AssetSource {
+        String[] list(String dir) throws IOException;
+
+        InputStream open(String path) throws IOException;
+    }
+
+    public static AssetSource sourceOf(final AssetManager assetManager) {
+        return new AssetSource() {
+            @Override
+            public String[] list(String dir) throws IOException {
+                return assetManager.list(dir);
+            }
+
+            @Override
+            public InputStream open(String path) throws IOException {
+                return assetManager.open(path, AssetManager.ACCESS_STREAMING);
+            }
+        };
+    }
+
+    /**
+     * 单次提取的结果
+     */
+    public static final class Result {
+        private final List<File> mFiles;
+        private final int mExtractedCount;
+
+        Result(List<File> files, int extractedCount) {
+            mFiles = Collections.unmodifiableList(files);
+            mExtractedCount = extractedCount;
+        }
+
+        /**
+         * @return 所有文件提取后的路径，顺序与 assets 中的一致
+         */
+        public List<File> getFiles() {
+            return mFiles;
+        }
+
+        /**
+         * @return 本次实际写入的文件数，为 0 表示全部跳过
+         */
+        public int getExtractedCount() {
+            return mExtractedCount;
+        }
+    }
+
+    private static class Entry {
+        final int mAppVersion;
+        final long mLength;
+        final long mCrc;
+
+        Entry(int appVersion, long length, long crc) {
+            mAppVersion = appVersion;
+            mLength = length;
+            mCrc = crc;
+        }
+
+        static Entry parse(String value) {
+            String[] values = value == null ? new String[0] : value.split(",");
+            if (values.length != 3) {
+                return null;
+            }
+            try {
+                return new Entry(Integer.parseInt(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2], 16));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mAppVersion + "," + mLength + "," + Long.toHexString(mCrc);
+        }
+    }
+
+    private final AssetSource mSource;
+    private final File mTargetDir;
+    private final int mAppVersion;
+    private final Executor mExecutor;
+    private final int mBufferSize;
+
+    /**
+     * 使用 App 的 assets 与版本号，在共享的线程池上提取
+     */
+    public AssetExtractor(Context context, File targetDir) {
+        this(sourceOf(context.getAssets()), targetDir, Utils.appVersion(context), sharedExecutor(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param appVersion 记录在清单中，版本变化后会重新检查文件内容
+     * @param executor   提取文件的线程池，由调用方负责释放
+     */
+    public AssetExtractor(AssetSource source, File targetDir, int appVersion, Executor executor, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        mSource = source;
+        mTargetDir = targetDir;
+        mAppVersion = appVersion;
+        mExecutor = executor;
+        mBufferSize = bufferSize;
+    }
+
+    /**
+     * 异步提取 assetDir 中的文件到目标目录
+     *
+     * @param assetDir assets 中的目录，根目录为 ""
+     * @param names    需要提取的文件名，为空时提取目录中的所有文件
+     */
+    public Future<Result> extract(String assetDir, String... names) {
+        Extraction extraction = new Extraction(assetDir, names);
+        mExecutor.execute(extraction::start);
+        return extraction.mFuture;
+    }
+
+    /**
+     * 同步判断文件是否都已按当前版本提取，不读取 assets 中的数据
+     *
+     * @return 为 true 时 {@link #extract(String, String...)} 不会写入任何文件
+     */
+    public boolean isUpToDate(String assetDir, String... names) {
+        String[] files;
+        try {
+            files = names.length > 0 ? names : mSource.list(assetDir);
+        } catch (IOException e) {
+            return false;
+        }
+        Properties manifest;
+        synchronized (MANIFEST_LOCK) {
+            manifest = loadManifest();
+        }
+        for (String name : files) {
+            Entry recorded = Entry.parse(manifest.getProperty(pathOf(assetDir, name)));
+            if (!isUpToDate(recorded, new File(mTargetDir, name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static synchronized Executor sharedExecutor() {
+        if (sSharedExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_PARALLELISM, DEFAULT_PARALLELISM,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "AssetExtractor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // threads exit when idle, extraction happens only when an activity is launched
+            executor.allowCoreThreadTimeOut(true);
+            sSharedExecutor = executor;
+        }
+        return sSharedExecutor;
+    }
+
+    private class Extraction {
+        final String mAssetDir;
+        final String[] mNames;
+        final FutureTask<Result> mFuture = new FutureTask<>(this::result);
+        final Map<String, Entry> mUpdates = new HashMap<>();
+        final AtomicInteger mExtractedCount = new AtomicInteger();
+        final List<String> mPaths = new ArrayList<>();
+        final List<File> mFiles = new ArrayList<>();
+        AtomicInteger mPending;
+        Properties mManifest;
+        volatile Exception mError;
+
+        Extraction(String assetDir, String[] names) {
+            mAssetDir = assetDir;
+            mNames = names;
+        }
+
+        void start() {
+            try {
+                String[] names = mNames.length > 0 ? mNames : mSource.list(mAssetDir);
+                if (!mTargetDir.isDirectory() && !mTargetDir.mkdirs()) {
+                    throw new IOException("can't create " + mTargetDir);
+                }
+                synchronized (MANIFEST_LOCK) {
+                    mManifest = loadManifest();
+                }
+                for (String name : names) {
+                    mPaths.add(pathOf(mAssetDir, name));
+                    mFiles.add(new File(mTargetDir, name));
+                }
+            } catch (Exception e) {
+                mError = e;
+                mFuture.run();
+                return;
+            }
+            mPending = new AtomicInteger(mPaths.size());
+            if (mPaths.isEmpty()) {
+                mFuture.run();
+                return;
+            }
+            for (int i = 0; i < mPaths.size(); i++) {
+                final String path = mPaths.get(i);
+                final File file = mFiles.get(i);
+                mExecutor.execute(() -> {
+                    try {
+                        Entry entry = extractFile(path, file, Entry.parse(mManifest.getProperty(path)));
+                        if (entry != null) {
+                            synchronized (mUpdates) {
+                                mUpdates.put(path, entry);
+                            }
+                        }
+                    } catch (Exception e) {
+                        mError = e;
+                    }
+                    if (mPending.decrementAndGet() == 0) {
+                        finish();
+                    }
+                });
+            }
+        }
+
+        // the new manifest entry, null when the recorded one is still valid
+        Entry extractFile(String path, File file, Entry recorded) throws IOException {
+            if (isUpToDate(recorded, file)) {
+                return null;
+            }
+            if (recorded != null && file.isFile() && file.length() == recorded.mLength) {
+                long crc = crcOf(path);
+                if (crc == recorded.mCrc) {
+                    return new Entry(mAppVersion, recorded.mLength, crc);
+                }
+            }
+            Entry entry = copy(path, file);
+            mExtractedCount.incrementAndGet();
+            return entry;
+        }
+
+        void finish() {
+            if (!mUpdates.isEmpty()) {
+                try {
+                    synchronized (MANIFEST_LOCK) {
+                        // reload, other extractions may have written the manifest meanwhile
+                        Properties manifest = loadManifest();
+                        for (Map.Entry<String, Entry> update : mUpdates.entrySet()) {
+                            manifest.setProperty(update.getKey(), update.getValue().toString());
+                        }
+                        saveManifest(manifest);
+                    }
+                } catch (IOException e) {
+                    if (mError == null) {
+                        mError = e;
+                    }
+                }
+            }
+            mFuture.run();
+        }
+
+        Result result() throws Exception {
+            if (mError != null) {
+                throw mError;
+            }
+            return new Result(mFiles, mExtractedCount.get());
+        }
+    }
+
+    private boolean isUpToDate(Entry recorded, File file) {
+        return recorded != null && recorded.mAppVersion == mAppVersion
+                && file.isFile() && file.length() == recorded.mLength;
+    }
+
+    private static String pathOf(String assetDir, String name) {
+        return assetDir.isEmpty() ? name : assetDir + "/" + name;
+    }
+
+    private Entry copy(String path, File file) throws IOException {
+        // a unique name, another extraction may copy the same file at the same time
+        File tmpFile = File.createTempFile("." + file.getName() + ".", TMP_SUFFIX, mTargetDir);
+        try {
+            CRC32 crc = new CRC32();
+            long length = 0;
+            try (InputStream in = mSource.open(path);
+                 ReadableByteChannel source = Channels.newChannel(in);
+                 FileOutputStream out = new FileOutputStream(tmpFile);
+                 FileChannel target = out.getChannel()) {
+                ByteBuffer buffer = ByteBuffer.allocate(mBufferSize);
+                int read;
+                while ((read = source.read(buffer)) != -1) {
+                    buffer.flip();
+                    crc.update(buffer.array(), 0, buffer.limit());
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    buffer.clear();
+                    length += read;
+                }
+            }
+            // rename replaces the file atomically, so it never disappears for a concurrent extraction
+            if (!tmpFile.renameTo(file)) {
+                if (file.exists() && !file.delete() && file.exists()) {
+                    throw new IOException("can't delete " + file);
+                }
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("can't rename " + tmpFile + " to " + file);
+                }
+            }
+            return new Entry(mAppVersion, length, crc.getValue());
+        } finally {
+            // left only when the copy failed
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private long crcOf(String path) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = mSource.open(path)) {
+            byte[] buffer = new byte[mBufferSize];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private Properties loadManifest() {
+        Properties manifest = new Properties();
+        File file = new File(mTargetDir, MANIFEST_NAME);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                manifest.load(in);
+            } catch (IOException e) {
+                // a broken manifest only costs a new extraction
+                manifest.clear();
+            }
+        }
+        return manifest;
+    }
+
+    private void saveManifest(Properties manifest) throws IOException {
+        File file = new File(mTargetDir, MANIFEST_NAME);
+        // the manifest may be saved by another process at the same time
+        File tmpFile = File.createTempFile(MANIFEST_NAME + ".", TMP_SUFFIX, mTargetDir);
+        try {
+            try (OutputStream out = new FileOutputStream(tmpFile)) {
+                manifest.store(out, null);
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("can't save asset manifest");
+            }
+        } finally {
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 应用层 16 位 PCM 多音源混音
+ *
+ * 各音源通过 {@link #write} 写入任意采样率、声道数的 PCM 数据，写入时统一转换为输出格式（重采样见 {@link PolyphaseResampler}）并缓存；
+ * {@link #mixFrame(ByteBuffer)} 每次输出固定 10ms 的混音数据，按照各音源的增益相加后软削波。
+ * 稳态下不产生任何内存分配。{@link #write} 与 {@link #mixFrame(ByteBuffer)} 可以在不同线程调用。
+ */
+public final class PcmMixer {
+
+    public static final int FRAME_DURATION_MS = 10;
+    public static final int DEFAULT_BUFFER_MS = 500;
+
+    // samples above this are compressed smoothly towards full scale instead of being hard clipped
+    private static final float SOFT_CLIP_THRESHOLD = 0.8f * Short.MAX_VALUE;
+    private static final float SOFT_CLIP_RANGE = Short.MAX_VALUE - SOFT_CLIP_THRESHOLD;
+
+    private static final class Source {
+        final int mId;
+        volatile float mGain = 1.0f;
+
+        // converted samples in the output format, guarded by this
+        final short[] mRing;
+        int mReadPos;
+        int mCount;
+        long mOverrunSamples;
+        long mUnderrunCount;
+
+        // input after channel conversion and resampler output, grown on demand
+        short[] mScratch = new short[0];
+        short[] mResampled = new short[0];
+        // created when the input rate differs from the output rate
+        PolyphaseResampler mResampler;
+
+        Source(int id, int ringSamples) {
+            mId = id;
+            mRing = new short[ringSamples];
+        }
+
+        /**
+         * 写入一个采样，缓存已满时覆盖最旧的数据
+         */
+        void put(short sample) {
+            int writePos = mReadPos + mCount;
+            if (writePos >= mRing.length) {
+                writePos -= mRing.length;
+            }
+            mRing[writePos] = sample;
+            if (mCount < mRing.length) {
+                mCount++;
+            } else {
+                mReadPos = mReadPos + 1 == mRing.length ? 0 : mReadPos + 1;
+                mOverrunSamples++;
+            }
+        }
+    }
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mFrameSamples;
+    private final int mRingSamples;
+    private final float[] mAccumulator;
+    private final Object mSourcesLock = new Object();
+    // copy on write, the mixing thread iterates without locking
+    private volatile Source[] mSources = new Source[0];
+
+    /**
+     * @param sampleRate 输出采样率
+     * @param channels   输出声道数，1 或 2
+     */
+    public PcmMixer(int sampleRate, int channels) {
+        this(sampleRate, channels, DEFAULT_BUFFER_MS);
+    }
+
+    /**
+     * @param bufferMs 每个音源缓存的最大时长，超出后丢弃最旧的数据
+     */
+    public PcmMixer(int sampleRate, int channels, int bufferMs) {
+        if (sampleRate <= 0 || (channels != 1 && channels != 2) || bufferMs < FRAME_DURATION_MS) {
+            throw new IllegalArgumentException("invalid mixer format");
+        }
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mFrameSamples = sampleRate * FRAME_DURATION_MS / 1000 * channels;
+        mRingSamples = sampleRate * bufferMs / 1000 * channels;
+        mAccumulator = new float[mFrameSamples];
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    /**
+     * @return 每个 10ms 输出帧的字节数
+     */
+    public int getFrameSize() {
+        return mFrameSamples * 2;
+    }
+
+    public void addSource(int sourceId) {
+        synchronized (mSourcesLock) {
+            if (findSource(sourceId) != null) {
+                return;
+            }
+            Source[] sources = new Source[mSources.length + 1];
+            System.arraycopy(mSources, 0, sources, 0, mSources.length);
+            sources[mSources.length] = new Source(sourceId, mRingSamples);
+            mSources = sources;
+        }
+    }
+
+    public void removeSource(int sourceId) {
+        synchronized (mSourcesLock) {
+            Source[] current = mSources;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].mId == sourceId) {
+                    Source[] sources = new Source[current.length - 1];
+                    System.arraycopy(current, 0, sources, 0, i);
+                    System.arraycopy(current, i + 1, sources, i, current.length - i - 1);
+                    mSources = sources;
+                    return;
+                }
+            }
+        }
+    }
+
+    public void setGain(int sourceId, float gain) {
+        Source source = findSource(sourceId);
+        if (source != null) {
+            source.mGain = gain;
+        }
+    }
+
+    /**
+     * 清空音源已缓存的数据，例如音源 seek 或者重新开始时
+     */
+    public void flush(int sourceId) {
+        Source source = findSource(sourceId);
+        if (source != null) {
+            synchronized (source) {
+                source.mReadPos = 0;
+                source.mCount = 0;
+            }
+        }
+    }
+
+    /**
+     * 清空所有音源已缓存的数据
+     */
+    public void flushAll() {
+        for (Source source : mSources) {
+            synchronized (source) {
+                source.mReadPos = 0;
+                source.mCount = 0;
+            }
+        }
+    }
+
+    /**
+     * 写入 16 位小端 PCM 数据，读取 [data.position(), data.position() + size)，不改变 data 的 position
+     *
+     * @return 音源是否存在
+     */
+    public boolean write(int sourceId, ByteBuffer data, int size, int sampleRate, int channels) {
+        Source source = findSource(sourceId);
+        if (source == null) {
+            return false;
+        }
+        synchronized (source) {
+            int frames = size / (2 * channels);
+            short[] scratch = ensureScratch(source, frames);
+            int base = data.position();
+            for (int i = 0; i < frames; i++) {
+                int p = base + i * channels * 2;
+                if (channels == mChannels) {
+                    for (int c = 0; c < channels; c++) {
+                        scratch[i * channels + c] = readShort(data, p + c * 2);
+                    }
+                } else if (mChannels == 1) {
+                    // downmix by averaging all input channels
+                    int sum = 0;
+                    for (int c = 0; c < channels; c++) {
+                        sum += readShort(data, p + c * 2);
+                    }
+                    scratch[i] = (short) (sum / channels);
+                } else {
+                    // mono (or first channel) to stereo
+                    short sample = readShort(data, p);
+                    scratch[i * 2] = sample;
+                    scratch[i * 2 + 1] = channels > 1 ? readShort(data, p + 2) : sample;
+                }
+            }
+            resample(source, scratch, frames, sampleRate);
+        }
+        return true;
+    }
+
+    /**
+     * 混音输出 10ms 的 16 位 PCM 数据，写入 out 的 [0, {@link #getFrameSize()})，字节序与 out 相同
+     *
+     * 某个音源缓存的数据不足 10ms 时不足的部分按静音处理。
+     */
+    public void mixFrame(ByteBuffer out) {
+        float[] acc = mAccumulator;
+        for (int i = 0; i < acc.length; i++) {
+            acc[i] = 0;
+        }
+        Source[] sources = mSources;
+        for (Source source : sources) {
+            float gain = source.mGain;
+            synchronized (source) {
+                int available = Math.min(source.mCount, acc.length);
+                if (available < acc.length) {
+                    source.mUnderrunCount++;
+                }
+                short[] ring = source.mRing;
+                int readPos = source.mReadPos;
+                for (int i = 0; i < available; i++) {
+                    acc[i] += ring[readPos] * gain;
+                    if (++readPos == ring.length) {
+                        readPos = 0;
+                    }
+                }
+                source.mReadPos = readPos;
+                source.mCount -= available;
+            }
+        }
+        for (int i = 0; i < acc.length; i++) {
+            out.putShort(i * 2, softClip(acc[i]));
+        }
+    }
+
+    /**
+     * @return 音源缓存不足一帧的次数
+     */
+    public long getUnderrunCount(int sourceId) {
+        Source source = findSource(sourceId);
+        if (source == null) {
+            return 0;
+        }
+        synchronized (source) {
+            return source.mUnderrunCount;
+        }
+    }
+
+    /**
+     * @return 音源缓存已满而被覆盖的采样数
+     */
+    public long getOverrunSamples(int sourceId) {
+        Source source = findSource(sourceId);
+        if (source == null) {
+            return 0;
+        }
+        synchronized (source) {
+            return source.mOverrunSamples;
+        }
+    }
+
+    private Source findSource(int sourceId) {
+        for (Source source : mSources) {
+            if (source.mId == sourceId) {
+                return source;
+            }
+        }
+        return null;
+    }
+
+    private void resample(Source source, short[] samples, int frames, int sampleRate) {
+        if (sampleRate == mSampleRate) {
+            source.mResampler = null;
+            for (int i = 0; i < frames * mChannels; i++) {
+                source.put(samples[i]);
+            }
+            return;
+        }
+        PolyphaseResampler resampler = source.mResampler;
+        if (resampler == null || resampler.getInputRate() != sampleRate) {
+            resampler = new PolyphaseResampler(sampleRate, mSampleRate, mChannels);
+            source.mResampler = resampler;
+        }
+        int outSamples = resampler.getMaxOutputFrames(frames) * mChannels;
+        if (source.mResampled.length < outSamples) {
+            source.mResampled = new short[outSamples];
+        }
+        int outFrames = resampler.process(samples, 0, frames, source.mResampled, 0);
+        for (int i = 0; i < outFrames * mChannels; i++) {
+            source.put(source.mResampled[i]);
+        }
+    }
+
+    private short[] ensureScratch(Source source, int frames) {
+        // room for the larger of input and output channel count
+        int samples = frames * Math.max(2, mChannels);
+        if (source.mScratch.length < samples) {
+            source.mScratch = new short[samples];
+        }
+        return source.mScratch;
+    }
+
+    private static short readShort(ByteBuffer data, int index) {
+        return (short) ((data.get(index) & 0xff) | (data.get(index + 1) << 8));
+    }
+
+    private static short softClip(float sample) {
+        float magnitude = Math.abs(sample);
+        if (magnitude <= SOFT_CLIP_THRESHOLD) {
+            return (short) sample;
+        }
+        float over = magnitude - SOFT_CLIP_THRESHOLD;
+        float clipped = SOFT_CLIP_THRESHOLD + SOFT_CLIP_RANGE * over / (over + SOFT_CLIP_RANGE);
+        return (short) (sample < 0 ? -clipped : clipped);
+    }
+}
@@ -0,0 +1,230 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 流式多相滤波重采样，16 位 PCM，单声道或交错存储的多声道
+ *
+ * 输出采样率与输入采样率之比约分为 L / M，使用 Kaiser 窗 sinc 低通原型滤波器拆分的 L 个相位进行插值，
+ * 降采样时截止频率随之降低以抑制混叠。滤波器状态在多次调用之间保持，可以按任意大小分块处理；
+ * 构造之后不再产生内存分配。非线程安全。
+ */
+public final class PolyphaseResampler {
+
+    public enum Quality {
+        LOW(8, 0.85, 6.0),
+        MEDIUM(16, 0.90, 8.0),
+        HIGH(32, 0.94, 10.0);
+
+        final int mTaps;
+        final double mRolloff;
+        final double mKaiserBeta;
+
+        Quality(int taps, double rolloff, double kaiserBeta) {
+            mTaps = taps;
+            mRolloff = rolloff;
+            mKaiserBeta = kaiserBeta;
+        }
+    }
+
+    // keeps the coefficient table small, common rates such as 44.1k <-> 48k need 160 phases
+    private static final int MAX_PHASES = 2048;
+
+    private final int mInputRate;
+    private final int mOutputRate;
+    private final int mChannels;
+    private final int mTaps;
+    private final int mUp;
+    private final int mDown;
+    // mUp phases of mTaps coefficients each
+    private final float[] mCoefficients;
+    // per channel, 2 * mTaps samples so that the newest mTaps samples are always contiguous
+    private final float[] mDelayLine;
+    private int mDelayPos;
+    // offset of the next output behind the newest input, in 1 / mUp input samples
+    private int mPhase;
+
+    public PolyphaseResampler(int inputRate, int outputRate, int channels) {
+        this(inputRate, outputRate, channels, Quality.MEDIUM);
+    }
+
+    public PolyphaseResampler(int inputRate, int outputRate, int channels, Quality quality) {
+        if (inputRate <= 0 || outputRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("invalid resampler format");
+        }
+        int gcd = gcd(inputRate, outputRate);
+        mUp = outputRate / gcd;
+        mDown = inputRate / gcd;
+        if (mUp > MAX_PHASES) {
+            throw new IllegalArgumentException("unsupported ratio " + inputRate + " -> " + outputRate);
+        }
+        mInputRate = inputRate;
+        mOutputRate = outputRate;
+        mChannels = channels;
+        // when downsampling the cutoff drops by down / up, so the filter needs proportionally more taps
+        mTaps = quality.mTaps * Math.max(1, (mDown + mUp - 1) / mUp);
+        mCoefficients = designFilter(mUp, mDown, mTaps, quality.mRolloff, quality.mKaiserBeta);
+        mDelayLine = new float[channels * 2 * mTaps];
+    }
+
+    public int getInputRate() {
+        return mInputRate;
+    }
+
+    public int getOutputRate() {
+        return mOutputRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    /**
+     * @return 处理 inputFrames 帧输入时最多输出的帧数，用于预先分配输出缓存
+     */
+    public int getMaxOutputFrames(int inputFrames) {
+        return (int) (((long) inputFrames * mUp + mDown - 1) / mDown) + 1;
+    }
+
+    /**
+     * 清空滤波器状态，例如输入不连续时
+     */
+    public void reset() {
+        for (int i = 0; i < mDelayLine.length; i++) {
+            mDelayLine[i] = 0;
+        }
+        mDelayPos = 0;
+        mPhase = 0;
+    }
+
+    /**
+     * 处理交错存储的采样
+     *
+     * @param out 至少能容纳 {@link #getMaxOutputFrames(int)} 帧
+     * @return 输出的帧数
+     */
+    public int process(short[] in, int inOffset, int inFrames, short[] out, int outOffset) {
+        int o = outOffset;
+        for (int i = 0; i < inFrames; i++) {
+            push(in, inOffset + i * mChannels);
+            while (mPhase < mUp) {
+                for (int c = 0; c < mChannels; c++) {
+                    out[o++] = filter(c);
+                }
+                mPhase += mDown;
+            }
+            mPhase -= mUp;
+        }
+        return (o - outOffset) / mChannels;
+    }
+
+    /**
+     * 处理 in 中 [in.position(), in.position() + inSize) 的数据，写入 out 的 [0, 返回值)，
+     * 按照各自 ByteBuffer 的字节序读写，不改变两者的 position
+     *
+     * @return 输出的字节数
+     */
+    public int process(ByteBuffer in, int inSize, ByteBuffer out) {
+        int frameBytes = 2 * mChannels;
+        int inFrames = inSize / frameBytes;
+        int base = in.position();
+        int o = 0;
+        for (int i = 0; i < inFrames; i++) {
+            push(in, base + i * frameBytes);
+            while (mPhase < mUp) {
+                for (int c = 0; c < mChannels; c++) {
+                    out.putShort(o, filter(c));
+                    o += 2;
+                }
+                mPhase += mDown;
+            }
+            mPhase -= mUp;
+        }
+        return o;
+    }
+
+    private void push(short[] in, int index) {
+        mDelayPos = mDelayPos == 0 ? mTaps - 1 : mDelayPos - 1;
+        for (int c = 0; c < mChannels; c++) {
+            int base = c * 2 * mTaps + mDelayPos;
+            float sample = in[index + c];
+            mDelayLine[base] = sample;
+            mDelayLine[base + mTaps] = sample;
+        }
+    }
+
+    private void push(ByteBuffer in, int index) {
+        mDelayPos = mDelayPos == 0 ? mTaps - 1 : mDelayPos - 1;
+        for (int c = 0; c < mChannels; c++) {
+            int base = c * 2 * mTaps + mDelayPos;
+            float sample = in.getShort(index + c * 2);
+            mDelayLine[base] = sample;
+            mDelayLine[base + mTaps] = sample;
+        }
+    }
+
+    private short filter(int channel) {
+        float[] coefficients = mCoefficients;
+        float[] delayLine = mDelayLine;
+        int c = mPhase * mTaps;
+        int d = channel * 2 * mTaps + mDelayPos;
+        float sum = 0;
+        for (int k = 0; k < mTaps; k++) {
+            sum += coefficients[c + k] * delayLine[d + k];
+        }
+        int sample = Math.round(sum);
+        if (sample > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        } else if (sample < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) sample;
+    }
+
+    /**
+     * 设计 up * taps 阶的低通原型滤波器，并按相位重排：第 p 个相位的第 k 个系数为 h[p + k * up]
+     */
+    private static float[] designFilter(int up, int down, int taps, double rolloff, double beta) {
+        int length = up * taps;
+        double center = (length - 1) / 2.0;
+        // cutoff in cycles per sample of the upsampled signal, below the lower of both nyquist frequencies
+        double cutoff = rolloff * 0.5 / Math.max(up, down);
+        double i0Beta = besselI0(beta);
+        float[] coefficients = new float[length];
+        for (int n = 0; n < length; n++) {
+            double x = n - center;
+            double sinc = x == 0 ? 1 : Math.sin(2 * Math.PI * cutoff * x) / (2 * Math.PI * cutoff * x);
+            double r = x / (center + 0.5);
+            double window = besselI0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+            // gain of up compensates the zeros inserted by upsampling
+            double h = 2 * cutoff * sinc * window * up;
+            int phase = n % up;
+            int k = n / up;
+            coefficients[phase * taps + k] = (float) h;
+        }
+        return coefficients;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double halfX = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,204 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者、单消费者的无锁环形队列
+ *
+ * 只允许一个线程调用 {@link #offer(Object)}，一个线程调用 {@link #poll()}。
+ * 容量会向上取整为 2 的幂；队列满时按照 {@link OverflowPolicy} 处理，被丢弃的元素会回调给 {@link DropListener}。
+ * 出队后不会清空槽位，队列最多额外持有 capacity 个已出队元素的引用，适合存放池化的对象。
+ */
+public final class SpscRingBuffer<E> {
+
+    public enum OverflowPolicy {
+        /**
+         * 丢弃队列中最旧的元素
+         */
+        DROP_OLDEST,
+        /**
+         * 丢弃新入队的元素
+         */
+        DROP_NEWEST,
+        /**
+         * 阻塞生产者直到有空位或者队列被关闭
+         */
+        BLOCK
+    }
+
+    public interface DropListener<E> {
+        void onDropped(E element);
+    }
+
+    // pad the index so that head and tail never share a cache line
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    private static final int BLOCK_SPIN_TIMES = 64;
+    private static final long BLOCK_PARK_NS = 100_000;
+
+    private final AtomicReferenceArray<E> mElements;
+    private final int mMask;
+    private final OverflowPolicy mPolicy;
+    private final DropListener<E> mDropListener;
+    private final PaddedAtomicLong mHead = new PaddedAtomicLong();
+    private final PaddedAtomicLong mTail = new PaddedAtomicLong();
+    private final AtomicLong mOverrunCount = new AtomicLong();
+    private volatile Thread mConsumerThread;
+    private volatile boolean mClosed;
+
+    public SpscRingBuffer(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, null);
+    }
+
+    public SpscRingBuffer(int capacity, OverflowPolicy policy, DropListener<E> dropListener) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mElements = new AtomicReferenceArray<>(size);
+        mMask = size - 1;
+        mPolicy = policy;
+        mDropListener = dropListener;
+    }
+
+    /**
+     * 生产者入队
+     *
+     * @return 元素是否成功入队；DROP_NEWEST 策略下队列满或队列已关闭时返回 false
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long tail = mTail.get();
+        int spins = 0;
+        while (mClosed || tail - mHead.get() > mMask) {
+            if (mClosed || mPolicy == OverflowPolicy.DROP_NEWEST) {
+                dropped(element);
+                return false;
+            } else if (mPolicy == OverflowPolicy.DROP_OLDEST) {
+                long head = mHead.get();
+                if (tail - head <= mMask) {
+                    // the consumer made room meanwhile, the slot at head may hold an element it already took
+                    continue;
+                }
+                E oldest = mElements.get((int) head & mMask);
+                // the consumer may take the element at the same time, only one of us wins
+                if (mHead.compareAndSet(head, head + 1)) {
+                    dropped(oldest);
+                }
+            } else {
+                signalConsumer();
+                if (++spins < BLOCK_SPIN_TIMES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(this, BLOCK_PARK_NS);
+                }
+            }
+        }
+        mElements.lazySet((int) tail & mMask, element);
+        mTail.lazySet(tail + 1);
+        signalConsumer();
+        return true;
+    }
+
+    /**
+     * 消费者出队
+     *
+     * @return 队首元素，队列为空时返回 null
+     */
+    public E poll() {
+        while (true) {
+            long head = mHead.get();
+            if (head >= mTail.get()) {
+                return null;
+            }
+            E element = mElements.get((int) head & mMask);
+            if (mHead.compareAndSet(head, head + 1)) {
+                return element;
+            }
+        }
+    }
+
+    /**
+     * 消费者出队，队列为空时最多等待 timeoutNs
+     *
+     * @return 队首元素，超时、被中断或者队列已关闭时返回 null
+     */
+    public E poll(long timeoutNs) {
+        E element = poll();
+        if (element != null) {
+            return element;
+        }
+        mConsumerThread = Thread.currentThread();
+        try {
+            long deadline = System.nanoTime() + timeoutNs;
+            while ((element = poll()) == null && !mClosed && !Thread.currentThread().isInterrupted()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return element;
+        } finally {
+            mConsumerThread = null;
+        }
+    }
+
+    /**
+     * 关闭队列，之后入队的元素都会被丢弃，阻塞的生产者和等待的消费者会被唤醒
+     */
+    public void close() {
+        mClosed = true;
+        signalConsumer();
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    public int capacity() {
+        return mMask + 1;
+    }
+
+    public int size() {
+        long size = mTail.get() - mHead.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return mHead.get() >= mTail.get();
+    }
+
+    /**
+     * @return 因队列满（或已关闭）而丢弃的元素个数
+     */
+    public long getOverrunCount() {
+        return mOverrunCount.get();
+    }
+
+    private void dropped(E element) {
+        mOverrunCount.incrementAndGet();
+        if (mDropListener != null) {
+            mDropListener.onDropped(element);
+        }
+    }
+
+    private void signalConsumer() {
+        Thread consumer = mConsumerThread;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
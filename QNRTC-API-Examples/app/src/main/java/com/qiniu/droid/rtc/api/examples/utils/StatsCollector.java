@@ -0,0 +1,456 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import android.util.Log;
+
+import com.qiniu.droid.rtc.QNLocalAudioTrackStats;
+import com.qiniu.droid.rtc.QNLocalVideoTrackStats;
+import com.qiniu.droid.rtc.QNNetworkQuality;
+import com.qiniu.droid.rtc.QNRTCClient;
+import com.qiniu.droid.rtc.QNRemoteAudioTrackStats;
+import com.qiniu.droid.rtc.QNRemoteVideoTrackStats;
+import com.qiniu.droid.rtc.QNTrackProfile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通话质量统计的采集与分发
+ *
+ * 在单个定时线程上按照固定间隔对各项统计接口各调用一次，每个 track 最近若干次的采样保存在基本类型的环形缓冲中，
+ * 每次采集生成一个不可变的 {@link Snapshot} 分发给所有订阅者。订阅者在采集线程上被回调，更新 UI 时需要切换到主线程。
+ * {@link #start()} 与 {@link #stop()} 可以重复调用，stop 之后不会再开始新的采集；每次 start 开始新的一代采集，
+ * stop 之前未完成的采集既不会写入新一代的历史采样，也不会分发给订阅者。
+ * 统计接口通过 {@link StatsSource} 访问，线上实现为对 QNRTCClient 的简单转发，可以在 JVM 上使用模拟的数据源验证。
+ */
+public class StatsCollector {
+
+    public static final long DEFAULT_INTERVAL_MS = 5000;
+    public static final int DEFAULT_HISTORY_SIZE = 12;
+
+    private static final String TAG = "StatsCollector";
+
+    /**
+     * 统计数据来源，接口与 QNRTCClient 一致
+     */
+    public interface StatsSource {
+        Map<String, List<QNLocalVideoTrackStats>> getLocalVideoTrackStats();
+
+        Map<String, QNLocalAudioTrackStats> getLocalAudioTrackStats();
+
+        Map<String, QNRemoteVideoTrackStats> getRemoteVideoTrackStats();
+
+        Map<String, QNRemoteAudioTrackStats> getRemoteAudioTrackStats();
+
+        Map<String, QNNetworkQuality> getUserNetworkQuality();
+    }
+
+    public interface Listener {
+        void onStatsUpdated(Snapshot snapshot);
+    }
+
+    public enum TrackKind {
+        LOCAL_VIDEO,
+        LOCAL_AUDIO,
+        REMOTE_VIDEO,
+        REMOTE_AUDIO
+    }
+
+    /**
+     * 单个 track 的一次采样，本地视频开启大小流时每一层各有一个
+     */
+    public static final class TrackStats {
+        private final TrackKind mKind;
+        private final String mTrackId;
+        private final QNTrackProfile mProfile;
+        private final int mBitrateKbps;
+        private final int mAverageBitrateKbps;
+        private final int mLostRate;
+        private final int mUplinkLostRate;
+        private final int mRtt;
+        private final int mFrameRate;
+
+        TrackStats(TrackKind kind, String trackId, QNTrackProfile profile, int bitrateKbps, int averageBitrateKbps,
+                   int lostRate, int uplinkLostRate, int rtt, int frameRate) {
+            mKind = kind;
+            mTrackId = trackId;
+            mProfile = profile;
+            mBitrateKbps = bitrateKbps;
+            mAverageBitrateKbps = averageBitrateKbps;
+            mLostRate = lostRate;
+            mUplinkLostRate = uplinkLostRate;
+            mRtt = rtt;
+            mFrameRate = frameRate;
+        }
+
+        public TrackKind getKind() {
+            return mKind;
+        }
+
+        public String getTrackId() {
+            return mTrackId;
+        }
+
+        /**
+         * @return 视频的 profile，音频或者未知时为 null
+         */
+        public QNTrackProfile getProfile() {
+            return mProfile;
+        }
+
+        /**
+         * @return 本地 track 为上行码率，远端 track 为下行码率，单位 kbps
+         */
+        public int getBitrateKbps() {
+            return mBitrateKbps;
+        }
+
+        /**
+         * @return 保存的历史采样的平均码率，单位 kbps
+         */
+        public int getAverageBitrateKbps() {
+            return mAverageBitrateKbps;
+        }
+
+        /**
+         * @return 本地 track 为上行丢包率，远端 track 为下行丢包率，单位 %
+         */
+        public int getLostRate() {
+            return mLostRate;
+        }
+
+        /**
+         * @return 上行丢包率，远端 track 为发布端的上行丢包率，单位 %
+         */
+        public int getUplinkLostRate() {
+            return mUplinkLostRate;
+        }
+
+        /**
+         * @return 上行 RTT，远端 track 为发布端的上行 RTT，单位 ms
+         */
+        public int getRtt() {
+            return mRtt;
+        }
+
+        /**
+         * @return 本地视频为上行帧率，远端视频为下行帧率，音频为 0
+         */
+        public int getFrameRate() {
+            return mFrameRate;
+        }
+    }
+
+    /**
+     * 一次采集的结果，创建后不再修改，可以在线程间传递
+     */
+    public static final class Snapshot {
+        private final long mTimestampMs;
+        private final List<TrackStats> mTracks;
+        private final Map<String, QNNetworkQuality> mNetworkQualities;
+
+        Snapshot(long timestampMs, List<TrackStats> tracks, Map<String, QNNetworkQuality> networkQualities) {
+            mTimestampMs = timestampMs;
+            mTracks = Collections.unmodifiableList(tracks);
+            mNetworkQualities = Collections.unmodifiableMap(networkQualities);
+        }
+
+        public long getTimestampMs() {
+            return mTimestampMs;
+        }
+
+        public List<TrackStats> getTracks() {
+            return mTracks;
+        }
+
+        /**
+         * @return 指定类型的第一个 track，不存在时返回 null
+         */
+        public TrackStats getFirstTrack(TrackKind kind) {
+            for (TrackStats stats : mTracks) {
+                if (stats.mKind == kind) {
+                    return stats;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return 远端用户的网络质量，key 为 userID
+         */
+        public Map<String, QNNetworkQuality> getNetworkQualities() {
+            return mNetworkQualities;
+        }
+    }
+
+    // recent bitrate samples of one track, overwritten in place
+    private static final class TrackHistory {
+        final int[] mBitrates;
+        long mBitrateSum;
+        int mCount;
+        int mNext;
+        long mRound;
+
+        TrackHistory(int size) {
+            mBitrates = new int[size];
+        }
+
+        int add(int bitrate) {
+            if (mCount == mBitrates.length) {
+                mBitrateSum -= mBitrates[mNext];
+            } else {
+                mCount++;
+            }
+            mBitrates[mNext] = bitrate;
+            mBitrateSum += bitrate;
+            mNext = (mNext + 1) % mBitrates.length;
+            return (int) (mBitrateSum / mCount);
+        }
+    }
+
+    private final StatsSource mSource;
+    private final long mIntervalMs;
+    private final int mHistorySize;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    // key is the track kind and track id, plus the layer index for local video
+    private final Map<String, TrackHistory> mHistories = new HashMap<>();
+    private long mRound;
+
+    private ScheduledExecutorService mExecutor;
+    private volatile boolean mStarted;
+    // bumped by start and stop, a poll of an older generation is dropped
+    private volatile int mGeneration;
+    private volatile Snapshot mLatestSnapshot;
+    private volatile long mErrorCount;
+
+    public StatsCollector(StatsSource source) {
+        this(source, DEFAULT_INTERVAL_MS, DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * @param intervalMs  采集间隔，单位 ms
+     * @param historySize 每个 track 保存的采样数，用于计算平均码率
+     */
+    public StatsCollector(StatsSource source, long intervalMs, int historySize) {
+        if (intervalMs <= 0 || historySize <= 0) {
+            throw new IllegalArgumentException("invalid stats collector parameters");
+        }
+        mSource = source;
+        mIntervalMs = intervalMs;
+        mHistorySize = historySize;
+    }
+
+    /**
+     * @return 转发到 client 的统计数据来源
+     */
+    public static StatsSource sourceOf(final QNRTCClient client) {
+        return new StatsSource() {
+            @Override
+            public Map<String, List<QNLocalVideoTrackStats>> getLocalVideoTrackStats() {
+                return client.getLocalVideoTrackStats();
+            }
+
+            @Override
+            public Map<String, QNLocalAudioTrackStats> getLocalAudioTrackStats() {
+                return client.getLocalAudioTrackStats();
+            }
+
+            @Override
+            public Map<String, QNRemoteVideoTrackStats> getRemoteVideoTrackStats() {
+                return client.getRemoteVideoTrackStats();
+            }
+
+            @Override
+            public Map<String, QNRemoteAudioTrackStats> getRemoteAudioTrackStats() {
+                return client.getRemoteAudioTrackStats();
+            }
+
+            @Override
+            public Map<String, QNNetworkQuality> getUserNetworkQuality() {
+                return client.getUserNetworkQuality();
+            }
+        };
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 开始定时采集，第一次采集立即进行；已经开始时不做任何操作
+     */
+    public synchronized void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        final int generation = ++mGeneration;
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+        mExecutor.scheduleAtFixedRate(() -> {
+            if (generation != mGeneration) {
+                return;
+            }
+            try {
+                Snapshot snapshot = poll(System.currentTimeMillis(), generation);
+                synchronized (this) {
+                    // stop() and start() may have run while polling
+                    if (snapshot != null && generation == mGeneration) {
+                        publish(snapshot);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // an exception would cancel the periodic task, skip this round instead
+                mErrorCount++;
+                Log.w(TAG, "failed to collect stats", e);
+            }
+        }, 0, mIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定时采集并清空历史采样，正在进行的采集不会再分发给订阅者
+     */
+    public synchronized void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mGeneration++;
+        mExecutor.shutdownNow();
+        mExecutor = null;
+        synchronized (mHistories) {
+            mHistories.clear();
+        }
+        mLatestSnapshot = null;
+    }
+
+    public boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * @return 最近一次采集的结果，尚未采集时返回 null
+     */
+    public Snapshot getLatestSnapshot() {
+        return mLatestSnapshot;
+    }
+
+    /**
+     * @return 采集时统计接口抛出异常的次数
+     */
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    /**
+     * 立即采集一次并分发给订阅者
+     */
+    public Snapshot collect(long nowMs) {
+        Snapshot snapshot;
+        do {
+            snapshot = poll(nowMs, mGeneration);
+        } while (snapshot == null);
+        publish(snapshot);
+        return snapshot;
+    }
+
+    // null when the collector was stopped or restarted before the histories were updated
+    private Snapshot poll(long nowMs, int generation) {
+        List<TrackStats> tracks = new ArrayList<>();
+        Map<String, QNNetworkQuality> networkQualities = new HashMap<>();
+        synchronized (mHistories) {
+            if (generation != mGeneration) {
+                return null;
+            }
+            mRound++;
+            Map<String, List<QNLocalVideoTrackStats>> localVideoStats = mSource.getLocalVideoTrackStats();
+            if (localVideoStats != null) {
+                for (Map.Entry<String, List<QNLocalVideoTrackStats>> entry : localVideoStats.entrySet()) {
+                    List<QNLocalVideoTrackStats> layers = entry.getValue();
+                    for (int i = 0; i < layers.size(); i++) {
+                        QNLocalVideoTrackStats stats = layers.get(i);
+                        int bitrate = stats.uplinkBitrate / 1000;
+                        tracks.add(new TrackStats(TrackKind.LOCAL_VIDEO, entry.getKey(), stats.profile, bitrate,
+                                record(TrackKind.LOCAL_VIDEO, entry.getKey(), i, bitrate),
+                                stats.uplinkLostRate, stats.uplinkLostRate, stats.uplinkRTT, stats.uplinkFrameRate));
+                    }
+                }
+            }
+            Map<String, QNLocalAudioTrackStats> localAudioStats = mSource.getLocalAudioTrackStats();
+            if (localAudioStats != null) {
+                for (Map.Entry<String, QNLocalAudioTrackStats> entry : localAudioStats.entrySet()) {
+                    QNLocalAudioTrackStats stats = entry.getValue();
+                    int bitrate = stats.uplinkBitrate / 1000;
+                    tracks.add(new TrackStats(TrackKind.LOCAL_AUDIO, entry.getKey(), null, bitrate,
+                            record(TrackKind.LOCAL_AUDIO, entry.getKey(), 0, bitrate),
+                            stats.uplinkLostRate, stats.uplinkLostRate, stats.uplinkRTT, 0));
+                }
+            }
+            Map<String, QNRemoteVideoTrackStats> remoteVideoStats = mSource.getRemoteVideoTrackStats();
+            if (remoteVideoStats != null) {
+                for (Map.Entry<String, QNRemoteVideoTrackStats> entry : remoteVideoStats.entrySet()) {
+                    QNRemoteVideoTrackStats stats = entry.getValue();
+                    int bitrate = stats.downlinkBitrate / 1000;
+                    tracks.add(new TrackStats(TrackKind.REMOTE_VIDEO, entry.getKey(), stats.profile, bitrate,
+                            record(TrackKind.REMOTE_VIDEO, entry.getKey(), 0, bitrate),
+                            stats.downlinkLostRate, stats.uplinkLostRate, stats.uplinkRTT, stats.downlinkFrameRate));
+                }
+            }
+            Map<String, QNRemoteAudioTrackStats> remoteAudioStats = mSource.getRemoteAudioTrackStats();
+            if (remoteAudioStats != null) {
+                for (Map.Entry<String, QNRemoteAudioTrackStats> entry : remoteAudioStats.entrySet()) {
+                    QNRemoteAudioTrackStats stats = entry.getValue();
+                    int bitrate = stats.downlinkBitrate / 1000;
+                    tracks.add(new TrackStats(TrackKind.REMOTE_AUDIO, entry.getKey(), null, bitrate,
+                            record(TrackKind.REMOTE_AUDIO, entry.getKey(), 0, bitrate),
+                            stats.downlinkLostRate, stats.uplinkLostRate, stats.uplinkRTT, 0));
+                }
+            }
+            // forget the tracks that are gone
+            for (Iterator<TrackHistory> it = mHistories.values().iterator(); it.hasNext(); ) {
+                if (it.next().mRound != mRound) {
+                    it.remove();
+                }
+            }
+        }
+        Map<String, QNNetworkQuality> userNetworkQuality = mSource.getUserNetworkQuality();
+        if (userNetworkQuality != null) {
+            for (Map.Entry<String, QNNetworkQuality> entry : userNetworkQuality.entrySet()) {
+                QNNetworkQuality quality = entry.getValue();
+                // the sdk object is mutable, keep a copy
+                networkQualities.put(entry.getKey(),
+                        new QNNetworkQuality(quality.uplinkNetworkGrade, quality.downlinkNetworkGrade));
+            }
+        }
+
+        return new Snapshot(nowMs, tracks, networkQualities);
+    }
+
+    private void publish(Snapshot snapshot) {
+        mLatestSnapshot = snapshot;
+        for (Listener listener : mListeners) {
+            listener.onStatsUpdated(snapshot);
+        }
+    }
+
+    private int record(TrackKind kind, String trackId, int layer, int bitrate) {
+        String key = kind.ordinal() + "/" + trackId + "/" + layer;
+        TrackHistory history = mHistories.get(key);
+        if (history == null) {
+            history = new TrackHistory(mHistorySize);
+            mHistories.put(key, history);
+        }
+        history.mRound = mRound;
+        return history.add(bitrate);
+    }
+}
@@ -0,0 +1,224 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AudioFramePoolTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPool() {
+        new AudioFramePool(0, 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyFrames() {
+        new AudioFramePool(2, 0);
+    }
+
+    @Test
+    public void acquireTakesFreeFrames() {
+        AudioFramePool pool = new AudioFramePool(2, 16);
+        assertEquals(2, pool.getAvailableCount());
+
+        AudioFramePool.Frame frame = pool.acquire();
+        assertNotNull(frame);
+        assertEquals(16, frame.getCapacity());
+        assertEquals(1, pool.getAvailableCount());
+        assertEquals(1, pool.getAcquiredCount());
+
+        frame.release();
+        assertEquals(2, pool.getAvailableCount());
+    }
+
+    @Test
+    public void acquireResetsTheLimitOfARecycledFrame() {
+        AudioFramePool pool = new AudioFramePool(1, 16);
+        AudioFramePool.Frame frame = pool.acquire();
+        frame.set(10, 16, 48000, 1, 0);
+        frame.getData().position(4);
+        frame.release();
+
+        frame = pool.acquire();
+        assertEquals(0, frame.getData().position());
+        assertEquals(16, frame.getData().limit());
+        // a larger frame written with absolute puts, as the resampler does
+        frame.getData().put(15, (byte) 1);
+    }
+
+    @Test
+    public void retainedFrameIsRecycledAfterLastRelease() {
+        AudioFramePool pool = new AudioFramePool(1, 16);
+        AudioFramePool.Frame frame = pool.acquire();
+        assertSame(frame, frame.retain());
+
+        frame.release();
+        assertEquals(0, pool.getAvailableCount());
+        assertNull(pool.acquire());
+
+        frame.release();
+        assertEquals(1, pool.getAvailableCount());
+        assertSame(frame, pool.acquire());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void overReleaseThrows() {
+        AudioFramePool pool = new AudioFramePool(1, 16);
+        AudioFramePool.Frame frame = pool.acquire();
+        frame.release();
+        frame.release();
+    }
+
+    @Test
+    public void overReleaseDoesNotRecycleTwice() {
+        AudioFramePool pool = new AudioFramePool(1, 16);
+        AudioFramePool.Frame frame = pool.acquire();
+        frame.release();
+        try {
+            frame.release();
+        } catch (IllegalStateException expected) {
+            // checked below
+        }
+        assertEquals(1, pool.getAvailableCount());
+    }
+
+    @Test
+    public void exhaustionReturnsNullAndIsCounted() {
+        AudioFramePool pool = new AudioFramePool(2, 16);
+        AudioFramePool.Frame first = pool.acquire();
+        AudioFramePool.Frame second = pool.acquire();
+        assertNull(pool.acquire());
+        assertNull(pool.acquire());
+        assertEquals(2, pool.getExhaustedCount());
+        assertEquals(2, pool.getAcquiredCount());
+
+        first.release();
+        assertSame(first, pool.acquire());
+        assertEquals(2, pool.getExhaustedCount());
+        second.release();
+    }
+
+    @Test
+    public void framesAreRecycledWithoutAllocation() {
+        AudioFramePool pool = new AudioFramePool(3, 16);
+        Set<AudioFramePool.Frame> seen = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            AudioFramePool.Frame frame = pool.acquire();
+            seen.add(frame);
+            frame.release();
+        }
+        assertEquals(3, pool.getAvailableCount());
+        assertTrue(seen.size() <= 3);
+        assertEquals(100, pool.getAcquiredCount());
+        assertEquals(0, pool.getExhaustedCount());
+    }
+
+    @Test
+    public void recycledFrameStartsWithOneReference() {
+        AudioFramePool pool = new AudioFramePool(1, 16);
+        AudioFramePool.Frame frame = pool.acquire();
+        frame.retain();
+        frame.release();
+        frame.release();
+
+        frame = pool.acquire();
+        frame.release();
+        assertEquals(1, pool.getAvailableCount());
+    }
+
+    @Test
+    public void setLimitsDataToSize() {
+        AudioFramePool pool = new AudioFramePool(1, 16);
+        AudioFramePool.Frame frame = pool.acquire();
+        frame.setVoiceActive(false);
+        frame.set(10, 16, 48000, 2, 123);
+        assertEquals(10, frame.getSize());
+        assertEquals(0, frame.getData().position());
+        assertEquals(10, frame.getData().limit());
+        assertEquals(16, frame.getBitsPerSample());
+        assertEquals(48000, frame.getSampleRate());
+        assertEquals(2, frame.getChannels());
+        assertEquals(123, frame.getTimestampNs());
+        assertTrue(frame.isVoiceActive());
+        frame.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setRejectsOversizedFrame() {
+        new AudioFramePool(1, 16).acquire().set(17, 16, 48000, 1, 0);
+    }
+
+    @Test
+    public void timedAcquireTimesOut() {
+        AudioFramePool pool = new AudioFramePool(1, 16);
+        AudioFramePool.Frame frame = pool.acquire();
+        long start = System.nanoTime();
+        assertNull(pool.acquire(20, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1, pool.getExhaustedCount());
+        frame.release();
+    }
+
+    @Test(timeout = 5000)
+    public void timedAcquireWaitsForRelease() throws InterruptedException {
+        AudioFramePool pool = new AudioFramePool(1, 16);
+        final AudioFramePool.Frame frame = pool.acquire();
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                return;
+            }
+            frame.release();
+        });
+        releaser.start();
+
+        assertSame(frame, pool.acquire(5, TimeUnit.SECONDS));
+        releaser.join();
+        assertEquals(0, pool.getAvailableCount());
+        // the wait ended with a frame, it isn't counted as a failure
+        assertEquals(0, pool.getExhaustedCount());
+    }
+
+    @Test
+    public void timedAcquireReturnsNullWhenInterrupted() {
+        AudioFramePool pool = new AudioFramePool(1, 16);
+        AudioFramePool.Frame frame = pool.acquire();
+        Thread.currentThread().interrupt();
+        assertNull(pool.acquire(5, TimeUnit.SECONDS));
+        // the interrupt is restored for the caller
+        assertTrue(Thread.interrupted());
+        assertFalse(Thread.currentThread().isInterrupted());
+        frame.release();
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentRetainAndReleaseRecycleOnce() throws InterruptedException {
+        final AudioFramePool pool = new AudioFramePool(2, 16);
+        for (int round = 0; round < 200; round++) {
+            final AudioFramePool.Frame frame = pool.acquire();
+            Thread[] consumers = new Thread[4];
+            for (int i = 0; i < consumers.length; i++) {
+                frame.retain();
+                consumers[i] = new Thread(frame::release);
+            }
+            for (Thread consumer : consumers) {
+                consumer.start();
+            }
+            frame.release();
+            for (Thread consumer : consumers) {
+                consumer.join();
+            }
+            assertEquals(2, pool.getAvailableCount());
+        }
+    }
+}
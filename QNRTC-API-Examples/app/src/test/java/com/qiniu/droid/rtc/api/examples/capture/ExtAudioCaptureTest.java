@@ -0,0 +1,235 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+import com.qiniu.droid.rtc.api.examples.utils.PolyphaseResampler;
+import com.qiniu.droid.rtc.api.examples.utils.SpscRingBuffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExtAudioCaptureTest {
+
+    private static final int FRAME_BYTES = 2048;
+
+    /**
+     * 模拟 AudioRecord：每次读取从缓冲区起始位置写入一段连续的正弦波，不修改 position
+     */
+    private static class FakeMic implements ExtAudioCapture.PcmReader {
+        final int mRate;
+        final int mChannels;
+        int mResult = Integer.MAX_VALUE;
+        long mFrames;
+        int mReadCount;
+
+        FakeMic(int rate, int channels) {
+            mRate = rate;
+            mChannels = channels;
+        }
+
+        short sampleAt(long frame) {
+            return (short) Math.round(8000 * Math.sin(2 * Math.PI * 1000 * frame / mRate));
+        }
+
+        @Override
+        public int read(ByteBuffer buffer, int sizeInBytes) {
+            mReadCount++;
+            if (mResult < 0) {
+                return mResult;
+            }
+            ByteBuffer out = buffer.duplicate().order(ByteOrder.nativeOrder());
+            int frames = sizeInBytes / (2 * mChannels);
+            for (int i = 0; i < frames; i++, mFrames++) {
+                for (int c = 0; c < mChannels; c++) {
+                    out.putShort((i * mChannels + c) * 2, sampleAt(mFrames));
+                }
+            }
+            return frames * 2 * mChannels;
+        }
+    }
+
+    @Test
+    public void resampledFramesFitRecycledFrames() {
+        FakeMic mic = new FakeMic(48000, 1);
+        ExtAudioCapture capture = new ExtAudioCapture();
+        capture.setOutputSampleRate(44100, PolyphaseResampler.Quality.MEDIUM);
+        List<Integer> sizes = new ArrayList<>();
+        capture.setOnPooledAudioFrameCapturedListener(frame -> {
+            assertEquals(44100, frame.getSampleRate());
+            assertEquals(1, frame.getChannels());
+            sizes.add(frame.getSize());
+            frame.release();
+        });
+        capture.prepare(mic, 48000, 1);
+
+        for (int i = 0; i < 100; i++) {
+            capture.capturePooledFrame();
+        }
+
+        assertEquals(100, sizes.size());
+        // 1024 samples at 48k are 940.8 samples at 44.1k
+        assertTrue(sizes.contains(1882));
+        assertTrue(sizes.contains(1880));
+        long total = 0;
+        for (int size : sizes) {
+            assertTrue(size == 1880 || size == 1882);
+            total += size / 2;
+        }
+        assertTrue(String.valueOf(total), Math.abs(total - 100 * 1024 * 44100L / 48000) <= 1);
+        assertEquals(0, capture.getDroppedFrameCount());
+    }
+
+    @Test
+    public void resampledStereoKeepsTheTone() {
+        FakeMic mic = new FakeMic(48000, 2);
+        ExtAudioCapture capture = new ExtAudioCapture();
+        capture.setOutputSampleRate(16000, PolyphaseResampler.Quality.HIGH);
+        double[] energy = new double[2];
+        int[] count = new int[1];
+        capture.setOnPooledAudioFrameCapturedListener(frame -> {
+            ByteBuffer data = frame.getData().duplicate().order(ByteOrder.nativeOrder());
+            for (int i = 0; i < frame.getSize() / 2; i++) {
+                double v = data.getShort(i * 2);
+                energy[i % 2] += v * v;
+            }
+            count[0] += frame.getSize() / 4;
+            frame.release();
+        });
+        capture.prepare(mic, 48000, 2);
+
+        for (int i = 0; i < 50; i++) {
+            capture.capturePooledFrame();
+        }
+
+        double expected = 8000 / Math.sqrt(2);
+        for (double channel : energy) {
+            double rms = Math.sqrt(channel / count[0]);
+            assertTrue(String.valueOf(rms), Math.abs(rms - expected) < expected * 0.05);
+        }
+    }
+
+    @Test
+    public void passthroughDeliversTheCapturedData() {
+        FakeMic mic = new FakeMic(44100, 1);
+        ExtAudioCapture capture = new ExtAudioCapture();
+        long[] next = new long[1];
+        capture.setOnPooledAudioFrameCapturedListener(frame -> {
+            assertEquals(FRAME_BYTES, frame.getSize());
+            assertEquals(44100, frame.getSampleRate());
+            ByteBuffer data = frame.getData().duplicate().order(ByteOrder.nativeOrder());
+            for (int i = 0; i < frame.getSize() / 2; i++) {
+                assertEquals(mic.sampleAt(next[0]++), data.getShort(i * 2));
+            }
+            frame.release();
+        });
+        capture.prepare(mic, 44100, 1);
+
+        for (int i = 0; i < 10; i++) {
+            capture.capturePooledFrame();
+        }
+        assertEquals(10 * FRAME_BYTES / 2, next[0]);
+    }
+
+    @Test
+    public void exhaustedPoolDropsFramesButKeepsReading() {
+        FakeMic mic = new FakeMic(48000, 1);
+        ExtAudioCapture capture = new ExtAudioCapture();
+        capture.setFramePoolDepth(3);
+        capture.setOutputSampleRate(44100, PolyphaseResampler.Quality.LOW);
+        List<AudioFramePool.Frame> held = new ArrayList<>();
+        capture.setOnPooledAudioFrameCapturedListener(held::add);
+        capture.prepare(mic, 48000, 1);
+
+        for (int i = 0; i < 10; i++) {
+            capture.capturePooledFrame();
+        }
+
+        assertEquals(3, held.size());
+        assertEquals(7, capture.getDroppedFrameCount());
+        assertEquals(10, mic.mReadCount);
+
+        for (AudioFramePool.Frame frame : held) {
+            frame.release();
+        }
+        held.clear();
+        capture.capturePooledFrame();
+        assertEquals(1, held.size());
+        assertEquals(7, capture.getDroppedFrameCount());
+    }
+
+    @Test
+    public void readErrorReleasesTheFrame() {
+        FakeMic mic = new FakeMic(48000, 1);
+        ExtAudioCapture capture = new ExtAudioCapture();
+        capture.setFramePoolDepth(1);
+        capture.setOutputSampleRate(44100, PolyphaseResampler.Quality.MEDIUM);
+        boolean[] called = new boolean[1];
+        capture.setOnPooledAudioFrameCapturedListener(frame -> {
+            called[0] = true;
+            frame.release();
+        });
+        capture.prepare(mic, 48000, 1);
+
+        mic.mResult = -3;
+        for (int i = 0; i < 3; i++) {
+            capture.capturePooledFrame();
+        }
+        assertFalse(called[0]);
+        assertEquals(0, capture.getDroppedFrameCount());
+
+        mic.mResult = Integer.MAX_VALUE;
+        capture.capturePooledFrame();
+        assertTrue(called[0]);
+    }
+
+    @Test
+    public void fullDeliveryQueueDropsOldestAndRecyclesIt() {
+        FakeMic mic = new FakeMic(48000, 1);
+        ExtAudioCapture capture = new ExtAudioCapture();
+        capture.setAsyncDelivery(4, SpscRingBuffer.OverflowPolicy.DROP_OLDEST);
+        capture.setOutputSampleRate(44100, PolyphaseResampler.Quality.MEDIUM);
+        capture.setOnPooledAudioFrameCapturedListener(AudioFramePool.Frame::release);
+        capture.prepare(mic, 48000, 1);
+
+        // the delivery thread is not started, frames pile up in the queue
+        for (int i = 0; i < 20; i++) {
+            capture.capturePooledFrame();
+        }
+
+        assertEquals(16, capture.getOverrunCount());
+        assertEquals(0, capture.getDroppedFrameCount());
+    }
+
+    @Test
+    public void silentFramesAreSkippedInSkipMode() {
+        FakeMic mic = new FakeMic(48000, 1);
+        mic.mResult = Integer.MAX_VALUE;
+        ExtAudioCapture capture = new ExtAudioCapture();
+        capture.setOutputSampleRate(44100, PolyphaseResampler.Quality.MEDIUM);
+        capture.setVoiceActivityDetector(new VoiceActivityDetector(VoiceActivityDetector.SuppressionMode.SKIP));
+        int[] delivered = new int[1];
+        capture.setOnPooledAudioFrameCapturedListener(frame -> {
+            delivered[0]++;
+            frame.release();
+        });
+        ExtAudioCapture.PcmReader silence = (buffer, sizeInBytes) -> {
+            for (int i = 0; i < sizeInBytes; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            return sizeInBytes;
+        };
+        capture.prepare(silence, 48000, 1);
+
+        for (int i = 0; i < 50; i++) {
+            capture.capturePooledFrame();
+        }
+        assertTrue(String.valueOf(delivered[0]), delivered[0] < 50);
+        assertEquals(0, capture.getDroppedFrameCount());
+    }
+}
@@ -0,0 +1,109 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 常见预览尺寸下 {@link NV21Processor} 各步骤的单帧耗时，缩放与裁剪的目标尺寸为源尺寸的一半
+ *
+ * 不属于单元测试，通过 main 方法运行。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NV21ProcessorBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String mResolution;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mSrc;
+    private byte[] mDst;
+    private byte[] mHalfDst;
+    private final int[] mCropSize = new int[2];
+    private NV21Processor.Transformer mTransformer;
+
+    @Setup
+    public void setUp() {
+        String[] size = mResolution.split("x");
+        mWidth = Integer.parseInt(size[0]);
+        mHeight = Integer.parseInt(size[1]);
+        mSrc = new byte[NV21Processor.getBufferSize(mWidth, mHeight)];
+        new Random(0).nextBytes(mSrc);
+        mDst = new byte[mSrc.length];
+        mHalfDst = new byte[NV21Processor.getBufferSize(mWidth / 2, mHeight / 2)];
+        // a landscape camera frame turned into a portrait 9:16 stream
+        mTransformer = new NV21Processor.Transformer(mHeight / 2 * 9 / 16 & ~1, mHeight / 2);
+        mTransformer.setPreRotate(true);
+    }
+
+    @Benchmark
+    public byte[] rotate90() {
+        NV21Processor.rotate(mSrc, mWidth, mHeight, 90, mDst);
+        return mDst;
+    }
+
+    @Benchmark
+    public byte[] rotate180() {
+        NV21Processor.rotate(mSrc, mWidth, mHeight, 180, mDst);
+        return mDst;
+    }
+
+    @Benchmark
+    public byte[] mirror() {
+        NV21Processor.mirror(mSrc, mWidth, mHeight, mDst);
+        return mDst;
+    }
+
+    @Benchmark
+    public byte[] crop() {
+        NV21Processor.crop(mSrc, mWidth, mHeight, mWidth / 4, mHeight / 4, mWidth / 2, mHeight / 2, mHalfDst);
+        return mHalfDst;
+    }
+
+    @Benchmark
+    public byte[] centerCrop() {
+        NV21Processor.centerCrop(mSrc, mWidth, mHeight, 1, 1, mDst, mCropSize);
+        return mDst;
+    }
+
+    @Benchmark
+    public byte[] scaleHalf() {
+        NV21Processor.scale(mSrc, mWidth, mHeight, mHalfDst, mWidth / 2, mHeight / 2);
+        return mHalfDst;
+    }
+
+    @Benchmark
+    public byte[] nv21ToI420() {
+        NV21Processor.nv21ToI420(mSrc, mWidth, mHeight, mDst);
+        return mDst;
+    }
+
+    @Benchmark
+    public byte[] transform() {
+        return mTransformer.process(mSrc, mWidth, mHeight, 90);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NV21ProcessorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
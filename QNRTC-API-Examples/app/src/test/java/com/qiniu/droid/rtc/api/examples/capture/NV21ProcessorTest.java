@@ -0,0 +1,335 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NV21ProcessorTest {
+
+    // 4x2 frame: Y rows [0 1 2 3] [4 5 6 7], one VU row [10 11] [12 13]
+    private static final byte[] FRAME_4X2 = {0, 1, 2, 3, 4, 5, 6, 7, 10, 11, 12, 13};
+
+    @Test
+    public void rotate0Copies() {
+        byte[] dst = new byte[12];
+        NV21Processor.rotate(FRAME_4X2, 4, 2, 0, dst);
+        assertArrayEquals(FRAME_4X2, dst);
+    }
+
+    @Test
+    public void rotate90Golden() {
+        byte[] dst = new byte[12];
+        NV21Processor.rotate(FRAME_4X2, 4, 2, 90, dst);
+        assertArrayEquals(new byte[]{4, 0, 5, 1, 6, 2, 7, 3, 10, 11, 12, 13}, dst);
+    }
+
+    @Test
+    public void rotate180Golden() {
+        byte[] dst = new byte[12];
+        NV21Processor.rotate(FRAME_4X2, 4, 2, 180, dst);
+        assertArrayEquals(new byte[]{7, 6, 5, 4, 3, 2, 1, 0, 12, 13, 10, 11}, dst);
+    }
+
+    @Test
+    public void rotate270Golden() {
+        byte[] dst = new byte[12];
+        NV21Processor.rotate(FRAME_4X2, 4, 2, 270, dst);
+        assertArrayEquals(new byte[]{3, 7, 2, 6, 1, 5, 0, 4, 12, 13, 10, 11}, dst);
+    }
+
+    @Test
+    public void rotateMatchesReferenceAcrossTiles() {
+        // not a multiple of the tile size, so partial tiles are covered
+        int width = 38;
+        int height = 22;
+        byte[] src = randomFrame(width, height, 1);
+        for (int degrees = 90; degrees < 360; degrees += 90) {
+            byte[] dst = new byte[src.length];
+            NV21Processor.rotate(src, width, height, degrees, dst);
+            assertArrayEquals("rotate " + degrees, referenceRotate(src, width, height, degrees), dst);
+        }
+    }
+
+    @Test
+    public void fourQuarterTurnsAreIdentity() {
+        int width = 20;
+        int height = 36;
+        byte[] frame = randomFrame(width, height, 2);
+        byte[] a = frame.clone();
+        byte[] b = new byte[frame.length];
+        for (int i = 0; i < 4; i++) {
+            NV21Processor.rotate(a, width, height, 90, b);
+            int tmp = width;
+            width = height;
+            height = tmp;
+            byte[] swap = a;
+            a = b;
+            b = swap;
+        }
+        assertArrayEquals(frame, a);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rotateRejectsOtherAngles() {
+        NV21Processor.rotate(FRAME_4X2, 4, 2, 45, new byte[12]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rotateRejectsSameBuffer() {
+        byte[] frame = FRAME_4X2.clone();
+        NV21Processor.rotate(frame, 4, 2, 90, frame);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddSize() {
+        NV21Processor.rotate(new byte[32], 3, 2, 90, new byte[32]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSmallBuffer() {
+        NV21Processor.rotate(new byte[11], 4, 2, 90, new byte[12]);
+    }
+
+    @Test
+    public void mirrorGolden() {
+        byte[] dst = new byte[12];
+        NV21Processor.mirror(FRAME_4X2, 4, 2, dst);
+        // VU pairs move as a whole
+        assertArrayEquals(new byte[]{3, 2, 1, 0, 7, 6, 5, 4, 12, 13, 10, 11}, dst);
+    }
+
+    @Test
+    public void mirrorInPlaceMatchesCopy() {
+        int width = 18;
+        int height = 6;
+        byte[] src = randomFrame(width, height, 3);
+        byte[] copy = new byte[src.length];
+        NV21Processor.mirror(src, width, height, copy);
+        NV21Processor.mirror(src, width, height, src);
+        assertArrayEquals(copy, src);
+    }
+
+    @Test
+    public void cropGolden() {
+        int width = 6;
+        int height = 4;
+        byte[] src = new byte[NV21Processor.getBufferSize(width, height)];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) i;
+        }
+        byte[] dst = new byte[NV21Processor.getBufferSize(2, 2)];
+        // x = 3 is aligned down to 2
+        NV21Processor.crop(src, width, height, 3, 2, 2, 2, dst);
+        // Y rows 2 and 3 at columns 2..3, the second VU row at columns 2..3
+        assertArrayEquals(new byte[]{14, 15, 20, 21, 32, 33}, dst);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cropRejectsOutOfBounds() {
+        NV21Processor.crop(new byte[36], 6, 4, 4, 0, 4, 2, new byte[12]);
+    }
+
+    @Test
+    public void centerCropToSquare() {
+        int width = 8;
+        int height = 4;
+        byte[] src = randomFrame(width, height, 4);
+        byte[] dst = new byte[src.length];
+        int[] size = new int[2];
+        NV21Processor.centerCrop(src, width, height, 1, 1, dst, size);
+        assertEquals(4, size[0]);
+        assertEquals(4, size[1]);
+        byte[] expected = new byte[NV21Processor.getBufferSize(4, 4)];
+        NV21Processor.crop(src, width, height, 2, 0, 4, 4, expected);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], dst[i]);
+        }
+    }
+
+    @Test
+    public void scaleToSameSizeIsIdentity() {
+        int width = 10;
+        int height = 6;
+        byte[] src = randomFrame(width, height, 5);
+        byte[] dst = new byte[src.length];
+        NV21Processor.scale(src, width, height, dst, width, height);
+        assertArrayEquals(src, dst);
+    }
+
+    @Test
+    public void scaleHalfAveragesBlocks() {
+        // Y 4x4, VU 2x2 pairs
+        byte[] src = {
+                0, 10, 20, 30,
+                40, 50, 60, 70,
+                80, 90, 100, 110,
+                120, (byte) 130, (byte) 140, (byte) 150,
+                1, 2, 3, 4,
+                5, 6, 7, 8};
+        byte[] dst = new byte[NV21Processor.getBufferSize(2, 2)];
+        NV21Processor.scale(src, 4, 4, dst, 2, 2);
+        // (a + b + c + d + 2) / 4 for every 2x2 block, VU pairs averaged per component
+        assertArrayEquals(new byte[]{25, 45, 105, 125, 4, 5}, dst);
+    }
+
+    @Test
+    public void scaleKeepsFlatFrameFlat() {
+        byte[] src = new byte[NV21Processor.getBufferSize(16, 8)];
+        Arrays.fill(src, (byte) 200);
+        byte[] dst = new byte[NV21Processor.getBufferSize(26, 14)];
+        NV21Processor.scale(src, 16, 8, dst, 26, 14);
+        for (byte value : dst) {
+            assertEquals((byte) 200, value);
+        }
+    }
+
+    @Test
+    public void scaleMatchesFloatingPointBilinear() {
+        int width = 32;
+        int height = 18;
+        byte[] src = randomFrame(width, height, 6);
+        int[][] sizes = {{16, 10}, {48, 28}, {20, 12}, {64, 36}};
+        for (int[] size : sizes) {
+            byte[] dst = new byte[NV21Processor.getBufferSize(size[0], size[1])];
+            NV21Processor.scale(src, width, height, dst, size[0], size[1]);
+            byte[] expected = referenceScale(src, width, height, size[0], size[1]);
+            for (int i = 0; i < dst.length; i++) {
+                int diff = Math.abs((dst[i] & 0xff) - (expected[i] & 0xff));
+                assertTrue(size[0] + "x" + size[1] + " at " + i + " differs by " + diff, diff <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void nv21AndI420Golden() {
+        byte[] i420 = new byte[12];
+        NV21Processor.nv21ToI420(FRAME_4X2, 4, 2, i420);
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 11, 13, 10, 12}, i420);
+        byte[] nv21 = new byte[12];
+        NV21Processor.i420ToNV21(i420, 4, 2, nv21);
+        assertArrayEquals(FRAME_4X2, nv21);
+    }
+
+    @Test
+    public void transformerCropsScalesAndRotates() {
+        int width = 16;
+        int height = 8;
+        byte[] src = randomFrame(width, height, 7);
+        NV21Processor.Transformer transformer = new NV21Processor.Transformer(4, 4);
+        transformer.setPreRotate(true);
+        byte[] out = transformer.process(src, width, height, 90);
+        assertEquals(4, transformer.getWidth());
+        assertEquals(4, transformer.getHeight());
+        assertEquals(0, transformer.getRotation());
+
+        byte[] cropped = new byte[NV21Processor.getBufferSize(8, 8)];
+        int[] size = new int[2];
+        NV21Processor.centerCrop(src, width, height, 1, 1, cropped, size);
+        byte[] scaled = new byte[NV21Processor.getBufferSize(4, 4)];
+        NV21Processor.scale(cropped, 8, 8, scaled, 4, 4);
+        byte[] rotated = new byte[scaled.length];
+        NV21Processor.rotate(scaled, 4, 4, 90, rotated);
+        for (int i = 0; i < rotated.length; i++) {
+            assertEquals(rotated[i], out[i]);
+        }
+    }
+
+    @Test
+    public void transformerWithoutWorkReturnsSource() {
+        byte[] src = FRAME_4X2.clone();
+        NV21Processor.Transformer transformer = new NV21Processor.Transformer(0, 0);
+        assertSame(src, transformer.process(src, 4, 2, 90));
+        assertEquals(90, transformer.getRotation());
+        assertArrayEquals(FRAME_4X2, src);
+    }
+
+    @Test
+    public void transformerReusesBuffers() {
+        byte[] src = randomFrame(16, 8, 8);
+        NV21Processor.Transformer transformer = new NV21Processor.Transformer(8, 8);
+        byte[] first = transformer.process(src, 16, 8, 0);
+        byte[] second = transformer.process(src, 16, 8, 0);
+        assertSame(first, second);
+    }
+
+    private static byte[] randomFrame(int width, int height, long seed) {
+        byte[] frame = new byte[NV21Processor.getBufferSize(width, height)];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+
+    private static byte[] referenceRotate(byte[] src, int width, int height, int degrees) {
+        byte[] dst = new byte[src.length];
+        boolean swap = degrees != 180;
+        int dstWidth = swap ? height : width;
+        int ySize = width * height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int[] p = rotatePoint(x, y, width, height, degrees);
+                dst[p[1] * dstWidth + p[0]] = src[y * width + x];
+            }
+        }
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                int[] p = rotatePoint(x, y, width / 2, height / 2, degrees);
+                int d = ySize + (p[1] * (dstWidth / 2) + p[0]) * 2;
+                int s = ySize + (y * (width / 2) + x) * 2;
+                dst[d] = src[s];
+                dst[d + 1] = src[s + 1];
+            }
+        }
+        return dst;
+    }
+
+    private static int[] rotatePoint(int x, int y, int width, int height, int degrees) {
+        switch (degrees) {
+            case 90:
+                return new int[]{height - 1 - y, x};
+            case 180:
+                return new int[]{width - 1 - x, height - 1 - y};
+            default:
+                return new int[]{y, width - 1 - x};
+        }
+    }
+
+    private static byte[] referenceScale(byte[] src, int width, int height, int dstWidth, int dstHeight) {
+        byte[] dst = new byte[NV21Processor.getBufferSize(dstWidth, dstHeight)];
+        referenceScalePlane(src, 0, width, height, dst, 0, dstWidth, dstHeight, 1);
+        referenceScalePlane(src, width * height, width / 2, height / 2,
+                dst, dstWidth * dstHeight, dstWidth / 2, dstHeight / 2, 2);
+        return dst;
+    }
+
+    private static void referenceScalePlane(byte[] src, int srcOffset, int width, int height,
+                                            byte[] dst, int dstOffset, int dstWidth, int dstHeight, int pixelSize) {
+        for (int dy = 0; dy < dstHeight; dy++) {
+            double fy = Math.max(0, (dy + 0.5) * height / dstHeight - 0.5);
+            int y0 = (int) fy;
+            int y1 = Math.min(y0 + 1, height - 1);
+            double wy = fy - y0;
+            for (int dx = 0; dx < dstWidth; dx++) {
+                double fx = Math.max(0, (dx + 0.5) * width / dstWidth - 0.5);
+                int x0 = (int) fx;
+                int x1 = Math.min(x0 + 1, width - 1);
+                double wx = fx - x0;
+                for (int i = 0; i < pixelSize; i++) {
+                    double top = value(src, srcOffset, width, x0, y0, i, pixelSize) * (1 - wx)
+                            + value(src, srcOffset, width, x1, y0, i, pixelSize) * wx;
+                    double bottom = value(src, srcOffset, width, x0, y1, i, pixelSize) * (1 - wx)
+                            + value(src, srcOffset, width, x1, y1, i, pixelSize) * wx;
+                    dst[dstOffset + (dy * dstWidth + dx) * pixelSize + i] = (byte) Math.round(top * (1 - wy) + bottom * wy);
+                }
+            }
+        }
+    }
+
+    private static int value(byte[] src, int offset, int width, int x, int y, int i, int pixelSize) {
+        return src[offset + (y * width + x) * pixelSize + i] & 0xff;
+    }
+}
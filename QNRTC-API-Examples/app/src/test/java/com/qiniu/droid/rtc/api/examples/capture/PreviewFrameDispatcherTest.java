@@ -0,0 +1,221 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PreviewFrameDispatcherTest {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+
+    private final List<byte[]> mRecycled = Collections.synchronizedList(new ArrayList<>());
+    private final LinkedBlockingQueue<Long> mDelivered = new LinkedBlockingQueue<>();
+    private final CountDownLatch mConsumerEntered = new CountDownLatch(1);
+    private final CountDownLatch mConsumerGate = new CountDownLatch(1);
+    private final AtomicBoolean mInterrupted = new AtomicBoolean();
+    private volatile boolean mBlockConsumer;
+    private PreviewFrameDispatcher mDispatcher;
+
+    private void create(int bufferCount, int maxPendingFrames) {
+        mDispatcher = new PreviewFrameDispatcher(bufferCount, maxPendingFrames, mRecycled::add,
+                (data, width, height, rotation, mirror, timestampNs) -> {
+                    if (mBlockConsumer) {
+                        mConsumerEntered.countDown();
+                        // a consumer pushing to the SDK must not be interrupted by stop()
+                        while (true) {
+                            try {
+                                if (mConsumerGate.await(5, TimeUnit.SECONDS)) {
+                                    break;
+                                }
+                            } catch (InterruptedException e) {
+                                mInterrupted.set(true);
+                            }
+                        }
+                    }
+                    mDelivered.add(timestampNs);
+                });
+    }
+
+    @After
+    public void tearDown() {
+        mConsumerGate.countDown();
+        if (mDispatcher != null) {
+            mDispatcher.stop();
+        }
+    }
+
+    @Test
+    public void allocatesNV21Buffers() {
+        create(3, 2);
+        List<byte[]> buffers = mDispatcher.allocateBuffers(WIDTH, HEIGHT);
+        assertEquals(3, buffers.size());
+        assertEquals(WIDTH * HEIGHT * 3 / 2, buffers.get(0).length);
+    }
+
+    @Test(timeout = 5000)
+    public void deliversAndRecyclesAfterCallback() throws InterruptedException {
+        create(3, 2);
+        List<byte[]> buffers = mDispatcher.allocateBuffers(WIDTH, HEIGHT);
+        mDispatcher.start();
+
+        long timestamp = System.nanoTime();
+        mDispatcher.onPreviewFrame(buffers.get(0), WIDTH, HEIGHT, 90, false, timestamp);
+        assertEquals(Long.valueOf(timestamp), mDelivered.poll(5, TimeUnit.SECONDS));
+        waitForRecycled(1);
+        assertSame(buffers.get(0), mRecycled.get(0));
+        assertEquals(1, mDispatcher.getDeliveredCount());
+        assertEquals(0, mDispatcher.getDroppedCount());
+    }
+
+    @Test(timeout = 5000)
+    public void latestFrameWinsWhileConsumerIsBusy() throws InterruptedException {
+        create(4, 1);
+        List<byte[]> buffers = mDispatcher.allocateBuffers(WIDTH, HEIGHT);
+        mBlockConsumer = true;
+        mDispatcher.start();
+
+        mDispatcher.onPreviewFrame(buffers.get(0), WIDTH, HEIGHT, 0, false, 1);
+        assertTrue(mConsumerEntered.await(5, TimeUnit.SECONDS));
+        // the consumer holds frame 1, frames 2 and 3 replace each other in the single pending slot
+        mDispatcher.onPreviewFrame(buffers.get(1), WIDTH, HEIGHT, 0, false, 2);
+        mDispatcher.onPreviewFrame(buffers.get(2), WIDTH, HEIGHT, 0, false, 3);
+        mDispatcher.onPreviewFrame(buffers.get(3), WIDTH, HEIGHT, 0, false, 4);
+
+        // dropped buffers go back to the camera immediately
+        assertEquals(2, mRecycled.size());
+        assertSame(buffers.get(1), mRecycled.get(0));
+        assertSame(buffers.get(2), mRecycled.get(1));
+        assertEquals(2, mDispatcher.getDroppedCount());
+
+        mConsumerGate.countDown();
+        assertEquals(Long.valueOf(1), mDelivered.poll(5, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(4), mDelivered.poll(5, TimeUnit.SECONDS));
+        waitForRecycled(4);
+        assertNull(mDelivered.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(4, mDispatcher.getReceivedCount());
+        assertEquals(2, mDispatcher.getDeliveredCount());
+    }
+
+    @Test
+    public void framesBeforeStartAreRecycled() {
+        create(2, 1);
+        List<byte[]> buffers = mDispatcher.allocateBuffers(WIDTH, HEIGHT);
+        mDispatcher.onPreviewFrame(buffers.get(0), WIDTH, HEIGHT, 0, false, 1);
+        assertEquals(1, mRecycled.size());
+        assertEquals(1, mDispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void staleBuffersAreNotRecycled() {
+        create(2, 1);
+        List<byte[]> old = mDispatcher.allocateBuffers(WIDTH, HEIGHT);
+        mDispatcher.allocateBuffers(WIDTH * 2, HEIGHT * 2);
+        mDispatcher.start();
+        mDispatcher.onPreviewFrame(old.get(0), WIDTH, HEIGHT, 0, false, 1);
+        assertTrue(mRecycled.isEmpty());
+        assertEquals(1, mDispatcher.getDroppedCount());
+    }
+
+    @Test(timeout = 10000)
+    public void stopWaitsForCallbackWithoutInterrupting() throws InterruptedException {
+        create(3, 1);
+        List<byte[]> buffers = mDispatcher.allocateBuffers(WIDTH, HEIGHT);
+        mBlockConsumer = true;
+        mDispatcher.start();
+        mDispatcher.onPreviewFrame(buffers.get(0), WIDTH, HEIGHT, 0, false, 1);
+        assertTrue(mConsumerEntered.await(5, TimeUnit.SECONDS));
+        mDispatcher.onPreviewFrame(buffers.get(1), WIDTH, HEIGHT, 0, false, 2);
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            mConsumerGate.countDown();
+        });
+        releaser.start();
+        mDispatcher.stop();
+        releaser.join();
+
+        assertFalse(mInterrupted.get());
+        // the frame in flight completes, the pending one is dropped and recycled
+        assertEquals(Long.valueOf(1), mDelivered.poll());
+        assertNull(mDelivered.poll());
+        assertEquals(2, mRecycled.size());
+        assertEquals(1, mDispatcher.getDeliveredCount());
+        assertEquals(1, mDispatcher.getDroppedCount());
+    }
+
+    @Test(timeout = 5000)
+    public void restartsAfterStop() throws InterruptedException {
+        create(2, 1);
+        List<byte[]> buffers = mDispatcher.allocateBuffers(WIDTH, HEIGHT);
+        mDispatcher.start();
+        mDispatcher.stop();
+        mDispatcher.stop();
+        mDispatcher.start();
+        mDispatcher.onPreviewFrame(buffers.get(0), WIDTH, HEIGHT, 0, false, 7);
+        assertEquals(Long.valueOf(7), mDelivered.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void frameOfferedDuringStopIsRecycled() throws InterruptedException {
+        AtomicBoolean stopOnRecycle = new AtomicBoolean();
+        mBlockConsumer = true;
+        mDispatcher = new PreviewFrameDispatcher(4, 1, buffer -> {
+            mRecycled.add(buffer);
+            if (stopOnRecycle.compareAndSet(true, false)) {
+                // the dropped oldest frame is recycled between the running check and the offer of the new one
+                Thread stopper = new Thread(mDispatcher::stop);
+                stopper.start();
+                mConsumerGate.countDown();
+                try {
+                    stopper.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, (data, width, height, rotation, mirror, timestampNs) -> {
+            if (mBlockConsumer) {
+                mConsumerEntered.countDown();
+                try {
+                    mConsumerGate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    mInterrupted.set(true);
+                }
+            }
+        });
+        List<byte[]> buffers = mDispatcher.allocateBuffers(WIDTH, HEIGHT);
+        mDispatcher.start();
+        mDispatcher.onPreviewFrame(buffers.get(0), WIDTH, HEIGHT, 0, false, System.nanoTime());
+        assertTrue(mConsumerEntered.await(5, TimeUnit.SECONDS));
+        mDispatcher.onPreviewFrame(buffers.get(1), WIDTH, HEIGHT, 0, false, System.nanoTime());
+        stopOnRecycle.set(true);
+        mDispatcher.onPreviewFrame(buffers.get(2), WIDTH, HEIGHT, 0, false, System.nanoTime());
+
+        assertTrue(mRecycled.contains(buffers.get(2)));
+        assertEquals(3, mRecycled.size());
+        assertEquals(mDispatcher.getReceivedCount(), mDispatcher.getDeliveredCount() + mDispatcher.getDroppedCount());
+    }
+
+    private void waitForRecycled(int count) throws InterruptedException {
+        while (mRecycled.size() < count) {
+            Thread.sleep(1);
+        }
+    }
+}
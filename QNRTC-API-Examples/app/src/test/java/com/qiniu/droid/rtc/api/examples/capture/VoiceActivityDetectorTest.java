@@ -0,0 +1,258 @@
+package com.qiniu.droid.rtc.api.examples.capture;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VoiceActivityDetectorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    // 20 ms
+    private static final int FRAME_SAMPLES = 320;
+
+    /**
+     * 按 20ms 一帧生成的测试信号，相位连续
+     */
+    private static class Fixture {
+        final Random mRandom = new Random(7);
+        final ByteBuffer mFrame = ByteBuffer.allocate(FRAME_SAMPLES * 2).order(ByteOrder.nativeOrder());
+        long mSample;
+
+        static double amplitude(double dbfs) {
+            return 32768 * Math.pow(10, dbfs / 20);
+        }
+
+        /**
+         * 白噪声，过零率约 0.5
+         */
+        ByteBuffer noise(double dbfs) {
+            double a = amplitude(dbfs);
+            for (int i = 0; i < FRAME_SAMPLES; i++, mSample++) {
+                mFrame.putShort(i * 2, clip(mRandom.nextGaussian() * a));
+            }
+            return mFrame;
+        }
+
+        /**
+         * 低频的持续嗡嗡声，例如空调或风扇，过零率很低
+         */
+        ByteBuffer hum(double dbfs) {
+            double a = amplitude(dbfs) * Math.sqrt(2);
+            for (int i = 0; i < FRAME_SAMPLES; i++, mSample++) {
+                mFrame.putShort(i * 2, clip(a * Math.sin(2 * Math.PI * 100 * mSample / SAMPLE_RATE)));
+            }
+            return mFrame;
+        }
+
+        /**
+         * 类似浊音的谐波信号，基频 150Hz，叠加很低的背景噪声
+         */
+        ByteBuffer voiced(double dbfs) {
+            double a = amplitude(dbfs) * Math.sqrt(2) / 1.2;
+            for (int i = 0; i < FRAME_SAMPLES; i++, mSample++) {
+                double t = 2 * Math.PI * 150 * mSample / SAMPLE_RATE;
+                double v = Math.sin(t) + 0.6 * Math.sin(2 * t) + 0.3 * Math.sin(3 * t) + 0.1 * Math.sin(5 * t);
+                mFrame.putShort(i * 2, clip(a * v + mRandom.nextGaussian() * amplitude(-70)));
+            }
+            return mFrame;
+        }
+
+        ByteBuffer silence() {
+            for (int i = 0; i < FRAME_SAMPLES; i++, mSample++) {
+                mFrame.putShort(i * 2, (short) 0);
+            }
+            return mFrame;
+        }
+
+        static short clip(double v) {
+            return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(v)));
+        }
+    }
+
+    private static boolean process(VoiceActivityDetector detector, ByteBuffer frame) {
+        return detector.process(frame, FRAME_SAMPLES * 2, SAMPLE_RATE, 1);
+    }
+
+    private static VoiceActivityDetector newDetector() {
+        return new VoiceActivityDetector(VoiceActivityDetector.SuppressionMode.ANNOTATE);
+    }
+
+    @Test
+    public void silenceAndQuietRoomAreNotSpeech() {
+        VoiceActivityDetector detector = newDetector();
+        Fixture fixture = new Fixture();
+        for (int i = 0; i < 100; i++) {
+            assertFalse(process(detector, fixture.silence()));
+        }
+        for (int i = 0; i < 500; i++) {
+            assertFalse(process(detector, fixture.noise(-65)));
+        }
+        assertEquals(-65, detector.getNoiseFloorDb(), 1.5);
+        assertEquals(0, detector.getSpeechRatio(), 0);
+    }
+
+    @Test
+    public void broadbandNoiseIsNotSpeech() {
+        VoiceActivityDetector detector = newDetector();
+        Fixture fixture = new Fixture();
+        for (int i = 0; i < 200; i++) {
+            assertFalse(process(detector, fixture.noise(-35)));
+        }
+        assertTrue(detector.getLastZeroCrossingRate() > 0.35f);
+    }
+
+    @Test
+    public void syllablesAreSpeechWithHangover() {
+        VoiceActivityDetector detector = newDetector();
+        Fixture fixture = new Fixture();
+        for (int i = 0; i < 50; i++) {
+            process(detector, fixture.noise(-60));
+        }
+        for (int i = 0; i < 15; i++) {
+            assertTrue(process(detector, fixture.voiced(-25)));
+        }
+        // 300 ms of hangover, 15 frames
+        for (int i = 0; i < 14; i++) {
+            assertTrue(String.valueOf(i), process(detector, fixture.noise(-60)));
+        }
+        assertFalse(process(detector, fixture.noise(-60)));
+        assertFalse(detector.isSpeaking());
+    }
+
+    @Test
+    public void longConversationStaysSpeech() {
+        VoiceActivityDetector detector = newDetector();
+        Fixture fixture = new Fixture();
+        for (int i = 0; i < 50; i++) {
+            process(detector, fixture.noise(-60));
+        }
+        // one minute of 240 ms syllables separated by 120 ms pauses
+        int voicedFrames = 0;
+        int detectedFrames = 0;
+        for (int syllable = 0; syllable < 166; syllable++) {
+            for (int i = 0; i < 12; i++) {
+                boolean speaking = process(detector, fixture.voiced(-28));
+                if (syllable >= 140) {
+                    voicedFrames++;
+                    detectedFrames += speaking ? 1 : 0;
+                }
+            }
+            for (int i = 0; i < 6; i++) {
+                process(detector, fixture.noise(-60));
+            }
+        }
+        assertEquals(voicedFrames, detectedFrames);
+        assertTrue(String.valueOf(detector.getNoiseFloorDb()), detector.getNoiseFloorDb() < -50);
+    }
+
+    @Test
+    public void suddenStationaryNoiseIsEventuallyNotSpeech() {
+        VoiceActivityDetector detector = newDetector();
+        Fixture fixture = new Fixture();
+        for (int i = 0; i < 100; i++) {
+            process(detector, fixture.noise(-60));
+        }
+        // a fan is switched on, it looks like speech at first
+        assertTrue(process(detector, fixture.hum(-35)));
+        int frames = 1;
+        while (process(detector, fixture.hum(-35)) && frames < 3000) {
+            frames++;
+        }
+        assertTrue("still speech after " + frames + " frames", frames < 1500);
+        for (int i = 0; i < 500; i++) {
+            assertFalse(process(detector, fixture.hum(-35)));
+        }
+        assertEquals(-35, detector.getNoiseFloorDb(), 1.5);
+
+        // speech above the fan is still detected
+        int detected = 0;
+        for (int i = 0; i < 10; i++) {
+            detected += process(detector, fixture.voiced(-10)) ? 1 : 0;
+        }
+        assertEquals(10, detected);
+    }
+
+    @Test
+    public void noiseFloorFallsQuicklyWhenTheRoomGetsQuiet() {
+        VoiceActivityDetector detector = newDetector();
+        Fixture fixture = new Fixture();
+        for (int i = 0; i < 2000; i++) {
+            process(detector, fixture.hum(-35));
+        }
+        for (int i = 0; i < 25; i++) {
+            process(detector, fixture.noise(-60));
+        }
+        assertTrue(String.valueOf(detector.getNoiseFloorDb()), detector.getNoiseFloorDb() < -58);
+        assertTrue(process(detector, fixture.voiced(-40)));
+    }
+
+    @Test
+    public void readsFromPositionInBufferByteOrder() {
+        Fixture fixture = new Fixture();
+        ByteBuffer frame = fixture.voiced(-25);
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            ByteBuffer data = ByteBuffer.allocate(6 + frame.capacity()).order(order);
+            data.position(6);
+            for (int i = 0; i < FRAME_SAMPLES; i++) {
+                data.putShort(frame.getShort(i * 2));
+            }
+            data.position(6);
+            VoiceActivityDetector detector = newDetector();
+            assertTrue(process(detector, data));
+            assertEquals(6, data.position());
+            assertEquals(-25, detector.getLastEnergyDb(), 1);
+        }
+    }
+
+    @Test
+    public void zeroCrossingsUseTheFirstChannel() {
+        Fixture fixture = new Fixture();
+        ByteBuffer voiced = ByteBuffer.allocate(FRAME_SAMPLES * 2).order(ByteOrder.nativeOrder());
+        voiced.put(fixture.voiced(-25));
+        ByteBuffer noise = fixture.noise(-25);
+        ByteBuffer stereo = ByteBuffer.allocate(FRAME_SAMPLES * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            stereo.putShort(voiced.getShort(i * 2));
+            stereo.putShort(noise.getShort(i * 2));
+        }
+        stereo.clear();
+        VoiceActivityDetector detector = newDetector();
+        assertTrue(detector.process(stereo, stereo.capacity(), SAMPLE_RATE, 2));
+        assertTrue(detector.getLastZeroCrossingRate() < 0.1f);
+    }
+
+    @Test
+    public void emptyFrameKeepsState() {
+        VoiceActivityDetector detector = newDetector();
+        Fixture fixture = new Fixture();
+        assertTrue(process(detector, fixture.voiced(-25)));
+        assertTrue(detector.process(ByteBuffer.allocate(0), 0, SAMPLE_RATE, 1));
+        assertEquals(1, detector.getSpeechFrames());
+    }
+
+    @Test
+    public void resetRestoresInitialState() {
+        VoiceActivityDetector detector = newDetector();
+        Fixture fixture = new Fixture();
+        for (int i = 0; i < 500; i++) {
+            process(detector, fixture.hum(-35));
+        }
+        detector.reset();
+        assertFalse(detector.isSpeaking());
+        assertEquals(-60, detector.getNoiseFloorDb(), 0);
+        assertEquals(0, detector.getSpeechFrames());
+        assertEquals(0, detector.getSilenceFrames());
+        assertTrue(process(detector, fixture.voiced(-40)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeHangover() {
+        new VoiceActivityDetector(VoiceActivityDetector.SuppressionMode.SKIP, -1, 10);
+    }
+}
@@ -0,0 +1,190 @@
+package com.qiniu.droid.rtc.api.examples.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioFramePacerTest {
+
+    private static final long MS = 1000_000L;
+
+    /**
+     * 模拟时钟，sleep 只推进时间；可以在到达指定时刻时执行一次操作，模拟其他线程的调用
+     */
+    private static class FakeClock implements AudioFramePacer.Clock {
+        long mNowNs = 5_000 * MS;
+        long mSleptNs;
+        long mActionAtNs = Long.MAX_VALUE;
+        Runnable mAction;
+
+        @Override
+        public long nanoTime() {
+            return mNowNs;
+        }
+
+        @Override
+        public void sleepNanos(long nanos) {
+            mNowNs += nanos;
+            mSleptNs += nanos;
+            if (mAction != null && mNowNs >= mActionAtNs) {
+                Runnable action = mAction;
+                mAction = null;
+                action.run();
+            }
+        }
+
+        void advanceMs(long ms) {
+            mNowNs += ms * MS;
+        }
+
+        void at(long nowNs, Runnable action) {
+            mActionAtNs = nowNs;
+            mAction = action;
+        }
+    }
+
+    private FakeClock mClock;
+    private AudioFramePacer mPacer;
+    private long mStartNs;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mStartNs = mClock.mNowNs;
+        mPacer = new AudioFramePacer(mClock, 100);
+        mPacer.start();
+    }
+
+    @Test
+    public void firstFrameIsReleasedAtOnce() {
+        assertTrue(mPacer.await(7_000_000));
+        assertEquals(0, mClock.mSleptNs);
+        assertEquals(1, mPacer.getReleasedCount());
+    }
+
+    @Test
+    public void framesWithinLeadAreReleasedAtOnce() {
+        for (long ptsMs = 0; ptsMs <= 100; ptsMs += 20) {
+            assertTrue(mPacer.await(ptsMs * 1000));
+        }
+        assertEquals(0, mClock.mSleptNs);
+        assertEquals(0, mPacer.getLateCount());
+    }
+
+    @Test
+    public void framesAfterLeadAreReleasedOnSchedule() {
+        assertTrue(mPacer.await(0));
+        for (long ptsMs = 120; ptsMs <= 1000; ptsMs += 20) {
+            assertTrue(mPacer.await(ptsMs * 1000));
+            assertEquals(mStartNs + (ptsMs - 100) * MS, mClock.mNowNs);
+        }
+        assertEquals(0, mPacer.getLateCount());
+        assertEquals(0, mPacer.getMaxJitterNs());
+    }
+
+    @Test
+    public void pauseShiftsTimeline() {
+        assertTrue(mPacer.await(0));
+        mPacer.pause();
+        assertTrue(mPacer.isPaused());
+        mClock.advanceMs(500);
+        mPacer.resume();
+        assertFalse(mPacer.isPaused());
+
+        assertTrue(mPacer.await(200_000));
+        assertEquals(mStartNs + (500 + 100) * MS, mClock.mNowNs);
+    }
+
+    @Test
+    public void pausedPacerWaitsUntilResumed() {
+        assertTrue(mPacer.await(0));
+        mPacer.pause();
+        mClock.at(mStartNs + 300 * MS, mPacer::resume);
+
+        assertTrue(mPacer.await(50_000));
+        // the frame was due within the lead, it goes out as soon as the pacer resumes
+        assertEquals(mStartNs + 300 * MS, mClock.mNowNs);
+    }
+
+    @Test
+    public void seekDropsWaitingFrameAndReanchors() {
+        assertTrue(mPacer.await(0));
+        mClock.at(mStartNs + 50 * MS, mPacer::seek);
+        assertFalse(mPacer.await(1000_000));
+        assertEquals(mStartNs + 50 * MS, mClock.mNowNs);
+
+        // the next frame starts a new timeline
+        assertTrue(mPacer.await(30_000_000));
+        assertEquals(mStartNs + 50 * MS, mClock.mNowNs);
+    }
+
+    @Test
+    public void stopReleasesWaitingFrame() {
+        assertTrue(mPacer.await(0));
+        mClock.at(mStartNs + 20 * MS, mPacer::stop);
+        assertFalse(mPacer.await(1000_000));
+        assertFalse(mPacer.await(0));
+    }
+
+    @Test
+    public void stalledConsumerCountsLateFrames() {
+        assertTrue(mPacer.await(0));
+        mClock.advanceMs(300);
+        // due at 200ms, released at 300ms
+        assertTrue(mPacer.await(200_000));
+        assertEquals(1, mPacer.getLateCount());
+        assertEquals(200 * MS, mPacer.getMaxJitterNs());
+        assertEquals(100 * MS, mPacer.getAverageJitterNs());
+    }
+
+    @Test
+    public void longStallReanchors() {
+        assertTrue(mPacer.await(0));
+        mClock.advanceMs(3000);
+        assertTrue(mPacer.await(20_000));
+        assertEquals(1, mPacer.getReanchorCount());
+        long reanchoredAt = mClock.mNowNs;
+
+        // the following frames are paced from the new anchor instead of being released in a burst
+        assertTrue(mPacer.await(220_000));
+        assertEquals(reanchoredAt + 100 * MS, mClock.mNowNs);
+    }
+
+    @Test
+    public void startResetsStats() {
+        assertTrue(mPacer.await(0));
+        mClock.advanceMs(300);
+        assertTrue(mPacer.await(100_000));
+        mPacer.start();
+        assertEquals(0, mPacer.getReleasedCount());
+        assertEquals(0, mPacer.getLateCount());
+        assertEquals(0, mPacer.getMaxJitterNs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeLead() {
+        mPacer.setLeadMs(-1);
+    }
+
+    @Test
+    public void interruptedAwaitDropsFrame() {
+        AudioFramePacer pacer = new AudioFramePacer(new AudioFramePacer.Clock() {
+            @Override
+            public long nanoTime() {
+                return 0;
+            }
+
+            @Override
+            public void sleepNanos(long nanos) throws InterruptedException {
+                throw new InterruptedException();
+            }
+        }, 0);
+        pacer.start();
+        assertTrue(pacer.await(0));
+        assertFalse(pacer.await(1000_000));
+        assertTrue(Thread.interrupted());
+    }
+}
@@ -0,0 +1,135 @@
+package com.qiniu.droid.rtc.api.examples.model;
+
+import com.qiniu.droid.rtc.api.examples.capture.AudioFramePool;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioOutputDrainerTest {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 2;
+
+    /**
+     * 模拟的解码器，记录输出缓存的取出与归还
+     */
+    private static class FakeCodec implements AudioOutputDrainer.OutputBufferSource {
+        final Map<Integer, ByteBuffer> mOutputs = new HashMap<>();
+        final List<String> mEvents;
+
+        FakeCodec(List<String> events) {
+            mEvents = events;
+        }
+
+        void queueOutput(int index, byte[] data, int capacity) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+            buffer.put(data);
+            buffer.clear();
+            mOutputs.put(index, buffer);
+        }
+
+        @Override
+        public ByteBuffer getOutputBuffer(int index) {
+            mEvents.add("get " + index);
+            return mOutputs.get(index);
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index) {
+            mEvents.add("release " + index);
+            if (mOutputs.remove(index) == null) {
+                throw new IllegalStateException("buffer " + index + " released twice");
+            }
+        }
+    }
+
+    private final List<String> mEvents = new ArrayList<>();
+    private final FakeCodec mCodec = new FakeCodec(mEvents);
+    private final AudioOutputDrainer mDrainer = new AudioOutputDrainer(2);
+
+    @Test
+    public void releasesOutputBufferBeforeCallback() {
+        mCodec.queueOutput(0, new byte[]{9, 9, 1, 2, 3, 4, 9, 9}, 16);
+        final List<byte[]> copies = new ArrayList<>();
+        boolean delivered = mDrainer.drain(mCodec, 0, 2, 4, 1000, SAMPLE_RATE, CHANNELS, null, frame -> {
+            mEvents.add("frame");
+            byte[] copy = new byte[frame.getSize()];
+            frame.getData().get(copy);
+            copies.add(copy);
+            assertEquals(1000_000, frame.getTimestampNs());
+            assertEquals(SAMPLE_RATE, frame.getSampleRate());
+            assertEquals(CHANNELS, frame.getChannels());
+        });
+
+        assertTrue(delivered);
+        assertEquals("[get 0, release 0, frame]", mEvents.toString());
+        assertEquals("[1, 2, 3, 4]", Arrays.toString(copies.get(0)));
+    }
+
+    @Test
+    public void releasesOutputBufferWhenCallbackThrows() {
+        mCodec.queueOutput(0, new byte[4], 4);
+        try {
+            mDrainer.drain(mCodec, 0, 0, 4, 0, SAMPLE_RATE, CHANNELS, null, frame -> {
+                throw new IllegalStateException("consumer failed");
+            });
+        } catch (IllegalStateException expected) {
+            // checked below
+        }
+        assertEquals("[get 0, release 0]", mEvents.toString());
+        // the frame went back to the pool as well
+        mCodec.queueOutput(1, new byte[4], 4);
+        mCodec.queueOutput(2, new byte[4], 4);
+        assertTrue(mDrainer.drain(mCodec, 1, 0, 4, 0, SAMPLE_RATE, CHANNELS, () -> false, AudioFramePool.Frame::retain));
+        assertTrue(mDrainer.drain(mCodec, 2, 0, 4, 0, SAMPLE_RATE, CHANNELS, () -> false, AudioFramePool.Frame::retain));
+    }
+
+    @Test
+    public void emptyOutputIsReleasedWithoutCallback() {
+        mCodec.queueOutput(0, new byte[0], 4);
+        assertFalse(mDrainer.drain(mCodec, 0, 0, 0, 0, SAMPLE_RATE, CHANNELS, null, frame -> mEvents.add("frame")));
+        assertEquals("[release 0]", mEvents.toString());
+    }
+
+    @Test
+    public void releasesOutputBufferWhenGivingUpOnBackPressure() {
+        // the consumer keeps both frames of the pool
+        for (int i = 0; i < 2; i++) {
+            mCodec.queueOutput(i, new byte[4], 4);
+            assertTrue(mDrainer.drain(mCodec, i, 0, 4, 0, SAMPLE_RATE, CHANNELS, null, AudioFramePool.Frame::retain));
+        }
+        mEvents.clear();
+        mCodec.queueOutput(2, new byte[4], 4);
+        final int[] checks = new int[1];
+        assertFalse(mDrainer.drain(mCodec, 2, 0, 4, 0, SAMPLE_RATE, CHANNELS, () -> ++checks[0] < 3,
+                frame -> mEvents.add("frame")));
+        assertEquals("[get 2, release 2]", mEvents.toString());
+        assertEquals(3, mDrainer.getBackPressureCount());
+    }
+
+    @Test
+    public void countsDecodedDuration() {
+        // 480 stereo samples at 48k = 10ms
+        mCodec.queueOutput(0, new byte[1920], 1920);
+        mCodec.queueOutput(1, new byte[1920], 1920);
+        mDrainer.drain(mCodec, 0, 0, 1920, 0, SAMPLE_RATE, CHANNELS, null, frame -> { });
+        mDrainer.drain(mCodec, 1, 0, 1920, 10_000, SAMPLE_RATE, CHANNELS, null, frame -> { });
+        assertEquals(2, mDrainer.getDecodedFrameCount());
+        assertEquals(3840, mDrainer.getDecodedBytes());
+        assertEquals(20_000, mDrainer.getDecodedDurationUs());
+
+        mDrainer.resetStats();
+        assertEquals(0, mDrainer.getDecodedFrameCount());
+        assertEquals(0, mDrainer.getDecodedDurationUs());
+    }
+}
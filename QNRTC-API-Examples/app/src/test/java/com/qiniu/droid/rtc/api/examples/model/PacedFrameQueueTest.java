@@ -0,0 +1,148 @@
+package com.qiniu.droid.rtc.api.examples.model;
+
+import com.qiniu.droid.rtc.api.examples.capture.AudioFramePool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PacedFrameQueueTest {
+
+    private static final int CAPACITY = 2;
+
+    private final AudioFramePool mPool = new AudioFramePool(CAPACITY + 2, 16);
+    private final LinkedBlockingQueue<Long> mPushed = new LinkedBlockingQueue<>();
+    private AudioFramePacer mPacer;
+    private PacedFrameQueue mQueue;
+
+    @Before
+    public void setUp() {
+        // no lead, so every frame waits for its timestamp on the real clock
+        mPacer = new AudioFramePacer(AudioFramePacer.SYSTEM_CLOCK, 0);
+        mPacer.start();
+        mQueue = new PacedFrameQueue(mPacer, CAPACITY, frame -> mPushed.add(frame.getTimestampNs() / 1000_000L));
+        mQueue.start();
+    }
+
+    @After
+    public void tearDown() {
+        mPacer.stop();
+        mQueue.stop();
+    }
+
+    /**
+     * 模拟 AudioOutputDrainer：取出空闲帧写入时间戳后交给队列，返回后释放一次
+     */
+    private boolean decode(long ptsMs) {
+        AudioFramePool.Frame frame = mPool.acquire();
+        if (frame == null) {
+            throw new AssertionError("decoder had to wait for a free frame");
+        }
+        try {
+            frame.set(16, 16, 48000, 1, ptsMs * 1000_000L);
+            return mQueue.offer(frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void pushesFramesInOrderOnTheirTimestamps() throws InterruptedException {
+        long start = System.nanoTime();
+        for (long pts = 0; pts <= 60; pts += 20) {
+            assertTrue(decode(pts));
+        }
+        for (long pts = 0; pts <= 60; pts += 20) {
+            assertEquals(Long.valueOf(pts), mPushed.poll(5, TimeUnit.SECONDS));
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(60));
+        waitForPool();
+    }
+
+    @Test(timeout = 5000)
+    public void fullQueueBlocksDecoderWithoutExhaustingPool() throws InterruptedException {
+        mPacer.pause();
+        // one frame waits in the pacer, two are queued
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            assertTrue(decode(i));
+        }
+        while (mQueue.size() < CAPACITY) {
+            Thread.sleep(1);
+        }
+        final CountDownLatch offered = new CountDownLatch(1);
+        Thread decoder = new Thread(() -> {
+            decode(CAPACITY + 1);
+            offered.countDown();
+        });
+        decoder.start();
+        assertFalse(offered.await(50, TimeUnit.MILLISECONDS));
+        assertNull(mPushed.poll());
+
+        mPacer.resume();
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        decoder.join();
+        for (long pts = 0; pts <= CAPACITY + 1; pts++) {
+            assertEquals(Long.valueOf(pts), mPushed.poll(5, TimeUnit.SECONDS));
+        }
+        waitForPool();
+    }
+
+    @Test(timeout = 5000)
+    public void flushDropsQueuedFrames() throws InterruptedException {
+        mPacer.pause();
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            assertTrue(decode(i));
+        }
+        mQueue.flush();
+        assertEquals(0, mQueue.size());
+        waitForPool();
+
+        mPacer.resume();
+        assertTrue(decode(1000));
+        assertEquals(Long.valueOf(1000), mPushed.poll(5, TimeUnit.SECONDS));
+        assertNull(mPushed.poll(30, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void stopReleasesQueuedFrames() throws InterruptedException {
+        mPacer.pause();
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            assertTrue(decode(i));
+        }
+        mPacer.stop();
+        mQueue.stop();
+        assertEquals(mPool.getDepth(), mPool.getAvailableCount());
+        assertNull(mPushed.poll());
+
+        // frames offered after stop are not leaked
+        assertFalse(decode(10));
+        assertEquals(mPool.getDepth(), mPool.getAvailableCount());
+        // a flush after stop does not wait for the gone consumer
+        mQueue.flush();
+    }
+
+    @Test(timeout = 5000)
+    public void restartsAfterStop() throws InterruptedException {
+        mPacer.stop();
+        mQueue.stop();
+        mPacer.start();
+        mQueue.start();
+        assertTrue(decode(5));
+        assertEquals(Long.valueOf(5), mPushed.poll(5, TimeUnit.SECONDS));
+    }
+
+    private void waitForPool() throws InterruptedException {
+        while (mPool.getAvailableCount() < mPool.getDepth()) {
+            Thread.sleep(1);
+        }
+    }
+}
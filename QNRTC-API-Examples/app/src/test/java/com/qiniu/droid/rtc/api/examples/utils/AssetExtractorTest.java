@@ -0,0 +1,242 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AssetExtractorTest {
+
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    /**
+     * 以目录模拟 assets，记录读取文件的次数
+     */
+    private static class DirectorySource implements AssetExtractor.AssetSource {
+        final File mRoot;
+        final AtomicInteger mOpenCount = new AtomicInteger();
+
+        DirectorySource(File root) {
+            mRoot = root;
+        }
+
+        @Override
+        public String[] list(String dir) throws IOException {
+            String[] names = new File(mRoot, dir).list();
+            if (names == null) {
+                throw new IOException("no asset dir " + dir);
+            }
+            Arrays.sort(names);
+            return names;
+        }
+
+        @Override
+        public InputStream open(String path) throws IOException {
+            mOpenCount.incrementAndGet();
+            return new FileInputStream(new File(mRoot, path));
+        }
+    }
+
+    private File mAssetsDir;
+    private File mTargetDir;
+    private DirectorySource mSource;
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        mAssetsDir = Files.createTempDirectory("assets").toFile();
+        mTargetDir = new File(Files.createTempDirectory("target").toFile(), "music");
+        mSource = new DirectorySource(mAssetsDir);
+        mExecutor = Executors.newFixedThreadPool(AssetExtractor.DEFAULT_PARALLELISM);
+        new File(mAssetsDir, "effects").mkdirs();
+        writeAsset("effects/a.wav", 10_000, 1);
+        writeAsset("effects/b.wav", 20_000, 2);
+        writeAsset("effects/c.wav", 0, 3);
+        writeAsset("music.mp3", 50_000, 4);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        delete(mAssetsDir);
+        delete(mTargetDir.getParentFile());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private byte[] writeAsset(String path, int size, long seed) throws IOException {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        Files.write(new File(mAssetsDir, path).toPath(), content);
+        return content;
+    }
+
+    private AssetExtractor newExtractor(int appVersion) {
+        return new AssetExtractor(mSource, mTargetDir, appVersion, mExecutor, BUFFER_SIZE);
+    }
+
+    private void assertExtracted(String assetPath, File file) throws IOException {
+        assertArrayEquals(Files.readAllBytes(new File(mAssetsDir, assetPath).toPath()), Files.readAllBytes(file.toPath()));
+    }
+
+    // only the extracted files and the manifest, no temporary file is left
+    private void assertNoTemporaryFiles() {
+        for (String name : mTargetDir.list()) {
+            assertFalse(name, name.endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void extractsADirectoryAndSkipsItNextTime() throws Exception {
+        AssetExtractor extractor = newExtractor(1);
+        assertFalse(extractor.isUpToDate("effects"));
+        AssetExtractor.Result result = extractor.extract("effects").get(5, TimeUnit.SECONDS);
+        assertEquals(3, result.getExtractedCount());
+        List<String> names = new ArrayList<>();
+        for (File file : result.getFiles()) {
+            names.add(file.getName());
+            assertExtracted("effects/" + file.getName(), file);
+        }
+        assertEquals(Arrays.asList("a.wav", "b.wav", "c.wav"), names);
+        assertNoTemporaryFiles();
+
+        assertTrue(extractor.isUpToDate("effects"));
+        mSource.mOpenCount.set(0);
+        assertEquals(0, extractor.extract("effects").get(5, TimeUnit.SECONDS).getExtractedCount());
+        assertEquals(0, mSource.mOpenCount.get());
+    }
+
+    @Test
+    public void upToDateCheckReadsNoAsset() throws Exception {
+        AssetExtractor extractor = newExtractor(1);
+        extractor.extract("", "music.mp3").get(5, TimeUnit.SECONDS);
+        mSource.mOpenCount.set(0);
+        assertTrue(extractor.isUpToDate("", "music.mp3"));
+        assertFalse(extractor.isUpToDate("", "music.mp3", "other.mp3"));
+        assertEquals(0, mSource.mOpenCount.get());
+        // a new version has to check the content
+        assertFalse(newExtractor(2).isUpToDate("", "music.mp3"));
+    }
+
+    @Test
+    public void truncatedFileIsNotUpToDate() throws Exception {
+        AssetExtractor extractor = newExtractor(1);
+        extractor.extract("", "music.mp3").get(5, TimeUnit.SECONDS);
+        File file = new File(mTargetDir, "music.mp3");
+        Files.write(file.toPath(), new byte[100]);
+        assertFalse(extractor.isUpToDate("", "music.mp3"));
+        assertEquals(1, extractor.extract("", "music.mp3").get(5, TimeUnit.SECONDS).getExtractedCount());
+        assertExtracted("music.mp3", file);
+        assertTrue(extractor.isUpToDate("", "music.mp3"));
+    }
+
+    @Test
+    public void newVersionWithTheSameContentOnlyUpdatesTheManifest() throws Exception {
+        newExtractor(1).extract("effects").get(5, TimeUnit.SECONDS);
+        long modified = new File(mTargetDir, "a.wav").lastModified();
+        AssetExtractor extractor = newExtractor(2);
+        mSource.mOpenCount.set(0);
+        assertEquals(0, extractor.extract("effects").get(5, TimeUnit.SECONDS).getExtractedCount());
+        // the content is read once for the crc
+        assertEquals(3, mSource.mOpenCount.get());
+        assertEquals(modified, new File(mTargetDir, "a.wav").lastModified());
+        assertTrue(extractor.isUpToDate("effects"));
+    }
+
+    @Test
+    public void newVersionWithChangedContentIsExtractedAgain() throws Exception {
+        newExtractor(1).extract("effects").get(5, TimeUnit.SECONDS);
+        // same length, different bytes
+        writeAsset("effects/b.wav", 20_000, 5);
+        AssetExtractor.Result result = newExtractor(2).extract("effects").get(5, TimeUnit.SECONDS);
+        assertEquals(1, result.getExtractedCount());
+        assertExtracted("effects/b.wav", new File(mTargetDir, "b.wav"));
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void missingAssetFailsWithoutLeavingTemporaryFiles() throws Exception {
+        Future<AssetExtractor.Result> extraction = newExtractor(1).extract("", "music.mp3", "missing.mp3");
+        try {
+            extraction.get(5, TimeUnit.SECONDS);
+            fail("missing.mp3 doesn't exist");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertNoTemporaryFiles();
+        assertFalse(new File(mTargetDir, "missing.mp3").exists());
+        // the file that was extracted is recorded
+        assertTrue(newExtractor(1).isUpToDate("", "music.mp3"));
+    }
+
+    @Test
+    public void concurrentExtractionsOfTheSameFileDoNotCollide() throws Exception {
+        // several activities may extract the same file at the same time
+        int count = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<AssetExtractor.Result>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return new AssetExtractor(mSource, mTargetDir, 1, Runnable::run, BUFFER_SIZE)
+                            .extract("", "music.mp3").get();
+                }));
+            }
+            start.countDown();
+            for (Future<AssetExtractor.Result> result : results) {
+                result.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertExtracted("music.mp3", new File(mTargetDir, "music.mp3"));
+        assertNoTemporaryFiles();
+        assertTrue(newExtractor(1).isUpToDate("", "music.mp3"));
+    }
+
+    @Test
+    public void emptyDirectoryIsUpToDate() throws Exception {
+        new File(mAssetsDir, "empty").mkdirs();
+        AssetExtractor extractor = newExtractor(1);
+        assertTrue(extractor.isUpToDate("empty"));
+        assertTrue(extractor.extract("empty").get(5, TimeUnit.SECONDS).getFiles().isEmpty());
+        assertFalse(extractor.isUpToDate("no-such-dir"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveBufferSize() {
+        new AssetExtractor(mSource, mTargetDir, 1, mExecutor, 0);
+    }
+}
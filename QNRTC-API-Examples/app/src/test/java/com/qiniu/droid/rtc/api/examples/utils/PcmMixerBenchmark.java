@@ -0,0 +1,88 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 48k 双声道输出时，写入各音源 10ms 数据并混音输出一帧的耗时，需要远小于 10ms 才能实时混音
+ *
+ * 不属于单元测试，通过 main 方法运行。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcmMixerBenchmark {
+
+    private static final int OUTPUT_RATE = 48000;
+    private static final int OUTPUT_CHANNELS = 2;
+
+    @Param({"2", "8", "32"})
+    public int mSourceCount;
+
+    /**
+     * 音源的采样率，与输出相同时不需要重采样
+     */
+    @Param({"48000", "44100"})
+    public int mSourceRate;
+
+    private PcmMixer mMixer;
+    private ByteBuffer mInput;
+    private int mInputSize;
+    private ByteBuffer mOutput;
+
+    @Setup
+    public void setUp() {
+        mMixer = new PcmMixer(OUTPUT_RATE, OUTPUT_CHANNELS);
+        for (int i = 0; i < mSourceCount; i++) {
+            mMixer.addSource(i);
+            mMixer.setGain(i, 1.0f / mSourceCount);
+        }
+        mInputSize = mSourceRate / 100 * OUTPUT_CHANNELS * 2;
+        byte[] noise = new byte[mInputSize];
+        new Random(0).nextBytes(noise);
+        mInput = ByteBuffer.allocateDirect(mInputSize).order(ByteOrder.LITTLE_ENDIAN);
+        mInput.put(noise);
+        mInput.clear();
+        mOutput = ByteBuffer.allocateDirect(mMixer.getFrameSize()).order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public ByteBuffer writeAndMix() {
+        for (int i = 0; i < mSourceCount; i++) {
+            mMixer.write(i, mInput, mInputSize, mSourceRate, OUTPUT_CHANNELS);
+        }
+        mMixer.mixFrame(mOutput);
+        return mOutput;
+    }
+
+    @Benchmark
+    public ByteBuffer mixOnly() {
+        // sources run dry after the buffered data, which is the cost of mixing silence
+        mMixer.mixFrame(mOutput);
+        return mOutput;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PcmMixerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,234 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PcmMixerTest {
+
+    private static final int RATE = 48000;
+    // samples of one 10ms mono frame
+    private static final int FRAME = RATE / 100;
+
+    private final ByteBuffer mOut = ByteBuffer.allocateDirect(FRAME * 2 * 2).order(ByteOrder.LITTLE_ENDIAN);
+
+    private static ByteBuffer pcm(short... samples) {
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (short sample : samples) {
+            buffer.putShort(sample);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static short[] constant(int count, int value) {
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = (short) value;
+        }
+        return samples;
+    }
+
+    private static void write(PcmMixer mixer, int sourceId, short[] samples, int rate, int channels) {
+        ByteBuffer data = pcm(samples);
+        assertTrue(mixer.write(sourceId, data, data.remaining(), rate, channels));
+    }
+
+    private short sample(int index) {
+        return mOut.getShort(index * 2);
+    }
+
+    @Test
+    public void singleSourcePassesThrough() {
+        PcmMixer mixer = new PcmMixer(RATE, 1);
+        mixer.addSource(1);
+        short[] samples = new short[FRAME];
+        for (int i = 0; i < FRAME; i++) {
+            samples[i] = (short) (i * 37 - 8000);
+        }
+        write(mixer, 1, samples, RATE, 1);
+        mixer.mixFrame(mOut);
+        for (int i = 0; i < FRAME; i++) {
+            assertEquals(samples[i], sample(i));
+        }
+        assertEquals(0, mixer.getUnderrunCount(1));
+    }
+
+    @Test
+    public void sourcesAreSummedWithGain() {
+        PcmMixer mixer = new PcmMixer(RATE, 1);
+        mixer.addSource(1);
+        mixer.addSource(2);
+        mixer.addSource(3);
+        mixer.setGain(2, 0.5f);
+        mixer.setGain(3, 0);
+        write(mixer, 1, constant(FRAME, 1000), RATE, 1);
+        write(mixer, 2, constant(FRAME, 2000), RATE, 1);
+        write(mixer, 3, constant(FRAME, 3000), RATE, 1);
+        mixer.mixFrame(mOut);
+        assertEquals(2000, sample(0));
+        assertEquals(2000, sample(FRAME - 1));
+    }
+
+    @Test
+    public void loudSumIsSoftClipped() {
+        PcmMixer mixer = new PcmMixer(RATE, 1);
+        for (int id = 0; id < 4; id++) {
+            mixer.addSource(id);
+            write(mixer, id, constant(FRAME, id % 2 == 0 ? 30000 : -30000), RATE, 1);
+        }
+        mixer.mixFrame(mOut);
+        // opposite phases cancel
+        assertEquals(0, sample(0));
+
+        int previous = 0;
+        for (int level : new int[]{20000, 26000, 40000, 80000, 120000}) {
+            PcmMixer loud = new PcmMixer(RATE, 1);
+            for (int id = 0; id < 4; id++) {
+                loud.addSource(id);
+                write(loud, id, constant(FRAME, level / 4), RATE, 1);
+            }
+            loud.mixFrame(mOut);
+            int value = sample(0);
+            assertTrue(level + " -> " + value, value > previous && value <= Short.MAX_VALUE);
+            if (level <= 0.8f * Short.MAX_VALUE) {
+                assertEquals(level, value);
+            } else {
+                assertTrue(value < level);
+            }
+            previous = value;
+        }
+    }
+
+    @Test
+    public void missingDataIsSilenceAndCounted() {
+        PcmMixer mixer = new PcmMixer(RATE, 1);
+        mixer.addSource(1);
+        write(mixer, 1, constant(FRAME / 2, 500), RATE, 1);
+        mixer.mixFrame(mOut);
+        assertEquals(500, sample(FRAME / 2 - 1));
+        assertEquals(0, sample(FRAME / 2));
+        assertEquals(1, mixer.getUnderrunCount(1));
+        mixer.mixFrame(mOut);
+        assertEquals(0, sample(0));
+        assertEquals(2, mixer.getUnderrunCount(1));
+    }
+
+    @Test
+    public void fullBufferDropsOldestData() {
+        PcmMixer mixer = new PcmMixer(RATE, 1, PcmMixer.FRAME_DURATION_MS);
+        mixer.addSource(1);
+        write(mixer, 1, constant(FRAME, 100), RATE, 1);
+        write(mixer, 1, constant(FRAME / 4, 200), RATE, 1);
+        assertEquals(FRAME / 4, mixer.getOverrunSamples(1));
+        mixer.mixFrame(mOut);
+        assertEquals(100, sample(0));
+        assertEquals(200, sample(FRAME - 1));
+    }
+
+    @Test
+    public void stereoIsDownmixedToMono() {
+        PcmMixer mixer = new PcmMixer(RATE, 1);
+        mixer.addSource(1);
+        write(mixer, 1, new short[]{1000, 3000, -2000, 0}, RATE, 2);
+        mixer.mixFrame(mOut);
+        assertEquals(2000, sample(0));
+        assertEquals(-1000, sample(1));
+    }
+
+    @Test
+    public void monoIsDuplicatedToStereo() {
+        PcmMixer mixer = new PcmMixer(RATE, 2);
+        mixer.addSource(1);
+        write(mixer, 1, new short[]{1234, -55}, RATE, 1);
+        mixer.mixFrame(mOut);
+        assertEquals(1234, sample(0));
+        assertEquals(1234, sample(1));
+        assertEquals(-55, sample(2));
+        assertEquals(-55, sample(3));
+        assertEquals(mixer.getFrameSize(), FRAME * 2 * 2);
+    }
+
+    @Test
+    public void otherRatesAreResampled() {
+        PcmMixer mixer = new PcmMixer(RATE, 1);
+        mixer.addSource(1);
+        // 100ms of a constant level at 44.1k
+        write(mixer, 1, constant(4410, 4000), 44100, 1);
+        int full = 0;
+        for (int i = 0; i < 10; i++) {
+            mixer.mixFrame(mOut);
+            if (Math.abs(sample(FRAME / 2) - 4000) <= 40) {
+                full++;
+            }
+        }
+        // the filter delay holds back a little of the input, all but the last frame are complete
+        assertTrue("full frames " + full, full >= 8);
+        assertTrue(mixer.getUnderrunCount(1) <= 1);
+    }
+
+    @Test
+    public void outputFollowsBufferByteOrder() {
+        PcmMixer mixer = new PcmMixer(RATE, 1);
+        mixer.addSource(1);
+        write(mixer, 1, new short[]{0x0102}, RATE, 1);
+        ByteBuffer out = ByteBuffer.allocate(mixer.getFrameSize()).order(ByteOrder.BIG_ENDIAN);
+        mixer.mixFrame(out);
+        assertEquals(1, out.get(0));
+        assertEquals(2, out.get(1));
+    }
+
+    @Test
+    public void sourcesCanBeAddedRemovedAndFlushed() {
+        PcmMixer mixer = new PcmMixer(RATE, 1);
+        assertFalse(mixer.write(1, pcm((short) 1), 2, RATE, 1));
+        mixer.addSource(1);
+        mixer.addSource(1);
+        mixer.addSource(2);
+        write(mixer, 1, constant(FRAME, 10), RATE, 1);
+        write(mixer, 2, constant(FRAME, 20), RATE, 1);
+        mixer.mixFrame(mOut);
+        assertEquals(30, sample(0));
+
+        write(mixer, 1, constant(FRAME, 10), RATE, 1);
+        write(mixer, 2, constant(FRAME, 20), RATE, 1);
+        mixer.flush(1);
+        mixer.mixFrame(mOut);
+        assertEquals(20, sample(0));
+
+        write(mixer, 1, constant(FRAME, 10), RATE, 1);
+        write(mixer, 2, constant(FRAME, 20), RATE, 1);
+        mixer.flushAll();
+        mixer.mixFrame(mOut);
+        assertEquals(0, sample(0));
+
+        mixer.removeSource(1);
+        assertFalse(mixer.write(1, pcm((short) 1), 2, RATE, 1));
+        write(mixer, 2, constant(FRAME, 20), RATE, 1);
+        mixer.mixFrame(mOut);
+        assertEquals(20, sample(0));
+    }
+
+    @Test
+    public void writeDoesNotMovePosition() {
+        PcmMixer mixer = new PcmMixer(RATE, 1);
+        mixer.addSource(1);
+        ByteBuffer data = pcm((short) 0, (short) 7, (short) 8);
+        data.position(2);
+        mixer.write(1, data, 4, RATE, 1);
+        assertEquals(2, data.position());
+        mixer.mixFrame(mOut);
+        assertEquals(7, sample(0));
+        assertEquals(8, sample(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedChannels() {
+        new PcmMixer(RATE, 3);
+    }
+}
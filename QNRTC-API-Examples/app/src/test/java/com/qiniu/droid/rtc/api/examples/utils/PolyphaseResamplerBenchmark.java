@@ -0,0 +1,72 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 采集线程中重采样一帧（1024 个采样）的耗时，与 ExtAudioCapture 的用法一致
+ *
+ * 不属于单元测试，通过 main 方法运行。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolyphaseResamplerBenchmark {
+
+    private static final int FRAMES = 1024;
+
+    @Param({"LOW", "MEDIUM", "HIGH"})
+    public PolyphaseResampler.Quality mQuality;
+
+    @Param({"48000:44100", "44100:48000", "48000:16000"})
+    public String mRates;
+
+    @Param({"1", "2"})
+    public int mChannels;
+
+    private PolyphaseResampler mResampler;
+    private ByteBuffer mInput;
+    private ByteBuffer mOutput;
+
+    @Setup
+    public void setUp() {
+        String[] rates = mRates.split(":");
+        mResampler = new PolyphaseResampler(Integer.parseInt(rates[0]), Integer.parseInt(rates[1]), mChannels, mQuality);
+        byte[] noise = new byte[FRAMES * 2 * mChannels];
+        new Random(0).nextBytes(noise);
+        mInput = ByteBuffer.allocateDirect(noise.length).order(ByteOrder.nativeOrder());
+        mInput.put(noise);
+        mInput.clear();
+        mOutput = ByteBuffer.allocateDirect(mResampler.getMaxOutputFrames(FRAMES) * 2 * mChannels)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public int process() {
+        return mResampler.process(mInput, mInput.capacity(), mOutput);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PolyphaseResamplerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
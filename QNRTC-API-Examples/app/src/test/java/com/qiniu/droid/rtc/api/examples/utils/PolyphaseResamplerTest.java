@@ -0,0 +1,181 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PolyphaseResamplerTest {
+
+    private static final double AMPLITUDE = 0.5 * Short.MAX_VALUE;
+    // LOW, MEDIUM, HIGH; the tones sit in the stopband just above the output nyquist frequency
+    private static final double[] STOPBAND_DB = {-25, -40, -50};
+
+    private static short[] sine(double frequency, int rate, int frames) {
+        short[] samples = new short[frames];
+        for (int i = 0; i < frames; i++) {
+            samples[i] = (short) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * frequency * i / rate));
+        }
+        return samples;
+    }
+
+    private static short[] resample(PolyphaseResampler resampler, short[] in, int channels) {
+        int frames = in.length / channels;
+        short[] out = new short[resampler.getMaxOutputFrames(frames) * channels];
+        int outFrames = resampler.process(in, 0, frames, out, 0);
+        return Arrays.copyOf(out, outFrames * channels);
+    }
+
+    /**
+     * 跳过滤波器的起始过渡后计算 RMS，相对于输入正弦波的 dB
+     */
+    private static double levelDb(short[] samples, int channels, int channel) {
+        int skip = samples.length / channels / 4;
+        double sum = 0;
+        int count = 0;
+        for (int i = skip; i < samples.length / channels; i++) {
+            double v = samples[i * channels + channel];
+            sum += v * v;
+            count++;
+        }
+        double rms = Math.sqrt(sum / count);
+        return 20 * Math.log10(Math.max(rms, 1e-9) / (AMPLITUDE / Math.sqrt(2)));
+    }
+
+    @Test
+    public void outputLengthFollowsRatio() {
+        int[][] rates = {{48000, 44100}, {44100, 48000}, {16000, 48000}, {48000, 16000}, {32000, 48000}};
+        for (int[] rate : rates) {
+            PolyphaseResampler resampler = new PolyphaseResampler(rate[0], rate[1], 1);
+            short[] out = resample(resampler, new short[rate[0]], 1);
+            assertTrue(rate[0] + " -> " + rate[1] + ": " + out.length, Math.abs(out.length - rate[1]) <= 1);
+        }
+    }
+
+    @Test
+    public void passbandToneKeepsItsLevel() {
+        int[][] rates = {{48000, 44100}, {44100, 48000}, {16000, 48000}, {48000, 16000}};
+        for (PolyphaseResampler.Quality quality : PolyphaseResampler.Quality.values()) {
+            for (int[] rate : rates) {
+                PolyphaseResampler resampler = new PolyphaseResampler(rate[0], rate[1], 1, quality);
+                double db = levelDb(resample(resampler, sine(1000, rate[0], rate[0] / 2), 1), 1, 0);
+                assertTrue(quality + " " + rate[0] + " -> " + rate[1] + ": " + db + " dB", Math.abs(db) < 0.5);
+            }
+        }
+    }
+
+    @Test
+    public void toneAboveOutputNyquistIsSuppressed() {
+        // 12 kHz can't be represented at 16 kHz, 23 kHz can't at 44.1 kHz, both would alias into the passband
+        int[][] cases = {{48000, 16000, 12000}, {48000, 44100, 23000}, {48000, 8000, 6000}};
+        for (PolyphaseResampler.Quality quality : PolyphaseResampler.Quality.values()) {
+            for (int[] c : cases) {
+                PolyphaseResampler resampler = new PolyphaseResampler(c[0], c[1], 1, quality);
+                double db = levelDb(resample(resampler, sine(c[2], c[0], c[0] / 2), 1), 1, 0);
+                double limit = STOPBAND_DB[quality.ordinal()];
+                assertTrue(quality + " " + c[2] + " Hz at " + c[0] + " -> " + c[1] + ": " + db + " dB", db < limit);
+            }
+        }
+    }
+
+    @Test
+    public void streamingInBlocksMatchesOneShot() {
+        short[] in = new short[48000 * 2];
+        Random random = new Random(1);
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (short) (random.nextGaussian() * 4000);
+        }
+        short[] expected = resample(new PolyphaseResampler(48000, 44100, 2), in, 2);
+
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 44100, 2);
+        short[] out = new short[expected.length + 4];
+        short[] block = new short[resampler.getMaxOutputFrames(1024) * 2];
+        int written = 0;
+        int frame = 0;
+        int frames = in.length / 2;
+        while (frame < frames) {
+            int count = Math.min(frames - frame, 1 + random.nextInt(1024));
+            assertTrue(count * 2 <= block.length * 2);
+            int outFrames = resampler.process(in, frame * 2, count, block, 0);
+            assertTrue(outFrames <= resampler.getMaxOutputFrames(count));
+            System.arraycopy(block, 0, out, written, outFrames * 2);
+            written += outFrames * 2;
+            frame += count;
+        }
+        assertEquals(expected.length, written);
+        assertArrayEquals(expected, Arrays.copyOf(out, written));
+    }
+
+    @Test
+    public void byteBufferApiMatchesArrayApi() {
+        short[] in = sine(440, 48000, 4800);
+        short[] expected = resample(new PolyphaseResampler(48000, 44100, 1), in, 1);
+
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            PolyphaseResampler resampler = new PolyphaseResampler(48000, 44100, 1);
+            ByteBuffer input = ByteBuffer.allocateDirect(4 + in.length * 2).order(order);
+            input.position(4);
+            for (short sample : in) {
+                input.putShort(sample);
+            }
+            input.position(4);
+            ByteBuffer output = ByteBuffer.allocateDirect(resampler.getMaxOutputFrames(in.length) * 2).order(order);
+            int bytes = resampler.process(input, in.length * 2, output);
+
+            assertEquals(4, input.position());
+            assertEquals(0, output.position());
+            assertEquals(expected.length * 2, bytes);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], output.getShort(i * 2));
+            }
+        }
+    }
+
+    @Test
+    public void channelsStayIndependent() {
+        short[] left = sine(1000, 48000, 24000);
+        short[] in = new short[left.length * 2];
+        for (int i = 0; i < left.length; i++) {
+            in[i * 2] = left[i];
+        }
+        short[] out = resample(new PolyphaseResampler(48000, 44100, 2), in, 2);
+        assertTrue(Math.abs(levelDb(out, 2, 0)) < 0.5);
+        for (int i = 1; i < out.length; i += 2) {
+            assertEquals(0, out[i]);
+        }
+    }
+
+    @Test
+    public void resetForgetsPreviousInput() {
+        short[] first = sine(1000, 48000, 2000);
+        short[] second = sine(300, 48000, 2000);
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000, 1);
+        resample(resampler, first, 1);
+        resampler.reset();
+        assertArrayEquals(resample(new PolyphaseResampler(48000, 16000, 1), second, 1), resample(resampler, second, 1));
+    }
+
+    @Test
+    public void silenceStaysSilent() {
+        short[] out = resample(new PolyphaseResampler(44100, 48000, 1, PolyphaseResampler.Quality.HIGH), new short[4410], 1);
+        for (short sample : out) {
+            assertEquals(0, sample);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRate() {
+        new PolyphaseResampler(0, 48000, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRatioWithTooManyPhases() {
+        new PolyphaseResampler(48000, 44101, 1);
+    }
+}
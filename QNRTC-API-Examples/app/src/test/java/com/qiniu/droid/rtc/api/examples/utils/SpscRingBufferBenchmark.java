@@ -0,0 +1,81 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个生产者线程与一个消费者线程之间传递元素的吞吐量，对比 {@link SpscRingBuffer} 与 ArrayBlockingQueue
+ *
+ * 两者都在队列满时丢弃新元素、队列空时立即返回，与采集线程的用法一致。不属于单元测试，通过 main 方法运行。
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpscRingBufferBenchmark {
+
+    private static final Integer ELEMENT = 1;
+
+    @Param({"4", "64", "1024"})
+    public int mCapacity;
+
+    private SpscRingBuffer<Integer> mRingBuffer;
+    private ArrayBlockingQueue<Integer> mBlockingQueue;
+
+    @Setup
+    public void setUp() {
+        mRingBuffer = new SpscRingBuffer<>(mCapacity, SpscRingBuffer.OverflowPolicy.DROP_NEWEST);
+        mBlockingQueue = new ArrayBlockingQueue<>(mCapacity);
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public boolean ringBufferOffer() {
+        return mRingBuffer.offer(ELEMENT);
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public Integer ringBufferPoll() {
+        return mRingBuffer.poll();
+    }
+
+    @Benchmark
+    @Group("blockingQueue")
+    @GroupThreads(1)
+    public boolean blockingQueueOffer() {
+        return mBlockingQueue.offer(ELEMENT);
+    }
+
+    @Benchmark
+    @Group("blockingQueue")
+    @GroupThreads(1)
+    public Integer blockingQueuePoll() {
+        return mBlockingQueue.poll();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SpscRingBufferBenchmark.class.getSimpleName()).build()).run();
+    }
+}
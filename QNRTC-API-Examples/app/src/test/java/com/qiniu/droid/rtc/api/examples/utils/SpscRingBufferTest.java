@@ -0,0 +1,209 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpscRingBufferTest {
+
+    private static final int STRESS_COUNT = 1_000_000;
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, new SpscRingBuffer<Integer>(1, SpscRingBuffer.OverflowPolicy.DROP_NEWEST).capacity());
+        assertEquals(4, new SpscRingBuffer<Integer>(3, SpscRingBuffer.OverflowPolicy.DROP_NEWEST).capacity());
+        assertEquals(8, new SpscRingBuffer<Integer>(8, SpscRingBuffer.OverflowPolicy.DROP_NEWEST).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new SpscRingBuffer<Integer>(0, SpscRingBuffer.OverflowPolicy.DROP_NEWEST);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectsNull() {
+        new SpscRingBuffer<Integer>(2, SpscRingBuffer.OverflowPolicy.DROP_NEWEST).offer(null);
+    }
+
+    @Test
+    public void keepsFifoOrderAcrossWrapAround() {
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(4, SpscRingBuffer.OverflowPolicy.DROP_NEWEST);
+        int next = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(queue.offer(round * 3 + i));
+            }
+            assertEquals(3, queue.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(Integer.valueOf(next++), queue.poll());
+            }
+            assertTrue(queue.isEmpty());
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void dropNewestRejectsWhenFull() {
+        List<Integer> dropped = new ArrayList<>();
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(2, SpscRingBuffer.OverflowPolicy.DROP_NEWEST, dropped::add);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertEquals(1, queue.getOverrunCount());
+        assertEquals(Integer.valueOf(3), dropped.get(0));
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertEquals(Integer.valueOf(2), queue.poll());
+    }
+
+    @Test
+    public void dropOldestEvictsHead() {
+        List<Integer> dropped = new ArrayList<>();
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(2, SpscRingBuffer.OverflowPolicy.DROP_OLDEST, dropped::add);
+        queue.offer(1);
+        queue.offer(2);
+        assertTrue(queue.offer(3));
+        assertTrue(queue.offer(4));
+        assertEquals(2, queue.getOverrunCount());
+        assertEquals(2, dropped.size());
+        assertEquals(Integer.valueOf(1), dropped.get(0));
+        assertEquals(Integer.valueOf(2), dropped.get(1));
+        assertEquals(2, queue.size());
+        assertEquals(Integer.valueOf(3), queue.poll());
+        assertEquals(Integer.valueOf(4), queue.poll());
+    }
+
+    @Test
+    public void closedQueueDropsOffers() {
+        List<Integer> dropped = new ArrayList<>();
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(2, SpscRingBuffer.OverflowPolicy.BLOCK, dropped::add);
+        queue.offer(1);
+        queue.close();
+        assertTrue(queue.isClosed());
+        assertFalse(queue.offer(2));
+        assertEquals(1, dropped.size());
+        // elements queued before close can still be drained
+        assertEquals(Integer.valueOf(1), queue.poll());
+    }
+
+    @Test
+    public void timedPollTimesOut() {
+        SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(2, SpscRingBuffer.OverflowPolicy.BLOCK);
+        long start = System.nanoTime();
+        assertNull(queue.poll(TimeUnit.MILLISECONDS.toNanos(20)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test(timeout = 5000)
+    public void timedPollWakesOnOffer() throws InterruptedException {
+        final SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(2, SpscRingBuffer.OverflowPolicy.BLOCK);
+        Thread producer = new Thread(() -> {
+            sleep(20);
+            queue.offer(7);
+        });
+        producer.start();
+        assertEquals(Integer.valueOf(7), queue.poll(TimeUnit.SECONDS.toNanos(5)));
+        producer.join();
+    }
+
+    @Test(timeout = 5000)
+    public void closeWakesWaitingConsumer() throws InterruptedException {
+        final SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(2, SpscRingBuffer.OverflowPolicy.BLOCK);
+        Thread closer = new Thread(() -> {
+            sleep(20);
+            queue.close();
+        });
+        closer.start();
+        assertNull(queue.poll(TimeUnit.SECONDS.toNanos(5)));
+        closer.join();
+    }
+
+    @Test(timeout = 5000)
+    public void closeWakesBlockedProducer() throws InterruptedException {
+        final SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(1, SpscRingBuffer.OverflowPolicy.BLOCK);
+        queue.offer(1);
+        final AtomicBoolean offered = new AtomicBoolean(true);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            offered.set(queue.offer(2));
+            done.countDown();
+        });
+        producer.start();
+        assertFalse(done.await(20, TimeUnit.MILLISECONDS));
+        queue.close();
+        producer.join();
+        assertFalse(offered.get());
+    }
+
+    @Test(timeout = 30000)
+    public void blockPolicyDeliversEverythingInOrder() throws InterruptedException {
+        final SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(8, SpscRingBuffer.OverflowPolicy.BLOCK);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < STRESS_COUNT; i++) {
+                queue.offer(i);
+            }
+        });
+        producer.start();
+        for (int expected = 0; expected < STRESS_COUNT; expected++) {
+            Integer element;
+            while ((element = queue.poll(TimeUnit.MILLISECONDS.toNanos(10))) == null) {
+                assertTrue("producer stopped at " + expected, producer.isAlive() || !queue.isEmpty());
+            }
+            assertEquals(expected, element.intValue());
+        }
+        producer.join();
+        assertEquals(0, queue.getOverrunCount());
+    }
+
+    @Test(timeout = 30000)
+    public void dropOldestHandsEveryElementOutExactlyOnce() throws InterruptedException {
+        // the producer evicts with a CAS on the head while the consumer polls, each element must end up
+        // either consumed or dropped, never both and never lost
+        final byte[] seen = new byte[STRESS_COUNT];
+        final SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(4, SpscRingBuffer.OverflowPolicy.DROP_OLDEST,
+                element -> seen[element] += 2);
+        final AtomicBoolean produced = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < STRESS_COUNT; i++) {
+                queue.offer(i);
+            }
+            produced.set(true);
+        });
+        producer.start();
+
+        int last = -1;
+        long consumed = 0;
+        while (!produced.get() || !queue.isEmpty()) {
+            Integer element = queue.poll();
+            if (element == null) {
+                continue;
+            }
+            assertTrue("out of order: " + element + " after " + last, element > last);
+            last = element;
+            seen[element] += 1;
+            consumed++;
+        }
+        producer.join();
+
+        for (int i = 0; i < STRESS_COUNT; i++) {
+            assertTrue("element " + i + " seen " + seen[i], seen[i] == 1 || seen[i] == 2);
+        }
+        assertEquals(STRESS_COUNT, consumed + queue.getOverrunCount());
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.qiniu.droid.rtc.api.examples.utils;
+
+import com.qiniu.droid.rtc.QNLocalAudioTrackStats;
+import com.qiniu.droid.rtc.QNLocalVideoTrackStats;
+import com.qiniu.droid.rtc.QNNetworkGrade;
+import com.qiniu.droid.rtc.QNNetworkQuality;
+import com.qiniu.droid.rtc.QNRemoteAudioTrackStats;
+import com.qiniu.droid.rtc.QNRemoteVideoTrackStats;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatsCollectorTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    /**
+     * 只返回本地音频与网络质量的模拟数据源，每次调用返回当前设置的值
+     */
+    private static class FakeSource implements StatsCollector.StatsSource {
+        final Map<String, Integer> mAudioBitrates = new HashMap<>();
+        final Map<String, QNNetworkQuality> mQualities = new HashMap<>();
+        final AtomicInteger mPollCount = new AtomicInteger();
+
+        @Override
+        public Map<String, List<QNLocalVideoTrackStats>> getLocalVideoTrackStats() {
+            return null;
+        }
+
+        @Override
+        public synchronized Map<String, QNLocalAudioTrackStats> getLocalAudioTrackStats() {
+            mPollCount.incrementAndGet();
+            Map<String, QNLocalAudioTrackStats> stats = new HashMap<>();
+            for (Map.Entry<String, Integer> entry : mAudioBitrates.entrySet()) {
+                stats.put(entry.getKey(), new QNLocalAudioTrackStats(entry.getValue() * 1000, 20, 1));
+            }
+            return stats;
+        }
+
+        @Override
+        public Map<String, QNRemoteVideoTrackStats> getRemoteVideoTrackStats() {
+            return null;
+        }
+
+        @Override
+        public Map<String, QNRemoteAudioTrackStats> getRemoteAudioTrackStats() {
+            return null;
+        }
+
+        @Override
+        public Map<String, QNNetworkQuality> getUserNetworkQuality() {
+            return mQualities;
+        }
+
+        synchronized void setAudioBitrate(String trackId, int kbps) {
+            mAudioBitrates.put(trackId, kbps);
+        }
+    }
+
+    @Test
+    public void averageBitrateCoversTheRecentSamples() {
+        FakeSource source = new FakeSource();
+        StatsCollector collector = new StatsCollector(source, 1000, 3);
+        int[] bitrates = {10, 20, 30, 40};
+        int[] averages = {10, 15, 20, 30};
+        for (int i = 0; i < bitrates.length; i++) {
+            source.setAudioBitrate("mic", bitrates[i]);
+            StatsCollector.TrackStats stats = collector.collect(i * 1000)
+                    .getFirstTrack(StatsCollector.TrackKind.LOCAL_AUDIO);
+            assertEquals(bitrates[i], stats.getBitrateKbps());
+            assertEquals(averages[i], stats.getAverageBitrateKbps());
+        }
+    }
+
+    @Test
+    public void historyOfAGoneTrackIsForgotten() {
+        FakeSource source = new FakeSource();
+        StatsCollector collector = new StatsCollector(source, 1000, 4);
+        source.setAudioBitrate("mic", 100);
+        collector.collect(0);
+        source.mAudioBitrates.clear();
+        assertNull(collector.collect(1000).getFirstTrack(StatsCollector.TrackKind.LOCAL_AUDIO));
+        source.setAudioBitrate("mic", 20);
+        assertEquals(20, collector.collect(2000).getFirstTrack(StatsCollector.TrackKind.LOCAL_AUDIO)
+                .getAverageBitrateKbps());
+    }
+
+    @Test
+    public void networkQualityIsCopied() {
+        FakeSource source = new FakeSource();
+        QNNetworkQuality quality = new QNNetworkQuality(QNNetworkGrade.GOOD, QNNetworkGrade.POOR);
+        source.mQualities.put("user", quality);
+        StatsCollector.Snapshot snapshot = new StatsCollector(source).collect(0);
+        quality.uplinkNetworkGrade = QNNetworkGrade.INVALID;
+        QNNetworkQuality copy = snapshot.getNetworkQualities().get("user");
+        assertEquals(QNNetworkGrade.GOOD, copy.uplinkNetworkGrade);
+        assertEquals(QNNetworkGrade.POOR, copy.downlinkNetworkGrade);
+    }
+
+    @Test
+    public void collectPublishesToListeners() {
+        StatsCollector collector = new StatsCollector(new FakeSource());
+        List<StatsCollector.Snapshot> received = new CopyOnWriteArrayList<>();
+        StatsCollector.Listener listener = received::add;
+        collector.addListener(listener);
+        StatsCollector.Snapshot snapshot = collector.collect(42);
+        assertEquals(Collections.singletonList(snapshot), received);
+        assertEquals(snapshot, collector.getLatestSnapshot());
+        assertEquals(42, snapshot.getTimestampMs());
+        collector.removeListener(listener);
+        collector.collect(43);
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void stopClearsHistoryAndLatestSnapshot() throws Exception {
+        FakeSource source = new FakeSource();
+        source.setAudioBitrate("mic", 100);
+        StatsCollector collector = new StatsCollector(source, 10, 4);
+        CountDownLatch published = new CountDownLatch(2);
+        collector.addListener(snapshot -> published.countDown());
+        collector.start();
+        assertTrue(collector.isStarted());
+        assertTrue(published.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        collector.stop();
+        assertFalse(collector.isStarted());
+        assertNull(collector.getLatestSnapshot());
+        source.setAudioBitrate("mic", 20);
+        assertEquals(20, collector.collect(0).getFirstTrack(StatsCollector.TrackKind.LOCAL_AUDIO)
+                .getAverageBitrateKbps());
+    }
+
+    @Test
+    public void failingRoundIsSkipped() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FakeSource source = new FakeSource() {
+            @Override
+            public Map<String, QNNetworkQuality> getUserNetworkQuality() {
+                if (calls.incrementAndGet() == 1) {
+                    throw new IllegalStateException("not in a room");
+                }
+                return super.getUserNetworkQuality();
+            }
+        };
+        StatsCollector collector = new StatsCollector(source, 10, 4);
+        CountDownLatch published = new CountDownLatch(1);
+        collector.addListener(snapshot -> published.countDown());
+        collector.start();
+        try {
+            assertTrue(published.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertEquals(1, collector.getErrorCount());
+        } finally {
+            collector.stop();
+        }
+    }
+
+    @Test
+    public void pollOfAStoppedRoundIsNotPublishedAfterRestart() throws Exception {
+        CountDownLatch firstPollBlocked = new CountDownLatch(1);
+        CountDownLatch releaseFirstPoll = new CountDownLatch(1);
+        CountDownLatch firstPollDone = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        FakeSource source = new FakeSource() {
+            @Override
+            public Map<String, QNNetworkQuality> getUserNetworkQuality() {
+                if (calls.incrementAndGet() == 1) {
+                    firstPollBlocked.countDown();
+                    // ignore the interruption of stop(), like a blocking sdk call would
+                    boolean released = false;
+                    while (!released) {
+                        try {
+                            released = releaseFirstPoll.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    firstPollDone.countDown();
+                }
+                return super.getUserNetworkQuality();
+            }
+        };
+        StatsCollector collector = new StatsCollector(source, 60_000, 4);
+        List<StatsCollector.Snapshot> received = new CopyOnWriteArrayList<>();
+        CountDownLatch secondPublished = new CountDownLatch(1);
+        collector.addListener(snapshot -> {
+            received.add(snapshot);
+            secondPublished.countDown();
+        });
+
+        collector.start();
+        assertTrue(firstPollBlocked.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        collector.stop();
+        collector.start();
+        try {
+            assertTrue(secondPublished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            StatsCollector.Snapshot fresh = collector.getLatestSnapshot();
+            assertNotNull(fresh);
+
+            releaseFirstPoll.countDown();
+            assertTrue(firstPollDone.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            // give the stale round the time to publish if it were allowed to
+            Thread.sleep(100);
+            assertEquals(Collections.singletonList(fresh), received);
+            assertEquals(fresh, collector.getLatestSnapshot());
+        } finally {
+            collector.stop();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidInterval() {
+        new StatsCollector(new FakeSource(), 0, 4);
+    }
+}